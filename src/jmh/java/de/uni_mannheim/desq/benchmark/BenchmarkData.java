@@ -0,0 +1,134 @@
+package de.uni_mannheim.desq.benchmark;
+
+import de.uni_mannheim.desq.dictionary.DefaultDictionaryAndSequenceBuilder;
+import de.uni_mannheim.desq.dictionary.Dictionary;
+import de.uni_mannheim.desq.io.DelSequenceReader;
+import de.uni_mannheim.desq.io.SequenceReader;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** A dictionary together with its input sequences (as fids), held in memory so that loading the data is not part
+ * of the measured mining time. */
+final class BenchmarkData {
+	final Dictionary dict;
+	final List<IntList> inputSequences;
+
+	private BenchmarkData(Dictionary dict, List<IntList> inputSequences) {
+		this.dict = dict;
+		this.inputSequences = inputSequences;
+	}
+
+	/** Loads the named data set. Either "icdm16" (the running example of the ICDM16 paper) or
+	 * "synthetic-&lt;numSequences&gt;" (see {@link #synthetic(int, int, int, int, long)}). */
+	static BenchmarkData load(String name) throws IOException {
+		if (name.equals("icdm16")) {
+			return icdm16();
+		}
+		if (name.startsWith("synthetic-")) {
+			int numSequences = Integer.parseInt(name.substring("synthetic-".length()));
+			return synthetic(numSequences, 20, 10000, 100, 0L);
+		}
+		throw new IllegalArgumentException("unknown data set " + name);
+	}
+
+	/** The ICDM16 example data shipped with DESQ. */
+	static BenchmarkData icdm16() throws IOException {
+		URL dictFile = BenchmarkData.class.getResource("/icdm16-example/dict.json");
+		URL dataFile = BenchmarkData.class.getResource("/icdm16-example/data.del");
+		Dictionary dict = Dictionary.loadFrom(dictFile);
+		SequenceReader dataReader = new DelSequenceReader(dataFile.openStream(), false);
+		dict.incFreqs(dataReader);
+		dict.recomputeFids();
+		dict.freeze();
+
+		dataReader = new DelSequenceReader(dataFile.openStream(), false);
+		dataReader.setDictionary(dict);
+		List<IntList> inputSequences = new ArrayList<>();
+		IntList inputSequence = new IntArrayList();
+		while (dataReader.readAsFids(inputSequence)) {
+			inputSequences.add(new IntArrayList(inputSequence));
+		}
+		dataReader.close();
+		return new BenchmarkData(dict, inputSequences);
+	}
+
+	/** Generates random input sequences over a two-level item hierarchy. Items are drawn from a skewed
+	 * (log-uniform) distribution so that there are both frequent and infrequent items; each item has one of
+	 * <code>numCategories</code> parents.
+	 *
+	 * @param numSequences number of input sequences
+	 * @param maxLength maximum length of an input sequence (lengths are uniform in [1, maxLength])
+	 * @param numItems number of distinct leaf items
+	 * @param numCategories number of distinct parent items
+	 * @param seed seed of the random number generator
+	 */
+	static BenchmarkData synthetic(int numSequences, int maxLength, int numItems, int numCategories, long seed) {
+		Random random = new Random(seed);
+		DefaultDictionaryAndSequenceBuilder builder = new DefaultDictionaryAndSequenceBuilder();
+		List<IntList> inputGids = new ArrayList<>(numSequences);
+		for (int i = 0; i < numSequences; i++) {
+			builder.newSequence();
+			int length = 1 + random.nextInt(maxLength);
+			for (int j = 0; j < length; j++) {
+				int item = (int) Math.pow(numItems, random.nextDouble());
+				Pair<Integer, Boolean> itemFidNew = builder.appendItem("i" + item);
+				if (itemFidNew.getRight()) {
+					builder.addParent(itemFidNew.getLeft(), "c" + (item % numCategories));
+				}
+			}
+			inputGids.add(new IntArrayList(builder.getCurrentGids()));
+		}
+		builder.newSequence(); // finishes the last input sequence
+
+		Dictionary dict = builder.getDictionary();
+		dict.recomputeFids();
+		dict.freeze();
+		List<IntList> inputSequences = new ArrayList<>(numSequences);
+		for (IntList gids : inputGids) {
+			IntList fids = new IntArrayList(gids.size());
+			dict.gidsToFids(gids, fids);
+			inputSequences.add(fids);
+		}
+		return new BenchmarkData(dict, inputSequences);
+	}
+
+	/** Returns a reader over the input sequences (as fids). */
+	SequenceReader reader() {
+		SequenceReader reader = new SequenceReader() {
+			private int next = 0;
+
+			@Override
+			public boolean read(IntList items) {
+				if (next == inputSequences.size()) {
+					return false;
+				}
+				items.clear();
+				items.addAll(inputSequences.get(next++));
+				return true;
+			}
+
+			@Override
+			public boolean usesFids() {
+				return true;
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		reader.setDictionary(dict);
+		return reader;
+	}
+
+	/** Converts a relative minimum support into an absolute one (at least 1). */
+	long sigma(double minSupport) {
+		return Math.max(1L, (long) Math.ceil(minSupport * inputSequences.size()));
+	}
+}
@@ -0,0 +1,30 @@
+package de.uni_mannheim.desq.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the DESQ benchmarks and reports throughput, GC allocation rate (JMH's <code>gc</code> profiler), and peak
+ * heap usage ({@link PeakHeapProfiler}). Accepts the usual JMH command line options, e.g., to select benchmarks
+ * or parameters:
+ *
+ * <pre>
+ * mvn package -Pbenchmark
+ * java -cp target/desq-benchmark.jar de.uni_mannheim.desq.benchmark.DesqBenchmarks DesqMinerBenchmark \
+ *      -p dataset=synthetic-10000 -p miner=DesqDfs -p lambda=5
+ * </pre>
+ */
+public class DesqBenchmarks {
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.addProfiler(PeakHeapProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
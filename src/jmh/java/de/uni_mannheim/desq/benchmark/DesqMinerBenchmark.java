@@ -0,0 +1,41 @@
+package de.uni_mannheim.desq.benchmark;
+
+import de.uni_mannheim.desq.mining.DesqCount;
+import de.uni_mannheim.desq.mining.DesqDfs;
+import de.uni_mannheim.desq.util.DesqProperties;
+import org.openjdk.jmh.annotations.Param;
+
+/** Benchmarks {@link DesqCount} and {@link DesqDfs} for all combinations of the two-pass, lazy DFA, and pruning
+ * flags. */
+public class DesqMinerBenchmark extends MinerBenchmark {
+	@Param({"DesqCount", "DesqDfs"})
+	public String miner;
+
+	@Param({"false", "true"})
+	public boolean pruneIrrelevantInputs;
+
+	@Param({"false", "true"})
+	public boolean useLazyDfa;
+
+	@Param({"false", "true"})
+	public boolean useTwoPass;
+
+	@Override
+	protected DesqProperties createConf(long sigma, String patternExpression) {
+		DesqProperties conf;
+		switch (miner) {
+			case "DesqCount":
+				conf = DesqCount.createConf(patternExpression, sigma);
+				break;
+			case "DesqDfs":
+				conf = DesqDfs.createConf(patternExpression, sigma);
+				break;
+			default:
+				throw new IllegalArgumentException("unknown miner " + miner);
+		}
+		conf.setProperty("desq.mining.prune.irrelevant.inputs", pruneIrrelevantInputs);
+		conf.setProperty("desq.mining.use.lazy.dfa", useLazyDfa);
+		conf.setProperty("desq.mining.use.two.pass", useTwoPass);
+		return conf;
+	}
+}
@@ -0,0 +1,85 @@
+package de.uni_mannheim.desq.benchmark;
+
+import de.uni_mannheim.desq.fst.CompiledFst;
+import de.uni_mannheim.desq.fst.Fst;
+import de.uni_mannheim.desq.fst.State;
+import de.uni_mannheim.desq.patex.PatExUtils;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** Compares running an FST by interpreting its {@link CompiledFst} with running it by generated code (see
+ * desq.mining.use.fst.codegen) on the ICDM16 example data and the pattern expressions of the ICDM16 tests. Each
+ * benchmark operation runs the FST on all input sequences and follows all runs (as DesqCount does), but does not
+ * mine. Throughput is thus reported in passes over the data per second. */
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class FstSimulationBenchmark {
+	@Param({"[c|d] ([A^|B=^]+) e", "(a1)..", "(a1)..$", ".(a1)", "^.(a1)"})
+	public String patternExpression;
+
+	@Param({"false", "true"})
+	public boolean useFstCodegen;
+
+	private BenchmarkData data;
+	private CompiledFst compiledFst;
+	private int initialStateId;
+	private CompiledFst.Buffer buffer;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		data = BenchmarkData.icdm16();
+		Fst fst = PatExUtils.toFst(data.dict, patternExpression);
+		compiledFst = new CompiledFst(fst, data.dict, useFstCodegen);
+		initialStateId = fst.getInitialState().getId();
+		if (useFstCodegen && !compiledFst.usesGeneratedCode()) {
+			throw new IllegalStateException("cannot generate code for " + patternExpression);
+		}
+		buffer = new CompiledFst.Buffer(data.dict.isForest());
+	}
+
+	/** Returns a checksum of the runs of the FST on all input sequences (so that they are not optimized away). */
+	@Benchmark
+	public long simulate() {
+		long result = 0;
+		for (IntList inputSequence : data.inputSequences) {
+			result += step(inputSequence, 0, initialStateId);
+		}
+		return result;
+	}
+
+	private long step(IntList inputSequence, int pos, int stateId) {
+		State state = compiledFst.getState(stateId);
+		if (state.isFinalComplete() || pos == inputSequence.size()) {
+			return state.isFinal() ? 1 : 0;
+		}
+
+		final IntArrayList pairs = buffer.pairs;
+		final int begin = pairs.size();
+		compiledFst.step(stateId, inputSequence.getInt(pos), null, buffer);
+		final int end = pairs.size();
+		long result = 0;
+		for (int i = begin; i < end; i += 2) {
+			result += pairs.getInt(i) + step(inputSequence, pos + 1, pairs.getInt(i + 1));
+		}
+		pairs.size(begin);
+		return result;
+	}
+}
@@ -0,0 +1,78 @@
+package de.uni_mannheim.desq.benchmark;
+
+import de.uni_mannheim.desq.io.CountPatternWriter;
+import de.uni_mannheim.desq.mining.DesqMiner;
+import de.uni_mannheim.desq.mining.DesqMinerContext;
+import de.uni_mannheim.desq.util.DesqProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** Base class of the miner benchmarks. Each benchmark operation creates a miner for the configuration returned by
+ * {@link #createConf(long, String)}, adds all input sequences of the data set, and mines them. Throughput is thus
+ * reported in complete mining runs per second. The data set is loaded once per trial and is not measured. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public abstract class MinerBenchmark {
+	/** The data set; see {@link BenchmarkData#load(String)} */
+	@Param({"icdm16", "synthetic-10000"})
+	public String dataset;
+
+	/** Minimum support relative to the number of input sequences */
+	@Param({"0.01", "0.05"})
+	public double minSupport;
+
+	/** Maximum gap */
+	@Param({"0", "2"})
+	public int gamma;
+
+	/** Maximum length */
+	@Param({"3", "5"})
+	public int lambda;
+
+	/** Whether to generalize items */
+	@Param({"true"})
+	public boolean generalize;
+
+	private BenchmarkData data;
+	private DesqProperties conf;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		data = BenchmarkData.load(dataset);
+		String patternExpression = DesqMiner.patternExpressionFor(gamma, lambda, generalize);
+		conf = createConf(data.sigma(minSupport), patternExpression);
+	}
+
+	/** Returns the configuration of the miner under test. */
+	protected abstract DesqProperties createConf(long sigma, String patternExpression);
+
+	@Benchmark
+	public void mine(Blackhole blackhole) throws IOException {
+		CountPatternWriter result = new CountPatternWriter();
+		DesqMinerContext ctx = new DesqMinerContext(conf, data.dict, result);
+		DesqMiner miner = DesqMiner.create(ctx);
+		miner.addInputSequences(data.reader());
+		miner.mine();
+		result.close();
+		blackhole.consume(result.getCount());
+		blackhole.consume(result.getTotalFrequency());
+	}
+}
@@ -0,0 +1,47 @@
+package de.uni_mannheim.desq.benchmark;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Collection;
+import java.util.Collections;
+
+/** Reports the peak heap usage of each iteration, i.e., the sum of the peak usages of all heap memory pools since
+ * the iteration started. Since the pools may peak at different times, this is an upper bound on the actual peak.
+ * Usage: <code>-prof de.uni_mannheim.desq.benchmark.PeakHeapProfiler</code>. */
+public class PeakHeapProfiler implements InternalProfiler {
+	@Override
+	public String getDescription() {
+		return "Peak heap usage";
+	}
+
+	@Override
+	public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	@Override
+	public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams,
+													   IterationParams iterationParams, IterationResult result) {
+		long peakBytes = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peakBytes += pool.getPeakUsage().getUsed();
+			}
+		}
+		return Collections.singletonList(new ScalarResult("·peak.heap", peakBytes / (1024. * 1024.), "MB",
+				AggregationPolicy.MAX));
+	}
+}
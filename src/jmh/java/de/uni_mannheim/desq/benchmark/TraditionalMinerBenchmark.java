@@ -0,0 +1,25 @@
+package de.uni_mannheim.desq.benchmark;
+
+import de.uni_mannheim.desq.mining.CSpadeMiner;
+import de.uni_mannheim.desq.mining.PrefixGrowthMiner;
+import de.uni_mannheim.desq.util.DesqProperties;
+import org.openjdk.jmh.annotations.Param;
+
+/** Benchmarks the traditional (non-FST) miners {@link CSpadeMiner} and {@link PrefixGrowthMiner}. The pattern
+ * expression is not used; both miners use sigma, gamma, lambda, and generalize directly. */
+public class TraditionalMinerBenchmark extends MinerBenchmark {
+	@Param({"CSpade", "PrefixGrowth"})
+	public String miner;
+
+	@Override
+	protected DesqProperties createConf(long sigma, String patternExpression) {
+		switch (miner) {
+			case "CSpade":
+				return CSpadeMiner.createConf(sigma, gamma, lambda, generalize);
+			case "PrefixGrowth":
+				return PrefixGrowthMiner.createConf(sigma, gamma, lambda, generalize);
+			default:
+				throw new IllegalArgumentException("unknown miner " + miner);
+		}
+	}
+}
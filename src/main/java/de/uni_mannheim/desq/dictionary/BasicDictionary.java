@@ -41,6 +41,18 @@ public class BasicDictionary {
     /** Maps gids to fids. */
     protected final Int2IntOpenHashMap gidIndex;
 
+    /** Index of the ascendants of each item in CSR layout: the fids of the (proper) ascendants of item fid are stored
+     * in <code>ascendantFids[ascendantOffsets[fid]...ascendantOffsets[fid+1]-1]</code>. Only present for frozen
+     * dictionaries (see {@link #indexAscendants()}); <code>null</code> otherwise. */
+    protected int[] ascendantOffsets = null;
+
+    /** See {@link #ascendantOffsets}. */
+    protected int[] ascendantFids = null;
+
+    /** For each item, the smallest fid of the item and its ascendants (or {@link Integer#MAX_VALUE} if the fid is not
+     * present). Only present along with {@link #ascendantOffsets}. */
+    protected int[] minAscendantFid = null;
+
     // -- information about this dictionary ---------------------------------------------------------------------------
 
     /** Whether this dictionary is a forest or <code>null</code> if unknown. See {@link #isForest()}. */
@@ -83,6 +95,11 @@ public class BasicDictionary {
         isForest = other.isForest;
         hasConsistentFids = other.hasConsistentFids;
         largestRootFid = other.largestRootFid;
+        if (freeze) { // the index is immutable, so we can share it
+            ascendantOffsets = other.ascendantOffsets;
+            ascendantFids = other.ascendantFids;
+            minAscendantFid = other.minAscendantFid;
+        }
         IntListOptimizer optimizer = new IntListOptimizer(false);
         for (int i=0; i<gids.size(); i++) {
             int gid = gids.getInt(i);
@@ -114,6 +131,9 @@ public class BasicDictionary {
         if (withLinks) {
             parents = other.parents;
             children = other.children;
+            ascendantOffsets = other.ascendantOffsets;
+            ascendantFids = other.ascendantFids;
+            minAscendantFid = other.minAscendantFid;
         } else {
             parents = new ArrayList<>();
             children = new ArrayList<>();
@@ -176,6 +196,55 @@ public class BasicDictionary {
 
         // now trim everything
         trim();
+
+        // and index the ascendants
+        indexAscendants();
+    }
+
+    /** Computes {@link #ascendantOffsets}, {@link #ascendantFids}, and {@link #minAscendantFid}, which are then
+     * used by {@link #addAscendantFids(int, IntCollection)}, {@link #addAscendantGids(int, IntSet)}, and
+     * {@link #hasAscendantWithFidBelow(int, int)} instead of traversing the hierarchy. The index must only be
+     * computed when the dictionary is not modified anymore. It is skipped when the total number of ascendants
+     * does not fit into an array. */
+    protected void indexAscendants() {
+        int[][] index = computeAscendantIndex();
+        if (index != null) {
+            ascendantOffsets = index[0];
+            ascendantFids = index[1];
+            minAscendantFid = index[2];
+        }
+    }
+
+    /** Returns the contents of {@link #ascendantOffsets}, {@link #ascendantFids}, and {@link #minAscendantFid} (in
+     * this order) computed by traversing the hierarchy, or <code>null</code> if the index is too large. */
+    int[][] computeAscendantIndex() {
+        int n = lastFid() + 1;
+        IntCollection ascendants = isForest() ? new IntArrayList() : new IntOpenHashSet();
+        int[] offsets = new int[n + 1];
+        int[] minFids = new int[n];
+        IntArrayList fids = new IntArrayList();
+        for (int fid = 0; fid < n; fid++) {
+            offsets[fid] = fids.size();
+            if (!containsFid(fid)) {
+                minFids[fid] = Integer.MAX_VALUE;
+                continue;
+            }
+            ascendants.clear();
+            addAscendantFids(fid, ascendants, Integer.MAX_VALUE);
+            if ((long) fids.size() + ascendants.size() > Integer.MAX_VALUE - 8) {
+                return null; // too large
+            }
+            int minFid = fid;
+            IntIterator it = ascendants.iterator();
+            while (it.hasNext()) {
+                int ascendantFid = it.nextInt();
+                fids.add(ascendantFid);
+                minFid = Math.min(minFid, ascendantFid);
+            }
+            minFids[fid] = minFid;
+        }
+        offsets[n] = fids.size();
+        return new int[][] { offsets, fids.toIntArray(), minFids };
     }
 
     /** Returns a memory-optimized deep copy of this dictionary. */
@@ -468,6 +537,10 @@ public class BasicDictionary {
     /** Checks whether the given item or one of its ascendants has a fid below the given one. Quick way to check whether
      * an item has a frequent fid when {@link #hasConsistentFids} is true. */
     public boolean hasAscendantWithFidBelow(int fid, int maxFid) {
+        if (minAscendantFid != null) {
+            return containsFid(fid) && minAscendantFid[fid] <= maxFid;
+        }
+
         // TODO: may be slow when there are lots of ancendants that can be reached via multiple paths and are all
         // infrequent
         if (!containsFid(fid)) return false;
@@ -501,10 +574,17 @@ public class BasicDictionary {
      * empty, <code>fids</code> *must* be an {@link IntSet}, ideally one that allows for fast look-ups
      * (such as {@link IntOpenHashSet} or{@link IntAVLTreeSet}). Otherwise, for best performance, pass an
      * {@link IntArrayList}.
+     *
+     * If the ascendants are indexed (see {@link #indexAscendants()}), all ascendants of the specified item are added.
+     * The result is the same as long as <code>fids</code> contains the ascendants of each of its items.
      */
-    public final void addAscendantFids(int fid, IntCollection fids) {
+    public void addAscendantFids(int fid, IntCollection fids) {
         assert fids instanceof IntSet || (isForest() && fids.isEmpty());
-        if (fids.isEmpty())
+        if (ascendantOffsets != null) {
+            for (int i = ascendantOffsets[fid], end = ascendantOffsets[fid+1]; i < end; i++) {
+                fids.add(ascendantFids[i]);
+            }
+        } else if (fids.isEmpty())
             addAscendantFids(fid, fids, Integer.MAX_VALUE);
         else
             addAscendantFids(fid, fids, Integer.MIN_VALUE);
@@ -535,6 +615,13 @@ public class BasicDictionary {
     }
 
     private void addAscendantGidsFromFid(int fid, IntSet gids) {
+        if (ascendantOffsets != null) {
+            for (int i = ascendantOffsets[fid], end = ascendantOffsets[fid+1]; i < end; i++) {
+                gids.add(gidOf(ascendantFids[i]));
+            }
+            return;
+        }
+
         IntList parents = parentsOf(fid);
         for (int i=0; i<parents.size(); i++) {
             int parentFid = parents.getInt(i);
@@ -22,6 +22,9 @@ import org.apache.spark.SparkContext;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -62,6 +65,10 @@ public class Dictionary extends BasicDictionary implements Externalizable, Writa
 	/** Whether this dictionary is frozen. Frozen dictionaries take less space but can't be modified. */
 	protected boolean isFrozen = false;
 
+	/** The result of {@link #fingerprint()}; only cached when this dictionary is frozen (or null if not yet
+	 * computed) */
+	private volatile byte[] fingerprint = null;
+
 	// -- construction ------------------------------------------------------------------------------------------------
 
 	public Dictionary() {
@@ -383,6 +390,50 @@ public class Dictionary extends BasicDictionary implements Externalizable, Writa
 		return isFrozen ? shallowCopyAsBasicDictionary() : super.deepCopy();
 	}
 
+	/** Returns a hash of the fids, gids, document frequencies, and hierarchy of this dictionary. Computed only once
+	 * if this dictionary is frozen. The returned array must not be modified. */
+	public byte[] fingerprint() {
+		byte[] result = fingerprint;
+		if (result != null) {
+			return result;
+		}
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e); // every JVM supports SHA-256
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		IntIterator fidIt = fidIterator();
+		while (fidIt.hasNext()) {
+			int fid = fidIt.nextInt();
+			IntList parents = parentsOf(fid);
+			if (buffer.remaining() < 4 * (parents.size() + 5)) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+			if (buffer.remaining() < 4 * (parents.size() + 5)) { // very many parents
+				buffer = ByteBuffer.allocate(4 * (parents.size() + 5));
+			}
+			buffer.putInt(fid);
+			buffer.putInt(gidOf(fid));
+			buffer.putLong(dfreqOf(fid));
+			buffer.putInt(parents.size());
+			for (int i = 0; i < parents.size(); i++) {
+				buffer.putInt(parents.getInt(i));
+			}
+		}
+		buffer.flip();
+		digest.update(buffer);
+		result = digest.digest();
+		if (isFrozen) {
+			fingerprint = result;
+		}
+		return result;
+	}
+
 	// -- computing supports ------------------------------------------------------------------------------------------
 	
 	/** Updates the item frequencies in this dictionary by adding weight copies of the given input sequence. Does
@@ -584,7 +635,12 @@ public class Dictionary extends BasicDictionary implements Externalizable, Writa
 		return loadFrom(new File(fileName));
 	}
 
+	/** Loads the dictionary from the given file. Files with extension <code>.dict</code> are opened as a
+	 * {@link MappedDictionary}, which cannot be modified. */
 	public static Dictionary loadFrom(File file) throws IOException {
+		if (file.getName().endsWith(".dict")) {
+			return MappedDictionary.open(file);
+		}
 		Dictionary dict = new Dictionary();
 		dict.read(file);
 		return dict;
@@ -640,7 +696,13 @@ public class Dictionary extends BasicDictionary implements Externalizable, Writa
 		write(new File(fileName));
 	}
 
+	/** Writes this dictionary to a file. Automatically determines the right format based on file extension; see
+	 * {@link MappedDictionary#write(Dictionary, File)} for extension <code>.dict</code>. */
 	public void write(File file) throws IOException {
+		if (file.getName().endsWith(".dict")) {
+			MappedDictionary.write(this, file);
+			return;
+		}
 		if (file.getName().endsWith(".json")) {
 			writeJson(new FileOutputStream(file));
 			return;
@@ -814,21 +876,21 @@ public class Dictionary extends BasicDictionary implements Externalizable, Writa
 		for (int i=0; i<fids.size(); i++) {
 			int fid = fids.getInt(i);
 			WritableUtils.writeVInt(out, fid);
-			WritableUtils.writeVInt(out, gids.getInt(fid));
-			out.writeUTF(sids.get(fid));
-			WritableUtils.writeVLong(out, dfreqs.getLong(fid));
-			WritableUtils.writeVLong(out, cfreqs.getLong(fid));
+			WritableUtils.writeVInt(out, gidOf(fid));
+			out.writeUTF(sidOfFid(fid));
+			WritableUtils.writeVLong(out, dfreqOf(fid));
+			WritableUtils.writeVLong(out, cfreqOf(fid));
 
-			DesqProperties properties = this.properties.get(fid);
+			DesqProperties properties = propertiesOf(fid);
 			if (properties == null) {
 				EMPTY_PROPERTIES.write(out);
 			} else {
 				properties.write(out);
 			}
 
-			IntList parents = this.parents.get(fid);
+			IntList parents = parentsOf(fid);
 			WritableUtils.writeVInt(out, parents.size());
-			IntList children = this.children.get(fid);
+			IntList children = childrenOf(fid);
 			WritableUtils.writeVInt(out, children.size());
 
 			for (int j=0; j<parents.size(); j++) {
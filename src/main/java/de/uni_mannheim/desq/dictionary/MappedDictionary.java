@@ -0,0 +1,511 @@
+package de.uni_mannheim.desq.dictionary;
+
+import de.uni_mannheim.desq.util.DesqProperties;
+import it.unimi.dsi.fastutil.ints.AbstractIntList;
+import it.unimi.dsi.fastutil.ints.IntCollection;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+/** A read-only {@link Dictionary} that is backed by a memory-mapped file in a columnar binary format. Opening
+ * such a dictionary does not parse the file; all information, including the ascendant index (see
+ * {@link BasicDictionary#indexAscendants()}), is looked up in the mapped file when needed. Thus startup is fast, and
+ * multiple processes that open the same file share its pages. Mapped dictionaries are frozen; they are obtained with
+ * {@link Dictionary#loadFrom(File)} for files with extension <code>.dict</code> and can then be used by the miners
+ * like any other dictionary.
+ *
+ * The file consists of a header followed by these sections (all values big-endian; n = largest fid + 1; item fids
+ * that are not present have gid -1 and no parents, children, or sid):
+ * <ul>
+ *     <li><code>long[n]</code> document frequencies and <code>long[n]</code> collection frequencies,</li>
+ *     <li><code>int[n]</code> gids,</li>
+ *     <li>parents and children in CSR layout (<code>int[n+1]</code> offsets, followed by the fids),</li>
+ *     <li>the ascendant index, if present (<code>int[n+1]</code> offsets, followed by the ascendant fids, followed by
+ *     <code>int[n]</code> the smallest fid of each item and its ascendants),</li>
+ *     <li><code>int[size]</code> gids in ascending order and <code>int[size]</code> the corresponding fids
+ *     (used to map gids to fids by binary search),</li>
+ *     <li><code>int[size]</code> fids ordered by sid (used to map sids to fids by binary search),</li>
+ *     <li>the sid table (<code>int[n+1]</code> byte offsets, followed by the UTF-8 encoded sids).</li>
+ * </ul>
+ * Such files are written with {@link #write(Dictionary, File)}. Item properties are not stored.
+ *
+ * Since the file is mapped as a whole, it must not be larger than 2GB. This class cannot be used as the base of a
+ * {@link RestrictedDictionary}. When serialized, a mapped dictionary is replaced by a copy on the heap (see
+ * {@link #deepCopy()}).
+ */
+public final class MappedDictionary extends Dictionary {
+    /** Identifies files written by {@link #write(Dictionary, File)} ("DSQD") */
+    private static final int MAGIC = 0x44535144;
+
+    /** Changes whenever the file format changes */
+    private static final int VERSION = 2;
+
+    private final int n;
+    private final LongBuffer dfreqBuffer;
+    private final LongBuffer cfreqBuffer;
+    private final IntBuffer gidBuffer;
+    private final IntBuffer parentOffsets;
+    private final IntBuffer parentFids;
+    private final IntBuffer childOffsets;
+    private final IntBuffer childFids;
+    private final IntBuffer ascendantOffsetBuffer;
+    private final IntBuffer ascendantFidBuffer;
+    private final IntBuffer minAscendantFidBuffer;
+    private final IntBuffer sortedGids;
+    private final IntBuffer fidsBySortedGid;
+    private final IntBuffer fidsBySid;
+    private final IntBuffer sidOffsets;
+    private final ByteBuffer sidBytes;
+
+    private MappedDictionary(ByteBuffer buffer) throws IOException {
+        // header
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("not a mapped dictionary");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported mapped dictionary version " + version);
+        }
+        n = buffer.getInt();
+        size = buffer.getInt();
+        isForest = buffer.get() != 0;
+        hasConsistentFids = buffer.get() != 0;
+        int largestRootFid = buffer.getInt();
+        this.largestRootFid = largestRootFid >= 0 ? largestRootFid : null;
+        int noParents = buffer.getInt();
+        int noChildren = buffer.getInt();
+        int noSidBytes = buffer.getInt();
+        int noAscendants = buffer.getInt();
+
+        // sections
+        dfreqBuffer = slice(buffer, 8 * n).asLongBuffer();
+        cfreqBuffer = slice(buffer, 8 * n).asLongBuffer();
+        gidBuffer = slice(buffer, 4 * n).asIntBuffer();
+        parentOffsets = slice(buffer, 4 * (n + 1)).asIntBuffer();
+        parentFids = slice(buffer, 4 * noParents).asIntBuffer();
+        childOffsets = slice(buffer, 4 * (n + 1)).asIntBuffer();
+        childFids = slice(buffer, 4 * noChildren).asIntBuffer();
+        if (noAscendants >= 0) {
+            ascendantOffsetBuffer = slice(buffer, 4 * (n + 1)).asIntBuffer();
+            ascendantFidBuffer = slice(buffer, 4 * noAscendants).asIntBuffer();
+            minAscendantFidBuffer = slice(buffer, 4 * n).asIntBuffer();
+        } else {
+            ascendantOffsetBuffer = null;
+            ascendantFidBuffer = null;
+            minAscendantFidBuffer = null;
+        }
+        sortedGids = slice(buffer, 4 * size).asIntBuffer();
+        fidsBySortedGid = slice(buffer, 4 * size).asIntBuffer();
+        fidsBySid = slice(buffer, 4 * size).asIntBuffer();
+        sidOffsets = slice(buffer, 4 * (n + 1)).asIntBuffer();
+        sidBytes = slice(buffer, noSidBytes);
+        isFrozen = true;
+    }
+
+    /** Returns the next <code>length</code> bytes of the buffer and advances its position. */
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer result = buffer.slice();
+        result.limit(length);
+        buffer.position(buffer.position() + length);
+        return result;
+    }
+
+    /** Opens the given file, which has been written with {@link #write(Dictionary, File)}. */
+    public static MappedDictionary open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("mapped dictionary too large: " + file);
+            }
+            return new MappedDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /** Writes the given dictionary in the format read by {@link #open(File)}. */
+    public static void write(Dictionary dict, File file) throws IOException {
+        int n = dict.lastFid() + 1;
+        int size = dict.size();
+
+        // collect the present fids, ordered by gid and by sid
+        int[] fidsByGid = new int[size];
+        int[] fidsBySid = new int[size];
+        int i = 0;
+        for (int fid = dict.firstFid(); fid >= 0; fid = dict.nextFid(fid)) {
+            fidsByGid[i] = fid;
+            fidsBySid[i] = fid;
+            i++;
+        }
+        fidsByGid = sorted(fidsByGid, (fid1, fid2) -> Integer.compare(dict.gidOf(fid1), dict.gidOf(fid2)));
+        fidsBySid = sorted(fidsBySid, (fid1, fid2) -> dict.sidOfFid(fid1).compareTo(dict.sidOfFid(fid2)));
+
+        // encode the sids
+        byte[][] sids = new byte[n][];
+        int noSidBytes = 0;
+        for (int fid = dict.firstFid(); fid >= 0; fid = dict.nextFid(fid)) {
+            sids[fid] = dict.sidOfFid(fid).getBytes(StandardCharsets.UTF_8);
+            noSidBytes += sids[fid].length;
+        }
+
+        // count the links
+        int noParents = 0;
+        int noChildren = 0;
+        for (int fid = dict.firstFid(); fid >= 0; fid = dict.nextFid(fid)) {
+            noParents += dict.parentsOf(fid).size();
+            noChildren += dict.childrenOf(fid).size();
+        }
+
+        // use the ascendant index of the dictionary, if present, so that ascendants are in the same order
+        int[][] ascendantIndex = dict.ascendantOffsets != null
+                ? new int[][] { dict.ascendantOffsets, dict.ascendantFids, dict.minAscendantFid }
+                : dict.computeAscendantIndex();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            // header
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(size);
+            out.writeBoolean(dict.isForest());
+            out.writeBoolean(dict.hasConsistentFids());
+            out.writeInt(size > 0 ? dict.largestRootFid() : -1);
+            out.writeInt(noParents);
+            out.writeInt(noChildren);
+            out.writeInt(noSidBytes);
+            out.writeInt(ascendantIndex != null ? ascendantIndex[1].length : -1);
+
+            // items
+            for (int fid = 0; fid < n; fid++) {
+                out.writeLong(dict.containsFid(fid) ? dict.dfreqOf(fid) : -1);
+            }
+            for (int fid = 0; fid < n; fid++) {
+                out.writeLong(dict.containsFid(fid) ? dict.cfreqOf(fid) : -1);
+            }
+            for (int fid = 0; fid < n; fid++) {
+                out.writeInt(dict.gidOf(fid));
+            }
+
+            // hierarchy
+            writeLinks(out, dict, n, true);
+            writeLinks(out, dict, n, false);
+            if (ascendantIndex != null) {
+                for (int[] section : ascendantIndex) {
+                    for (int value : section) {
+                        out.writeInt(value);
+                    }
+                }
+            }
+
+            // indexes
+            for (int fid : fidsByGid) {
+                out.writeInt(dict.gidOf(fid));
+            }
+            for (int fid : fidsByGid) {
+                out.writeInt(fid);
+            }
+            for (int fid : fidsBySid) {
+                out.writeInt(fid);
+            }
+
+            // sids
+            int offset = 0;
+            for (int fid = 0; fid < n; fid++) {
+                out.writeInt(offset);
+                offset += sids[fid] != null ? sids[fid].length : 0;
+            }
+            out.writeInt(offset);
+            for (int fid = 0; fid < n; fid++) {
+                if (sids[fid] != null) {
+                    out.write(sids[fid]);
+                }
+            }
+        }
+    }
+
+    private static int[] sorted(int[] fids, Comparator<Integer> comparator) {
+        return Arrays.stream(fids).boxed().sorted(comparator).mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void writeLinks(DataOutput out, BasicDictionary dict, int n, boolean parents) throws IOException {
+        int offset = 0;
+        for (int fid = 0; fid < n; fid++) {
+            out.writeInt(offset);
+            if (dict.containsFid(fid)) {
+                offset += (parents ? dict.parentsOf(fid) : dict.childrenOf(fid)).size();
+            }
+        }
+        out.writeInt(offset);
+        for (int fid = 0; fid < n; fid++) {
+            if (dict.containsFid(fid)) {
+                IntList fids = parents ? dict.parentsOf(fid) : dict.childrenOf(fid);
+                for (int i = 0; i < fids.size(); i++) {
+                    out.writeInt(fids.getInt(i));
+                }
+            }
+        }
+    }
+
+    // -- modification ------------------------------------------------------------------------------------------------
+
+    /** Does nothing; a mapped dictionary cannot be modified. */
+    @Override
+    public void trim() {
+    }
+
+    /** Does nothing; a mapped dictionary is frozen and its ascendants are indexed in the file (unless the index was
+     * too large to be written). */
+    @Override
+    public void freeze() {
+    }
+
+    /** Returns a copy of this dictionary on the heap, which is writable. */
+    @Override
+    public Dictionary deepCopy() {
+        Dictionary dict = new Dictionary();
+        for (int fid = firstFid(); fid >= 0; fid = nextFid(fid)) {
+            dict.addItem(fid, gidOf(fid), sidOfFid(fid), dfreqOf(fid), cfreqOf(fid));
+        }
+        for (int fid = firstFid(); fid >= 0; fid = nextFid(fid)) {
+            IntList parents = parentsOf(fid);
+            for (int i = 0; i < parents.size(); i++) {
+                dict.addParent(fid, parents.getInt(i));
+            }
+        }
+        return dict;
+    }
+
+    /** Returns this dictionary; a mapped dictionary does not hold the sids on the heap. */
+    @Override
+    public BasicDictionary shallowCopyAsBasicDictionary() {
+        return this;
+    }
+
+    /** Serializes a heap copy of this dictionary instead (see {@link #deepCopy()}). */
+    private Object writeReplace() {
+        return deepCopy();
+    }
+
+    // -- querying ----------------------------------------------------------------------------------------------------
+
+    @Override
+    public boolean containsFid(int fid) {
+        return fid >= 0 && fid < n && gidBuffer.get(fid) >= 0;
+    }
+
+    @Override
+    public boolean containsGid(int gid) {
+        return fidOf(gid) >= 0;
+    }
+
+    @Override
+    public int nextFid(int fid) {
+        do {
+            fid++;
+            if (fid >= n) return -1;
+            if (gidBuffer.get(fid) >= 0) return fid;
+        } while (true);
+    }
+
+    @Override
+    public int prevFid(int fid) {
+        do {
+            fid--;
+            if (fid < 0) return -1;
+            if (gidBuffer.get(fid) >= 0) return fid;
+        } while (true);
+    }
+
+    @Override
+    public int lastFid() {
+        return prevFid(n);
+    }
+
+    @Override
+    public int fidOf(int gid) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midGid = sortedGids.get(mid);
+            if (midGid < gid) {
+                low = mid + 1;
+            } else if (midGid > gid) {
+                high = mid - 1;
+            } else {
+                return fidsBySortedGid.get(mid);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int gidOf(int fid) {
+        return fid < n ? gidBuffer.get(fid) : -1;
+    }
+
+    /** Returns all fids (ordered by gid). */
+    @Override
+    public IntCollection fids() {
+        return new IntBufferList(fidsBySortedGid, 0, size);
+    }
+
+    /** Returns all gids (in ascending order). */
+    @Override
+    public IntCollection gids() {
+        return new IntBufferList(sortedGids, 0, size);
+    }
+
+    @Override
+    public long dfreqOf(int fid) {
+        return dfreqBuffer.get(fid);
+    }
+
+    @Override
+    public long cfreqOf(int fid) {
+        return cfreqBuffer.get(fid);
+    }
+
+    @Override
+    public IntList childrenOf(int fid) {
+        return containsFid(fid) ? new IntBufferList(childFids, childOffsets.get(fid), childOffsets.get(fid + 1))
+                : null;
+    }
+
+    /** Returns whether the specified fid has no children or false if not present */
+    @Override
+    public boolean isLeaf(int fid) {
+        return containsFid(fid) && childOffsets.get(fid) == childOffsets.get(fid + 1);
+    }
+
+    @Override
+    public IntList parentsOf(int fid) {
+        return containsFid(fid) ? new IntBufferList(parentFids, parentOffsets.get(fid), parentOffsets.get(fid + 1))
+                : null;
+    }
+
+    @Override
+    public int lastFidAbove(long dfreq) {
+        for (int fid = lastFid(); fid >= 0; fid=prevFid(fid)) {
+            if (dfreqBuffer.get(fid) >= dfreq) return fid;
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean hasAscendantWithFidBelow(int fid, int maxFid) {
+        if (minAscendantFidBuffer == null) {
+            return super.hasAscendantWithFidBelow(fid, maxFid);
+        }
+        return containsFid(fid) && minAscendantFidBuffer.get(fid) <= maxFid;
+    }
+
+    @Override
+    public void addAscendantFids(int fid, IntCollection fids) {
+        if (ascendantOffsetBuffer == null) {
+            super.addAscendantFids(fid, fids);
+            return;
+        }
+        assert fids instanceof IntSet || (isForest() && fids.isEmpty());
+        for (int i = ascendantOffsetBuffer.get(fid), end = ascendantOffsetBuffer.get(fid + 1); i < end; i++) {
+            fids.add(ascendantFidBuffer.get(i));
+        }
+    }
+
+    @Override
+    public void addAscendantGids(int gid, IntSet gids) {
+        if (ascendantOffsetBuffer == null) {
+            super.addAscendantGids(gid, gids);
+            return;
+        }
+        int fid = fidOf(gid);
+        for (int i = ascendantOffsetBuffer.get(fid), end = ascendantOffsetBuffer.get(fid + 1); i < end; i++) {
+            gids.add(gidOf(ascendantFidBuffer.get(i)));
+        }
+    }
+
+    @Override
+    public boolean containsSid(String sid) {
+        return fidOf(sid) >= 0;
+    }
+
+    /** Returns the sid of the specified fid or <code>null</code> if not present */
+    @Override
+    public String sidOfFid(int fid) {
+        if (!containsFid(fid)) return null;
+        int begin = sidOffsets.get(fid);
+        byte[] bytes = new byte[sidOffsets.get(fid + 1) - begin];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = sidBytes.get(begin + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the fid for the specified sid or -1 if not present */
+    @Override
+    public int fidOf(String sid) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midFid = fidsBySid.get(mid);
+            int cmp = sidOfFid(midFid).compareTo(sid);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return midFid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns all sids. The set is computed on each call. */
+    @Override
+    public Set<String> sids() {
+        Set<String> sids = new HashSet<>(size);
+        for (int fid = firstFid(); fid >= 0; fid = nextFid(fid)) {
+            sids.add(sidOfFid(fid));
+        }
+        return sids;
+    }
+
+    /** Returns <code>null</code>; item properties are not stored. */
+    @Override
+    public DesqProperties propertiesOf(int fid) {
+        return null;
+    }
+
+    /** A read-only view of a range of an {@link IntBuffer}. */
+    private static final class IntBufferList extends AbstractIntList {
+        private final IntBuffer buffer;
+        private final int begin;
+        private final int end;
+
+        IntBufferList(IntBuffer buffer, int begin, int end) {
+            this.buffer = buffer;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        @Override
+        public int getInt(int index) {
+            ensureRestrictedIndex(index);
+            return buffer.get(begin + index);
+        }
+
+        @Override
+        public int size() {
+            return end - begin;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package de.uni_mannheim.desq.examples;
+
+import de.uni_mannheim.desq.dictionary.Dictionary;
+import de.uni_mannheim.desq.io.CountPatternWriter;
+import de.uni_mannheim.desq.io.DelSequenceReader;
+import de.uni_mannheim.desq.io.MemoryPatternWriter;
+import de.uni_mannheim.desq.io.SequenceReader;
+import de.uni_mannheim.desq.mining.DesqMinerContext;
+import de.uni_mannheim.desq.mining.StreamingDesqCount;
+import de.uni_mannheim.desq.mining.WeightedSequence;
+import de.uni_mannheim.desq.util.DesqProperties;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URL;
+
+public class StreamingDesqCountExample {
+	/** Streams the NYT data through a count-based window and reports the throughput. */
+	static void nyt() throws IOException {
+		int sigma = 1000;
+		int gamma = 0;
+		int lambda = 3;
+		boolean generalize = true;
+		int windowSize = 100000;
+		String patternExp = StreamingDesqCount.patternExpressionFor(gamma, lambda, generalize);
+		DesqProperties conf = StreamingDesqCount.createConf(patternExp, sigma, windowSize, 0);
+
+		Dictionary dict = Dictionary.loadFrom("data-local/nyt-1991-dict.avro.gz");
+		SequenceReader dataReader = new DelSequenceReader(
+				new FileInputStream(new File("data-local/nyt-1991-data.del")), true);
+		dataReader.setDictionary(dict);
+
+		StreamingDesqCount miner = new StreamingDesqCount(new DesqMinerContext(conf, dict));
+		CountPatternWriter newlyFrequent = new CountPatternWriter();
+		miner.setThresholdWriter(newlyFrequent);
+		IntList inputSequence = new IntArrayList();
+		while (dataReader.readAsFids(inputSequence)) {
+			miner.add(inputSequence, 1);
+			if (miner.inputCount() % windowSize == 0) {
+				CountPatternWriter frequent = new CountPatternWriter();
+				miner.writeFrequentPatterns(frequent);
+				System.out.println(miner.inputCount() + " inputs: " + frequent.getCount() + " frequent patterns, "
+						+ miner.windowOutputCount() + " patterns in window, "
+						+ Math.round(miner.inputsPerSecond()) + " inputs/s");
+			}
+		}
+		System.out.println("Patterns that became frequent: " + newlyFrequent.getCount());
+		System.out.println("Throughput: " + Math.round(miner.inputsPerSecond()) + " inputs/s");
+	}
+
+	/** Streams the ICDM16 example data with increasing timestamps through a time-based window. */
+	static void icdm16() throws IOException {
+		String patternExpression = "[c|d]([A^|B=^]+)e";
+		int sigma = 2;
+		long windowDuration = 3;
+
+		URL dictFile = ExampleUtils.class.getResource("/icdm16-example/dict.json");
+		URL dataFile = ExampleUtils.class.getResource("/icdm16-example/data.del");
+		Dictionary dict = Dictionary.loadFrom(dictFile);
+		SequenceReader dataReader = new DelSequenceReader(dataFile.openStream(), false);
+		dict.incFreqs(dataReader);
+		dict.recomputeFids();
+		dataReader = new DelSequenceReader(dataFile.openStream(), false);
+		dataReader.setDictionary(dict);
+
+		DesqProperties conf = StreamingDesqCount.createConf(patternExpression, sigma, 0, windowDuration);
+		StreamingDesqCount miner = new StreamingDesqCount(new DesqMinerContext(conf, dict));
+		IntList inputSequence = new IntArrayList();
+		long timestamp = 0;
+		while (dataReader.readAsFids(inputSequence)) {
+			timestamp++;
+			miner.add(inputSequence, 1, timestamp);
+			System.out.println("t=" + timestamp + ", input " + dict.sidsOfFids(inputSequence) + ", window of "
+					+ miner.windowInputCount() + " inputs");
+			MemoryPatternWriter frequent = new MemoryPatternWriter();
+			miner.writeFrequentPatterns(frequent);
+			for (WeightedSequence pattern : frequent.getPatterns()) {
+				System.out.println("    " + pattern.weight + ": " + dict.sidsOfFids(pattern));
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		icdm16();
+		//nyt();
+	}
+}
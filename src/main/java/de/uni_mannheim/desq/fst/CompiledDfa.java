@@ -0,0 +1,190 @@
+package de.uni_mannheim.desq.fst;
+
+import de.uni_mannheim.desq.util.IntByteArrayList;
+import de.uni_mannheim.desq.util.IntConstantList;
+import de.uni_mannheim.desq.util.IntShortArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A table-driven form of an eager {@link Dfa} used to scan input sequences. States are numbered densely (the
+ * initial state has id 0), the transitions of all states are stored in flat arrays, and the final and final-complete
+ * flags in bit arrays, so that consuming an item only involves a few array loads.
+ *
+ * The transition index of each distinct set of outgoing transition labels (see {@link DfaState#indexByFid}) is
+ * shared with the DFA states: the <code>byte[]</code>, <code>short[]</code>, or <code>int[]</code> backing the
+ * state's index is used directly, so that compiling does not copy or widen the indexes. The next state for an item
+ * is <code>successors[successorOffsets[state] + index[itemFid]]</code>, where <code>index</code> is the state's
+ * array. States whose index maps all items to the same position (e.g., states with only the default transition)
+ * have no array but a constant position. The {@link DfaState}s are only referenced to report the sequence of
+ * traversed states in {@link #acceptsReverse(IntList, List, IntList)}.
+ *
+ * Immutable and thus thread-safe.
+ */
+final class CompiledDfa {
+	/** Id of the "no state" (i.e., the DFA does not accept) */
+	private static final int NO_STATE = -1;
+
+	/** The DFA states by id */
+	private final DfaState[] states;
+
+	/** For each state, the position of the next state of each item in the state's part of {@link #successors} if
+	 * the state's index is stored as bytes (otherwise null). Shared with the state's {@link DfaState#indexByFid}. */
+	private final byte[][] byteIndexByFid;
+
+	/** As {@link #byteIndexByFid}, for indexes stored as shorts */
+	private final short[][] shortIndexByFid;
+
+	/** As {@link #byteIndexByFid}, for indexes stored as ints */
+	private final int[][] intIndexByFid;
+
+	/** For each state without index array, the position of the next state of all items (0 = default transition) */
+	private final int[] constantIndex;
+
+	/** For each state, the offset of its successor states in {@link #successors} */
+	private final int[] successorOffsets;
+
+	/** The ids of the successor states of all states (or {@link #NO_STATE}) */
+	private final int[] successors;
+
+	/** Bit array of the final states (indexed by state id) */
+	private final long[] finalStates;
+
+	/** Bit array of the final-complete states (indexed by state id) */
+	private final long[] finalCompleteStates;
+
+	/** Compiles the given eager DFA. The DFA must be fully constructed. */
+	CompiledDfa(Dfa dfa) {
+		// number the states (initial state first)
+		List<DfaState> stateList = new ArrayList<>(dfa.states.size());
+		Reference2IntOpenHashMap<DfaState> stateIds = new Reference2IntOpenHashMap<>();
+		stateList.add(dfa.initial);
+		stateIds.put(dfa.initial, 0);
+		for (DfaState state : dfa.states.values()) {
+			if (!stateIds.containsKey(state)) {
+				stateIds.put(state, stateList.size());
+				stateList.add(state);
+			}
+		}
+		int numStates = stateList.size();
+		states = stateList.toArray(new DfaState[numStates]);
+
+		// compute the tables
+		byteIndexByFid = new byte[numStates][];
+		shortIndexByFid = new short[numStates][];
+		intIndexByFid = new int[numStates][];
+		constantIndex = new int[numStates];
+		successorOffsets = new int[numStates];
+		finalStates = new long[(numStates + 63) >>> 6];
+		finalCompleteStates = new long[(numStates + 63) >>> 6];
+		Reference2ObjectOpenHashMap<IntList, int[]> copiedIndexes = new Reference2ObjectOpenHashMap<>();
+		IntArrayList successorList = new IntArrayList();
+		for (int stateId = 0; stateId < numStates; stateId++) {
+			DfaState state = states[stateId];
+
+			// transition index (shares the backing array of the state's index if there is one)
+			IntList index = state.indexByFid;
+			if (index == null) {
+				constantIndex[stateId] = 0; // only the default transition
+			} else if (index instanceof IntConstantList) {
+				constantIndex[stateId] = index.isEmpty() ? 0 : index.getInt(0);
+			} else if (index instanceof IntByteArrayList) {
+				byteIndexByFid[stateId] = ((IntByteArrayList) index).data().elements();
+			} else if (index instanceof IntShortArrayList) {
+				shortIndexByFid[stateId] = ((IntShortArrayList) index).data().elements();
+			} else if (index instanceof IntArrayList) {
+				intIndexByFid[stateId] = ((IntArrayList) index).elements();
+			} else { // other list types are copied once per distinct index
+				int[] copy = copiedIndexes.get(index);
+				if (copy == null) {
+					copy = index.toIntArray();
+					copiedIndexes.put(index, copy);
+				}
+				intIndexByFid[stateId] = copy;
+			}
+
+			// successor states (position 0 = default transition always present)
+			successorOffsets[stateId] = successorList.size();
+			for (DfaState toState : state.reachableDfaStates) {
+				successorList.add(toState == null ? NO_STATE : stateIds.getInt(toState));
+			}
+			if (state.reachableDfaStates.isEmpty()) {
+				successorList.add(NO_STATE);
+			}
+
+			// flags
+			if (state.isFinal) {
+				finalStates[stateId >>> 6] |= 1L << stateId;
+			}
+			if (state.isFinalComplete) {
+				finalCompleteStates[stateId >>> 6] |= 1L << stateId;
+			}
+		}
+		successors = successorList.toIntArray();
+	}
+
+	private static boolean isSet(long[] bits, int stateId) {
+		return (bits[stateId >>> 6] & (1L << stateId)) != 0;
+	}
+
+	/** Returns the items of the given input sequence (without copying if possible). */
+	private static int[] itemsOf(IntList inputSequence) {
+		return inputSequence instanceof IntArrayList ? ((IntArrayList) inputSequence).elements()
+				: inputSequence.toIntArray();
+	}
+
+	/** Returns the id of the state reached from the given state by the given item (or {@link #NO_STATE}). */
+	private int nextState(int state, int itemFid) {
+		final int offset = successorOffsets[state];
+		final byte[] byteIndex = byteIndexByFid[state];
+		if (byteIndex != null) {
+			return successors[offset + byteIndex[itemFid]];
+		}
+		final short[] shortIndex = shortIndexByFid[state];
+		if (shortIndex != null) {
+			return successors[offset + shortIndex[itemFid]];
+		}
+		final int[] intIndex = intIndexByFid[state];
+		if (intIndex != null) {
+			return successors[offset + intIndex[itemFid]];
+		}
+		return successors[offset + constantIndex[state]];
+	}
+
+	/** See {@link Dfa#accepts(IntList)}. */
+	boolean accepts(IntList inputSequence) {
+		final int[] items = itemsOf(inputSequence);
+		final int size = inputSequence.size();
+		int state = 0;
+		for (int pos = 0; pos < size; pos++) {
+			state = nextState(state, items[pos]);
+			if (state == NO_STATE)
+				return false;
+			if (isSet(finalCompleteStates, state))
+				return true;
+		}
+		return isSet(finalStates, state);
+	}
+
+	/** See {@link Dfa#acceptsReverse(IntList, List, IntList)}. */
+	boolean acceptsReverse(IntList inputSequence, List<DfaState> stateSeq, IntList initialPos) {
+		final int[] items = itemsOf(inputSequence);
+		int state = 0;
+		stateSeq.add(states[state]);
+		int pos = inputSequence.size();
+		while (pos > 0) {
+			state = nextState(state, items[--pos]);
+			if (state == NO_STATE)
+				break; // we may return true or false, as we might have reached a final state before
+			stateSeq.add(states[state]);
+			if (isSet(finalCompleteStates, state) || (pos == 0 && isSet(finalStates, state))) {
+				initialPos.add(pos);
+			}
+		}
+		return !initialPos.isEmpty();
+	}
+}
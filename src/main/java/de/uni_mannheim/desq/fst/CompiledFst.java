@@ -0,0 +1,505 @@
+package de.uni_mannheim.desq.fst;
+
+import de.uni_mannheim.desq.dictionary.BasicDictionary;
+import de.uni_mannheim.desq.dictionary.RestrictedDictionary;
+import it.unimi.dsi.fastutil.ints.IntAVLTreeSet;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntCollection;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/** A flattened form of an {@link Fst} used to run the FST on input sequences. The transitions of all states are
+ * stored in parallel arrays (kind, item, target state, matched items), so that consuming an input item is a loop
+ * over a range of these arrays with a switch on the kind of each transition. The resulting (output item, next
+ * state)-pairs are appended to a reusable buffer instead of being returned by iterators.
+ *
+ * States with many item transitions (e.g., from item lists with many alternatives) are indexed: their transitions
+ * are grouped by the ranges of input items for which they can fire, so that consuming an item only visits the
+ * transitions that match it (see {@link #segmentBounds}).
+ *
+ * The outputs of generalized transitions (an item and its ascendants) can be precomputed for all items and stored in
+ * tables, so that consuming an item only walks a slice of a table (see {@link #outputTables}).
+ *
+ * Optionally, a class specialized to the FST is generated and used instead of these arrays (see
+ * {@link FstCodeGenerator}).
+ *
+ * The FST must not be modified after it has been compiled. Immutable and thus thread-safe; each thread needs to use
+ * its own {@link Buffer}.
+ */
+public final class CompiledFst {
+	// kinds of transitions
+	static final byte UNCAPTURED_DOT = 0;
+	static final byte UNCAPTURED_ITEM = 1;
+	static final byte CAPTURED_DOT = 2;
+	static final byte CAPTURED_ITEM = 3;
+	static final byte CAPTURED_CONSTANT = 4;
+	static final byte CAPTURED_GENERALIZED_DOT = 5;
+	static final byte CAPTURED_GENERALIZED_ITEM = 6;
+
+	/** States with at least this many item transitions are indexed */
+	static final int MIN_INDEXED_ITEM_TRANSITIONS = 8;
+
+	/** The dictionary underlying the FST */
+	private final BasicDictionary dict;
+
+	/** The FST states by id */
+	final State[] states;
+
+	/** For each state, the index of its first transition in the arrays below (plus an end marker) */
+	final int[] transitionOffsets;
+
+	/** The kind of each transition */
+	final byte[] kinds;
+
+	/** For {@link #CAPTURED_CONSTANT} transitions, the output item; unused otherwise */
+	final int[] outputFids;
+
+	/** The id of the target state of each transition */
+	final int[] toStateIds;
+
+	/** For {@link #UNCAPTURED_ITEM}, {@link #CAPTURED_ITEM}, and {@link #CAPTURED_CONSTANT} transitions, the items
+	 * matched by the transition; <code>null</code> otherwise */
+	final IntSet[] matchedFids;
+
+	/** For {@link #CAPTURED_GENERALIZED_ITEM} transitions, the matched items and their hierarchy; <code>null</code>
+	 * otherwise */
+	final RestrictedDictionary[] matchedDicts;
+
+	/** For each indexed state, the sorted bounds of its segments (<code>null</code> for the other states). Segment
+	 * <code>k</code> consists of the items <code>f</code> with <code>bounds[k-1] &lt;= f &lt; bounds[k]</code> (where
+	 * <code>bounds[-1]</code> and <code>bounds[bounds.length]</code> are unbounded); each item transition of the state
+	 * matches either all or none of the items of a segment. Since transitions usually match ranges of consecutive fids
+	 * (e.g., an item and its descendants when the dictionary has consistent fids), there are few segments. */
+	final int[][] segmentBounds;
+
+	/** For each indexed state, the position of the first transition of each segment in
+	 * {@link #segmentTransitions} (plus an end marker) */
+	final int[][] segmentOffsets;
+
+	/** For each indexed state, the transitions that fire for the items of each segment (in the order of the state's
+	 * transitions) */
+	final int[][] segmentTransitions;
+
+	/** For generalized transitions if output tables are used, the position of the outputs of each input item in
+	 * {@link #outputTables} (indexed by fid, plus an end marker); <code>null</code> otherwise. Shared by all
+	 * transitions with the same matched items. */
+	final int[][] outputTableOffsets;
+
+	/** For generalized transitions if output tables are used, the outputs of all input items (in the order of
+	 * {@link #addAscendants(int, int, RestrictedDictionary, Buffer)}, without outputs with fids larger than the largest
+	 * output fid); <code>null</code> otherwise. */
+	final int[][] outputTables;
+
+	/** The generated step function (or <code>null</code> if the arrays above are interpreted) */
+	private final StepFunction stepFunction;
+
+	/** Compiles the given FST, which has been created for the given dictionary. */
+	public CompiledFst(Fst fst, BasicDictionary dict) {
+		this(fst, dict, false);
+	}
+
+	/** Compiles the given FST, which has been created for the given dictionary.
+	 *
+	 * @param generateCode whether to generate a class specialized to the FST; if this is not possible (e.g., because
+	 *                     the FST is too large or no Java compiler is available), the arrays are interpreted
+	 */
+	public CompiledFst(Fst fst, BasicDictionary dict, boolean generateCode) {
+		this(fst, dict, generateCode, -1);
+	}
+
+	/** Compiles the given FST, which has been created for the given dictionary.
+	 *
+	 * @param generateCode whether to generate a class specialized to the FST; if this is not possible (e.g., because
+	 *                     the FST is too large or no Java compiler is available), the arrays are interpreted
+	 * @param largestOutputFid if non-negative, the outputs of the generalized transitions are precomputed and
+	 *                         outputs with larger fids are dropped (e.g., the largest frequent fid, when the caller
+	 *                         ignores infrequent outputs anyway); if negative, the outputs are computed on the fly
+	 */
+	public CompiledFst(Fst fst, BasicDictionary dict, boolean generateCode, int largestOutputFid) {
+		this.dict = dict;
+		int numStates = fst.numStates();
+		int numTransitions = 0;
+		for (int stateId = 0; stateId < numStates; stateId++) {
+			numTransitions += fst.getState(stateId).getTransitions().size();
+		}
+
+		states = new State[numStates];
+		transitionOffsets = new int[numStates + 1];
+		kinds = new byte[numTransitions];
+		outputFids = new int[numTransitions];
+		toStateIds = new int[numTransitions];
+		matchedFids = new IntSet[numTransitions];
+		matchedDicts = new RestrictedDictionary[numTransitions];
+		int t = 0;
+		for (int stateId = 0; stateId < numStates; stateId++) {
+			State state = fst.getState(stateId);
+			states[stateId] = state;
+			transitionOffsets[stateId] = t;
+			for (Transition transition : state.getTransitions()) {
+				toStateIds[t] = transition.getToState().getId();
+				if (transition instanceof TransitionUncapturedDot) {
+					kinds[t] = UNCAPTURED_DOT;
+				} else if (transition instanceof TransitionUncapturedItem) {
+					kinds[t] = UNCAPTURED_ITEM;
+					matchedFids[t] = ((TransitionUncapturedItem) transition).matchedFids;
+				} else if (transition instanceof TransitionCapturedDot) {
+					kinds[t] = CAPTURED_DOT;
+				} else if (transition instanceof TransitionCapturedItem) {
+					kinds[t] = CAPTURED_ITEM;
+					matchedFids[t] = ((TransitionCapturedItem) transition).matchedFids;
+				} else if (transition instanceof TransitionCapturedConstant) {
+					kinds[t] = CAPTURED_CONSTANT;
+					matchedFids[t] = ((TransitionCapturedConstant) transition).matchedFids;
+					outputFids[t] = ((TransitionCapturedConstant) transition).itemFid;
+				} else if (transition instanceof TransitionCapturedGeneralizedDot) {
+					kinds[t] = CAPTURED_GENERALIZED_DOT;
+				} else if (transition instanceof TransitionCapturedGeneralizedItem) {
+					kinds[t] = CAPTURED_GENERALIZED_ITEM;
+					matchedDicts[t] = ((TransitionCapturedGeneralizedItem) transition).matchedDict;
+				} else {
+					throw new IllegalArgumentException("unknown transition type " + transition.getClass());
+				}
+				t++;
+			}
+		}
+		transitionOffsets[numStates] = t;
+
+		segmentBounds = new int[numStates][];
+		segmentOffsets = new int[numStates][];
+		segmentTransitions = new int[numStates][];
+		for (int stateId = 0; stateId < numStates; stateId++) {
+			int numItemTransitions = 0;
+			for (t = transitionOffsets[stateId]; t < transitionOffsets[stateId + 1]; t++) {
+				if (isItemTransition(t)) numItemTransitions++;
+			}
+			if (numItemTransitions >= MIN_INDEXED_ITEM_TRANSITIONS) {
+				indexTransitions(stateId);
+			}
+		}
+		outputTableOffsets = largestOutputFid >= 0 ? new int[numTransitions][] : null;
+		outputTables = largestOutputFid >= 0 ? new int[numTransitions][] : null;
+		if (largestOutputFid >= 0) {
+			computeOutputTables(largestOutputFid);
+		}
+
+		stepFunction = generateCode ? FstCodeGenerator.generate(this) : null;
+	}
+
+	/** Computes {@link #outputTables} and {@link #outputTableOffsets}. */
+	private void computeOutputTables(int largestOutputFid) {
+		final Map<RestrictedDictionary, int[][]> tables = new IdentityHashMap<>(); // matched items -> table
+		for (int t = 0; t < kinds.length; t++) {
+			if (kinds[t] != CAPTURED_GENERALIZED_DOT && kinds[t] != CAPTURED_GENERALIZED_ITEM)
+				continue;
+
+			int[][] table = tables.get(matchedDicts[t]);
+			if (table == null) {
+				table = computeOutputTable(matchedDicts[t], largestOutputFid);
+				tables.put(matchedDicts[t], table);
+			}
+			outputTableOffsets[t] = table[0];
+			outputTables[t] = table[1];
+		}
+	}
+
+	/** Returns the offsets and outputs of the output table for the given matched items (<code>null</code> if all
+	 * items are matched). */
+	private int[][] computeOutputTable(RestrictedDictionary matchedDict, int largestOutputFid) {
+		final Buffer buffer = new Buffer(dict.isForest());
+		final int lastFid = dict.lastFid();
+		final int[] offsets = new int[lastFid + 2];
+		final IntArrayList outputs = new IntArrayList();
+		for (int fid = 0; fid <= lastFid; fid++) {
+			offsets[fid] = outputs.size();
+			if (fid > 0 && dict.containsFid(fid) && (matchedDict == null || matchedDict.containsFid(fid))) {
+				buffer.pairs.clear();
+				addAscendants(fid, 0, matchedDict, buffer);
+				for (int i = 0; i < buffer.pairs.size(); i += 2) {
+					final int outputFid = buffer.pairs.getInt(i);
+					if (outputFid <= largestOutputFid) {
+						outputs.add(outputFid);
+					}
+				}
+			}
+		}
+		offsets[lastFid + 1] = outputs.size();
+		return new int[][] { offsets, outputs.toIntArray() };
+	}
+
+	/** Returns true if this FST is run by generated code. */
+	public boolean usesGeneratedCode() {
+		return stepFunction != null;
+	}
+
+	/** Returns the number of states. */
+	public int numStates() {
+		return states.length;
+	}
+
+	/** Groups the transitions of the given state by segments (see {@link #segmentBounds}). */
+	private void indexTransitions(int stateId) {
+		final int begin = transitionOffsets[stateId];
+		final int end = transitionOffsets[stateId + 1];
+
+		// compute the ranges matched by each item transition and the segment bounds
+		final int[][] ranges = new int[end - begin][];
+		final IntArrayList boundList = new IntArrayList();
+		for (int t = begin; t < end; t++) {
+			if (isItemTransition(t)) {
+				ranges[t - begin] = rangesOf(matchedFidsOf(t));
+				for (int i = 0; i < ranges[t - begin].length; i += 2) {
+					boundList.add(ranges[t - begin][i]);
+					boundList.add(ranges[t - begin][i + 1] + 1);
+				}
+			}
+		}
+		int[] bounds = boundList.toIntArray();
+		Arrays.sort(bounds);
+		int numBounds = 0;
+		for (int i = 0; i < bounds.length; i++) {
+			if (i == 0 || bounds[i] != bounds[i - 1]) bounds[numBounds++] = bounds[i];
+		}
+		bounds = Arrays.copyOf(bounds, numBounds);
+
+		// collect the transitions of each segment (in order)
+		final IntArrayList[] transitionsBySegment = new IntArrayList[numBounds + 1];
+		for (int segment = 0; segment <= numBounds; segment++) {
+			transitionsBySegment[segment] = new IntArrayList();
+		}
+		for (int t = begin; t < end; t++) {
+			if (!isItemTransition(t)) { // fires for every item
+				for (IntArrayList transitions : transitionsBySegment) {
+					transitions.add(t);
+				}
+			} else {
+				final int[] transitionRanges = ranges[t - begin];
+				for (int i = 0; i < transitionRanges.length; i += 2) {
+					final int lastSegment = segmentOf(bounds, transitionRanges[i + 1]);
+					for (int segment = segmentOf(bounds, transitionRanges[i]); segment <= lastSegment; segment++) {
+						transitionsBySegment[segment].add(t);
+					}
+				}
+			}
+		}
+
+		// store them
+		final int[] offsets = new int[numBounds + 2];
+		final IntArrayList transitions = new IntArrayList();
+		for (int segment = 0; segment <= numBounds; segment++) {
+			offsets[segment] = transitions.size();
+			transitions.addAll(transitionsBySegment[segment]);
+		}
+		offsets[numBounds + 1] = transitions.size();
+		segmentBounds[stateId] = bounds;
+		segmentOffsets[stateId] = offsets;
+		segmentTransitions[stateId] = transitions.toIntArray();
+	}
+
+	/** Returns the segment of the given item, i.e., the number of bounds that are less than or equal to it. */
+	private static int segmentOf(int[] bounds, int fid) {
+		final int i = Arrays.binarySearch(bounds, fid);
+		return i >= 0 ? i + 1 : -i - 1;
+	}
+
+	/** Returns true if transition <code>t</code> only fires for some items. */
+	boolean isItemTransition(int t) {
+		return matchedFids[t] != null || matchedDicts[t] != null;
+	}
+
+	/** Returns the items matched by item transition <code>t</code> in ascending order. */
+	int[] matchedFidsOf(int t) {
+		if (matchedFids[t] != null) {
+			final int[] result = matchedFids[t].toIntArray();
+			Arrays.sort(result);
+			return result;
+		}
+		final RestrictedDictionary matchedDict = matchedDicts[t];
+		final IntArrayList result = new IntArrayList();
+		for (int fid = matchedDict.firstFid(); fid >= 0; fid = matchedDict.nextFid(fid)) {
+			result.add(fid);
+		}
+		return result.toIntArray();
+	}
+
+	/** Returns the ranges of consecutive items in the given sorted items as (first item, last item)-pairs. */
+	static int[] rangesOf(int[] fids) {
+		final IntArrayList ranges = new IntArrayList();
+		for (int i = 0; i < fids.length; ) {
+			int j = i;
+			while (j + 1 < fids.length && fids[j + 1] == fids[j] + 1) {
+				j++;
+			}
+			ranges.add(fids[i]);
+			ranges.add(fids[j]);
+			i = j + 1;
+		}
+		return ranges.toIntArray();
+	}
+
+	/** Returns the state with the given id. */
+	public State getState(int stateId) {
+		return states[stateId];
+	}
+
+	/** Appends the (output item, next state id)-pairs consistent with the given input item to
+	 * <code>buffer.pairs</code> (output item at even positions, next state at odd positions). Equivalent to
+	 * {@link State#consume(int, State.ItemStateIterator, BitSet)}, except that the outputs of generalized transitions
+	 * with fids larger than the largest output fid are dropped (if output tables are used). If the output item is
+	 * epsilon, appends (0, next state id).
+	 *
+	 * @param stateId the current state
+	 * @param fid input item
+	 * @param validToStates set of next states to consider (or <code>null</code> if all states)
+	 * @param buffer the buffer to append to
+	 */
+	public void step(int stateId, int fid, BitSet validToStates, Buffer buffer) {
+		if (stepFunction != null) {
+			stepFunction.step(stateId, fid, validToStates, buffer);
+			return;
+		}
+
+		final int[] bounds = segmentBounds[stateId];
+		if (bounds == null) {
+			// check all transitions
+			final int end = transitionOffsets[stateId + 1];
+			for (int t = transitionOffsets[stateId]; t < end; t++) {
+				fire(t, fid, validToStates, buffer, true);
+			}
+		} else {
+			// only visit the transitions that match the item
+			final int segment = segmentOf(bounds, fid);
+			final int[] transitions = segmentTransitions[stateId];
+			final int end = segmentOffsets[stateId][segment + 1];
+			for (int i = segmentOffsets[stateId][segment]; i < end; i++) {
+				fire(transitions[i], fid, validToStates, buffer, false);
+			}
+		}
+	}
+
+	/** Appends the pairs of transition <code>t</code> for the given input item (if any).
+	 *
+	 * @param checkMatch whether to check if an item transition matches the item (otherwise, it is known to match)
+	 */
+	private void fire(int t, int fid, BitSet validToStates, Buffer buffer, boolean checkMatch) {
+		final int toStateId = toStateIds[t];
+		if (validToStates != null && !validToStates.get(toStateId))
+			return;
+
+		final IntArrayList pairs = buffer.pairs;
+		switch (kinds[t]) {
+			case UNCAPTURED_DOT:
+				pairs.add(0);
+				pairs.add(toStateId);
+				break;
+			case UNCAPTURED_ITEM:
+				if (!checkMatch || matchedFids[t].contains(fid)) {
+					pairs.add(0);
+					pairs.add(toStateId);
+				}
+				break;
+			case CAPTURED_DOT:
+				pairs.add(fid);
+				pairs.add(toStateId);
+				break;
+			case CAPTURED_ITEM:
+				if (!checkMatch || matchedFids[t].contains(fid)) {
+					pairs.add(fid);
+					pairs.add(toStateId);
+				}
+				break;
+			case CAPTURED_CONSTANT:
+				if (!checkMatch || matchedFids[t].contains(fid)) {
+					pairs.add(outputFids[t]);
+					pairs.add(toStateId);
+				}
+				break;
+			case CAPTURED_GENERALIZED_DOT:
+				addGeneralizedOutputs(t, fid, toStateId, buffer);
+				break;
+			case CAPTURED_GENERALIZED_ITEM:
+				if (!checkMatch || matchedDicts[t].containsFid(fid)) {
+					addGeneralizedOutputs(t, fid, toStateId, buffer);
+				}
+				break;
+		}
+	}
+
+	/** Appends the pairs of generalized transition <code>t</code> for the given (matched) input item. */
+	private void addGeneralizedOutputs(int t, int fid, int toStateId, Buffer buffer) {
+		if (outputTables == null) {
+			addAscendants(fid, toStateId, matchedDicts[t], buffer);
+			return;
+		}
+
+		final IntArrayList pairs = buffer.pairs;
+		final int[] outputs = outputTables[t];
+		final int end = outputTableOffsets[t][fid + 1];
+		for (int i = outputTableOffsets[t][fid]; i < end; i++) {
+			pairs.add(outputs[i]);
+			pairs.add(toStateId);
+		}
+	}
+
+	/** Appends (item, toStateId) for the given item and each of its ascendants (only those in
+	 * <code>matchedDict</code>, if non-null). */
+	private void addAscendants(int fid, int toStateId, RestrictedDictionary matchedDict, Buffer buffer) {
+		final IntArrayList pairs = buffer.pairs;
+		pairs.add(fid);
+		pairs.add(toStateId);
+		final IntCollection ascendants = buffer.ascendants;
+		ascendants.clear();
+		dict.addAscendantFids(fid, ascendants);
+		final IntIterator it = ascendants.iterator();
+		while (it.hasNext()) {
+			final int ascendantFid = it.nextInt();
+			// the ascendants in the matched dictionary are exactly the ascendants that are matched, since all items
+			// on a path from a matched item to a matched ascendant are matched as well
+			if (matchedDict == null || matchedDict.containsFid(ascendantFid)) {
+				pairs.add(ascendantFid);
+				pairs.add(toStateId);
+			}
+		}
+	}
+
+	/** Base class of the classes generated by {@link FstCodeGenerator}. Public because generated classes are loaded
+	 * by their own class loader; they only access the FST through the protected methods of this class. */
+	public static abstract class StepFunction {
+		private final CompiledFst compiledFst;
+
+		protected StepFunction(CompiledFst compiledFst) {
+			this.compiledFst = compiledFst;
+		}
+
+		/** See {@link CompiledFst#step(int, int, BitSet, Buffer)}. */
+		protected abstract void step(int stateId, int fid, BitSet validToStates, Buffer buffer);
+
+		/** Returns true if the given (item or generalized item) transition matches the given item. */
+		protected final boolean matches(int t, int fid) {
+			final IntSet fids = compiledFst.matchedFids[t];
+			return fids != null ? fids.contains(fid) : compiledFst.matchedDicts[t].containsFid(fid);
+		}
+
+		/** Appends the pairs of the given generalized transition for a matching item. */
+		protected final void addGeneralizedOutputs(int t, int fid, int toStateId, Buffer buffer) {
+			compiledFst.addGeneralizedOutputs(t, fid, toStateId, buffer);
+		}
+	}
+
+	/** The buffer filled by {@link #step(int, int, BitSet, Buffer)}. Not thread-safe. */
+	public static final class Buffer {
+		/** The (output item, next state id)-pairs. Callers may truncate this list at any time. */
+		public final IntArrayList pairs = new IntArrayList();
+
+		/** Reusable set of ascendants */
+		final IntCollection ascendants;
+
+		public Buffer(boolean isForest) {
+			ascendants = isForest ? new IntArrayList() : new IntAVLTreeSet();
+		}
+	}
+}
@@ -0,0 +1,414 @@
+package de.uni_mannheim.desq.fst;
+
+import de.uni_mannheim.desq.dictionary.Dictionary;
+import de.uni_mannheim.desq.util.IntByteArrayList;
+import de.uni_mannheim.desq.util.IntConstantList;
+import de.uni_mannheim.desq.util.IntShortArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/** A compiled pattern expression, i.e., an {@link Fst} along with an (optional) eager {@link Dfa} for it, in a form
+ * that can be serialized compactly. Used to compile a pattern expression once and ship the result to other
+ * processes (e.g., Spark executors) instead of recompiling it there.
+ *
+ * Transitions are stored by their item expression parameters and recreated from the dictionary when read. The DFA
+ * is stored with its states, their successor states, and the item-to-successor indexes ({@link DfaState#indexByFid}),
+ * each of which is written only once even if shared by multiple states. The dictionary itself is not stored; the
+ * same dictionary has to be provided when reading. The DFA read back is not linked to an FST (it has been
+ * constructed already), and lazy DFAs cannot be serialized.
+ */
+public final class CompiledPattern {
+	// transition types
+	private static final byte UNCAPTURED_DOT = 0;
+	private static final byte CAPTURED_DOT = 1;
+	private static final byte CAPTURED_GENERALIZED_DOT = 2;
+	private static final byte UNCAPTURED_ITEM = 3;
+	private static final byte CAPTURED_ITEM = 4;
+	private static final byte CAPTURED_CONSTANT = 5;
+	private static final byte CAPTURED_GENERALIZED_ITEM = 6;
+
+	// types of indexByFid
+	private static final byte INDEX_CONSTANT = 0;
+	private static final byte INDEX_BYTE = 1;
+	private static final byte INDEX_SHORT = 2;
+	private static final byte INDEX_INT = 3;
+
+	private final Fst fst;
+	private final Dfa dfa;
+
+	/** Creates a compiled pattern for the given FST and DFA.
+	 *
+	 * @param dfa the DFA or <code>null</code> if there is none; must be eager for the pattern to be serialized
+	 */
+	public CompiledPattern(Fst fst, Dfa dfa) {
+		this.fst = fst;
+		this.dfa = dfa;
+	}
+
+	public Fst getFst() {
+		return fst;
+	}
+
+	/** Returns the DFA or <code>null</code> if there is none. */
+	public Dfa getDfa() {
+		return dfa;
+	}
+
+	// -- serialization -----------------------------------------------------------------------------------------------
+
+	public byte[] toBytes() {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			write(out);
+			out.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException(e); // cannot happen
+		}
+	}
+
+	/** Reads a compiled pattern that has been created with {@link #toBytes()} for the given dictionary. */
+	public static CompiledPattern fromBytes(byte[] bytes, Dictionary dict) {
+		try {
+			return read(new DataInputStream(new ByteArrayInputStream(bytes)), dict);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public void write(DataOutput out) throws IOException {
+		if (dfa != null && !(dfa.initial instanceof EagerDfaState)) {
+			throw new IllegalStateException("only eager DFAs can be serialized");
+		}
+		writeFst(fst, out);
+		out.writeBoolean(dfa != null);
+		if (dfa != null) {
+			writeDfa(dfa, out);
+		}
+	}
+
+	/** Reads a compiled pattern that has been written with {@link #write(DataOutput)} for the given dictionary. */
+	public static CompiledPattern read(DataInput in, Dictionary dict) throws IOException {
+		Fst fst = readFst(in, dict);
+		Dfa dfa = in.readBoolean() ? readDfa(in, dict) : null;
+		return new CompiledPattern(fst, dfa);
+	}
+
+	// -- FST ---------------------------------------------------------------------------------------------------------
+
+	private static void writeFst(Fst fst, DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, fst.numStates());
+		WritableUtils.writeVInt(out, fst.initialState.id);
+		WritableUtils.writeVInt(out, fst.finalStates.size());
+		for (State state : fst.finalStates) {
+			WritableUtils.writeVInt(out, state.id);
+		}
+		for (int stateId = 0; stateId < fst.numStates(); stateId++) {
+			State state = fst.getState(stateId);
+			assert state.id == stateId;
+			out.writeBoolean(state.isFinal);
+			out.writeBoolean(state.isFinalComplete);
+			WritableUtils.writeVInt(out, state.transitionList.size());
+			for (Transition t : state.transitionList) {
+				WritableUtils.writeVInt(out, t.toState.id);
+				writeTransition(t, out);
+			}
+		}
+	}
+
+	private static void writeTransition(Transition t, DataOutput out) throws IOException {
+		if (t instanceof TransitionUncapturedDot) {
+			out.writeByte(UNCAPTURED_DOT);
+		} else if (t instanceof TransitionCapturedDot) {
+			out.writeByte(CAPTURED_DOT);
+		} else if (t instanceof TransitionCapturedGeneralizedDot) {
+			out.writeByte(CAPTURED_GENERALIZED_DOT);
+		} else if (t instanceof TransitionUncapturedItem) {
+			TransitionUncapturedItem ti = (TransitionUncapturedItem) t;
+			out.writeByte(UNCAPTURED_ITEM);
+			WritableUtils.writeVInt(out, ti.itemFid);
+			out.writeUTF(ti.itemLabel);
+			out.writeBoolean(ti.matchDescendants);
+		} else if (t instanceof TransitionCapturedItem) {
+			TransitionCapturedItem ti = (TransitionCapturedItem) t;
+			out.writeByte(CAPTURED_ITEM);
+			WritableUtils.writeVInt(out, ti.itemFid);
+			out.writeUTF(ti.itemLabel);
+			out.writeBoolean(ti.matchDescendants);
+		} else if (t instanceof TransitionCapturedConstant) {
+			TransitionCapturedConstant ti = (TransitionCapturedConstant) t;
+			out.writeByte(CAPTURED_CONSTANT);
+			WritableUtils.writeVInt(out, ti.itemFid);
+			out.writeUTF(ti.itemLabel);
+		} else if (t instanceof TransitionCapturedGeneralizedItem) {
+			TransitionCapturedGeneralizedItem ti = (TransitionCapturedGeneralizedItem) t;
+			out.writeByte(CAPTURED_GENERALIZED_ITEM);
+			WritableUtils.writeVInt(out, ti.itemFid);
+			out.writeUTF(ti.itemLabel);
+		} else {
+			throw new IllegalArgumentException("unknown transition type " + t.getClass().getName());
+		}
+	}
+
+	private static Fst readFst(DataInput in, Dictionary dict) throws IOException {
+		int numStates = WritableUtils.readVInt(in);
+		Fst fst = new Fst();
+		fst.states.clear();
+		fst.finalStates.clear();
+		for (int stateId = 0; stateId < numStates; stateId++) {
+			State state = new State();
+			state.id = stateId;
+			fst.states.add(state);
+		}
+		fst.initialState = fst.states.get(WritableUtils.readVInt(in));
+		int numFinalStates = WritableUtils.readVInt(in);
+		for (int i = 0; i < numFinalStates; i++) {
+			fst.finalStates.add(fst.states.get(WritableUtils.readVInt(in)));
+		}
+		for (int stateId = 0; stateId < numStates; stateId++) {
+			State state = fst.states.get(stateId);
+			state.isFinal = in.readBoolean();
+			state.isFinalComplete = in.readBoolean();
+			int numTransitions = WritableUtils.readVInt(in);
+			state.transitionList.ensureCapacity(numTransitions);
+			for (int i = 0; i < numTransitions; i++) {
+				State toState = fst.states.get(WritableUtils.readVInt(in));
+				state.addTransition(readTransition(in, dict, toState));
+			}
+		}
+		return fst;
+	}
+
+	private static Transition readTransition(DataInput in, Dictionary dict, State toState) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+			case UNCAPTURED_DOT:
+				return TransitionFactory.uncapturedDot(dict, toState);
+			case CAPTURED_DOT:
+				return TransitionFactory.capturedDot(dict, toState);
+			case CAPTURED_GENERALIZED_DOT:
+				return TransitionFactory.capturedGeneralizedDot(dict, toState);
+			case UNCAPTURED_ITEM:
+				return TransitionFactory.uncapturedItem(dict, toState, WritableUtils.readVInt(in), in.readUTF(),
+						in.readBoolean());
+			case CAPTURED_ITEM:
+				return TransitionFactory.capturedItem(dict, toState, WritableUtils.readVInt(in), in.readUTF(),
+						in.readBoolean());
+			case CAPTURED_CONSTANT:
+				return TransitionFactory.capturedConstant(dict, toState, WritableUtils.readVInt(in), in.readUTF());
+			case CAPTURED_GENERALIZED_ITEM:
+				return TransitionFactory.capturedGeneralizedItem(dict, toState, WritableUtils.readVInt(in),
+						in.readUTF());
+			default:
+				throw new IOException("unknown transition type " + type);
+		}
+	}
+
+	// -- DFA ---------------------------------------------------------------------------------------------------------
+
+	private static void writeDfa(Dfa dfa, DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, dfa.largestFrequentItemFid);
+		out.writeBoolean(dfa.processFinalCompleteStates);
+
+		// number the states (initial state first) and the distinct item indexes
+		List<DfaState> states = new ArrayList<>(dfa.states.size());
+		Reference2IntOpenHashMap<DfaState> stateIds = new Reference2IntOpenHashMap<>();
+		states.add(dfa.initial);
+		stateIds.put(dfa.initial, 0);
+		for (DfaState state : dfa.states.values()) {
+			if (!stateIds.containsKey(state)) {
+				stateIds.put(state, states.size());
+				states.add(state);
+			}
+		}
+		List<DfaState> indexOwners = new ArrayList<>();
+		Reference2IntOpenHashMap<IntList> indexIds = new Reference2IntOpenHashMap<>();
+		for (DfaState state : states) {
+			if (state.indexByFid != null && !indexIds.containsKey(state.indexByFid)) {
+				indexIds.put(state.indexByFid, indexOwners.size());
+				indexOwners.add(state);
+			}
+		}
+
+		// write the indexes
+		WritableUtils.writeVInt(out, indexOwners.size());
+		for (DfaState owner : indexOwners) {
+			writeIndexByFid(owner.indexByFid, out);
+			if (owner.transitionLabels == null) {
+				WritableUtils.writeVInt(out, -1);
+			} else {
+				WritableUtils.writeVInt(out, owner.transitionLabels.length);
+				for (String label : owner.transitionLabels) {
+					out.writeUTF(label);
+				}
+				WritableUtils.writeVInt(out, owner.firedTransitionsByIndex.size());
+				for (int i = 1; i < owner.firedTransitionsByIndex.size(); i++) { // position 0 is unused
+					writeBitSet(owner.firedTransitionsByIndex.get(i), out);
+				}
+			}
+		}
+
+		// write the states
+		WritableUtils.writeVInt(out, states.size());
+		for (DfaState state : states) {
+			writeBitSet(state.fstStates, out);
+			out.writeBoolean(state.isFinal);
+			out.writeBoolean(state.isFinalComplete);
+			WritableUtils.writeVInt(out, state.indexByFid == null ? -1 : indexIds.getInt(state.indexByFid));
+			WritableUtils.writeVInt(out, state.reachableDfaStates.size());
+			for (DfaState toState : state.reachableDfaStates) {
+				WritableUtils.writeVInt(out, toState == null ? -1 : stateIds.getInt(toState));
+			}
+		}
+	}
+
+	private static Dfa readDfa(DataInput in, Dictionary dict) throws IOException {
+		int largestFrequentItemFid = WritableUtils.readVInt(in);
+		boolean processFinalCompleteStates = in.readBoolean();
+		Dfa dfa = new Dfa(dict, largestFrequentItemFid, processFinalCompleteStates, false);
+
+		// read the indexes
+		int numIndexes = WritableUtils.readVInt(in);
+		IntList[] indexByFids = new IntList[numIndexes];
+		String[][] transitionLabels = new String[numIndexes][];
+		List<List<BitSet>> firedTransitionsByIndexes = new ArrayList<>(numIndexes);
+		List<Object2IntOpenHashMap<BitSet>> indexByFiredTransitions = new ArrayList<>(numIndexes);
+		for (int i = 0; i < numIndexes; i++) {
+			indexByFids[i] = readIndexByFid(in);
+			int numLabels = WritableUtils.readVInt(in);
+			if (numLabels >= 0) {
+				transitionLabels[i] = new String[numLabels];
+				for (int j = 0; j < numLabels; j++) {
+					transitionLabels[i][j] = in.readUTF();
+				}
+				int size = WritableUtils.readVInt(in);
+				List<BitSet> firedTransitionsByIndex = new ArrayList<>(size);
+				firedTransitionsByIndex.add(null); // unused / placeholder
+				Object2IntOpenHashMap<BitSet> indexByFiredTransition = new Object2IntOpenHashMap<>(size);
+				for (int j = 1; j < size; j++) {
+					BitSet firedTransitions = readBitSet(in);
+					firedTransitionsByIndex.add(firedTransitions);
+					indexByFiredTransition.put(firedTransitions, j);
+				}
+				firedTransitionsByIndexes.add(firedTransitionsByIndex);
+				indexByFiredTransitions.add(indexByFiredTransition);
+			} else {
+				firedTransitionsByIndexes.add(null);
+				indexByFiredTransitions.add(null);
+			}
+		}
+
+		// read the states; successor states are resolved once all states are known
+		int numStates = WritableUtils.readVInt(in);
+		EagerDfaState[] states = new EagerDfaState[numStates];
+		int[][] reachableStateIds = new int[numStates][];
+		for (int stateId = 0; stateId < numStates; stateId++) {
+			BitSet fstStates = readBitSet(in);
+			boolean isFinal = in.readBoolean();
+			boolean isFinalComplete = in.readBoolean();
+			EagerDfaState state = new EagerDfaState(dfa, fstStates, isFinal, isFinalComplete);
+			int indexId = WritableUtils.readVInt(in);
+			if (indexId >= 0) {
+				state.indexByFid = indexByFids[indexId];
+				state.transitionLabels = transitionLabels[indexId];
+				state.firedTransitionsByIndex = firedTransitionsByIndexes.get(indexId);
+				state.indexByFiredTransitions = indexByFiredTransitions.get(indexId);
+			}
+			reachableStateIds[stateId] = new int[WritableUtils.readVInt(in)];
+			for (int i = 0; i < reachableStateIds[stateId].length; i++) {
+				reachableStateIds[stateId][i] = WritableUtils.readVInt(in);
+			}
+			states[stateId] = state;
+			dfa.states.put(fstStates, state);
+		}
+		for (int stateId = 0; stateId < numStates; stateId++) {
+			ArrayList<DfaState> reachableDfaStates = states[stateId].reachableDfaStates;
+			reachableDfaStates.clear();
+			reachableDfaStates.ensureCapacity(reachableStateIds[stateId].length);
+			for (int toStateId : reachableStateIds[stateId]) {
+				reachableDfaStates.add(toStateId < 0 ? null : states[toStateId]);
+			}
+		}
+		dfa.initial = states[0];
+		dfa.compiled = new CompiledDfa(dfa);
+		return dfa;
+	}
+
+	private static void writeIndexByFid(IntList indexByFid, DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, indexByFid.size());
+		if (indexByFid instanceof IntConstantList) {
+			out.writeByte(INDEX_CONSTANT);
+			WritableUtils.writeVInt(out, indexByFid.isEmpty() ? 0 : indexByFid.getInt(0));
+		} else if (indexByFid instanceof IntByteArrayList) {
+			out.writeByte(INDEX_BYTE);
+			for (int i = 0; i < indexByFid.size(); i++) {
+				out.writeByte(indexByFid.getInt(i));
+			}
+		} else if (indexByFid instanceof IntShortArrayList) {
+			out.writeByte(INDEX_SHORT);
+			for (int i = 0; i < indexByFid.size(); i++) {
+				out.writeShort(indexByFid.getInt(i));
+			}
+		} else {
+			out.writeByte(INDEX_INT);
+			for (int i = 0; i < indexByFid.size(); i++) {
+				WritableUtils.writeVInt(out, indexByFid.getInt(i));
+			}
+		}
+	}
+
+	private static IntList readIndexByFid(DataInput in) throws IOException {
+		int size = WritableUtils.readVInt(in);
+		byte type = in.readByte();
+		IntList indexByFid;
+		switch (type) {
+			case INDEX_CONSTANT:
+				return new IntConstantList(size, WritableUtils.readVInt(in));
+			case INDEX_BYTE:
+				indexByFid = new IntByteArrayList(size);
+				for (int i = 0; i < size; i++) {
+					indexByFid.add(in.readByte());
+				}
+				return indexByFid;
+			case INDEX_SHORT:
+				indexByFid = new IntShortArrayList(size);
+				for (int i = 0; i < size; i++) {
+					indexByFid.add(in.readShort());
+				}
+				return indexByFid;
+			case INDEX_INT:
+				indexByFid = new IntArrayList(size);
+				for (int i = 0; i < size; i++) {
+					indexByFid.add(WritableUtils.readVInt(in));
+				}
+				return indexByFid;
+			default:
+				throw new IOException("unknown index type " + type);
+		}
+	}
+
+	private static void writeBitSet(BitSet bitSet, DataOutput out) throws IOException {
+		long[] words = bitSet.toLongArray();
+		WritableUtils.writeVInt(out, words.length);
+		for (long word : words) {
+			out.writeLong(word);
+		}
+	}
+
+	private static BitSet readBitSet(DataInput in) throws IOException {
+		long[] words = new long[WritableUtils.readVInt(in)];
+		for (int i = 0; i < words.length; i++) {
+			words[i] = in.readLong();
+		}
+		return BitSet.valueOf(words);
+	}
+}
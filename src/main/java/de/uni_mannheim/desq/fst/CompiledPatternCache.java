@@ -0,0 +1,135 @@
+package de.uni_mannheim.desq.fst;
+
+import de.uni_mannheim.desq.dictionary.Dictionary;
+import de.uni_mannheim.desq.patex.PatExUtils;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** A directory of {@link CompiledPattern}s that persists compiled FSTs and DFAs across runs. Each compiled pattern
+ * is stored in its own file, named after a key that identifies the pattern expression (in its fid form), the
+ * dictionary (see {@link Dictionary#fingerprint()}), the largest frequent item, and the kind of DFA (see
+ * {@link #keyOf(Dictionary, String, int, String)}).
+ *
+ * Files are written to a temporary file that is then renamed, so that multiple
+ * processes can share the same directory. Files that cannot be read (e.g., of an older format) are treated as
+ * missing.
+ */
+public final class CompiledPatternCache {
+	private static final Logger logger = Logger.getLogger(CompiledPatternCache.class);
+
+	/** Changes whenever the format written by {@link CompiledPattern#write(DataOutput)} changes */
+	private static final int FORMAT_VERSION = 1;
+
+	private static final String SUFFIX = ".fst";
+
+	private final File dir;
+
+	public CompiledPatternCache(File dir) {
+		this.dir = dir;
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IllegalArgumentException("cannot create cache directory " + dir);
+		}
+	}
+
+	/** Returns the key of the compiled pattern of the given pattern expression.
+	 *
+	 * @param dfaType describes the DFA stored with the compiled pattern (e.g., whether it is reversed)
+	 */
+	public static String keyOf(Dictionary dict, String patternExpression, int largestFrequentFid, String dfaType) {
+		return keyOfFidPatEx(dict, PatExUtils.toFidPatEx(dict, patternExpression), largestFrequentFid, dfaType);
+	}
+
+	/** As {@link #keyOf(Dictionary, String, int, String)}, for a pattern expression in its fid form. */
+	static String keyOfFidPatEx(Dictionary dict, String fidPatternExpression, int largestFrequentFid,
+								String dfaType) {
+		MessageDigest digest = newDigest();
+		DataOutputStream out = new DataOutputStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				digest.update((byte) b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				digest.update(b, off, len);
+			}
+		});
+		try {
+			out.writeInt(FORMAT_VERSION);
+			writeString(fidPatternExpression, out);
+			out.writeInt(largestFrequentFid);
+			writeString(dfaType, out);
+			out.write(dict.fingerprint());
+			out.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e); // cannot happen (the stream only updates the digest)
+		}
+		return toHex(digest.digest());
+	}
+
+	/** Writes the UTF-8 bytes of the given string preceded by their number. Unlike
+	 * {@link DataOutput#writeUTF(String)}, works for strings of any length. */
+	private static void writeString(String s, DataOutput out) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/** Returns the compiled pattern stored under the given key or <code>null</code> if there is none. */
+	public CompiledPattern get(String key, Dictionary dict) {
+		File file = new File(dir, key + SUFFIX);
+		if (!file.isFile()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			CompiledPattern compiledPattern = CompiledPattern.read(in, dict);
+			logger.debug("Read compiled pattern from " + file);
+			return compiledPattern;
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Ignoring unreadable compiled pattern " + file + ": " + e);
+			return null;
+		}
+	}
+
+	/** Stores the given compiled pattern under the given key. Failures are logged but otherwise ignored. */
+	public void put(String key, CompiledPattern compiledPattern) {
+		File file = new File(dir, key + SUFFIX);
+		File tmpFile = null;
+		try {
+			tmpFile = File.createTempFile(key, ".tmp", dir);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+				compiledPattern.write(out);
+			}
+			Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			logger.debug("Wrote compiled pattern to " + file);
+		} catch (IOException e) {
+			logger.warn("Cannot write compiled pattern " + file + ": " + e);
+			if (tmpFile != null) {
+				tmpFile.delete();
+			}
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e); // every JVM supports SHA-256
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(2 * bytes.length);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >>> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,184 @@
+package de.uni_mannheim.desq.fst;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/** A lazy DFA state that can be used concurrently by multiple threads. Computes DFA states as needed, just as
+ * {@link LazyDfaState}.
+ *
+ * Consuming an item that has already been indexed and whose next state has already been computed does not acquire
+ * any locks. Otherwise, the index of the item is computed and published via {@link #atomicIndexByFid}, and the next
+ * state is computed while holding the lock of this state. New DFA states are published via the concurrent
+ * state map of the DFA.
+ */
+public class ConcurrentLazyDfaState extends DfaState {
+    /** For each item (fid), the index of the next DFA state in {@link #nextStates} or -1 if not yet computed. Null if
+     * there are no transition labels (in which case the index is always 0).
+     *
+     * Shared by all states with the same outgoing transition labels.
+     */
+    AtomicIntegerArray atomicIndexByFid = null;
+
+    /** The FST states reached by the transitions that fire on all items. */
+    final BitSet defaultToStates;
+
+    /** The next states by index (see {@link DfaState#reachableDfaStates}). Empty until the default transition has
+     * been resolved; afterwards, a <code>null</code> entry at index > 0 means that the next state has not been
+     * computed yet. Never modified after publication; a new array is published whenever a state is added. */
+    private volatile DfaState[] nextStates = new DfaState[0];
+
+    private ConcurrentLazyDfaState(Dfa dfa, BitSet fstStates) {
+        super(dfa, fstStates);
+        reachableDfaStates.add(null); // stores default transition
+        defaultToStates = new BitSet(dfa.fst.numStates());
+        collectTransitions(defaultToStates, (short)-1, null);
+    }
+
+    /** Creates a fully constructed state for the given FST states. The state shares its index structures with an
+     * existing state with the same transition labels, if any. Otherwise, it makes its own index structures available
+     * to other states. The state is only published to other threads once it has been constructed. */
+    static ConcurrentLazyDfaState create(Dfa dfa, BitSet fstStates) {
+        ConcurrentLazyDfaState state = new ConcurrentLazyDfaState(dfa, fstStates);
+        if (state.transitionLabels != null) {
+            String key = String.join(" ", state.transitionLabels);
+            ConcurrentLazyDfaState similarState = (ConcurrentLazyDfaState) dfa.stateByTransitions.get(key);
+            if (similarState == null) {
+                similarState = (ConcurrentLazyDfaState) dfa.stateByTransitions.putIfAbsent(key, state);
+            }
+            if (similarState != null) {
+                state.atomicIndexByFid = similarState.atomicIndexByFid;
+                state.indexByFiredTransitions = similarState.indexByFiredTransitions;
+                state.firedTransitionsByIndex = similarState.firedTransitionsByIndex;
+            }
+        }
+        return state;
+    }
+
+    /** Creates the index structures of this state. They are shared with other states by
+     * {@link #create(Dfa, BitSet)}. */
+    @Override
+    void initIndexByFid(int n, short indexByFidDefaultValue) {
+        atomicIndexByFid = new AtomicIntegerArray(n);
+        for (int i=0; i<n; i++) {
+            atomicIndexByFid.set(i, indexByFidDefaultValue);
+        }
+    }
+
+    @Override
+    public DfaState consume(int fid) {
+        // fast path: item indexed and next state known
+        final int index = atomicIndexByFid == null ? 0 : atomicIndexByFid.get(fid);
+        if (index >= 0) {
+            final DfaState[] nextStates = this.nextStates;
+            if (index < nextStates.length) {
+                final DfaState nextState = nextStates[index];
+                if (nextState != null || index == 0) {
+                    return nextState;
+                }
+            }
+            return nextState(index);
+        }
+
+        // slow path: index the item first
+        return nextState(indexFid(fid));
+    }
+
+    /** Computes and publishes the index of the given item. */
+    private int indexFid(int fid) {
+        // figure out which transitions fire for the given fid
+        BitSet firedTransitions = new BitSet(transitionLabels.length);
+        for (int t = 0; t < transitionLabels.length; t++) { // iterate over transitions
+            Transition transition = transitionByLabel[t];
+            if (transition.fires(fid, dfa.largestFrequentItemFid)) {
+                firedTransitions.set(t);
+            }
+        }
+
+        int index = 0; // default transition
+        if (!firedTransitions.isEmpty()) {
+            // the index structures are shared by all states with the same transition labels
+            synchronized (firedTransitionsByIndex) {
+                index = indexByFiredTransitions.getInt(firedTransitions);
+                if (index == 0) {
+                    // combination not yet encountered; mark it for indexing
+                    firedTransitionsByIndex.add(firedTransitions);
+                    index = firedTransitionsByIndex.size() - 1;
+                    indexByFiredTransitions.put(firedTransitions, index);
+                }
+            }
+        }
+
+        // publish the index; other threads may have done so concurrently, but they must have obtained the same index
+        if (!atomicIndexByFid.compareAndSet(fid, -1, index)) {
+            assert atomicIndexByFid.get(fid) == index;
+        }
+        return index;
+    }
+
+    /** Returns the next state for the given index, computing it if needed. */
+    private synchronized DfaState nextState(int index) {
+        DfaState[] nextStates = this.nextStates;
+
+        // resolve the default transition first
+        if (nextStates.length == 0) {
+            DfaState defaultState = defaultToStates.isEmpty() ? null : getDfaState(defaultToStates);
+            reachableDfaStates.set(0, defaultState);
+            nextStates = new DfaState[] { defaultState };
+            this.nextStates = nextStates;
+        }
+        if (index < nextStates.length && (index == 0 || nextStates[index] != null)) {
+            return nextStates[index];
+        }
+
+        // compute the next state
+        BitSet firedTransitions;
+        synchronized (firedTransitionsByIndex) {
+            firedTransitions = firedTransitionsByIndex.get(index);
+        }
+        DfaState nextState = getDfaState(computeToStates(firedTransitions));
+
+        // and publish it
+        nextStates = Arrays.copyOf(nextStates, Math.max(nextStates.length, index + 1));
+        nextStates[index] = nextState;
+        this.nextStates = nextStates;
+        while (reachableDfaStates.size() <= index) {
+            reachableDfaStates.add(null);
+        }
+        reachableDfaStates.set(index, nextState);
+        return nextState;
+    }
+
+    @Override
+    BitSet computeToStates(BitSet firedTransitions) {
+        BitSet toStates = (BitSet) defaultToStates.clone(); // always fires
+        for (int t = firedTransitions.nextSetBit(0);
+             t >= 0;
+             t = firedTransitions.nextSetBit(t + 1)) {
+            toStates.or(toStatesByLabel[t]);
+        }
+        return toStates;
+    }
+
+    @Override
+    void construct() {
+        // all other initialization has been done in the constructor
+        dfa.initial = this;
+        dfa.states.put(fstStates, this);
+    }
+
+    /** Returns the DFA state for the given set of FST states. If this DFA state has not been created, creates it and
+     * adds it to the DFA. If multiple threads create the same state concurrently, all of them obtain the state that
+     * has been added first. */
+    private DfaState getDfaState(BitSet fstStates) {
+        DfaState dfaState = dfa.states.get(fstStates);
+        if (dfaState == null) {
+            DfaState newDfaState = create(dfa, fstStates);
+            dfaState = dfa.states.putIfAbsent(fstStates, newDfaState);
+            if (dfaState == null) {
+                dfaState = newDfaState;
+            }
+        }
+        return dfaState;
+    }
+}
@@ -10,9 +10,11 @@ import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
-/** A DFA corresponding (and linked to) an {@link Fst}. */
+/** A DFA corresponding (and linked to) an {@link Fst}. Eager DFAs are minimized once constructed (see
+ * {@link DfaMinimizer}). */
 public final class Dfa {
 	/** The FST used when creating this DFA. */
 	Fst fst = null;
@@ -20,29 +22,63 @@ public final class Dfa {
 	int largestFrequentItemFid;
 	boolean processFinalCompleteStates;
 
+	/** Number of threads used to construct an eager DFA */
+	int numConstructionThreads = 1;
+
+	/** Whether to minimize an eager DFA once constructed (disabled by tests only) */
+	boolean minimize = true;
+
 	// map from set of transition labels (=key) to some DFA state for these transitions (used to avoid duplicate computations)
 	// whenever two DFA states have the same set of outgoing transition transition labels (ignoring where they go
 	// and how often), we share indexByFid between those states
-	Map<String, DfaState> stateByTransitions = new HashMap<>();
+	Map<String, DfaState> stateByTransitions;
 
 	/** The initial state. */
 	DfaState initial;
 
 	/** Maps a set of FST states (as given in the bitset) to a DfaState of this DFA, if present. */
-	Map<BitSet, DfaState> states = new HashMap<>();
+	Map<BitSet, DfaState> states;
 
-	Dfa(Dictionary dict, int largestFrequentItemFid, boolean processFinalCompleteStates) {
+	/** Table-driven form of this DFA used to scan input sequences. Only present for eager DFAs. */
+	CompiledDfa compiled;
+
+	Dfa(Dictionary dict, int largestFrequentItemFid, boolean processFinalCompleteStates, boolean threadSafe) {
 		this.dict = dict;
 		this.largestFrequentItemFid = largestFrequentItemFid;
 		this.processFinalCompleteStates = processFinalCompleteStates;
+		if (threadSafe) {
+			stateByTransitions = new ConcurrentHashMap<>();
+			states = new ConcurrentHashMap<>();
+		} else {
+			stateByTransitions = new HashMap<>();
+			states = new HashMap<>();
+		}
 	}
 
 	/** Creates a DFA for the given FST. The DFA accepts each input for which the FST has an accepting run
 	 * with all output items <= largestFrequentItemFid. */
 	public static Dfa createDfa(Fst fst, Dictionary dict, int largestFrequentItemFid,
 								boolean processFinalCompleteStates, boolean useLazyDfa) {
-		Dfa dfa = new Dfa(dict, largestFrequentItemFid, processFinalCompleteStates);
-		dfa.create(fst, false, useLazyDfa);
+		return createDfa(fst, dict, largestFrequentItemFid, processFinalCompleteStates, useLazyDfa, false);
+	}
+
+	/** Creates a DFA for the given FST as in {@link #createDfa(Fst, Dictionary, int, boolean, boolean)}. If
+	 * <code>threadSafe</code> is set, the DFA can be used by multiple threads concurrently. Eager DFAs are always
+	 * thread-safe once created; lazy DFAs then use {@link ConcurrentLazyDfaState}. */
+	public static Dfa createDfa(Fst fst, Dictionary dict, int largestFrequentItemFid,
+								boolean processFinalCompleteStates, boolean useLazyDfa, boolean threadSafe) {
+		return createDfa(fst, dict, largestFrequentItemFid, processFinalCompleteStates, useLazyDfa, threadSafe, 1);
+	}
+
+	/** Creates a DFA for the given FST as in {@link #createDfa(Fst, Dictionary, int, boolean, boolean, boolean)}.
+	 * Eager DFAs are constructed using <code>numThreads</code> threads; the result does not depend on the number of
+	 * threads. */
+	public static Dfa createDfa(Fst fst, Dictionary dict, int largestFrequentItemFid,
+								boolean processFinalCompleteStates, boolean useLazyDfa, boolean threadSafe,
+								int numThreads) {
+		Dfa dfa = new Dfa(dict, largestFrequentItemFid, processFinalCompleteStates, threadSafe);
+		dfa.numConstructionThreads = numThreads;
+		dfa.create(fst, false, useLazyDfa, threadSafe);
 		return dfa;
 	}
 
@@ -52,12 +88,30 @@ public final class Dfa {
 	 * directly anymore, but only in conjunction with {@link #acceptsReverse(IntList, List, IntList)}. */
 	public static Dfa createReverseDfa(Fst fst, Dictionary dict, int largestFrequentItemFid,
 									   boolean processFinalCompleteStates, boolean useLazyDfa) {
-		Dfa dfa = new Dfa(dict, largestFrequentItemFid, processFinalCompleteStates);
-		dfa.create(fst, true, useLazyDfa);
+		return createReverseDfa(fst, dict, largestFrequentItemFid, processFinalCompleteStates, useLazyDfa, false);
+	}
+
+	/** Creates a reverse DFA for the given FST as in {@link #createReverseDfa(Fst, Dictionary, int, boolean, boolean)}.
+	 * If <code>threadSafe</code> is set, the DFA can be used by multiple threads concurrently. */
+	public static Dfa createReverseDfa(Fst fst, Dictionary dict, int largestFrequentItemFid,
+									   boolean processFinalCompleteStates, boolean useLazyDfa, boolean threadSafe) {
+		return createReverseDfa(fst, dict, largestFrequentItemFid, processFinalCompleteStates, useLazyDfa,
+				threadSafe, 1);
+	}
+
+	/** Creates a reverse DFA for the given FST as in
+	 * {@link #createReverseDfa(Fst, Dictionary, int, boolean, boolean, boolean)}. Eager DFAs are constructed using
+	 * <code>numThreads</code> threads; the result does not depend on the number of threads. */
+	public static Dfa createReverseDfa(Fst fst, Dictionary dict, int largestFrequentItemFid,
+									   boolean processFinalCompleteStates, boolean useLazyDfa, boolean threadSafe,
+									   int numThreads) {
+		Dfa dfa = new Dfa(dict, largestFrequentItemFid, processFinalCompleteStates, threadSafe);
+		dfa.numConstructionThreads = numThreads;
+		dfa.create(fst, true, useLazyDfa, threadSafe);
 		return dfa;
 	}
 
-	private void create(Fst fst, boolean reverse, boolean useLazyDfa) {
+	void create(Fst fst, boolean reverse, boolean useLazyDfa, boolean threadSafe) {
 		// compute the initial states
 		BitSet initialStates = new BitSet(fst.numStates());
 		if(reverse) { // create a DFA for the reverse FST (original FST is destroyed)
@@ -75,8 +129,13 @@ public final class Dfa {
 		}
 
 		// construct the DFA
-		DfaState initial = useLazyDfa ? new LazyDfaState(this, initialStates)
-				: new EagerDfaState(this, initialStates);
+		DfaState initial;
+		if (useLazyDfa) {
+			initial = threadSafe ? ConcurrentLazyDfaState.create(this, initialStates)
+					: new LazyDfaState(this, initialStates);
+		} else {
+			initial = new EagerDfaState(this, initialStates);
+		}
 		initial.construct();
 
 		// when we are reversing, reverse back the FST to get an optimized new FST
@@ -86,10 +145,34 @@ public final class Dfa {
 			fst.reverse(false);
 			fst.annotate();
 		}
+
+		// minimize and compile eager DFAs; the two-pass algorithms look up the target states of the transitions of
+		// the modified FST in the FST states of the reverse DFA, so those must be preserved
+		if (!useLazyDfa) {
+			if (minimize) {
+				DfaMinimizer.minimize(this, reverse ? toStatesOf(fst) : null);
+			}
+			compiled = new CompiledDfa(this);
+		}
+	}
+
+	/** Returns the states of the given FST that are the target state of some transition. */
+	static BitSet toStatesOf(Fst fst) {
+		BitSet toStates = new BitSet(fst.numStates());
+		for (State state : fst.getStates()) {
+			for (Transition t : state.getTransitions()) {
+				toStates.set(t.getToState().getId());
+			}
+		}
+		return toStates;
 	}
 
 	/** Returns true if the input sequence is relevant (DFA accepts). */
 	public boolean accepts(IntList inputSequence) {
+		if (compiled != null) {
+			return compiled.accepts(inputSequence);
+		}
+
 		DfaState state = initial;
 		int pos = 0;
 		while(pos < inputSequence.size()) {
@@ -118,6 +201,10 @@ public final class Dfa {
 	 *                   initially.
 	 */
 	public boolean acceptsReverse(IntList inputSequence, List<DfaState> stateSeq, IntList initialPos) {
+		if (compiled != null) {
+			return compiled.acceptsReverse(inputSequence, stateSeq, initialPos);
+		}
+
 		DfaState state = initial;
 		stateSeq.add(state);
 		int pos = inputSequence.size();
@@ -164,9 +251,9 @@ public final class Dfa {
 		for (DfaState s : states.values()) {
 			for (i=0; i<s.reachableDfaStates.size(); i++) {
 				DfaState t = s.reachableDfaStates.get(i);
+				if (t==null) continue; // no default transition or not yet computed (lazy DFAs)
 				String label;
 				if (i==0) {
-					if (t==null) continue;
 					label = ""; // unlabeled edges mean "all other"
 				} else {
 					label = "";
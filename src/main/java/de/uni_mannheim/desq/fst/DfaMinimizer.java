@@ -0,0 +1,354 @@
+package de.uni_mannheim.desq.fst;
+
+import de.uni_mannheim.desq.util.IntConstantList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import org.apache.log4j.Logger;
+
+import java.util.*;
+
+/** Minimizes an eager {@link Dfa} in place using Hopcroft's partition refinement algorithm.
+ *
+ * The alphabet of the DFA are item classes: two items belong to the same class if every DFA state maps them to the
+ * same position of its {@link DfaState#reachableDfaStates} (i.e., if they agree on all distinct
+ * {@link DfaState#indexByFid}s). States are refined by their successor for each item class, starting from a
+ * partition by {@link DfaState#isFinal} and {@link DfaState#isFinalComplete}. The resulting DFA thus produces the
+ * same output as the original one for every input when read by {@link Dfa#accepts(IntList)} or
+ * {@link Dfa#acceptsReverse(IntList, List, IntList)}. States from which no final state can be reached are dropped
+ * (i.e., replaced by <code>null</code>).
+ *
+ * The two-pass algorithms read the FST states of the DFA states traversed by
+ * {@link Dfa#acceptsReverse(IntList, List, IntList)}. For reverse DFAs, the initial partition additionally
+ * separates states that differ in the FST states that can be looked up this way, so that the FST states of
+ * every remaining DFA state are exact for these lookups.
+ */
+final class DfaMinimizer {
+	private static final Logger logger = Logger.getLogger(DfaMinimizer.class);
+
+	/** Minimization is skipped if the transition table (number of states times number of item classes) would be
+	 * larger than this. Minimization temporarily needs three int arrays of this size (i.e., at most 48MB). */
+	static final long MAX_TABLE_SIZE = 1L << 22;
+
+	private DfaMinimizer() {
+	}
+
+	/** Minimizes the given fully constructed eager DFA.
+	 *
+	 * @param observedFstStates the FST states that are looked up in the FST states of the DFA states (or
+	 *                          <code>null</code> if those FST states are not used)
+	 * @return whether the DFA has been minimized (false if it is too large)
+	 */
+	static boolean minimize(Dfa dfa, BitSet observedFstStates) {
+		// number the states (initial state first)
+		List<DfaState> states = new ArrayList<>(dfa.states.size());
+		Reference2IntOpenHashMap<DfaState> stateIds = new Reference2IntOpenHashMap<>();
+		states.add(dfa.initial);
+		stateIds.put(dfa.initial, 0);
+		for (DfaState state : dfa.states.values()) {
+			if (!stateIds.containsKey(state)) {
+				stateIds.put(state, states.size());
+				states.add(state);
+			}
+		}
+		int n = states.size();
+
+		// compute the item classes and an item of each class
+		int[] classOfFid = new int[dfa.dict.lastFid() + 1];
+		int numClasses = 1;
+		Set<IntList> indexes = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (DfaState state : states) {
+			IntList indexByFid = state.indexByFid;
+			if (indexByFid != null && !(indexByFid instanceof IntConstantList) && indexes.add(indexByFid)) {
+				numClasses = refine(classOfFid, numClasses, indexByFid);
+			}
+		}
+		if ((long) (n + 1) * numClasses > MAX_TABLE_SIZE) {
+			logger.info("Not minimizing DFA with " + n + " states and " + numClasses + " item classes (maximum "
+					+ "table size: " + MAX_TABLE_SIZE + ")");
+			return false;
+		}
+		int[] fidOfClass = new int[numClasses];
+		Arrays.fill(fidOfClass, -1);
+		for (int fid = 0; fid < classOfFid.length; fid++) {
+			if (fidOfClass[classOfFid[fid]] < 0) {
+				fidOfClass[classOfFid[fid]] = fid;
+			}
+		}
+
+		// compute the transition table; the sink state n stands for "no state"
+		int sink = n;
+		int numElements = n + 1;
+		int[] successors = new int[numElements * numClasses];
+		for (int stateId = 0; stateId < n; stateId++) {
+			DfaState state = states.get(stateId);
+			for (int c = 0; c < numClasses; c++) {
+				int index = state.indexByFid == null ? 0 : state.indexByFid.getInt(fidOfClass[c]);
+				DfaState toState = index < state.reachableDfaStates.size()
+						? state.reachableDfaStates.get(index) : null;
+				successors[stateId * numClasses + c] = toState == null ? sink : stateIds.getInt(toState);
+			}
+		}
+		Arrays.fill(successors, sink * numClasses, numElements * numClasses, sink);
+
+		// compute the predecessors for each item class and successor (in compressed form)
+		int[] predecessorOffsets = new int[numClasses * numElements + 1];
+		for (int from = 0; from < numElements; from++) {
+			for (int c = 0; c < numClasses; c++) {
+				predecessorOffsets[c * numElements + successors[from * numClasses + c] + 1]++;
+			}
+		}
+		for (int i = 1; i < predecessorOffsets.length; i++) {
+			predecessorOffsets[i] += predecessorOffsets[i - 1];
+		}
+		int[] predecessors = new int[numElements * numClasses];
+		int[] nextPredecessor = Arrays.copyOf(predecessorOffsets, predecessorOffsets.length - 1);
+		for (int from = 0; from < numElements; from++) {
+			for (int c = 0; c < numClasses; c++) {
+				predecessors[nextPredecessor[c * numElements + successors[from * numClasses + c]]++] = from;
+			}
+		}
+
+		// determine the states from which a final state can be reached
+		boolean[] isAlive = new boolean[numElements];
+		IntArrayList unprocessed = new IntArrayList();
+		for (int stateId = 0; stateId < n; stateId++) {
+			if (states.get(stateId).isFinal) {
+				isAlive[stateId] = true;
+				unprocessed.add(stateId);
+			}
+		}
+		while (!unprocessed.isEmpty()) {
+			int to = unprocessed.popInt();
+			for (int c = 0; c < numClasses; c++) {
+				int end = predecessorOffsets[c * numElements + to + 1];
+				for (int i = predecessorOffsets[c * numElements + to]; i < end; i++) {
+					int from = predecessors[i];
+					if (!isAlive[from]) {
+						isAlive[from] = true;
+						unprocessed.add(from);
+					}
+				}
+			}
+		}
+
+		// initial partition: all other states go with the sink; the remaining ones are grouped by the information
+		// that is read from them
+		Map<List<Object>, IntArrayList> stateIdsByKey = new LinkedHashMap<>();
+		IntArrayList deadStateIds = new IntArrayList();
+		deadStateIds.add(sink);
+		stateIdsByKey.put(Collections.emptyList(), deadStateIds);
+		for (int stateId = 0; stateId < n; stateId++) {
+			if (!isAlive[stateId]) {
+				deadStateIds.add(stateId);
+				continue;
+			}
+			DfaState state = states.get(stateId);
+			BitSet fstStates = null;
+			if (observedFstStates != null) {
+				fstStates = (BitSet) state.fstStates.clone();
+				fstStates.and(observedFstStates);
+			}
+			List<Object> key = Arrays.asList(state.isFinal, state.isFinalComplete, fstStates);
+			stateIdsByKey.computeIfAbsent(key, k -> new IntArrayList()).add(stateId);
+		}
+		Partition partition = new Partition(numElements, stateIdsByKey.values());
+
+		// refine the partition using each block as a splitter until it is stable
+		int[] splitter = new int[numElements];
+		while (!partition.splitters.isEmpty()) {
+			int block = partition.nextSplitter();
+			int size = partition.end[block] - partition.first[block];
+			System.arraycopy(partition.elements, partition.first[block], splitter, 0, size);
+			for (int c = 0; c < numClasses; c++) {
+				for (int i = 0; i < size; i++) {
+					int to = splitter[i];
+					int end = predecessorOffsets[c * numElements + to + 1];
+					for (int j = predecessorOffsets[c * numElements + to]; j < end; j++) {
+						partition.mark(predecessors[j]);
+					}
+				}
+				partition.splitMarked();
+			}
+		}
+
+		// pick the state with the smallest id as representative of each block (so that the initial state stays)
+		int deadBlock = partition.blockOf[sink];
+		DfaState[] representatives = new DfaState[partition.numBlocks];
+		for (int stateId = 0; stateId < n; stateId++) {
+			int block = partition.blockOf[stateId];
+			if (block != deadBlock && representatives[block] == null) {
+				representatives[block] = states.get(stateId);
+			}
+		}
+
+		// redirect the transitions of the representatives and drop all other states
+		dfa.states.clear();
+		dfa.stateByTransitions.clear();
+		for (DfaState representative : representatives) {
+			if (representative == null) continue; // dead block
+			ArrayList<DfaState> reachableDfaStates = representative.reachableDfaStates;
+			for (int i = 0; i < reachableDfaStates.size(); i++) {
+				DfaState toState = reachableDfaStates.get(i);
+				if (toState != null) {
+					reachableDfaStates.set(i, representatives[partition.blockOf[stateIds.getInt(toState)]]);
+				}
+			}
+			dfa.states.put(representative.fstStates, representative);
+		}
+		if (!isAlive[0]) { // the DFA does not accept any input; keep the initial state only
+			Collections.fill(dfa.initial.reachableDfaStates, null);
+			dfa.states.put(dfa.initial.fstStates, dfa.initial);
+		}
+		return true;
+	}
+
+	/** Refines the given item classes such that two items stay in the same class only if they have the same index
+	 * in <code>indexByFid</code>. Returns the new number of classes. */
+	private static int refine(int[] classOfFid, int numClasses, IntList indexByFid) {
+		// sort the items by index (counting sort)
+		int numFids = classOfFid.length;
+		int numIndexes = 0;
+		for (int fid = 0; fid < numFids; fid++) {
+			numIndexes = Math.max(numIndexes, indexByFid.getInt(fid) + 1);
+		}
+		int[] nextFid = new int[numIndexes + 1];
+		for (int fid = 0; fid < numFids; fid++) {
+			nextFid[indexByFid.getInt(fid) + 1]++;
+		}
+		for (int index = 1; index <= numIndexes; index++) {
+			nextFid[index] += nextFid[index - 1];
+		}
+		int[] fidsByIndex = new int[numFids];
+		for (int fid = 0; fid < numFids; fid++) {
+			fidsByIndex[nextFid[indexByFid.getInt(fid)]++] = fid;
+		}
+
+		// assign a new class to each combination of old class and index
+		int[] newClassOf = new int[numClasses];
+		int[] lastIndexOf = new int[numClasses];
+		Arrays.fill(lastIndexOf, -1);
+		int numNewClasses = 0;
+		for (int fid : fidsByIndex) {
+			int index = indexByFid.getInt(fid);
+			int oldClass = classOfFid[fid];
+			if (lastIndexOf[oldClass] != index) {
+				lastIndexOf[oldClass] = index;
+				newClassOf[oldClass] = numNewClasses++;
+			}
+			classOfFid[fid] = newClassOf[oldClass];
+		}
+		return numNewClasses;
+	}
+
+	/** A partition of the elements <code>0,...,n-1</code> into blocks. The elements of each block are stored
+	 * contiguously in {@link #elements}; marked elements come first. */
+	private static final class Partition {
+		final int[] elements;
+		final int[] positionOf;
+		final int[] blockOf;
+		final int[] first;
+		final int[] end;
+
+		/** End of the marked elements of each block */
+		final int[] endOfMarked;
+		int numBlocks = 0;
+
+		/** Blocks with marked elements */
+		final IntArrayList markedBlocks = new IntArrayList();
+
+		/** Blocks that still need to be used as splitters */
+		final IntArrayList splitters = new IntArrayList();
+		final boolean[] isSplitter;
+
+		/** Creates a partition with the given blocks. All blocks but the largest are used as splitters. */
+		Partition(int n, Collection<IntArrayList> blocks) {
+			elements = new int[n];
+			positionOf = new int[n];
+			blockOf = new int[n];
+			first = new int[n];
+			end = new int[n];
+			endOfMarked = new int[n];
+			isSplitter = new boolean[n];
+			int largestBlock = -1;
+			int position = 0;
+			for (IntArrayList block : blocks) {
+				first[numBlocks] = endOfMarked[numBlocks] = position;
+				for (int i = 0; i < block.size(); i++) {
+					int element = block.getInt(i);
+					elements[position] = element;
+					positionOf[element] = position++;
+					blockOf[element] = numBlocks;
+				}
+				end[numBlocks] = position;
+				if (largestBlock < 0 || block.size() > end[largestBlock] - first[largestBlock]) {
+					largestBlock = numBlocks;
+				}
+				numBlocks++;
+			}
+			for (int block = 0; block < numBlocks; block++) {
+				if (block != largestBlock) {
+					addSplitter(block);
+				}
+			}
+		}
+
+		int nextSplitter() {
+			int block = splitters.popInt();
+			isSplitter[block] = false;
+			return block;
+		}
+
+		private void addSplitter(int block) {
+			splitters.add(block);
+			isSplitter[block] = true;
+		}
+
+		void mark(int element) {
+			int block = blockOf[element];
+			int position = positionOf[element];
+			int firstUnmarked = endOfMarked[block];
+			if (position < firstUnmarked) return; // already marked
+			if (firstUnmarked == first[block]) {
+				markedBlocks.add(block);
+			}
+			int other = elements[firstUnmarked];
+			elements[firstUnmarked] = element;
+			positionOf[element] = firstUnmarked;
+			elements[position] = other;
+			positionOf[other] = position;
+			endOfMarked[block]++;
+		}
+
+		/** Splits each block with marked elements into its marked and unmarked elements and unmarks all elements.
+		 * The smaller part forms a new block, which is added to the splitters. If the block is a splitter, both
+		 * parts remain splitters; otherwise it suffices to add the smaller part. */
+		void splitMarked() {
+			for (int i = 0; i < markedBlocks.size(); i++) {
+				int block = markedBlocks.getInt(i);
+				int middle = endOfMarked[block];
+				if (middle == end[block]) { // all elements marked
+					endOfMarked[block] = first[block];
+					continue;
+				}
+				int newBlock = numBlocks++;
+				if (middle - first[block] <= end[block] - middle) {
+					first[newBlock] = first[block];
+					end[newBlock] = middle;
+					first[block] = middle;
+				} else {
+					first[newBlock] = middle;
+					end[newBlock] = end[block];
+					end[block] = middle;
+				}
+				endOfMarked[block] = first[block];
+				endOfMarked[newBlock] = first[newBlock];
+				for (int position = first[newBlock]; position < end[newBlock]; position++) {
+					blockOf[elements[position]] = newBlock;
+				}
+				addSplitter(newBlock);
+			}
+			markedBlocks.clear();
+		}
+	}
+}
@@ -97,6 +97,14 @@ public abstract class DfaState {
         }
     }
 
+    /** Creates a state of an already constructed DFA (used when reading a {@link CompiledPattern}). */
+    DfaState(Dfa dfa, BitSet fstStates, boolean isFinal, boolean isFinalComplete) {
+        this.dfa = dfa;
+        this.fstStates = fstStates;
+        this.isFinal = isFinal;
+        this.isFinalComplete = isFinalComplete;
+    }
+
     public Dfa getDfa() {
         return dfa;
     }
@@ -154,14 +162,7 @@ public abstract class DfaState {
 
                     // if it was a new label, compute the fired items
                     if (firedItemsByLabel!= null && !firedItemsByLabel.containsKey(label)) {
-                        IntArrayList firedItems = new IntArrayList(dfa.dict.lastFid() + 1);
-                        IntIterator it = t.firedFidIterator(dfa.largestFrequentItemFid);
-                        while (it.hasNext()) {
-                            firedItems.add(it.nextInt());
-                        }
-                        firedItems.trim();
-                        firedItemsByLabel.put(label, firedItems);
-                        // System.out.println(label + " fires for " + firedItems.size() + " items");
+                        firedItemsByLabel.put(label, firedItemsOf(t));
                     }
                 }
             }
@@ -179,22 +180,40 @@ public abstract class DfaState {
             this.firedTransitionsByIndex.add(null); // unused / placeholser
 
             // and initialize the index
-            if (transitionLabels.length <=7) {
-                indexByFid = new IntByteArrayList(n);
-            } else if (transitionLabels.length <= 15) {
-                indexByFid = new IntShortArrayList(n);
-            } else {
-                indexByFid = new IntArrayList(n);
-            }
-
-            for (int i=0; i<n; i++) {
-                indexByFid.add(indexByFidDefaultValue);
-            }
+            initIndexByFid(n, indexByFidDefaultValue);
         } else {
             indexByFid = new IntConstantList(n, 0); // always use default transition
         }
     }
 
+    /** Returns the items that fire the given transition. */
+    IntList firedItemsOf(Transition t) {
+        IntArrayList firedItems = new IntArrayList(dfa.dict.lastFid() + 1);
+        IntIterator it = t.firedFidIterator(dfa.largestFrequentItemFid);
+        while (it.hasNext()) {
+            firedItems.add(it.nextInt());
+        }
+        firedItems.trim();
+        // System.out.println(t.itemExpression() + " fires for " + firedItems.size() + " items");
+        return firedItems;
+    }
+
+    /** Initializes {@link #indexByFid} for items <code>0,...,n-1</code> with the given default value. Called by
+     * {@link #collectTransitions(BitSet, short, Map)} after the transition labels have been determined. */
+    void initIndexByFid(int n, short indexByFidDefaultValue) {
+        if (transitionLabels.length <=7) {
+            indexByFid = new IntByteArrayList(n);
+        } else if (transitionLabels.length <= 15) {
+            indexByFid = new IntShortArrayList(n);
+        } else {
+            indexByFid = new IntArrayList(n);
+        }
+
+        for (int i=0; i<n; i++) {
+            indexByFid.add(indexByFidDefaultValue);
+        }
+    }
+
     BitSet computeToStates(BitSet firedTransitions) {
         BitSet toStates = new BitSet();
         DfaState defaultToState = reachableDfaStates.get(0);
@@ -3,9 +3,12 @@ package de.uni_mannheim.desq.fst;
 import de.uni_mannheim.desq.dictionary.Dictionary;
 import de.uni_mannheim.desq.util.CollectionUtils;
 import it.unimi.dsi.fastutil.ints.IntList;
-import it.unimi.dsi.fastutil.objects.Object2IntMap;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * Created by rgemulla on 02.12.2016.
@@ -17,6 +20,11 @@ public final class EagerDfaState extends DfaState {
         reachableDfaStates.add(null); // position 0 is default transition
     }
 
+    /** Creates a state of an already constructed DFA (used when reading a {@link CompiledPattern}). */
+    EagerDfaState(Dfa dfa, BitSet fstStates, boolean isFinal, boolean isFinalComplete) {
+        super(dfa, fstStates, isFinal, isFinalComplete);
+    }
+
     public DfaState consume(int itemFid) {
         return reachableDfaStates.get(indexByFid.getInt(itemFid));
     }
@@ -28,7 +36,10 @@ public final class EagerDfaState extends DfaState {
         dfa.initial = this;
         dfa.states.clear();
         dfa.stateByTransitions.clear();
-        Fst fst = dfa.fst;
+        if (dfa.numConstructionThreads > 1) {
+            constructInParallel(dfa.numConstructionThreads);
+            return;
+        }
         Dictionary dict = dfa.dict;
         boolean processFinalCompleteStates = dfa.processFinalCompleteStates;
 
@@ -46,10 +57,7 @@ public final class EagerDfaState extends DfaState {
 
         // for all items, which of the outgoing transitions fire (excluding fires-all transitions)
         BitSet activeFids = new BitSet(dict.lastFid() + 1); // indexed by item
-        BitSet[] firedTransitionsByFid = new BitSet[dict.lastFid() + 1]; // indexed by item
-        for (int i = 0; i < firedTransitionsByFid.length; i++) {
-            firedTransitionsByFid[i] = new BitSet();
-        }
+        BitSet[] firedTransitionsByFid = newFiredTransitionsByFid(dict);
 
         // MAIN LOOP: while there is an unprocessed state, compute all its transitions
         // starting with the initial state (i.e., this state)
@@ -68,7 +76,9 @@ public final class EagerDfaState extends DfaState {
                 continue;
             }
 
-            // collect all transitions with distinct labels and compute target FST states for each
+            // collect all transitions with distinct labels and compute target FST states for each; the default
+            // transition must not contain the targets of fires-all transitions of previously processed states
+            defaultTransition.clear();
             fromDfaState.collectTransitions(defaultTransition, (short)0, firedItemsByLabel);
 
             // now set the default transition in case there were transitions that fire on all items
@@ -81,22 +91,145 @@ public final class EagerDfaState extends DfaState {
                 continue; // no non-default transitions
 
             // index the transitions to the DFA state
-            String key = fromDfaState.transitionLabels != null ? String.join(" ", fromDfaState.transitionLabels) : "null";
-            if (!dfa.stateByTransitions.containsKey(key)) {
+            String key = String.join(" ", fromDfaState.transitionLabels);
+            EagerDfaState similarState = (EagerDfaState) dfa.stateByTransitions.get(key);
+            if (similarState == null) {
                 // we haven't seen this combination of transitions -> compute everything from scratch
-                fromDfaState.indexTransitions(activeFids, firedTransitionsByFid, firedItemsByLabel,
-                        defaultTransition, unprocessedStates);
+                fromDfaState.indexTransitions(activeFids, firedTransitionsByFid, firedItemsByLabel);
 
                 // cache the just created DFA state to reuse indexByFid later on if possible
                 dfa.stateByTransitions.put(key, fromDfaState);
             } else {
                 // reuse transition index from a previously processed state with the same outgoing FST transisions
-                EagerDfaState similarState = (EagerDfaState)dfa.stateByTransitions.get(key);
-                fromDfaState.indexTransitions(similarState, defaultTransition, unprocessedStates);
+                fromDfaState.shareIndex(similarState);
             }
+            fromDfaState.addSuccessorStates(fromDfaState.computeToStatesByIndex(defaultTransition),
+                    unprocessedStates);
         }
     }
 
+    /** Constructs the DFA using the given number of threads. States are processed level by level (in breadth-first
+     * order). For each level, the transitions of all states, the items fired by newly seen transition labels, the
+     * transition indexes of newly seen combinations of transition labels, and the FST states reached by each
+     * transition are computed in parallel. Only the lookup and creation of successor states is sequential, so that
+     * the DFA does not depend on how the work is scheduled. The resulting DFA has the same states and transitions as
+     * the one constructed sequentially. */
+    private void constructInParallel(int numThreads) {
+        Dictionary dict = dfa.dict;
+        boolean processFinalCompleteStates = dfa.processFinalCompleteStates;
+
+        // map from transition label (e.g., "(.^)") to items that fire; only modified between the parallel steps
+        Map<String, IntList> firedItemsByLabel = new HashMap<>();
+
+        // per-thread scratch space for indexing transitions
+        ThreadLocal<BitSet> activeFidsByThread = ThreadLocal.withInitial(() -> new BitSet(dict.lastFid() + 1));
+        ThreadLocal<BitSet[]> firedTransitionsByFidByThread = ThreadLocal.withInitial(
+                () -> newFiredTransitionsByFid(dict));
+
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            dfa.states.put(fstStates, this);
+            List<BitSet> level = new ArrayList<>();
+            level.add(fstStates);
+            while (!level.isEmpty()) {
+                // the states of this level that need to be processed
+                List<EagerDfaState> dfaStates = new ArrayList<>(level.size());
+                for (BitSet fromStates : level) {
+                    EagerDfaState fromDfaState = (EagerDfaState) dfa.states.get(fromStates);
+                    if (processFinalCompleteStates || !fromDfaState.isFinalComplete()) {
+                        dfaStates.add(fromDfaState);
+                    }
+                }
+                int n = dfaStates.size();
+
+                // collect all transitions with distinct labels and compute target FST states for each
+                BitSet[] defaultTransitions = new BitSet[n];
+                invokeAll(pool, n, i -> {
+                    defaultTransitions[i] = new BitSet(dfa.fst.numStates());
+                    dfaStates.get(i).collectTransitions(defaultTransitions[i], (short)0, null);
+                });
+
+                // compute the items that fire each newly seen transition label
+                Map<String, Transition> newTransitionByLabel = new LinkedHashMap<>();
+                for (EagerDfaState dfaState : dfaStates) {
+                    if (dfaState.transitionLabels == null) continue;
+                    for (int t = 0; t < dfaState.transitionLabels.length; t++) {
+                        if (!firedItemsByLabel.containsKey(dfaState.transitionLabels[t])) {
+                            newTransitionByLabel.putIfAbsent(dfaState.transitionLabels[t],
+                                    dfaState.transitionByLabel[t]);
+                        }
+                    }
+                }
+                List<Transition> newTransitions = new ArrayList<>(newTransitionByLabel.values());
+                IntList[] newFiredItems = new IntList[newTransitions.size()];
+                invokeAll(pool, newFiredItems.length, i -> newFiredItems[i] = firedItemsOf(newTransitions.get(i)));
+                int i = 0;
+                for (String label : newTransitionByLabel.keySet()) {
+                    firedItemsByLabel.put(label, newFiredItems[i++]);
+                }
+
+                // index the transitions of the first state with each newly seen combination of transition labels
+                EagerDfaState[] similarStates = new EagerDfaState[n];
+                List<EagerDfaState> indexedStates = new ArrayList<>();
+                for (i = 0; i < n; i++) {
+                    EagerDfaState dfaState = dfaStates.get(i);
+                    if (dfaState.transitionLabels == null) continue;
+                    String key = String.join(" ", dfaState.transitionLabels);
+                    similarStates[i] = (EagerDfaState) dfa.stateByTransitions.get(key);
+                    if (similarStates[i] == null) {
+                        dfa.stateByTransitions.put(key, dfaState);
+                        indexedStates.add(dfaState);
+                    }
+                }
+                invokeAll(pool, indexedStates.size(), j -> indexedStates.get(j).indexTransitions(
+                        activeFidsByThread.get(), firedTransitionsByFidByThread.get(), firedItemsByLabel));
+
+                // compute the FST states reached by each transition (reusing the indexes computed above)
+                BitSet[][] toStatesByIndex = new BitSet[n][];
+                invokeAll(pool, n, j -> {
+                    EagerDfaState dfaState = dfaStates.get(j);
+                    if (dfaState.transitionLabels == null) return;
+                    if (similarStates[j] != null) {
+                        dfaState.shareIndex(similarStates[j]);
+                    }
+                    toStatesByIndex[j] = dfaState.computeToStatesByIndex(defaultTransitions[j]);
+                });
+
+                // finally, look up or create the successor states (in order); new states form the next level
+                List<BitSet> nextLevel = new ArrayList<>();
+                for (i = 0; i < n; i++) {
+                    EagerDfaState dfaState = dfaStates.get(i);
+                    if (!defaultTransitions[i].isEmpty()) {
+                        dfaState.reachableDfaStates.set(0, getDfaState(defaultTransitions[i], nextLevel));
+                    }
+                    if (toStatesByIndex[i] != null) {
+                        dfaState.addSuccessorStates(toStatesByIndex[i], nextLevel);
+                    }
+                }
+                level = nextLevel;
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Runs <code>action</code> for <code>0,...,n-1</code> in the given pool and waits for completion. */
+    private static void invokeAll(ForkJoinPool pool, int n, IntConsumer action) {
+        if (n == 1) {
+            action.accept(0);
+        } else if (n > 1) {
+            pool.invoke(ForkJoinTask.adapt(() -> IntStream.range(0, n).parallel().forEach(action)));
+        }
+    }
+
+    private static BitSet[] newFiredTransitionsByFid(Dictionary dict) {
+        BitSet[] firedTransitionsByFid = new BitSet[dict.lastFid() + 1]; // indexed by item
+        for (int i = 0; i < firedTransitionsByFid.length; i++) {
+            firedTransitionsByFid[i] = new BitSet();
+        }
+        return firedTransitionsByFid;
+    }
+
     /** Returns the DFA state for the given set of FST states. If this DFA state has not been created, creates it,
      * adds it to the DFA, and adds <code>fstStates</code> to <code>unprocessedStates</code>. */
     private EagerDfaState getDfaState(BitSet fstStates, List<BitSet> unprocessedStates) {
@@ -110,22 +243,22 @@ public final class EagerDfaState extends DfaState {
         return dfaState;
     }
 
-    /** Index transitions from scratch. Computes {@link #reachableDfaStates}, {@link #indexByFid},
-     *  and {@link #indexByFiredTransitions}. */
-    private void indexTransitions(BitSet activeFids, BitSet[] firedTransitionsByFid, Map<String, IntList> firedItemsByLabel,
-                                  BitSet defaultTransition, List<BitSet> unprocessedStates) {
+    /** Index transitions from scratch. Computes {@link #indexByFid}, {@link #indexByFiredTransitions}, and
+     * {@link #firedTransitionsByIndex}, but not the successor states. Only reads <code>firedItemsByLabel</code>,
+     * and only modifies this state and the provided scratch space. */
+    private void indexTransitions(BitSet activeFids, BitSet[] firedTransitionsByFid,
+                                  Map<String, IntList> firedItemsByLabel) {
         // we first compute which transitions fire per item
         activeFids.clear();
         for (int t = 0; t < transitionLabels.length; t++) { // iterate over transitions
             String transitionLabel = transitionLabels[t];
             IntList firedItems = firedItemsByLabel.get(transitionLabel); // computed in collectTransitions
             for (int i = 0; i < firedItems.size(); i++) {
-                int fid = firedItems.get(i);
+                int fid = firedItems.getInt(i);
                 if (!activeFids.get(fid)) {
                     // activate and initialize fid if not yet seen
                     activeFids.set(fid);
                     firedTransitionsByFid[fid].clear();
-                    firedTransitionsByFid[fid].set(t);
                 }
 
                 // add the states we can reach with this fid
@@ -133,7 +266,7 @@ public final class EagerDfaState extends DfaState {
             }
         }
 
-        // now iterate over the items and add transitions to the DFA
+        // now iterate over the items and index each distinct combination of fired transitions
         for (int fid = activeFids.nextSetBit(0);
              fid >= 0;
              fid = activeFids.nextSetBit(fid + 1)) {
@@ -142,21 +275,7 @@ public final class EagerDfaState extends DfaState {
             BitSet firedTransitions = firedTransitionsByFid[fid];
             int index = indexByFiredTransitions.getInt(firedTransitions);
             if (index == 0) { // not present
-                // compute subsequent state
-                BitSet toStates = new BitSet();
-                toStates.or(defaultTransition); // always fires
-                for (int t = firedTransitions.nextSetBit(0);
-                     t >= 0;
-                     t = firedTransitions.nextSetBit(t + 1)) {
-                    toStates.or(toStatesByLabel[t]);
-                }
-
-                // get the corresponding DFA state
-                EagerDfaState toDfaState = getDfaState(toStates, unprocessedStates);
-
-                // add the state as a successor state to the DFA
-                reachableDfaStates.add(toDfaState);
-                index = reachableDfaStates.size() - 1;
+                index = firedTransitionsByIndex.size();
                 firedTransitionsByIndex.add(CollectionUtils.copyOf(firedTransitions));
                 indexByFiredTransitions.put(firedTransitionsByIndex.get(index), index);
             }
@@ -166,21 +285,20 @@ public final class EagerDfaState extends DfaState {
         }
     }
 
-    /** Index transitions by reusing data structures from another DFA state with the same distinct outgoing
-     * transition labels. Computes {@link #reachableDfaStates} and reuses {@link #indexByFid}
-     * and {@link #indexByFiredTransitions}. */
-    private void indexTransitions(EagerDfaState similarState, BitSet defaultTransition, List<BitSet> unprocessedStates) {
+    /** Reuses {@link #indexByFid}, {@link #indexByFiredTransitions}, and {@link #firedTransitionsByIndex} from
+     * another DFA state with the same distinct outgoing transition labels. */
+    private void shareIndex(EagerDfaState similarState) {
         indexByFid = similarState.indexByFid;
         indexByFiredTransitions = similarState.indexByFiredTransitions;
         firedTransitionsByIndex = similarState.firedTransitionsByIndex;
-        reachableDfaStates.addAll(Collections.nCopies( similarState.reachableDfaStates.size() - 1, null)); // resize to correct size
-
-        // iterate over active combinations of fired transitions and set the corresponding toStates
-        for (Object2IntMap.Entry<BitSet> entry : indexByFiredTransitions.object2IntEntrySet()) {
-            BitSet firedTransitions = entry.getKey();
-            int index = entry.getIntValue();
+    }
 
-            // compute subsequent state for this combination of fired transitions
+    /** Computes the FST states reached for each combination of fired transitions in
+     * {@link #firedTransitionsByIndex} (position 0 is unused). */
+    private BitSet[] computeToStatesByIndex(BitSet defaultTransition) {
+        BitSet[] toStatesByIndex = new BitSet[firedTransitionsByIndex.size()];
+        for (int index = 1; index < toStatesByIndex.length; index++) {
+            BitSet firedTransitions = firedTransitionsByIndex.get(index);
             BitSet toStates = new BitSet();
             toStates.or(defaultTransition); // always fires
             for (int t = firedTransitions.nextSetBit(0);
@@ -188,12 +306,16 @@ public final class EagerDfaState extends DfaState {
                  t = firedTransitions.nextSetBit(t + 1)) {
                 toStates.or(toStatesByLabel[t]);
             }
+            toStatesByIndex[index] = toStates;
+        }
+        return toStatesByIndex;
+    }
 
-            // get the corresponding FST state
-            EagerDfaState toDfaState = getDfaState(toStates, unprocessedStates);
-
-            // and put it to the corresponding positon
-            reachableDfaStates.set(index, toDfaState);
+    /** Computes {@link #reachableDfaStates} (except the default transition) from the FST states reached for each
+     * combination of fired transitions. */
+    private void addSuccessorStates(BitSet[] toStatesByIndex, List<BitSet> unprocessedStates) {
+        for (int index = 1; index < toStatesByIndex.length; index++) {
+            reachableDfaStates.add(getDfaState(toStatesByIndex[index], unprocessedStates));
         }
     }
 }
@@ -0,0 +1,340 @@
+package de.uni_mannheim.desq.fst;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.apache.log4j.Logger;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.*;
+
+/** Generates a subclass of {@link CompiledFst.StepFunction} that is specialized to a given FST. The generated class
+ * has one method per state, in which the transitions of the state are unrolled: transition kinds, target states,
+ * constant outputs, and (small) sets of matched items are folded into constants. The Java source of the class is
+ * compiled with the system Java compiler and loaded by its own class loader.
+ *
+ * Code generation fails (and {@link #generate(CompiledFst)} returns <code>null</code>) if the FST is too large (the
+ * JIT compiler does not compile overly large methods, so that the generated code would be slower than interpreting
+ * the FST) or if no Java compiler is available (e.g., when running on a JRE).
+ */
+final class FstCodeGenerator {
+	private static final Logger logger = Logger.getLogger(FstCodeGenerator.class);
+
+	/** Maximum estimated bytecode size of a generated method. HotSpot does not JIT-compile methods with more than 8000
+	 * bytes of bytecode (see <code>-XX:HugeMethodLimit</code>); we leave some slack for the estimate. */
+	static final int MAX_METHOD_SIZE = 7000;
+
+	/** Upper bound of the bytecode size of a case of the state dispatch (table entry, call, and jump) */
+	static final int STATE_CASE_SIZE = 16;
+
+	/** Upper bound of the bytecode size of a transition without its inlined ranges */
+	static final int TRANSITION_SIZE = 40;
+
+	/** Upper bound of the bytecode size of the test of an inlined range */
+	static final int RANGE_SIZE = 16;
+
+	/** Matched item sets with at most this many ranges of consecutive fids are tested inline */
+	static final int MAX_INLINED_RANGES = 8;
+
+	/** Number of generated classes kept for reuse */
+	private static final int CACHE_SIZE = 64;
+
+	private static final String PACKAGE_NAME = "de.uni_mannheim.desq.fst.generated";
+	private static final String CLASS_NAME = "FstStepFunction";
+
+	/** Generated classes by source code (least recently used first) */
+	private static final Map<String, Class<? extends CompiledFst.StepFunction>> cache =
+			new LinkedHashMap<String, Class<? extends CompiledFst.StepFunction>>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Class<? extends CompiledFst.StepFunction>> e) {
+					return size() > CACHE_SIZE;
+				}
+			};
+
+	private FstCodeGenerator() {
+	}
+
+	/** Generates, compiles, and instantiates the step function of the given FST. Returns <code>null</code> if this is
+	 * not possible. */
+	static CompiledFst.StepFunction generate(CompiledFst fst) {
+		int numStates = fst.numStates();
+		long dispatchSize = (long) STATE_CASE_SIZE * numStates;
+		if (dispatchSize > MAX_METHOD_SIZE) {
+			logger.info("Not generating code for FST with " + numStates + " states (estimated dispatch size: "
+					+ dispatchSize + " bytes, maximum: " + MAX_METHOD_SIZE + ")");
+			return null;
+		}
+		for (int stateId = 0; stateId < numStates; stateId++) {
+			long stateSize = estimatedSizeOf(fst, stateId);
+			if (stateSize > MAX_METHOD_SIZE) {
+				logger.info("Not generating code for FST with state " + stateId + " of estimated size "
+						+ stateSize + " bytes (maximum: " + MAX_METHOD_SIZE + ")");
+				return null;
+			}
+		}
+
+		try {
+			String source = sourceOf(fst);
+			Class<? extends CompiledFst.StepFunction> stepFunctionClass;
+			synchronized (cache) {
+				stepFunctionClass = cache.get(source);
+			}
+			if (stepFunctionClass == null) {
+				stepFunctionClass = compile(source);
+				if (stepFunctionClass == null) {
+					return null;
+				}
+				synchronized (cache) {
+					cache.put(source, stepFunctionClass);
+				}
+			}
+			return stepFunctionClass.getConstructor(CompiledFst.class).newInstance(fst);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			logger.warn("Cannot generate code for FST: " + e);
+			return null;
+		}
+	}
+
+	/** Returns an upper bound of the bytecode size of the method generated for the given state. */
+	static long estimatedSizeOf(CompiledFst fst, int stateId) {
+		long size = 0;
+		for (int t = fst.transitionOffsets[stateId]; t < fst.transitionOffsets[stateId + 1]; t++) {
+			size += TRANSITION_SIZE;
+			switch (fst.kinds[t]) {
+				case CompiledFst.UNCAPTURED_ITEM:
+				case CompiledFst.CAPTURED_ITEM:
+				case CompiledFst.CAPTURED_CONSTANT:
+				case CompiledFst.CAPTURED_GENERALIZED_ITEM:
+					int numRanges = CompiledFst.rangesOf(fst.matchedFidsOf(t)).length / 2;
+					if (numRanges <= MAX_INLINED_RANGES) {
+						size += (long) RANGE_SIZE * numRanges;
+					}
+					break;
+			}
+		}
+		return size;
+	}
+
+	// -- source code generation --------------------------------------------------------------------------------------
+
+	/** Returns the Java source code of the step function of the given FST. */
+	static String sourceOf(CompiledFst fst) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(PACKAGE_NAME).append(";\n\n");
+		sb.append("import de.uni_mannheim.desq.fst.CompiledFst;\n");
+		sb.append("import it.unimi.dsi.fastutil.ints.IntArrayList;\n");
+		sb.append("import java.util.BitSet;\n\n");
+		sb.append("public final class ").append(CLASS_NAME).append(" extends CompiledFst.StepFunction {\n");
+		sb.append("\tpublic ").append(CLASS_NAME).append("(CompiledFst compiledFst) {\n");
+		sb.append("\t\tsuper(compiledFst);\n");
+		sb.append("\t}\n\n");
+
+		// dispatch on the state
+		sb.append("\t@Override\n");
+		sb.append("\tprotected void step(int stateId, int fid, BitSet validToStates, CompiledFst.Buffer buffer) {\n");
+		sb.append("\t\tswitch (stateId) {\n");
+		for (int stateId = 0; stateId < fst.numStates(); stateId++) {
+			if (fst.transitionOffsets[stateId] < fst.transitionOffsets[stateId + 1]) {
+				sb.append("\t\t\tcase ").append(stateId).append(": step").append(stateId)
+						.append("(fid, validToStates, buffer); break;\n");
+			}
+		}
+		sb.append("\t\t}\n");
+		sb.append("\t}\n");
+
+		// one method per state
+		for (int stateId = 0; stateId < fst.numStates(); stateId++) {
+			int begin = fst.transitionOffsets[stateId];
+			int end = fst.transitionOffsets[stateId + 1];
+			if (begin == end) {
+				continue;
+			}
+			sb.append("\n\tprivate void step").append(stateId)
+					.append("(int fid, BitSet validToStates, CompiledFst.Buffer buffer) {\n");
+			sb.append("\t\tfinal IntArrayList pairs = buffer.pairs;\n");
+			for (int t = begin; t < end; t++) {
+				appendTransition(sb, fst, t);
+			}
+			sb.append("\t}\n");
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	/** Appends the code of transition <code>t</code>, which must produce the same pairs as
+	 * {@link CompiledFst#step(int, int, BitSet, CompiledFst.Buffer)}. */
+	private static void appendTransition(StringBuilder sb, CompiledFst fst, int t) {
+		int toStateId = fst.toStateIds[t];
+		String condition;
+		switch (fst.kinds[t]) {
+			case CompiledFst.UNCAPTURED_DOT:
+			case CompiledFst.CAPTURED_DOT:
+			case CompiledFst.CAPTURED_GENERALIZED_DOT:
+				condition = null;
+				break;
+			case CompiledFst.UNCAPTURED_ITEM:
+			case CompiledFst.CAPTURED_ITEM:
+			case CompiledFst.CAPTURED_CONSTANT:
+			case CompiledFst.CAPTURED_GENERALIZED_ITEM:
+				condition = matchCondition(t, CompiledFst.rangesOf(fst.matchedFidsOf(t)));
+				break;
+			default:
+				throw new IllegalStateException();
+		}
+		if ("false".equals(condition)) {
+			return; // transition never fires
+		}
+
+		String validCondition = "validToStates == null || validToStates.get(" + toStateId + ")";
+		if (condition == null) {
+			sb.append("\t\tif (").append(validCondition).append(") {\n");
+		} else {
+			sb.append("\t\tif ((").append(validCondition).append(") && (").append(condition).append(")) {\n");
+		}
+		switch (fst.kinds[t]) {
+			case CompiledFst.UNCAPTURED_DOT:
+			case CompiledFst.UNCAPTURED_ITEM:
+				sb.append("\t\t\tpairs.add(0);\n");
+				sb.append("\t\t\tpairs.add(").append(toStateId).append(");\n");
+				break;
+			case CompiledFst.CAPTURED_DOT:
+			case CompiledFst.CAPTURED_ITEM:
+				sb.append("\t\t\tpairs.add(fid);\n");
+				sb.append("\t\t\tpairs.add(").append(toStateId).append(");\n");
+				break;
+			case CompiledFst.CAPTURED_CONSTANT:
+				sb.append("\t\t\tpairs.add(").append(fst.outputFids[t]).append(");\n");
+				sb.append("\t\t\tpairs.add(").append(toStateId).append(");\n");
+				break;
+			case CompiledFst.CAPTURED_GENERALIZED_DOT:
+			case CompiledFst.CAPTURED_GENERALIZED_ITEM:
+				sb.append("\t\t\taddGeneralizedOutputs(").append(t).append(", fid, ").append(toStateId)
+						.append(", buffer);\n");
+				break;
+		}
+		sb.append("\t\t}\n");
+	}
+
+	/** Returns a Java expression that tests whether <code>fid</code> lies in one of the given ranges (see
+	 * {@link CompiledFst#rangesOf(int[])}). If there are too many ranges, the test is delegated to the matched items
+	 * of transition <code>t</code>. */
+	private static String matchCondition(int t, int[] ranges) {
+		if (ranges.length == 0) {
+			return "false";
+		}
+		if (ranges.length > 2 * MAX_INLINED_RANGES) {
+			return "matches(" + t + ", fid)";
+		}
+		StringBuilder condition = new StringBuilder();
+		for (int i = 0; i < ranges.length; i += 2) {
+			if (i > 0) {
+				condition.append(" || ");
+			}
+			if (ranges[i] == ranges[i + 1]) {
+				condition.append("fid == ").append(ranges[i]);
+			} else {
+				condition.append("(fid >= ").append(ranges[i]).append(" && fid <= ").append(ranges[i + 1]).append(")");
+			}
+		}
+		return condition.toString();
+	}
+
+	// -- compilation -------------------------------------------------------------------------------------------------
+
+	/** Compiles the given source code and loads the resulting class. Returns <code>null</code> if this is not
+	 * possible. */
+	private static Class<? extends CompiledFst.StepFunction> compile(String source)
+			throws ReflectiveOperationException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			logger.warn("Not generating code for FST: no Java compiler available");
+			return null;
+		}
+
+		String className = PACKAGE_NAME + "." + CLASS_NAME;
+		JavaFileObject sourceFile = new SimpleJavaFileObject(
+				URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension),
+				JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		MemoryFileManager fileManager = new MemoryFileManager(compiler.getStandardFileManager(null, null, null));
+		List<String> options = Arrays.asList("-classpath", classPath(), "-g:none", "-nowarn");
+		StringWriter messages = new StringWriter();
+		long start = System.nanoTime();
+		boolean success = compiler.getTask(messages, fileManager, null, options, null,
+				Collections.singletonList(sourceFile)).call();
+		if (!success) {
+			logger.warn("Cannot compile generated code for FST: " + messages);
+			return null;
+		}
+		logger.debug("Compiled generated code for FST in " + (System.nanoTime() - start) / 1000000 + "ms");
+
+		ClassLoader classLoader = new MemoryClassLoader(fileManager.classFiles,
+				CompiledFst.class.getClassLoader());
+		return classLoader.loadClass(className).asSubclass(CompiledFst.StepFunction.class);
+	}
+
+	/** Returns the class path needed to compile the generated code: the locations of DESQ and fastutil (which may
+	 * differ from the system class path, e.g., in Spark) followed by the system class path. */
+	private static String classPath() {
+		LinkedHashSet<String> entries = new LinkedHashSet<>();
+		for (Class<?> c : new Class<?>[] { CompiledFst.class, IntArrayList.class }) {
+			try {
+				entries.add(new File(c.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+			} catch (Exception e) {
+				// not available; rely on the system class path
+			}
+		}
+		entries.addAll(Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator)));
+		return String.join(File.pathSeparator, entries);
+	}
+
+	/** Keeps the class files written by the compiler in memory. */
+	private static final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+		final Map<String, ByteArrayOutputStream> classFiles = new HashMap<>();
+
+		MemoryFileManager(StandardJavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+												   FileObject sibling) {
+			return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension),
+					kind) {
+				@Override
+				public OutputStream openOutputStream() {
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					classFiles.put(className, out);
+					return out;
+				}
+			};
+		}
+	}
+
+	/** Loads the classes kept by a {@link MemoryFileManager}. */
+	private static final class MemoryClassLoader extends ClassLoader {
+		private final Map<String, ByteArrayOutputStream> classFiles;
+
+		MemoryClassLoader(Map<String, ByteArrayOutputStream> classFiles, ClassLoader parent) {
+			super(parent);
+			this.classFiles = classFiles;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			ByteArrayOutputStream classFile = classFiles.get(name);
+			if (classFile == null) {
+				throw new ClassNotFoundException(name);
+			}
+			byte[] bytes = classFile.toByteArray();
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
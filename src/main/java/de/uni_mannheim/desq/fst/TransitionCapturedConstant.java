@@ -7,11 +7,11 @@ import it.unimi.dsi.fastutil.ints.IntSet;
 
 /** A captured item, descendants are generalized to that item: (A=^) */
 final class TransitionCapturedConstant extends Transition {
-    private final int itemFid;
-    private final String itemLabel;
+    final int itemFid;
+    final String itemLabel;
 
     // helper
-    private final IntSet matchedFids;
+    final IntSet matchedFids;
 
     /** Matches all descendents of given item */
     public TransitionCapturedConstant(final BasicDictionary dict, final State toState, final int fid,
@@ -7,11 +7,11 @@ import it.unimi.dsi.fastutil.ints.IntIterator;
 
 /** A captured item, descendants are generalized up to that item: (A^) */
 final class TransitionCapturedGeneralizedItem extends Transition {
-    private final int itemFid;
-    private final String itemLabel;
+    final int itemFid;
+    final String itemLabel;
 
     // helper
-    private final RestrictedDictionary matchedDict;
+    final RestrictedDictionary matchedDict;
 
     /** Matches all descendents of given item */
     public TransitionCapturedGeneralizedItem(final BasicDictionary dict, final State toState, final int fid,
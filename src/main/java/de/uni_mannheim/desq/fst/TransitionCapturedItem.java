@@ -7,9 +7,9 @@ import it.unimi.dsi.fastutil.ints.IntSet;
 
 /** A captured item, optionally with descendants: either (A) or (A=) */
 final class TransitionCapturedItem extends Transition {
-    private final int itemFid;
-    private final boolean matchDescendants;
-    private final String itemLabel;
+    final int itemFid;
+    final boolean matchDescendants;
+    final String itemLabel;
 
     // helper
     final IntSet matchedFids;
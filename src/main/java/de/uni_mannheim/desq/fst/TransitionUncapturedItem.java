@@ -9,12 +9,12 @@ import it.unimi.dsi.fastutil.ints.IntSets;
 
 /** An uncaptured item, optionally with descendants: either A or A= */
 class TransitionUncapturedItem extends Transition {
-    private final int itemFid;
-    private final String itemLabel;
-    private final boolean matchDescendants;
+    final int itemFid;
+    final String itemLabel;
+    final boolean matchDescendants;
 
     // helper
-    private final IntSet matchedFids;
+    final IntSet matchedFids;
 
     /** Matches all descendents of given item */
     public TransitionUncapturedItem(final BasicDictionary dict, final State toState, final int fid,
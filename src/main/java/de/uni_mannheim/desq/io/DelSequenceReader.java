@@ -34,6 +34,16 @@ public class DelSequenceReader extends SequenceReader {
 		return true;
 	}
 
+	@Override
+	public Object readUnparsed() throws IOException {
+		return reader.readLine();
+	}
+
+	@Override
+	public void parse(Object unparsedSequence, IntList items) {
+		parseLine((String)unparsedSequence, items);
+	}
+
 	@Override
 	public boolean usesFids() {
 		return usesFids;
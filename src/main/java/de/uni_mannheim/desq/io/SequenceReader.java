@@ -1,5 +1,6 @@
 package de.uni_mannheim.desq.io;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 
 import java.io.IOException;
@@ -41,4 +42,31 @@ public abstract class SequenceReader extends WithDictionary {
 		}
 		return hasNext;
 	}
+
+	/** Reads the next input sequence without parsing it. The result needs to be parsed using
+	 * {@link #parse(Object, IntList)}, which may happen in a different thread. Readers for which parsing is expensive
+	 * should override both methods; by default, the input sequence is parsed right away.
+	 *
+	 * @return the unparsed input sequence or <code>null</code> if there are no more input sequences
+	 */
+	public Object readUnparsed() throws IOException {
+		IntList items = new IntArrayList();
+		return read(items) ? items : null;
+	}
+
+	/** Parses an input sequence obtained from {@link #readUnparsed()} and stores the result in <code>items</code>.
+	 * Depending on {@link #usesFids()}, stores ids or fids. Must be thread-safe. */
+	public void parse(Object unparsedSequence, IntList items) {
+		items.clear();
+		items.addAll((IntList)unparsedSequence);
+	}
+
+	/** Parses an input sequence obtained from {@link #readUnparsed()} and stores the result as fids in
+	 * <code>itemFids</code>. Thread-safe. */
+	public void parseAsFids(Object unparsedSequence, IntList itemFids) {
+		parse(unparsedSequence, itemFids);
+		if (!usesFids()) {
+			dict.gidsToFids(itemFids);
+		}
+	}
 }
@@ -0,0 +1,387 @@
+package de.uni_mannheim.desq.mining;
+
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/** A posting list in which each posting belongs to an input sequence (identified by a non-negative input id) and
+ * contains a (possibly empty) sequence of non-negative integer elements. Postings must be added in increasing order
+ * of input id.
+ *
+ * In contrast to {@link PostingList}, postings are stored in blocks of up to {@link #BLOCK_SIZE} postings. Each
+ * block starts with a header holding the input id deltas, the number of elements, and the number of bytes of each
+ * of its postings; the elements follow afterwards. The first input id and the byte offset of each block are kept
+ * separately and serve as skip pointers. This allows iterators to jump to a given input id
+ * ({@link Iterator#skipTo(int)}) without decoding the postings in between. All integers are stored using
+ * group-varint encoding: groups of four integers share a selector byte that holds the byte length of each integer.
+ * Decoding thus needs no per-byte continuation checks.
+ *
+ * Postings are buffered and encoded when a block is full. Call {@link #finish()} before reading the posting list.
+ */
+public final class BlockPostingList {
+    /** Maximum number of postings per block */
+    public static final int BLOCK_SIZE = 64;
+
+    /** Masks to extract integers of 1-4 bytes (indexed by byte length) */
+    private static final int[] MASKS = { 0, 0xFF, 0xFFFF, 0xFFFFFF, 0xFFFFFFFF };
+
+    /** Number of bytes read beyond the last integer when decoding */
+    private static final int PADDING = 3;
+
+    /** The encoded blocks */
+    private final ByteArrayList data;
+
+    /** The input id of the first posting of each block (skip pointers) */
+    private final IntArrayList blockInputIds;
+
+    /** The byte offset of each block in data (skip pointers) */
+    private final IntArrayList blockOffsets;
+
+    private int noPostings;
+
+    /** The input ids of the postings of the current (not yet encoded) block */
+    private final IntArrayList pendingInputIds;
+
+    /** For each posting of the current block, the index of its first element in pendingElements */
+    private final IntArrayList pendingElementOffsets;
+
+    /** The elements of the postings of the current block */
+    private final IntArrayList pendingElements;
+
+    /** Constructs a new empty posting list */
+    public BlockPostingList() {
+        this.data = new ByteArrayList();
+        this.blockInputIds = new IntArrayList();
+        this.blockOffsets = new IntArrayList();
+        this.noPostings = 0;
+        this.pendingInputIds = new IntArrayList(BLOCK_SIZE);
+        this.pendingElementOffsets = new IntArrayList(BLOCK_SIZE);
+        this.pendingElements = new IntArrayList();
+    }
+
+    /** Creates a new posting list with the (copied) data from the given finished posting list. */
+    public BlockPostingList(BlockPostingList postingList) {
+        assert postingList.pendingInputIds.isEmpty();
+        this.data = new ByteArrayList(postingList.data.size() + PADDING);
+        this.data.addElements(0, postingList.data.elements(), 0, postingList.data.size());
+        this.blockInputIds = new IntArrayList(postingList.blockInputIds);
+        this.blockOffsets = new IntArrayList(postingList.blockOffsets);
+        this.noPostings = postingList.noPostings;
+        this.pendingInputIds = new IntArrayList(0);
+        this.pendingElementOffsets = new IntArrayList(0);
+        this.pendingElements = new IntArrayList(0);
+    }
+
+    /** Creates a new block posting list from a {@link PostingList} in which the first element of each posting is
+     * its input id. */
+    public static BlockPostingList of(PostingList postingList) {
+        BlockPostingList result = new BlockPostingList();
+        if (postingList.size() == 0) {
+            return result;
+        }
+        PostingList.Iterator it = postingList.iterator();
+        do {
+            result.newPosting(it.nextNonNegativeInt());
+            while (it.hasNext()) {
+                result.addNonNegativeInt(it.nextNonNegativeInt());
+            }
+        } while (it.nextPosting());
+        result.finish();
+        return result;
+    }
+
+    /** Clears this posting list. */
+    public void clear() {
+        data.clear();
+        blockInputIds.clear();
+        blockOffsets.clear();
+        noPostings = 0;
+        pendingInputIds.clear();
+        pendingElementOffsets.clear();
+        pendingElements.clear();
+    }
+
+    /** Returns the number of postings in this posting list. */
+    public int size() {
+        return noPostings;
+    }
+
+    /** Returns the number of bytes used by the encoded blocks of this posting list. */
+    public int noBytes() {
+        return data.size();
+    }
+
+    /** Returns the number of blocks of this posting list. */
+    public int noBlocks() {
+        return blockOffsets.size();
+    }
+
+    /** Trims this posting list so that the capacity of the underlying arrays matches their size. */
+    public void trim() {
+        data.trim(data.size() + PADDING);
+        blockInputIds.trim();
+        blockOffsets.trim();
+        pendingInputIds.trim();
+        pendingElementOffsets.trim();
+        pendingElements.trim();
+    }
+
+    /** Ends the current posting and appends a new one for the given input id, which must be larger than the input
+     * ids of all previous postings. */
+    public void newPosting(int inputId) {
+        assert inputId >= 0;
+        assert pendingInputIds.isEmpty() || inputId > pendingInputIds.getInt(pendingInputIds.size() - 1);
+        assert !pendingInputIds.isEmpty() || blockInputIds.isEmpty()
+                || inputId > blockInputIds.getInt(blockInputIds.size() - 1);
+        if (pendingInputIds.size() == BLOCK_SIZE) {
+            encodePendingBlock();
+        }
+        noPostings++;
+        pendingInputIds.add(inputId);
+        pendingElementOffsets.add(pendingElements.size());
+    }
+
+    /** Appends a non-negative integer value to the current posting. */
+    public void addNonNegativeInt(int value) {
+        assert value >= 0;
+        assert !pendingInputIds.isEmpty();
+        pendingElements.add(value);
+    }
+
+    /** Encodes all buffered postings. Must be called before this posting list is read; postings can be appended
+     * afterwards (and then require another call). */
+    public void finish() {
+        if (!pendingInputIds.isEmpty()) {
+            encodePendingBlock();
+        }
+        data.ensureCapacity(data.size() + PADDING);
+    }
+
+    /** Encodes the current block. Layout: number of postings n, then n-1 input id deltas (the first input id is
+     * stored in blockInputIds), n element counts, and n byte lengths, followed by the elements of each posting. */
+    private void encodePendingBlock() {
+        int n = pendingInputIds.size();
+        blockInputIds.add(pendingInputIds.getInt(0));
+        blockOffsets.add(data.size());
+
+        // encode the elements first to determine the byte length of each posting
+        int[] elements = pendingElements.elements();
+        int[] header = new int[3*n - 1];
+        ByteArrayList payload = new ByteArrayList();
+        for (int i = 0; i < n; i++) {
+            int from = pendingElementOffsets.getInt(i);
+            int to = i + 1 < n ? pendingElementOffsets.getInt(i + 1) : pendingElements.size();
+            int start = payload.size();
+            writeGroupVarint(payload, elements, from, to - from);
+            if (i > 0) {
+                header[i - 1] = pendingInputIds.getInt(i) - pendingInputIds.getInt(i - 1);
+            }
+            header[n - 1 + i] = to - from;
+            header[2*n - 1 + i] = payload.size() - start;
+        }
+
+        writeGroupVarint(data, new int[] { n }, 0, 1);
+        writeGroupVarint(data, header, 0, header.length);
+        data.addElements(data.size(), payload.elements(), 0, payload.size());
+
+        pendingInputIds.clear();
+        pendingElementOffsets.clear();
+        pendingElements.clear();
+    }
+
+    /** Appends the given integers to out using group-varint encoding. */
+    static void writeGroupVarint(ByteArrayList out, int[] values, int offset, int length) {
+        for (int i = 0; i < length; i += 4) {
+            int selectorOffset = out.size();
+            out.add((byte)0);
+            int selector = 0;
+            int groupSize = Math.min(4, length - i);
+            for (int j = 0; j < groupSize; j++) {
+                int value = values[offset + i + j];
+                int noBytes = (39 - Integer.numberOfLeadingZeros(value | 1)) >>> 3;
+                selector |= (noBytes - 1) << (2*j);
+                for (int b = 0; b < noBytes; b++) {
+                    out.add((byte)(value >>> (8*b)));
+                }
+            }
+            out.set(selectorOffset, (byte)selector);
+        }
+    }
+
+    /** Reads integers encoded with {@link #writeGroupVarint(ByteArrayList, int[], int, int)}. Reads up to
+     * {@link #PADDING} bytes beyond the last integer, so the array needs to be large enough.
+     *
+     * @return the offset of the first byte after the read integers
+     */
+    static int readGroupVarint(byte[] data, int offset, int[] values, int valuesOffset, int length) {
+        for (int i = 0; i < length; i += 4) {
+            final int selector = data[offset++] & 0xFF;
+            final int groupSize = Math.min(4, length - i);
+            for (int j = 0; j < groupSize; j++) {
+                final int noBytes = ((selector >>> (2*j)) & 3) + 1;
+                values[valuesOffset + i + j] = ((data[offset] & 0xFF) | (data[offset+1] & 0xFF) << 8
+                        | (data[offset+2] & 0xFF) << 16 | (data[offset+3] & 0xFF) << 24) & MASKS[noBytes];
+                offset += noBytes;
+            }
+        }
+        return offset;
+    }
+
+    /** Returns an iterator that can be used to read the postings in this (finished) posting list. */
+    public Iterator iterator() {
+        return new Iterator(this);
+    }
+
+    /** Iterator to read the postings in a block posting list. The iterator is initially positioned before the
+     * first posting; use {@link #nextPosting()} or {@link #skipTo(int)} to move to a posting. The header of the
+     * current block is decoded in full, the elements of a posting only when {@link #elements()} is called. */
+    public static final class Iterator {
+        private BlockPostingList postingList;
+        private byte[] data;
+
+        /** Index of current block */
+        private int block;
+
+        /** Number of postings in current block */
+        private int blockSize;
+
+        /** Index of current posting in current block */
+        private int posting;
+
+        /** Input ids, number of elements, and byte offsets of the postings in the current block */
+        private final int[] inputIds = new int[BLOCK_SIZE];
+        private final int[] noElements = new int[BLOCK_SIZE];
+        private final int[] offsets = new int[BLOCK_SIZE];
+
+        /** Header of the current block (temporary) */
+        private final int[] header = new int[3*BLOCK_SIZE];
+
+        /** The decoded elements of the current posting */
+        private int[] elements = new int[16];
+        private boolean elementsDecoded;
+
+        /** Creates an iterator without any data. This iterator must not be used before a posting list is set using
+         * {@link #reset(BlockPostingList)}. */
+        public Iterator() {
+        }
+
+        /** Creates an iterator backed by the given posting list */
+        public Iterator(BlockPostingList postingList) {
+            reset(postingList);
+        }
+
+        /** Resets this iterator to the position before the first posting of the given posting list. */
+        public void reset(BlockPostingList postingList) {
+            assert postingList.pendingInputIds.isEmpty(); // needs to be finished
+            this.postingList = postingList;
+            this.data = postingList.data.elements();
+            reset();
+        }
+
+        /** Resets this iterator to the position before the first posting. */
+        public void reset() {
+            block = -1;
+            blockSize = 0;
+            posting = 0;
+        }
+
+        /** Moves to the next posting and returns true if such a posting exists. */
+        public boolean nextPosting() {
+            if (++posting < blockSize) {
+                elementsDecoded = false;
+                return true;
+            }
+            return enterBlock(block + 1);
+        }
+
+        /** Moves to the first posting with an input id of at least <code>inputId</code>, skipping all blocks in
+         * between. Does not move if the current posting satisfies this condition already. Returns false if there
+         * is no such posting. */
+        public boolean skipTo(int inputId) {
+            if (posting < blockSize && inputIds[blockSize - 1] >= inputId) {
+                // target is in current block
+                if (inputIds[posting] < inputId) {
+                    do {
+                        posting++;
+                    } while (inputIds[posting] < inputId);
+                    elementsDecoded = false;
+                }
+                return true;
+            }
+
+            // binary search for last block with first input id <= inputId (or next block if there is none)
+            IntArrayList blockInputIds = postingList.blockInputIds;
+            int low = block + 1;
+            int high = blockInputIds.size() - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (blockInputIds.getInt(mid) <= inputId) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (!enterBlock(low)) {
+                return false;
+            }
+            while (posting < blockSize && inputIds[posting] < inputId) {
+                posting++;
+            }
+            return posting < blockSize || enterBlock(block + 1);
+        }
+
+        /** Moves to the first posting of the given block and decodes its header. */
+        private boolean enterBlock(int block) {
+            int noBlocks = postingList.blockOffsets.size();
+            if (block >= noBlocks) {
+                this.block = noBlocks;
+                blockSize = 0;
+                posting = 0;
+                return false;
+            }
+            this.block = block;
+            posting = 0;
+            elementsDecoded = false;
+
+            int offset = readGroupVarint(data, postingList.blockOffsets.getInt(block), header, 0, 1);
+            final int n = header[0];
+            offset = readGroupVarint(data, offset, header, 0, 3*n - 1);
+            blockSize = n;
+            int inputId = postingList.blockInputIds.getInt(block);
+            inputIds[0] = inputId;
+            for (int i = 1; i < n; i++) {
+                inputId += header[i - 1];
+                inputIds[i] = inputId;
+            }
+            System.arraycopy(header, n - 1, noElements, 0, n);
+            for (int i = 0; i < n; i++) {
+                offsets[i] = offset;
+                offset += header[2*n - 1 + i];
+            }
+            return true;
+        }
+
+        /** Returns the input id of the current posting. */
+        public int inputId() {
+            return inputIds[posting];
+        }
+
+        /** Returns the number of elements of the current posting. */
+        public int noElements() {
+            return noElements[posting];
+        }
+
+        /** Returns the elements of the current posting. Only the first {@link #noElements()} entries of the
+         * returned array are valid; the array is reused. */
+        public int[] elements() {
+            if (!elementsDecoded) {
+                int n = noElements[posting];
+                if (elements.length < n) {
+                    elements = new int[Math.max(n, 2*elements.length)];
+                }
+                readGroupVarint(data, offsets[posting], elements, 0, n);
+                elementsDecoded = true;
+            }
+            return elements;
+        }
+    }
+}
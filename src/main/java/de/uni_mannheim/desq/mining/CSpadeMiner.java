@@ -12,6 +12,9 @@ import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
 
 public final class CSpadeMiner extends DesqMiner {
 
@@ -28,6 +31,20 @@ public final class CSpadeMiner extends DesqMiner {
 
     protected boolean generalize;
 
+	/** Whether to store the posting lists of k-sequences with k&gt;=2 as {@link BlockPostingList}s, whose skip
+	 * pointers allow the join in {@link #bfsTraversal()} to jump over non-matching input sequences. The 2-sequences
+	 * are converted at the end of the input phase since they are the inputs of the first join. */
+	protected boolean useBlockPostings;
+
+	/** Whether to store dense k-sequences as bitmaps (see {@link #kBitmaps}) */
+	protected boolean useBitmaps;
+
+	/** Number of threads used to join the k-sequences of each level (1 = sequential) */
+	protected int numThreads;
+
+	/** A k-sequence is stored as a bitmap if its bitmap is at most this many times larger than its posting list */
+	private static final int BITMAP_MAX_OVERHEAD = 4;
+
 	/**
 	 * Start of pivot range (see class description). Set to 0 to mine all frequent
 	 * sequences.
@@ -91,6 +108,26 @@ public final class CSpadeMiner extends DesqMiner {
 	 */
 	protected ArrayList<PostingList> kPostingLists = new ArrayList<>();
 
+	/**
+	 * Posting list for each sequence in kSequences when block postings are used (see {@link #useBlockPostings}).
+	 * Replaces {@link #kPostingLists} once the input phase is finished. Input ids are stored as the input id of the
+	 * postings, positions as their elements.
+	 */
+	protected ArrayList<BlockPostingList> kBlockPostingLists = new ArrayList<>();
+
+	/**
+	 * Bitmap for each sequence in kSequences when bitmaps are used (see {@link #useBitmaps}), or null if the
+	 * sequence is stored as a posting list. Otherwise, the entry in the posting lists is null. A bitmap has one bit
+	 * for each position of each input sequence, followed by gamma+1 unused bits (see {@link #inputBitOffsets}); a
+	 * bit is set if the k-sequence starts at that position. Bitmaps are chosen for 2-sequences whose posting lists
+	 * are dense; (k+1)-sequences stay bitmaps as long as they are dense.
+	 */
+	protected ArrayList<long[]> kBitmaps = new ArrayList<>();
+
+	/** The offset of the first bit of each input sequence in a bitmap (indexed by input id), followed by the total
+	 * number of bits. Only used when bitmaps are used. */
+	protected final LongArrayList inputBitOffsets = new LongArrayList();
+
 	/**
 	 * Support of each input sequence (indexed by inputId). If an input
 	 * sequence has support larger than one, is it treated as if it had occured
@@ -126,8 +163,12 @@ public final class CSpadeMiner extends DesqMiner {
 		twoSequenceIndex.clear();
 		kSequences.clear();
 		kPostingLists.clear();
+		kBlockPostingLists.clear();
+		kBitmaps.clear();
 		kTotalSupports.clear();
 		inputSupports.clear();
+		inputBitOffsets.clear();
+		inputBitOffsets.add(0);
 	}
 
 	public static DesqProperties createConf(long sigma, int gamma, int lambda, boolean generalize) {
@@ -137,6 +178,9 @@ public final class CSpadeMiner extends DesqMiner {
 		conf.setProperty("desq.mining.max.gap", gamma);
 		conf.setProperty("desq.mining.max.length", lambda);
 		conf.setProperty("desq.mining.generalize", generalize);
+		conf.setProperty("desq.mining.use.block.postings", false);
+		conf.setProperty("desq.mining.use.bitmaps", false);
+		conf.setProperty("desq.mining.num.threads", 1);
 
 		return conf;
 	}
@@ -147,6 +191,9 @@ public final class CSpadeMiner extends DesqMiner {
 		int lambda = conf.getInt("desq.mining.max.length");
 		boolean generalize = conf.getBoolean("desq.mining.generalize");
 		setParameters(sigma, gamma, lambda, generalize);
+		this.useBlockPostings = conf.getBoolean("desq.mining.use.block.postings", false);
+		this.useBitmaps = conf.getBoolean("desq.mining.use.bitmaps", false);
+		this.numThreads = conf.getInt("desq.mining.num.threads", 1);
 	}
 
     public void setParameters(long sigma, int gamma, int lambda, boolean generalize) {
@@ -277,6 +324,11 @@ public final class CSpadeMiner extends DesqMiner {
 			position++;
 		}
 
+		// reserve the bits of this input sequence (plus gamma+1 unused bits) in the bitmaps
+		if (useBitmaps) {
+			inputBitOffsets.add(inputBitOffsets.getLong(inputBitOffsets.size() - 1) + position + gamma + 1);
+		}
+
 		// update 1-item counts
 		for (int itemFid : itemFids) {
             long count = inputSupport;
@@ -367,6 +419,28 @@ public final class CSpadeMiner extends DesqMiner {
 				// same id again (now holding a different kSequence)
 			}
 		}
+
+		// switch dense 2-sequences to bitmaps (if needed)
+		if (useBitmaps) {
+			long bitmapBytes = 8L * noBitmapWords();
+			for (int id = 0; id < kPostingLists.size(); id++) {
+				PostingList postingList = kPostingLists.get(id);
+				if (bitmapBytes <= BITMAP_MAX_OVERHEAD * postingList.noBytes()) {
+					kBitmaps.add(toBitmap(postingList));
+					kPostingLists.set(id, null);
+				} else {
+					kBitmaps.add(null);
+				}
+			}
+		}
+
+		// switch the 2-sequences to block postings (if needed); the joins then produce block postings directly
+		if (useBlockPostings) {
+			for (PostingList postingList : kPostingLists) {
+				kBlockPostingLists.add(postingList != null ? BlockPostingList.of(postingList) : null);
+			}
+			kPostingLists.clear();
+		}
 	}
 
 	// -- mining phase ------------------------------------------------------------------------------
@@ -475,20 +549,10 @@ public final class CSpadeMiner extends DesqMiner {
 		Map<IntArrayList, IntArrayList> sequencesWithPrefix = new Object2ObjectOpenHashMap<>();
 		buildPrefixSuffixIndex(sequencesWithPrefix, sequencesWithSuffix);
 
-		// variables for the (k+1)-sequences
-		int k1 = k + 1;
-		ArrayList<int[]> k1Sequences = new ArrayList<>();
-		ArrayList<PostingList> k1PostingLists = new ArrayList<>();
-		LongArrayList k1TotalSupports = new LongArrayList();
-
-		// temporary variables
-		PostingList postingList = new PostingList(); // list of postings for a new (k+1) sequence
-		PostingList.Iterator leftPostingList = new PostingList.Iterator(); // posting list of the left k-sequence
-		PostingList.Iterator rightPostingList = new PostingList.Iterator(); // posting list of the right k-sequence
-
 		// we now join sequences (e.g., abcde) that end with some suffix with
 		// sequences
 		// that start with the same prefix (e.g., bcdef)
+		ArrayList<IntArrayList[]> joinGroups = new ArrayList<>(); // pairs of left and right sequences to join
 		for (Map.Entry<IntArrayList, IntArrayList> entry : sequencesWithSuffix.entrySet()) {
 			// if there is no right key to join, continue
 			IntArrayList joinKey = entry.getKey();
@@ -497,134 +561,489 @@ public final class CSpadeMiner extends DesqMiner {
 				continue;
 			}
 
-			// there are right keys for the join, so let's join
-			IntArrayList leftSequences = entry.getValue(); // indexes of left sequences
-			for (int i = 0; i < leftSequences.size(); i++) {
-				// get the postings of that sequence for joining
-				leftPostingList.reset( kPostingLists.get(leftSequences.getInt(i)) );
-
-				// compression
-				// total number of successful joins for the current left sequence
-				int noK1SequencesForLeftSequence = 0;
-				int pointerToFirstK1Sequence = -1; // index of first join match
-
-				// for every right key that matches the current left key, perform
-				// a merge join of the posting lists (match if we find two postings
-				// of the same input sequence such that the starting position of the right
-				// sequence is close enough to the starting position of the left
-				// sequence (at most gamma items in between)
-				for (int j = 0; j < rightSequences.size(); j++) {
-					// initialize
-					postingList.clear();
-					long  totalSupport = 0; // of the current posting list
-					leftPostingList.offset = 0;
-					rightPostingList.reset( kPostingLists.get(rightSequences.getInt(j)) );
-					rightPostingList.offset = 0;
-					int leftInputId = leftPostingList.nextNonNegativeInt();
-					int rightInputId = rightPostingList.nextNonNegativeInt();
-					boolean foundMatchWithLeftInputId = false;
-
-					while (leftPostingList.hasNext() && rightPostingList.hasNext()) {
-						// invariant: leftPostingList and rightPostingList point to first
-						// position after a input sequence id
-
-						if (leftInputId == rightInputId) {
-							// potential match; now check offsets
-							int inputId = leftInputId;
-							int rightPosition = -1;
-							while (leftPostingList.hasNext()) {
-								int leftPosition = leftPostingList.nextNonNegativeInt();
-
-								// fast forward right cursor (merge join; positions are sorted)
-								while (rightPosition <= leftPosition && rightPostingList.hasNext()) {
-									rightPosition = rightPostingList.nextNonNegativeInt();
-								}
-								if (rightPosition <= leftPosition)
-									break;
-
-								// check whether join condition is met
-								if (rightPosition <= leftPosition + gamma + 1) {
-									// yes, add a posting
-									if (!foundMatchWithLeftInputId) {
-									    postingList.newPosting();
-										postingList.addNonNegativeInt(inputId);
-										foundMatchWithLeftInputId = true;
-										totalSupport += inputSupports.get(inputId);
-									}
-									postingList.addNonNegativeInt(leftPosition);
-								}
-							}
+			// there are right keys for the join, so remember the left and right sequences
+			joinGroups.add(new IntArrayList[] { entry.getValue(), rightSequences });
+		}
 
-							// advance both join lists
-							if (rightPostingList.nextPosting()) {
-								rightInputId = rightPostingList.nextNonNegativeInt();
-							}
-							if (leftPostingList.nextPosting()) {
-								leftInputId = leftPostingList.nextNonNegativeInt();
-								foundMatchWithLeftInputId = false;
-							}
-							// end leftInputId == rightTransactionId
-						} else if (leftInputId > rightInputId) {
-							// advance right join list (merge join; lists sorted by
-							// input sequence id)
-							if (rightPostingList.nextPosting()) {
-								rightInputId = rightPostingList.nextNonNegativeInt();
-							}
-						} else {
-							// advance left join (merge join; lists sorted by input sequence id)
-							if (leftPostingList.nextPosting()) {
-								leftInputId = leftPostingList.nextNonNegativeInt();
-								foundMatchWithLeftInputId = false;
+		// join all groups
+		JoinResult k1Result;
+		if (numThreads > 1 && joinGroups.size() > 1) {
+			k1Result = joinInParallel(joinGroups);
+		} else {
+			k1Result = new JoinResult();
+			Joiner joiner = new Joiner();
+			for (IntArrayList[] joinGroup : joinGroups) {
+				join(joinGroup[0], joinGroup[1], joiner, k1Result);
+			}
+		}
+
+		// we are done; store output
+		k = k + 1;
+		this.kSequences = k1Result.sequences;
+		this.kPostingLists = k1Result.postingLists;
+		this.kBlockPostingLists = k1Result.blockPostingLists;
+		this.kBitmaps = k1Result.bitmaps;
+		this.kTotalSupports = k1Result.totalSupports;
+	}
+
+	/** Joins the given groups on a fork-join pool with {@link #numThreads} threads. Each group is joined into its own
+	 * result and each thread uses its own {@link Joiner}. The results are concatenated in the order of the groups so
+	 * that the (k+1)-sequences and their prefix pointers are the same as when joining sequentially. */
+	private JoinResult joinInParallel(ArrayList<IntArrayList[]> joinGroups) {
+		JoinResult[] results = new JoinResult[joinGroups.size()];
+		ThreadLocal<Joiner> joiners = ThreadLocal.withInitial(Joiner::new);
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			pool.invoke(ForkJoinTask.adapt(() -> IntStream.range(0, results.length).parallel().forEach(g -> {
+				IntArrayList[] joinGroup = joinGroups.get(g);
+				results[g] = new JoinResult();
+				join(joinGroup[0], joinGroup[1], joiners.get(), results[g]);
+			})));
+		} finally {
+			pool.shutdown();
+		}
+
+		JoinResult k1Result = new JoinResult();
+		for (JoinResult result : results) {
+			k1Result.addAll(result);
+		}
+		return k1Result;
+	}
+
+	/** Joins each of the given left k-sequences (which end with the same suffix) with each of the given right
+	 * k-sequences (which start with this suffix) and adds the frequent (k+1)-sequences to the given result. */
+	private void join(IntArrayList leftSequences, IntArrayList rightSequences, Joiner joiner, JoinResult result) {
+		int k1 = k + 1;
+		for (int i = 0; i < leftSequences.size(); i++) {
+			// compression
+			// total number of successful joins for the current left sequence
+			int noK1SequencesForLeftSequence = 0;
+			int pointerToFirstK1Sequence = -1; // index of first join match
+
+			// for every right key that matches the current left key, perform
+			// a merge join of the posting lists (match if we find two postings
+			// of the same input sequence such that the starting position of the right
+			// sequence is close enough to the starting position of the left
+			// sequence (at most gamma items in between)
+			for (int j = 0; j < rightSequences.size(); j++) {
+				long totalSupport = joiner.join(leftSequences.getInt(i), rightSequences.getInt(j));
+
+				// if the new (k+1)-sequence has support equal or above minimum support,
+				// add it to the result of this round
+				if (totalSupport >= sigma) {
+					noK1SequencesForLeftSequence++;
+					int suffixItem = this.kSequences.get(rightSequences.getInt(j))[this.kSequences.get(rightSequences.getInt(j)).length - 1];
+					int[] kSequence; // holds result
+
+					if (noK1SequencesForLeftSequence == 1) {
+						// uncompressed output
+						pointerToFirstK1Sequence = result.sequences.size();
+
+						// construct whole (k+1)-sequence
+						kSequence = new int[k1];
+						int[] prefix = kSequences.get(leftSequences.getInt(i));
+						if (prefix.length == k1 - 1 || k1 <= 3) { // prefix sequence is uncompressed
+							System.arraycopy(prefix, 0, kSequence, 0, prefix.length);
+						} else { // prefix sequence is compressed (only suffix item stored)
+							// need to retrieve prefix from initial sequence
+							int prefixPos = prefix[0];
+							int[] tempPrefix = kSequences.get(prefixPos);
+							System.arraycopy(tempPrefix, 0, kSequence, 0, tempPrefix.length - 1);
+							kSequence[k1 - 2] = prefix[1];
+						}
+						kSequence[k1 - 1] = suffixItem;
+					} else {
+						// include only the suffix item of (k+1)-sequence (first k items
+						// same as the ones at index pointerToPrefixSequence)
+						kSequence = new int[2];
+						kSequence[0] = pointerToFirstK1Sequence;
+						kSequence[1] = suffixItem;
+					}
+
+					// store in results of current round (pointers are relative to the result)
+					result.sequences.add(kSequence);
+					joiner.addResultTo(result.postingLists, result.blockPostingLists, result.bitmaps);
+					result.totalSupports.add(totalSupport);
+				}
+			} // for all right sequences of the same key
+		} // for all left sequences of each left key
+	}
+
+	/** The (k+1)-sequences obtained by joining (some of) the k-sequences, along with their posting lists (or
+	 * bitmaps) and total supports. Prefix pointers of compressed sequences refer to positions in this result. */
+	private static final class JoinResult {
+		final ArrayList<int[]> sequences = new ArrayList<>();
+		final ArrayList<PostingList> postingLists = new ArrayList<>();
+		final ArrayList<BlockPostingList> blockPostingLists = new ArrayList<>();
+		final ArrayList<long[]> bitmaps = new ArrayList<>();
+		final LongArrayList totalSupports = new LongArrayList();
+
+		/** Appends the given result and adjusts its prefix pointers. */
+		void addAll(JoinResult other) {
+			int offset = sequences.size();
+			for (int[] sequence : other.sequences) {
+				if (sequence.length == 2) { // compressed (k+1)-sequence (since k+1 > 2)
+					sequence[0] += offset;
+				}
+				sequences.add(sequence);
+			}
+			postingLists.addAll(other.postingLists);
+			blockPostingLists.addAll(other.blockPostingLists);
+			bitmaps.addAll(other.bitmaps);
+			totalSupports.addAll(other.totalSupports);
+		}
+	}
+
+	/** Joins the posting lists or bitmaps of pairs of k-sequences. We join occurrences in the same input sequence
+	 * such that the starting position of the right sequence is close enough to the starting position of the left
+	 * sequence (at most gamma items in between). Holds the temporary variables of the join and its result. */
+	private final class Joiner {
+		/** The result of the last join (depending on the representation used) */
+		private final PostingList postingList = new PostingList();
+		private final BlockPostingList blockPostingList = new BlockPostingList();
+		private long[] bitmap;
+
+		/** Whether the result of the last join is (still) a bitmap and whether it should be stored as such */
+		private boolean joinedBitmaps;
+		private boolean resultIsBitmap;
+
+		/** Iterators over the posting lists being joined */
+		private final PostingList.Iterator leftPostingList = new PostingList.Iterator();
+		private final PostingList.Iterator rightPostingList = new PostingList.Iterator();
+		private final BlockPostingList.Iterator leftBlockPostingList = new BlockPostingList.Iterator();
+		private final BlockPostingList.Iterator rightBlockPostingList = new BlockPostingList.Iterator();
+
+		/** Posting lists decoded from bitmaps when a bitmap is joined with a posting list, along with the index of
+		 * the k-sequence they belong to (or -1) */
+		private final PostingList leftDecoded = new PostingList();
+		private final PostingList rightDecoded = new PostingList();
+		private final BlockPostingList leftBlockDecoded = new BlockPostingList();
+		private final BlockPostingList rightBlockDecoded = new BlockPostingList();
+		private int leftDecodedIndex = -1;
+		private int rightDecodedIndex = -1;
+
+		/**
+		 * Joins the given left and right k-sequences. Bitmaps are joined with bitmaps using word-level operations;
+		 * in all other cases, the posting lists are merge-joined (decoding bitmaps if needed).
+		 *
+		 * @return the total support of the resulting (k+1)-sequence
+		 */
+		long join(int leftIndex, int rightIndex) {
+			long[] leftBitmap = useBitmaps ? kBitmaps.get(leftIndex) : null;
+			long[] rightBitmap = useBitmaps ? kBitmaps.get(rightIndex) : null;
+			joinedBitmaps = leftBitmap != null && rightBitmap != null;
+			if (joinedBitmaps) {
+				return joinBitmaps(leftBitmap, rightBitmap);
+			}
+
+			resultIsBitmap = false;
+			if (useBlockPostings) {
+				if (leftBitmap != null && leftDecodedIndex != leftIndex) {
+					toBlockPostingList(leftBitmap, leftBlockDecoded);
+					leftDecodedIndex = leftIndex;
+				}
+				if (rightBitmap != null && rightDecodedIndex != rightIndex) {
+					toBlockPostingList(rightBitmap, rightBlockDecoded);
+					rightDecodedIndex = rightIndex;
+				}
+				return join(leftBitmap != null ? leftBlockDecoded : kBlockPostingLists.get(leftIndex),
+						rightBitmap != null ? rightBlockDecoded : kBlockPostingLists.get(rightIndex));
+			} else {
+				if (leftBitmap != null && leftDecodedIndex != leftIndex) {
+					toPostingList(leftBitmap, leftDecoded);
+					leftDecodedIndex = leftIndex;
+				}
+				if (rightBitmap != null && rightDecodedIndex != rightIndex) {
+					toPostingList(rightBitmap, rightDecoded);
+					rightDecodedIndex = rightIndex;
+				}
+				return join(leftBitmap != null ? leftDecoded : kPostingLists.get(leftIndex),
+						rightBitmap != null ? rightDecoded : kPostingLists.get(rightIndex));
+			}
+		}
+
+		/** Adds (a copy of) the result of the last join to the given lists of the (k+1)-sequences. */
+		void addResultTo(ArrayList<PostingList> k1PostingLists, ArrayList<BlockPostingList> k1BlockPostingLists,
+						 ArrayList<long[]> k1Bitmaps) {
+			if (useBitmaps) {
+				k1Bitmaps.add(resultIsBitmap ? bitmap.clone() : null);
+			}
+			if (resultIsBitmap) {
+				if (useBlockPostings) {
+					k1BlockPostingLists.add(null);
+				} else {
+					k1PostingLists.add(null);
+				}
+				return;
+			}
+
+			// copying necessary here; posting lists are reused
+			if (useBlockPostings) {
+				if (joinedBitmaps) {
+					toBlockPostingList(bitmap, blockPostingList);
+				}
+				k1BlockPostingLists.add(new BlockPostingList(blockPostingList));
+			} else {
+				if (joinedBitmaps) {
+					toPostingList(bitmap, postingList);
+				}
+				k1PostingLists.add(new PostingList(postingList));
+			}
+		}
+
+		/** Merge-joins two posting lists. */
+		private long join(PostingList left, PostingList right) {
+			// initialize
+			postingList.clear();
+			long  totalSupport = 0; // of the current posting list
+			leftPostingList.reset(left);
+			rightPostingList.reset(right);
+			int leftInputId = leftPostingList.nextNonNegativeInt();
+			int rightInputId = rightPostingList.nextNonNegativeInt();
+			boolean foundMatchWithLeftInputId = false;
+
+			while (leftPostingList.hasNext() && rightPostingList.hasNext()) {
+				// invariant: leftPostingList and rightPostingList point to first
+				// position after a input sequence id
+
+				if (leftInputId == rightInputId) {
+					// potential match; now check offsets
+					int inputId = leftInputId;
+					int rightPosition = -1;
+					while (leftPostingList.hasNext()) {
+						int leftPosition = leftPostingList.nextNonNegativeInt();
+
+						// fast forward right cursor (merge join; positions are sorted)
+						while (rightPosition <= leftPosition && rightPostingList.hasNext()) {
+							rightPosition = rightPostingList.nextNonNegativeInt();
+						}
+						if (rightPosition <= leftPosition)
+							break;
+
+						// check whether join condition is met
+						if (rightPosition <= leftPosition + gamma + 1) {
+							// yes, add a posting
+							if (!foundMatchWithLeftInputId) {
+							    postingList.newPosting();
+								postingList.addNonNegativeInt(inputId);
+								foundMatchWithLeftInputId = true;
+								totalSupport += inputSupports.get(inputId);
 							}
+							postingList.addNonNegativeInt(leftPosition);
 						}
 					}
 
-					// if the new (k+1)-sequence has support equal or above minimum support,
-					// add it to the result of this round
-					if (totalSupport >= sigma) {
-						noK1SequencesForLeftSequence++;
-						int suffixItem = this.kSequences.get(rightSequences.getInt(j))[this.kSequences.get(rightSequences.getInt(j)).length - 1];
-						int[] kSequence; // holds result
-
-						if (noK1SequencesForLeftSequence == 1) {
-							// uncompressed output
-							pointerToFirstK1Sequence = k1Sequences.size();
-
-							// construct whole (k+1)-sequence
-							kSequence = new int[k1];
-							int[] prefix = kSequences.get(leftSequences.getInt(i));
-							if (prefix.length == k1 - 1 || k1 <= 3) { // prefix sequence is uncompressed
-								System.arraycopy(prefix, 0, kSequence, 0, prefix.length);
-							} else { // prefix sequence is compressed (only suffix item stored)
-								// need to retrieve prefix from initial sequence
-								int prefixPos = prefix[0];
-								int[] tempPrefix = kSequences.get(prefixPos);
-								System.arraycopy(tempPrefix, 0, kSequence, 0, tempPrefix.length - 1);
-								kSequence[k1 - 2] = prefix[1];
+					// advance both join lists
+					if (rightPostingList.nextPosting()) {
+						rightInputId = rightPostingList.nextNonNegativeInt();
+					}
+					if (leftPostingList.nextPosting()) {
+						leftInputId = leftPostingList.nextNonNegativeInt();
+						foundMatchWithLeftInputId = false;
+					}
+					// end leftInputId == rightTransactionId
+				} else if (leftInputId > rightInputId) {
+					// advance right join list (merge join; lists sorted by
+					// input sequence id)
+					if (rightPostingList.nextPosting()) {
+						rightInputId = rightPostingList.nextNonNegativeInt();
+					}
+				} else {
+					// advance left join (merge join; lists sorted by input sequence id)
+					if (leftPostingList.nextPosting()) {
+						leftInputId = leftPostingList.nextNonNegativeInt();
+						foundMatchWithLeftInputId = false;
+					}
+				}
+			}
+			return totalSupport;
+		}
+
+		/** Merge-joins two block posting lists. Uses the skip pointers to jump over postings of input sequences that
+		 * do not occur in the other posting list. */
+		private long join(BlockPostingList left, BlockPostingList right) {
+			BlockPostingList postingList = blockPostingList;
+			BlockPostingList.Iterator leftPostingList = leftBlockPostingList;
+			BlockPostingList.Iterator rightPostingList = rightBlockPostingList;
+			postingList.clear();
+			long totalSupport = 0;
+			leftPostingList.reset(left);
+			rightPostingList.reset(right);
+			boolean hasLeft = leftPostingList.nextPosting();
+			boolean hasRight = rightPostingList.nextPosting();
+			while (hasLeft && hasRight) {
+				int leftInputId = leftPostingList.inputId();
+				int rightInputId = rightPostingList.inputId();
+				if (leftInputId < rightInputId) {
+					hasLeft = leftPostingList.skipTo(rightInputId);
+				} else if (leftInputId > rightInputId) {
+					hasRight = rightPostingList.skipTo(leftInputId);
+				} else {
+					// potential match; now check positions (merge join; positions are sorted)
+					int[] leftPositions = leftPostingList.elements();
+					int noLeftPositions = leftPostingList.noElements();
+					int[] rightPositions = rightPostingList.elements();
+					int noRightPositions = rightPostingList.noElements();
+					boolean foundMatch = false;
+					for (int l = 0, r = 0; l < noLeftPositions; l++) {
+						int leftPosition = leftPositions[l];
+
+						// fast forward right cursor
+						while (r < noRightPositions && rightPositions[r] <= leftPosition) {
+							r++;
+						}
+						if (r == noRightPositions)
+							break;
+
+						// check whether join condition is met
+						if (rightPositions[r] <= leftPosition + gamma + 1) {
+							// yes, add a posting
+							if (!foundMatch) {
+								postingList.newPosting(leftInputId);
+								foundMatch = true;
+								totalSupport += inputSupports.get(leftInputId);
 							}
-							kSequence[k1 - 1] = suffixItem;
-						} else {
-							// include only the suffix item of (k+1)-sequence (first k items
-							// same as the ones at index pointerToPrefixSequence)
-							kSequence = new int[2];
-							kSequence[0] = pointerToFirstK1Sequence;
-							kSequence[1] = suffixItem;
+							postingList.addNonNegativeInt(leftPosition);
 						}
+					}
+
+					// advance both join lists
+					hasLeft = leftPostingList.nextPosting();
+					hasRight = rightPostingList.nextPosting();
+				}
+			}
+			postingList.finish();
+			return totalSupport;
+		}
 
-						// store in results of current round
-						k1Sequences.add(kSequence);
-						k1PostingLists.add(new PostingList(postingList)); // copying necessary here; postingList reused
-						k1TotalSupports.add(totalSupport);
+		/** Joins two bitmaps: a bit of the result is set if it is set in the left bitmap and one of the next gamma+1
+		 * bits is set in the right bitmap. Since each input sequence is followed by gamma+1 unused bits, the
+		 * bits of different input sequences do not interfere. Decides whether the result is dense enough to be
+		 * stored as a bitmap. */
+		private long joinBitmaps(long[] left, long[] right) {
+			final int noWords = left.length;
+			if (bitmap == null || bitmap.length != noWords) {
+				bitmap = new long[noWords];
+			}
+			long totalSupport = 0;
+			long noSetBits = 0;
+			long noInputs = 0;
+			int inputId = 0; // input sequence of the current bit
+			int lastInputId = -1; // last input sequence added to the total support
+			for (int w = 0; w < noWords; w++) {
+				final long leftWord = left[w];
+				if (leftWord == 0) {
+					bitmap[w] = 0;
+					continue;
+				}
+				final long firstBit = (long) w << 6;
+				long rightWords = 0;
+				for (int d = 1; d <= gamma + 1; d++) {
+					rightWords |= wordAt(right, firstBit + d);
+				}
+				long word = leftWord & rightWords;
+				bitmap[w] = word;
+				noSetBits += Long.bitCount(word);
+
+				// update the total support for each input sequence that has a bit in the current word
+				while (word != 0) {
+					final long bit = firstBit + Long.numberOfTrailingZeros(word);
+					while (inputBitOffsets.getLong(inputId + 1) <= bit) {
+						inputId++;
 					}
-				} // for all right sequences of the same key
-			} // for all left sequences of each left key
-		} // for all left keys
+					if (inputId != lastInputId) {
+						totalSupport += inputSupports.getLong(inputId);
+						noInputs++;
+						lastInputId = inputId;
+					}
+					final long end = inputBitOffsets.getLong(inputId + 1) - firstBit; // first bit of next input
+					word = end >= 64 ? 0 : word & (-1L << end);
+				}
+			}
 
-		// we are done; store output
-		k = k1;
-		this.kSequences = k1Sequences;
-		this.kPostingLists = k1PostingLists;
-		this.kTotalSupports = k1TotalSupports;
+			// a posting list needs at least one byte per input sequence id, separator, and position
+			resultIsBitmap = 8L * noWords <= BITMAP_MAX_OVERHEAD * (noSetBits + 2*noInputs);
+			return totalSupport;
+		}
+	}
+
+	/** Returns the 64 bits of the given bitmap starting at the given bit. */
+	private static long wordAt(long[] bitmap, long bit) {
+		final int w = (int) (bit >>> 6);
+		if (w >= bitmap.length) {
+			return 0;
+		}
+		final int offset = (int) (bit & 63);
+		long word = bitmap[w] >>> offset;
+		if (offset != 0 && w + 1 < bitmap.length) {
+			word |= bitmap[w + 1] << (64 - offset);
+		}
+		return word;
+	}
+
+	/** Returns the number of 64-bit words of a bitmap. */
+	private int noBitmapWords() {
+		return (int) ((inputBitOffsets.getLong(inputBitOffsets.size() - 1) + 63) >>> 6);
+	}
+
+	/** Converts a posting list in which the first element of each posting is the input id into a bitmap. */
+	private long[] toBitmap(PostingList postingList) {
+		long[] bitmap = new long[noBitmapWords()];
+		PostingList.Iterator it = postingList.iterator();
+		do {
+			final long firstBit = inputBitOffsets.getLong(it.nextNonNegativeInt());
+			while (it.hasNext()) {
+				final long bit = firstBit + it.nextNonNegativeInt();
+				bitmap[(int) (bit >>> 6)] |= 1L << bit;
+			}
+		} while (it.nextPosting());
+		return bitmap;
+	}
+
+	/** Converts a bitmap into a posting list in which the first element of each posting is the input id. */
+	private void toPostingList(long[] bitmap, PostingList postingList) {
+		postingList.clear();
+		int inputId = 0;
+		int lastInputId = -1;
+		for (int w = 0; w < bitmap.length; w++) {
+			long word = bitmap[w];
+			while (word != 0) {
+				final long bit = ((long) w << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+				while (inputBitOffsets.getLong(inputId + 1) <= bit) {
+					inputId++;
+				}
+				if (inputId != lastInputId) {
+					postingList.newPosting();
+					postingList.addNonNegativeInt(inputId);
+					lastInputId = inputId;
+				}
+				postingList.addNonNegativeInt((int) (bit - inputBitOffsets.getLong(inputId)));
+			}
+		}
+	}
+
+	/** Converts a bitmap into a block posting list. */
+	private void toBlockPostingList(long[] bitmap, BlockPostingList postingList) {
+		postingList.clear();
+		int inputId = 0;
+		int lastInputId = -1;
+		for (int w = 0; w < bitmap.length; w++) {
+			long word = bitmap[w];
+			while (word != 0) {
+				final long bit = ((long) w << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+				while (inputBitOffsets.getLong(inputId + 1) <= bit) {
+					inputId++;
+				}
+				if (inputId != lastInputId) {
+					postingList.newPosting(inputId);
+					lastInputId = inputId;
+				}
+				postingList.addNonNegativeInt((int) (bit - inputBitOffsets.getLong(inputId)));
+			}
+		}
+		postingList.finish();
 	}
 
 	/** Builds a prefix/suffix index from the currently stored k-sequences */
@@ -1,18 +1,28 @@
 package de.uni_mannheim.desq.mining;
 
 import de.uni_mannheim.desq.fst.*;
+import de.uni_mannheim.desq.io.MemoryPatternWriter;
 import de.uni_mannheim.desq.patex.PatExUtils;
 import de.uni_mannheim.desq.util.DesqProperties;
-import de.uni_mannheim.desq.util.PrimitiveUtils;
+import it.unimi.dsi.fastutil.HashCommon;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
-import it.unimi.dsi.fastutil.objects.Object2LongMap;
-import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
-import it.unimi.dsi.fastutil.objects.ObjectSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectList;
 import org.apache.log4j.Logger;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 
 public final class DesqCount extends DesqMiner {
 	private static final Logger logger = Logger.getLogger(DesqCount.class);
@@ -34,12 +44,17 @@ public final class DesqCount extends DesqMiner {
 	/** If true, the two-pass algorithm is used */
 	final boolean useTwoPass;
 
+	/** Number of threads used to count (1 = sequential) */
+	final int numThreads;
 
 	// -- helper variables --------------------------------------------------------------------------------------------
 
 	/** Stores the final state transducer  */
 	final Fst fst;
 
+	/** Flattened form of {@link #fst} used to run the FST (possibly by generated code) */
+	final CompiledFst compiledFst;
+
 	/** Stores the largest fid of an item with frequency at least sigma. Used to quickly determine
 	 * whether an item is frequent (if fid <= largestFrequentFid, the item is frequent */
 	final int largestFrequentFid;
@@ -55,16 +70,25 @@ public final class DesqCount extends DesqMiner {
 	/** The support of the current input sequence */
 	long inputSupport;
 
-	/** Stores all mined sequences along with their frequency. Each long is composed of a 32-bit integer storing the
-	 * actual count and a 32-bit integer storing the input id of the last input sequence that produced this output.  */
-	final Object2LongOpenHashMap<Sequence> outputSequences = new Object2LongOpenHashMap<>();
+	/** Stores all mined sequences along with their frequency and the input id of the last input sequence that
+	 * produced them. */
+	final SequenceSupportTable outputSequences = new SequenceSupportTable();
 
-	/** Stores iterators over output item/next state pairs for reuse. Indexed by input position. */
-	final ArrayList<State.ItemStateIterator> itemStateIterators = new ArrayList<>();
+	/** Stores the output item/next state pairs of all active calls of {@link #step(int, State)}. Each call appends
+	 * its pairs and removes them once done. */
+	final CompiledFst.Buffer stepBuffer;
 
 	/** Stores the part of the output sequence produced so far. */
 	final Sequence prefix;
 
+	/** Stores the hash values of all prefixes of {@link #prefix} (including the empty one and prefix itself) for
+	 * {@link #outputSequences}. */
+	final IntArrayList prefixHashes;
+
+	/** If non-null, the entry ids of all output sequences counted for the current input sequence are appended to
+	 * this list (each entry id at most once per input sequence). Used by {@link StreamingDesqCount}. */
+	private final IntArrayList countedEntryIds;
+
 	// -- helper variables for pruning and twopass --------------------------------------------------------------------
 
 	/** The DFA corresponding to the FST (pruning) or reverse FST (two-pass). */
@@ -76,26 +100,85 @@ public final class DesqCount extends DesqMiner {
 	/** Positions for which dfa reached an initial FST state (two-pass only) */
 	final IntList dfaInitalPos;
 
+	// -- helper variables for parallel counting ----------------------------------------------------------------------
+
+	/** Number of input sequences handed to a worker at once */
+	private static final int PARALLEL_BATCH_SIZE = 256;
+
+	/** Maximum number of batches per thread that have been handed to the workers but not yet processed */
+	private static final int PARALLEL_MAX_BATCHES_PER_THREAD = 4;
+
+	/** The threads that run the workers. Started when the first input sequence is added. */
+	private ExecutorService pool;
+
+	/** The worker of each thread of {@link #pool}. Each worker counts into its own {@link #outputSequences}. */
+	private ThreadLocal<DesqCount> workers;
+
+	/** All workers created so far */
+	private List<DesqCount> shards;
+
+	/** The batch of input sequences currently being filled */
+	private Batch currentBatch;
+
+	/** Bounds the number of batches in flight */
+	private Semaphore batchesInFlight;
+
+	/** The first error that occurred in a worker, if any */
+	private AtomicReference<Throwable> workerError;
+
 
 	// -- construction/clearing ---------------------------------------------------------------------------------------
 
 	public DesqCount(DesqMinerContext ctx) {
+		this(ctx, null);
+	}
+
+	/** Creates a miner that uses the given FST and DFA instead of compiling the pattern expression. The compiled
+	 * pattern must have been obtained from {@link #getCompiledPattern()} of a miner with the same configuration
+	 * and dictionary. If null, the pattern expression is compiled.
+	 */
+	public DesqCount(DesqMinerContext ctx, CompiledPattern compiledPattern) {
+		this(ctx, compiledPattern, null);
+	}
+
+	/** Creates a miner as in {@link #DesqCount(DesqMinerContext, CompiledPattern)} that additionally appends the entry
+	 * ids of the output sequences counted for each input sequence to <code>countedEntryIds</code> (if non-null). */
+	DesqCount(DesqMinerContext ctx, CompiledPattern compiledPattern, IntArrayList countedEntryIds) {
 		super(ctx);
+		this.countedEntryIds = countedEntryIds;
 		this.sigma = ctx.conf.getLong("desq.mining.min.support");
 		this.useFlist = ctx.conf.getBoolean("desq.mining.use.flist");
 		this.pruneIrrelevantInputs = ctx.conf.getBoolean("desq.mining.prune.irrelevant.inputs");
 		this.useTwoPass = ctx.conf.getBoolean("desq.mining.use.two.pass");
+		this.numThreads = ctx.conf.getInt("desq.mining.num.threads", 1);
 		boolean useLazyDfa = ctx.conf.getBoolean("desq.mining.use.lazy.dfa");
+		boolean threadSafeDfa = numThreads > 1  // shared by workers
+				|| ctx.conf.getInt("desq.mining.input.num.threads", 1) > 1; // shared by input filters
 
 		// initalize helper variable for FST simulation
 		this.largestFrequentFid = ctx.dict.lastFidAbove(sigma);
 		this.inputId = 0;
 		prefix = new Sequence();
-		outputSequences.defaultReturnValue(-1L);
+		prefixHashes = new IntArrayList();
+		prefixHashes.add(SequenceSupportTable.EMPTY_HASH);
 
-		// create FST
+		// look up the FST and DFA in the cache (if any)
 		patternExpression = ctx.conf.getString("desq.mining.pattern.expression");
-		this.fst = PatExUtils.toFst(ctx.dict, patternExpression);
+		String cacheDir = ctx.conf.getString("desq.mining.pattern.cache.dir", null);
+		CompiledPatternCache cache = null;
+		String cacheKey = null;
+		if (compiledPattern == null && cacheDir != null && !useLazyDfa) { // lazy DFAs cannot be cached
+			cache = new CompiledPatternCache(new File(cacheDir));
+			cacheKey = CompiledPatternCache.keyOf(ctx.dict, patternExpression, largestFrequentFid,
+					useTwoPass ? "reverse" : pruneIrrelevantInputs ? "forward" : "none");
+			compiledPattern = cache.get(cacheKey, ctx.dict);
+			if (compiledPattern != null) {
+				cache = null; // nothing to store
+			}
+		}
+
+		// create FST
+		this.fst = compiledPattern != null ? compiledPattern.getFst() : PatExUtils.toFst(ctx.dict, patternExpression);
 
 		// create two pass auxiliary variables (if needed)
 		if (useTwoPass) { // two-pass
@@ -113,17 +196,64 @@ public final class DesqCount extends DesqMiner {
 		}
 
 		// create DFA or reverse DFA (if needed)
-		if(useTwoPass) {
+		if (compiledPattern != null) {
+			this.dfa = compiledPattern.getDfa();
+		} else if(useTwoPass) {
 			// construct the DFA for the FST (for the first pass)
 			// the DFA is constructed for the reverse FST
-			this.dfa = Dfa.createReverseDfa(fst, ctx.dict, largestFrequentFid, true, useLazyDfa);
+			this.dfa = Dfa.createReverseDfa(fst, ctx.dict, largestFrequentFid, true, useLazyDfa, threadSafeDfa,
+					numThreads);
 		} else if (pruneIrrelevantInputs) {
 			// construct the DFA to prune irrelevant inputs
 			// the DFA is constructed for the forward FST
-			this.dfa = Dfa.createDfa(fst, ctx.dict, largestFrequentFid, false, useLazyDfa);
+			this.dfa = Dfa.createDfa(fst, ctx.dict, largestFrequentFid, false, useLazyDfa, threadSafeDfa,
+					numThreads);
 		} else {
 			this.dfa = null;
 		}
+
+		// compile the FST (after creating the DFA, which may modify the FST)
+		// infrequent outputs are only needed without flist
+		boolean useFstCodegen = ctx.conf.getBoolean("desq.mining.use.fst.codegen", false);
+		boolean useOutputTables = ctx.conf.getBoolean("desq.mining.use.output.tables", false);
+		int largestOutputFid = useFlist ? largestFrequentFid : ctx.dict.lastFid();
+		this.compiledFst = new CompiledFst(fst, ctx.dict, useFstCodegen, useOutputTables ? largestOutputFid : -1);
+		this.stepBuffer = new CompiledFst.Buffer(ctx.dict.isForest());
+
+		// store the FST and DFA in the cache (if needed)
+		if (cache != null) {
+			cache.put(cacheKey, getCompiledPattern());
+		}
+	}
+
+	/** Creates a worker for parallel counting. The worker shares the FST and the DFA with the given miner, but
+	 * counts into its own table. */
+	private DesqCount(DesqCount parent) {
+		super(parent.ctx);
+		sigma = parent.sigma;
+		patternExpression = parent.patternExpression;
+		useFlist = parent.useFlist;
+		pruneIrrelevantInputs = parent.pruneIrrelevantInputs;
+		useTwoPass = parent.useTwoPass;
+		numThreads = 1;
+		fst = parent.fst;
+		compiledFst = parent.compiledFst;
+		stepBuffer = new CompiledFst.Buffer(ctx.dict.isForest());
+		largestFrequentFid = parent.largestFrequentFid;
+		dfa = parent.dfa;
+		countedEntryIds = null;
+		inputId = 0;
+		prefix = new Sequence();
+		prefixHashes = new IntArrayList();
+		prefixHashes.add(SequenceSupportTable.EMPTY_HASH);
+		dfaStateSequence = useTwoPass ? new ArrayList<>() : null;
+		dfaInitalPos = useTwoPass ? new IntArrayList() : null;
+	}
+
+	/** Returns the FST and DFA used by this miner in a form that can be serialized, e.g., for shipping them to
+	 * other processes instead of compiling the pattern expression there. Lazy DFAs cannot be serialized. */
+	public CompiledPattern getCompiledPattern() {
+		return new CompiledPattern(fst, dfa);
 	}
 
 	public static DesqProperties createConf(String patternExpression, long sigma) {
@@ -135,6 +265,9 @@ public final class DesqCount extends DesqMiner {
 		conf.setProperty("desq.mining.prune.irrelevant.inputs", true);
 		conf.setProperty("desq.mining.use.lazy.dfa", false);
 		conf.setProperty("desq.mining.use.two.pass", true);
+		conf.setProperty("desq.mining.num.threads", 1);
+		conf.setProperty("desq.mining.use.fst.codegen", false);
+		conf.setProperty("desq.mining.use.output.tables", false);
 		return conf;
 	}
 
@@ -143,22 +276,22 @@ public final class DesqCount extends DesqMiner {
 
 	@Override
 	protected void addInputSequence(IntList sequence, long support, boolean allowBuffering) {
-		assert prefix.isEmpty(); // will be maintained by stepOnePass()
-		this.inputSequence = sequence;
-		this.inputSupport = support;
+		if (numThreads > 1) {
+			addToBatch(allowBuffering ? sequence : new Sequence(sequence), support, null);
+		} else {
+			countInputSequence(sequence, support);
+		}
+	}
 
+	/** Simulates the FST on the given input sequence (if relevant) and counts its outputs. */
+	void countInputSequence(IntList sequence, long support) {
 		// two-pass version of DesqCount
 		if (useTwoPass) {
 			// run the input sequence through the EDFA and compute the state sequences as well as the positions
 			// at which, we start the FST simulation
 			if (dfa.acceptsReverse(sequence, dfaStateSequence, dfaInitalPos)) {
 				// we now know that the sequence is relevant; process it
-				// look at all initial positions from which a final FST state can be reached
-				for (final int pos : dfaInitalPos) {
-					// for those positions, start with initial state
-					step(pos, fst.getInitialState(), 0);
-				}
-				inputId++;
+				addRelevantInputSequence(sequence, support, dfaInitalPos);
 			}
 			dfaStateSequence.clear();
 			dfaInitalPos.clear();
@@ -167,24 +300,83 @@ public final class DesqCount extends DesqMiner {
 
 		// one-pass version of DesqCount
 		if (!pruneIrrelevantInputs /*without pruning*/ || dfa.accepts(sequence) /*with pruning*/) {
-			step(0, fst.getInitialState(), 0);
-			inputId++;
+			addRelevantInputSequence(sequence, support, null);
+		}
+	}
+
+	@Override
+	protected InputFilter createInputFilter() {
+		if (useTwoPass) {
+			return new DfaInputFilter(dfa, true);
+		} else if (pruneIrrelevantInputs) {
+			return new DfaInputFilter(dfa, false);
+		} else {
+			return null;
+		}
+	}
+
+	@Override
+	protected void addFilteredInputSequence(IntList sequence, long support, Object filterResult) {
+		if (numThreads > 1) {
+			addToBatch(sequence, support, filterResult);
+		} else {
+			countFilteredInputSequence(sequence, support, filterResult);
+		}
+	}
+
+	/** Counts the outputs of an input sequence that passed the filter of {@link #createInputFilter()}. */
+	void countFilteredInputSequence(IntList sequence, long support, Object filterResult) {
+		if (useTwoPass) {
+			DfaInputFilter.ReverseRun run = (DfaInputFilter.ReverseRun) filterResult;
+			Collections.addAll(dfaStateSequence, run.dfaStateSequence);
+			addRelevantInputSequence(sequence, support, run.dfaInitialPos);
+			dfaStateSequence.clear();
+		} else {
+			addRelevantInputSequence(sequence, support, null);
 		}
 	}
 
+	/** Simulates the FST on a relevant input sequence. In two-pass, {@link #dfaStateSequence} must hold the state
+	 * sequence of the reverse DFA and <code>initialPos</code> the positions at which to start; otherwise,
+	 * <code>initialPos</code> is null. */
+	private void addRelevantInputSequence(IntList sequence, long support, IntList initialPos) {
+		assert prefix.isEmpty(); // will be maintained by stepOnePass()
+		this.inputSequence = sequence;
+		this.inputSupport = support;
+
+		if (initialPos != null) {
+			// look at all initial positions from which a final FST state can be reached
+			for (final int pos : initialPos) {
+				// for those positions, start with initial state
+				step(pos, fst.getInitialState());
+			}
+		} else {
+			step(0, fst.getInitialState());
+		}
+		inputId++;
+	}
+
 	// -- mining ------------------------------------------------------------------------------------------------------
 
 	@Override
 	public void mine() {
+		if (numThreads > 1) {
+			mineInParallel();
+			return;
+		}
+
 		// by this time, the result is already stored in outputSequences. We only need to filter out the infrequent
 		// ones.
-		for(Object2LongMap.Entry<Sequence> entry : outputSequences.object2LongEntrySet()) {
-			long value = entry.getLongValue();
-			int support = PrimitiveUtils.getLeft(value);
+		if (ctx.patternWriter == null) {
+			return;
+		}
+		Sequence outputSequence = new Sequence();
+		for (int entryId = outputSequences.nextEntryId(0); entryId >= 0;
+			 entryId = outputSequences.nextEntryId(entryId+1)) {
+			long support = outputSequences.getSupport(entryId);
 			if (support >= sigma) {
-				if (ctx.patternWriter != null) {
-					ctx.patternWriter.write(entry.getKey(), support);
-				}
+				outputSequences.getSequence(entryId, outputSequence);
+				ctx.patternWriter.write(outputSequence, support);
 			}
 		}
 	}
@@ -195,10 +387,15 @@ public final class DesqCount extends DesqMiner {
 	 * @param inputSequence
 	 * @return
 	 */
-	public ObjectSet<Sequence> mine1(IntList inputSequence, long inputSupport) {
+	public ObjectList<Sequence> mine1(IntList inputSequence, long inputSupport) {
 		outputSequences.clear();
-		addInputSequence(inputSequence, inputSupport, true);
-		return outputSequences.keySet();
+		countInputSequence(inputSequence, inputSupport);
+		ObjectList<Sequence> result = new ObjectArrayList<>(outputSequences.size());
+		for (int entryId = outputSequences.nextEntryId(0); entryId >= 0;
+			 entryId = outputSequences.nextEntryId(entryId+1)) {
+			result.add(outputSequences.getSequence(entryId));
+		}
+		return result;
 	}
 
 	/** Simulates the FST starting from the given position and state. Maintains the invariant that the current
@@ -206,9 +403,8 @@ public final class DesqCount extends DesqMiner {
 	 *
 	 * @param pos position of next input item
 	 * @param state current state of FST
-	 * @param level recursion level (used for reusing iterators without conflict)
 	 */
-	private void step(int pos, State state, int level) {
+	private void step(int pos, State state) {
 		// stop recursing if we reached a final-complete state or consumed the entire input
 		// and output if we stop at a final state
 		if (state.isFinalComplete() || pos == inputSequence.size()) {
@@ -218,26 +414,21 @@ public final class DesqCount extends DesqMiner {
 			return;
 		}
 
-		// get iterator over next output item/state pairs; reuse existing ones if possible
+		// compute the next output item/state pairs; they are appended to the step buffer
 		// in two-pass, only iterates over states that we saw in the first pass (the other ones can safely be skipped)
 		final int itemFid = inputSequence.getInt(pos);
 		final BitSet validToStates = useTwoPass
 				? dfaStateSequence.get( inputSequence.size()-(pos+1) ).getFstStates() // only states from first pass
 				: null; // all states
-		State.ItemStateIterator itemStateIt;
-		if (level>=itemStateIterators.size()) {
-			itemStateIt = state.consume(itemFid, new State.ItemStateIterator(ctx.dict.isForest()), validToStates);
-			itemStateIterators.add(itemStateIt);
-		} else {
-			itemStateIt = state.consume(itemFid, itemStateIterators.get(level), validToStates);
-		}
-
+		final IntArrayList pairs = stepBuffer.pairs;
+		final int begin = pairs.size();
+		compiledFst.step(state.getId(), itemFid, validToStates, stepBuffer);
+		final int end = pairs.size();
 
 		// iterate over output item/state pairs
-		while(itemStateIt.hasNext()) {
-			final ItemState itemState = itemStateIt.next();
-			final State toState = itemState.state;
-			final int outputItemFid = itemState.itemFid;
+		for (int i = begin; i < end; i += 2) {
+			final int outputItemFid = pairs.getInt(i);
+			final State toState = compiledFst.getState(pairs.getInt(i + 1));
 
 			if(outputItemFid == 0) { // EPS output
 				// we did not get an output
@@ -248,39 +439,215 @@ public final class DesqCount extends DesqMiner {
 				}
 
 				// otherwise, continue with the current prefix
-				final int newLevel = level + (itemStateIt.hasNext() ? 1 : 0); // no need to create new iterator if we are done on this level
-				step(pos + 1, toState, newLevel);
+				step(pos + 1, toState);
 			} else {
 				// we got an output; check whether it is relevant
 				if (!useFlist || largestFrequentFid >= outputItemFid) {
 					// now append this item to the prefix, continue running the FST, and remove the item once done
 					prefix.add(outputItemFid);
-					final int newLevel = level + (itemStateIt.hasNext() ? 1 : 0); // no need to create new iterator if we are done on this level
-					step(pos + 1, toState, newLevel);
+					prefixHashes.add(SequenceSupportTable.extendHash(prefixHashes.topInt(), outputItemFid));
+					step(pos + 1, toState);
 					prefix.removeInt(prefix.size() - 1);
+					prefixHashes.popInt();
 				}
 			}
 		}
+		pairs.size(begin);
 	}
 
-	/** Counts the provided output sequence. Avoids double-counting.
-	 *
-	 * TODO: does not work correctly if supports grow beyond integer size
-	 */
+	/** Counts the provided output sequence, which must equal {@link #prefix}. Avoids double-counting. */
 	private void countSequence(Sequence sequence) {
-		long supSid = outputSequences.getLong(sequence);
+		final int hash = prefixHashes.topInt();
+		assert hash == SequenceSupportTable.hash(sequence);
+		final int entryId = outputSequences.find(sequence, hash);
 
 		// add sequence if never mined before
-		if (supSid == -1) { // return value when key not present
-			outputSequences.put(new Sequence(sequence), PrimitiveUtils.combine((int)inputSupport, inputId)); // need to copy here
+		if (entryId < 0) {
+			final int newEntryId = outputSequences.add(sequence, hash, inputSupport, inputId); // copies the sequence
+			if (countedEntryIds != null) {
+				countedEntryIds.add(newEntryId);
+			}
 			return;
 		}
 
 		// otherwise increment frequency when if hasn't been mined from the current input sequence already
-		if (PrimitiveUtils.getRight(supSid) != inputId) {
-			int newCount = PrimitiveUtils.getLeft(supSid) + (int)inputSupport;
-			outputSequences.put(sequence, PrimitiveUtils.combine(newCount, inputId));
+		if (outputSequences.getLastInputId(entryId) != inputId) {
+			outputSequences.setSupport(entryId, outputSequences.getSupport(entryId) + inputSupport);
+			outputSequences.setLastInputId(entryId, inputId);
+			if (countedEntryIds != null) {
+				countedEntryIds.add(entryId);
+			}
+		}
+	}
+
+	// -- parallel counting -------------------------------------------------------------------------------------------
+
+	/** A batch of input sequences (along with their supports and filter results, if any) */
+	private static final class Batch {
+		final ArrayList<IntList> sequences = new ArrayList<>(PARALLEL_BATCH_SIZE);
+		final long[] supports = new long[PARALLEL_BATCH_SIZE];
+		final Object[] filterResults = new Object[PARALLEL_BATCH_SIZE];
+	}
+
+	/** Adds an input sequence to the current batch and hands the batch to the workers once it is full. The input
+	 * sequence must not be modified afterwards. If the filter result is null, the input sequence has not been
+	 * filtered yet. */
+	private void addToBatch(IntList sequence, long support, Object filterResult) {
+		if (currentBatch == null) {
+			currentBatch = new Batch();
+		}
+		final int i = currentBatch.sequences.size();
+		currentBatch.sequences.add(sequence);
+		currentBatch.supports[i] = support;
+		currentBatch.filterResults[i] = filterResult;
+		if (currentBatch.sequences.size() == PARALLEL_BATCH_SIZE) {
+			submitCurrentBatch();
+		}
+	}
+
+	/** Hands the current batch to the worker of some thread. Blocks if too many batches are in flight. */
+	private void submitCurrentBatch() {
+		if (currentBatch == null) {
+			return;
 		}
+		if (pool == null) {
+			ctx.dict.isForest(); // make sure that this is computed before the workers are created
+			pool = Executors.newFixedThreadPool(numThreads);
+			shards = Collections.synchronizedList(new ArrayList<>());
+			workers = ThreadLocal.withInitial(() -> {
+				DesqCount worker = new DesqCount(this);
+				shards.add(worker);
+				return worker;
+			});
+			batchesInFlight = new Semaphore(numThreads * PARALLEL_MAX_BATCHES_PER_THREAD);
+			workerError = new AtomicReference<>();
+		}
+		checkWorkerError();
+
+		final Batch batch = currentBatch;
+		currentBatch = null;
+		batchesInFlight.acquireUninterruptibly();
+		pool.execute(() -> {
+			try {
+				final DesqCount worker = workers.get();
+				for (int i = 0; i < batch.sequences.size(); i++) {
+					if (batch.filterResults[i] == null) {
+						worker.countInputSequence(batch.sequences.get(i), batch.supports[i]);
+					} else {
+						worker.countFilteredInputSequence(batch.sequences.get(i), batch.supports[i],
+								batch.filterResults[i]);
+					}
+				}
+			} catch (Throwable t) {
+				workerError.compareAndSet(null, t);
+			} finally {
+				batchesInFlight.release();
+			}
+		});
 	}
 
+	private void checkWorkerError() {
+		Throwable t = workerError.get();
+		if (t != null) {
+			throw new RuntimeException("DesqCount worker failed", t);
+		}
+	}
+
+	/** Waits until all input sequences have been counted, merges the tables of the workers, and outputs the
+	 * frequent sequences. Merging is done in parallel by partitioning the sequences on their hash values; since each
+	 * input sequence is counted by exactly one worker, supports can simply be added up. */
+	private void mineInParallel() {
+		submitCurrentBatch();
+		if (pool == null) {
+			return; // no input sequences
+		}
+		batchesInFlight.acquireUninterruptibly(numThreads * PARALLEL_MAX_BATCHES_PER_THREAD);
+		try {
+			checkWorkerError();
+			if (ctx.patternWriter == null) {
+				return;
+			}
+
+			// determine the entries of each worker by partition
+			final int numPartitions = numThreads;
+			final List<Callable<IntArrayList[]>> partitionTasks = new ArrayList<>(shards.size());
+			for (final DesqCount shard : shards) {
+				partitionTasks.add(() -> {
+					final IntArrayList[] entryIds = new IntArrayList[numPartitions];
+					for (int p = 0; p < numPartitions; p++) {
+						entryIds[p] = new IntArrayList();
+					}
+					final SequenceSupportTable table = shard.outputSequences;
+					for (int entryId = table.nextEntryId(0); entryId >= 0; entryId = table.nextEntryId(entryId+1)) {
+						entryIds[partitionOf(table.getHash(entryId), numPartitions)].add(entryId);
+					}
+					return entryIds;
+				});
+			}
+			final List<IntArrayList[]> entryIdsByShard = invokeAll(partitionTasks);
+
+			// merge each partition and collect its frequent sequences
+			final List<Callable<MemoryPatternWriter>> mergeTasks = new ArrayList<>(numPartitions);
+			for (int p = 0; p < numPartitions; p++) {
+				final int partition = p;
+				mergeTasks.add(() -> {
+					final SequenceSupportTable merged = new SequenceSupportTable();
+					final Sequence sequence = new Sequence();
+					for (int s = 0; s < shards.size(); s++) {
+						final SequenceSupportTable table = shards.get(s).outputSequences;
+						for (final int entryId : entryIdsByShard.get(s)[partition]) {
+							table.getSequence(entryId, sequence);
+							final int hash = table.getHash(entryId);
+							final int mergedEntryId = merged.find(sequence, hash);
+							if (mergedEntryId < 0) {
+								merged.add(sequence, hash, table.getSupport(entryId), -1);
+							} else {
+								merged.setSupport(mergedEntryId,
+										merged.getSupport(mergedEntryId) + table.getSupport(entryId));
+							}
+						}
+					}
+					final MemoryPatternWriter patterns = new MemoryPatternWriter();
+					for (int entryId = merged.nextEntryId(0); entryId >= 0; entryId = merged.nextEntryId(entryId+1)) {
+						final long support = merged.getSupport(entryId);
+						if (support >= sigma) {
+							merged.getSequence(entryId, sequence);
+							patterns.write(sequence, support);
+						}
+					}
+					return patterns;
+				});
+			}
+			for (MemoryPatternWriter patterns : invokeAll(mergeTasks)) {
+				ctx.patternWriter.writeAll(patterns.getPatterns());
+			}
+		} finally {
+			pool.shutdown();
+			pool = null;
+			workers = null;
+			shards = null;
+		}
+	}
+
+	/** Returns the merge partition of a sequence with the given hash value. Uses the upper bits of the mixed hash
+	 * value; the lower ones determine the slot in a {@link SequenceSupportTable}. */
+	private static int partitionOf(int hash, int numPartitions) {
+		return (int)(((HashCommon.mix(hash) & 0xFFFFFFFFL) * numPartitions) >>> 32);
+	}
+
+	/** Runs the given tasks on {@link #pool} and returns their results. */
+	private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+		try {
+			final List<T> results = new ArrayList<>(tasks.size());
+			for (Future<T> future : pool.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("DesqCount worker failed", e.getCause());
+		}
+	}
 }
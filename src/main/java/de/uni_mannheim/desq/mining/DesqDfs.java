@@ -1,6 +1,7 @@
 package de.uni_mannheim.desq.mining;
 
 import de.uni_mannheim.desq.fst.*;
+import de.uni_mannheim.desq.io.MemoryPatternWriter;
 import de.uni_mannheim.desq.patex.PatExUtils;
 import de.uni_mannheim.desq.util.DesqProperties;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
@@ -8,8 +9,13 @@ import it.unimi.dsi.fastutil.ints.IntList;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class DesqDfs extends MemoryDesqMiner {
 	private static final Logger logger = Logger.getLogger(DesqDfs.class);
@@ -32,18 +38,38 @@ public final class DesqDfs extends MemoryDesqMiner {
     /** If true, the two-pass algorithm for DesqDfs is used */
 	private final boolean useTwoPass;
 
+	/** Number of threads used to expand the search tree (1 = sequential) */
+	private final int numThreads;
+
+	/** Memory budget (in bytes) for the input sequences and the projected databases (0 = unlimited). When exceeded,
+	 * the input sequences and the largest projected databases are spilled to disk. Memory usage is estimated, so
+	 * the budget is approximate. */
+	private final long memoryBudget;
+
+	/** The directory for spill files (null for the default temporary-file directory) */
+	private final File spillDir;
+
+	/** If positive, only patterns whose largest item is this fid are mined (see {@link PivotComputer}). Used to mine
+	 * the partitions of distributed DesqDfs; input sequences without this pivot item may be added, but are not
+	 * needed. */
+	private final int pivotItem;
+
 
 	// -- helper variables --------------------------------------------------------------------------------------------
 
     /** Stores the final state transducer for DesqDfs (one-pass) */
 	private final Fst fst;
 
+	/** Flattened form of {@link #fst} used to run the FST (possibly by generated code) */
+	private final CompiledFst compiledFst;
+
     /** Stores the largest fid of an item with frequency at least sigma. Zsed to quickly determine
      * whether an item is frequent (if fid <= largestFrequentFid, the item is frequent */
 	private final int largestFrequentFid;
 
-    /** Stores iterators over output item/next state pairs for reuse. */
-	private final ArrayList<State.ItemStateIterator> itemStateIterators = new ArrayList<>();
+    /** Stores the output item/next state pairs of all active calls of incStep(). Each call appends its pairs and
+	 * removes them once done. */
+	private final CompiledFst.Buffer stepBuffer;
 
     /** An iterator over a projected database (a posting list) for reuse */
 	private final PostingList.Iterator projectedDatabaseIt = new PostingList.Iterator();
@@ -51,6 +77,12 @@ public final class DesqDfs extends MemoryDesqMiner {
 	/** The root node of the search tree. */
 	private final DesqDfsTreeNode root;
 
+	/** Allocates the projected databases of the nodes below the children of the root for this worker. Each expanded
+	 * node opens a scope, so that the projected databases of its children are released in bulk once its subtree
+	 * has been processed. Null if the memory budget is limited, since the memory of spilled projected databases
+	 * needs to be freed instead of being reused. */
+	private final PostingListArena arena;
+
 	// -- helper variables for pruning and twopass --------------------------------------------------------------------
 
 	/** The DFA corresponding to the FST (pruning) or reverse FST (two-pass). */
@@ -84,19 +116,100 @@ public final class DesqDfs extends MemoryDesqMiner {
 	 */
 	BitSet currentSpReachedWithoutOutput = new BitSet();
 
+	// -- helper variables for parallel mining ------------------------------------------------------------------------
+
+	/** Subtrees of nodes whose children have projected databases of less than this many bytes (in total) are
+	 * expanded by the current task instead of being split into new tasks. */
+	private static final long PARALLEL_MIN_SPLIT_BYTES = 4096;
+
+	/** Nodes are not split into new tasks when the current worker has more than this many tasks queued. */
+	private static final int PARALLEL_MAX_SURPLUS_TASKS = 3;
+
+	/** The worker of each thread of the fork-join pool. Only set while mining in parallel. */
+	private ThreadLocal<DesqDfs> workers;
+
+	/** Buffers the patterns of the task currently run by this worker. If null, patterns are written to the pattern
+	 * writer directly. */
+	private MemoryPatternWriter patternBuffer;
+
+	// -- helper variables for spilling -------------------------------------------------------------------------------
+
+	/** While adding input sequences, the memory budget is checked after every this many relevant input sequences. */
+	private static final int SPILL_CHECK_INTERVAL = 1024;
+
+	/** Estimated number of bytes used by an input sequence in memory in addition to its items */
+	private static final int INPUT_SEQUENCE_OVERHEAD_BYTES = 64;
+
+	/** Size of the chunks in which spilled projected databases are read back */
+	private static final int SPILL_CHUNK_BYTES = 1 << 20;
+
+	/** The file to which projected databases are spilled (null if the memory budget is unlimited) */
+	private final SpillFile spillFile;
+
+	/** The input sequences once they have been spilled (null if not spilled). After spilling, inputSequences and
+	 * dfaStateSequences are empty. */
+	private SpilledInputSequences spilledInputSequences;
+
+	/** Reads spilled input sequences for this worker */
+	private SpilledInputSequences.Reader spilledInputSequencesReader;
+
+	/** Reads spilled projected databases for this worker (null if the memory budget is unlimited) */
+	private final SpilledPostingList.Reader spilledProjectedDatabaseReader;
+
+	/** Estimated number of bytes used by the input sequences in memory */
+	private long inputSequencesBytes = 0;
+
+	/** Number of bytes of the projected databases in memory that are complete but not yet processed. Shared by all
+	 * workers. */
+	private final AtomicLong projectedDatabasesBytes;
+
+	/** The nodes whose children are being expanded by this worker. The projected databases of those children that
+	 * have not been processed yet can be spilled. */
+	private final ArrayList<DesqDfsTreeNode> expandedNodes = new ArrayList<>();
+
 	// -- construction/clearing ---------------------------------------------------------------------------------------
 
 	public DesqDfs(DesqMinerContext ctx) {
+		this(ctx, null, ctx.conf.getInt("desq.mining.pivot.item", 0));
+	}
+
+	/** Creates a miner that uses the given FST and DFA instead of compiling the pattern expression and mines only
+	 * the patterns of the given pivot item (if positive; see <code>desq.mining.pivot.item</code>, which is ignored).
+	 * The compiled pattern must have been obtained from {@link #getCompiledPattern()} of a miner with the same
+	 * configuration and dictionary but without pivot item; it can then be reused for all pivot items. If null, the
+	 * pattern expression is compiled.
+	 */
+	public DesqDfs(DesqMinerContext ctx, CompiledPattern compiledPattern, int pivotItem) {
 		super(ctx);
 		sigma = ctx.conf.getLong("desq.mining.min.support");
-		largestFrequentFid = ctx.dict.lastFidAbove(sigma);
+		this.pivotItem = pivotItem;
+		// items larger than the pivot item cannot occur in the mined patterns, so we treat them as infrequent
+		largestFrequentFid = pivotItem > 0
+				? Math.min(ctx.dict.lastFidAbove(sigma), pivotItem) : ctx.dict.lastFidAbove(sigma);
 		pruneIrrelevantInputs = ctx.conf.getBoolean("desq.mining.prune.irrelevant.inputs");
         useTwoPass = ctx.conf.getBoolean("desq.mining.use.two.pass");
+		numThreads = ctx.conf.getInt("desq.mining.num.threads", 1);
+		memoryBudget = ctx.conf.getLong("desq.mining.memory.budget", 0);
+		String spillDirName = ctx.conf.getString("desq.mining.spill.dir", null);
+		spillDir = spillDirName != null ? new File(spillDirName) : null;
 		boolean useLazyDfa = ctx.conf.getBoolean("desq.mining.use.lazy.dfa");
+		boolean threadSafeDfa = ctx.conf.getInt("desq.mining.input.num.threads", 1) > 1; // shared by input filters
 
-		// create FST
+		// create FST (or read it along with the DFA from the cache)
 		patternExpression = ctx.conf.getString("desq.mining.pattern.expression");
-		this.fst = PatExUtils.toFst(ctx.dict, patternExpression);
+		String cacheDir = ctx.conf.getString("desq.mining.pattern.cache.dir", null);
+		CompiledPatternCache cache = null;
+		String cacheKey = null;
+		if (compiledPattern == null && cacheDir != null && !useLazyDfa) { // lazy DFAs cannot be cached
+			cache = new CompiledPatternCache(new File(cacheDir));
+			cacheKey = CompiledPatternCache.keyOf(ctx.dict, patternExpression, largestFrequentFid,
+					useTwoPass ? "reverse" : pruneIrrelevantInputs ? "forward" : "none");
+			compiledPattern = cache.get(cacheKey, ctx.dict);
+			if (compiledPattern != null) {
+				cache = null; // nothing to store
+			}
+		}
+		this.fst = compiledPattern != null ? compiledPattern.getFst() : PatExUtils.toFst(ctx.dict, patternExpression);
 
 		// create two pass auxiliary variables (if needed)
 		if (useTwoPass) { // two-pass
@@ -118,23 +231,82 @@ public final class DesqDfs extends MemoryDesqMiner {
 		}
 
 		// create DFA or reverse DFA (if needed)
-		if(useTwoPass) {
+		if (compiledPattern != null) {
+			this.dfa = compiledPattern.getDfa();
+		} else if(useTwoPass) {
 			// construct the DFA for the FST (for the first pass)
 			// the DFA is constructed for the reverse FST
-			this.dfa = Dfa.createReverseDfa(fst, ctx.dict, largestFrequentFid, true, useLazyDfa);
+			this.dfa = Dfa.createReverseDfa(fst, ctx.dict, largestFrequentFid, true, useLazyDfa, threadSafeDfa,
+					numThreads);
 		} else if (pruneIrrelevantInputs) {
 			// construct the DFA to prune irrelevant inputs
 			// the DFA is constructed for the forward FST
-			this.dfa = Dfa.createDfa(fst, ctx.dict, largestFrequentFid, false, useLazyDfa);
+			this.dfa = Dfa.createDfa(fst, ctx.dict, largestFrequentFid, false, useLazyDfa, threadSafeDfa,
+					numThreads);
 		} else {
 			this.dfa = null;
 		}
 
+		// compile the FST (after creating the DFA, which may modify the FST); infrequent outputs are ignored anyway
+		boolean useFstCodegen = ctx.conf.getBoolean("desq.mining.use.fst.codegen", false);
+		boolean useOutputTables = ctx.conf.getBoolean("desq.mining.use.output.tables", false);
+		this.compiledFst = new CompiledFst(fst, ctx.dict, useFstCodegen, useOutputTables ? largestFrequentFid : -1);
+		this.stepBuffer = new CompiledFst.Buffer(ctx.dict.isForest());
+		if (cache != null) {
+			cache.put(cacheKey, getCompiledPattern());
+		}
+
 		// other auxiliary variables
 		BitSet initialState = new BitSet(fst.numStates());
 		initialState.set(fst.getInitialState().getId());
 		root = new DesqDfsTreeNode(fst, initialState);
 		currentNode = root;
+
+		// spilling
+		arena = memoryBudget > 0 ? null : new PostingListArena();
+		spillFile = memoryBudget > 0 ? new SpillFile(spillDir) : null;
+		spilledProjectedDatabaseReader = memoryBudget > 0 ? new SpilledPostingList.Reader(SPILL_CHUNK_BYTES) : null;
+		projectedDatabasesBytes = new AtomicLong();
+	}
+
+	/** Creates a worker for parallel mining. The worker shares all data with the given miner except for the
+	 * implicit arguments of incStep() and the buffer used by it. */
+	private DesqDfs(DesqDfs parent) {
+		super(parent);
+		sigma = parent.sigma;
+		patternExpression = parent.patternExpression;
+		pruneIrrelevantInputs = parent.pruneIrrelevantInputs;
+		useTwoPass = parent.useTwoPass;
+		numThreads = parent.numThreads;
+		memoryBudget = parent.memoryBudget;
+		spillDir = parent.spillDir;
+		pivotItem = parent.pivotItem;
+		fst = parent.fst;
+		compiledFst = parent.compiledFst;
+		stepBuffer = new CompiledFst.Buffer(ctx.dict.isForest());
+		largestFrequentFid = parent.largestFrequentFid;
+		dfa = parent.dfa;
+		dfaStateSequences = parent.dfaStateSequences;
+		dfaStateSequence = null;
+		dfaInitialPos = null;
+		root = parent.root;
+		currentNode = root;
+		arena = memoryBudget > 0 ? null : new PostingListArena();
+		workers = parent.workers;
+		spillFile = parent.spillFile;
+		spilledInputSequences = parent.spilledInputSequences;
+		spilledInputSequencesReader = spilledInputSequences != null ? spilledInputSequences.new Reader() : null;
+		spilledProjectedDatabaseReader = memoryBudget > 0 ? new SpilledPostingList.Reader(SPILL_CHUNK_BYTES) : null;
+		inputSequencesBytes = parent.inputSequencesBytes;
+		projectedDatabasesBytes = parent.projectedDatabasesBytes;
+	}
+
+	/** Returns the FST and DFA used by this miner in a form that can be serialized, e.g., for shipping them to
+	 * other processes instead of compiling the pattern expression there. Lazy DFAs cannot be serialized. The DFA of a
+	 * miner without pivot item also serves all pivot items, since their patterns are a subset; the DFA of a miner
+	 * with pivot item is specific to that pivot item. */
+	public CompiledPattern getCompiledPattern() {
+		return new CompiledPattern(fst, dfa);
 	}
 
 	public static DesqProperties createConf(String patternExpression, long sigma) {
@@ -145,6 +317,10 @@ public final class DesqDfs extends MemoryDesqMiner {
 		conf.setProperty("desq.mining.prune.irrelevant.inputs", true);
 		conf.setProperty("desq.mining.use.lazy.dfa", false);
 		conf.setProperty("desq.mining.use.two.pass", true);
+		conf.setProperty("desq.mining.num.threads", 1);
+		conf.setProperty("desq.mining.use.fst.codegen", false);
+		conf.setProperty("desq.mining.use.output.tables", false);
+		conf.setProperty("desq.mining.memory.budget", 0);
 		return conf;
 	}
 
@@ -157,6 +333,16 @@ public final class DesqDfs extends MemoryDesqMiner {
 		}
 		root.clear();
 		currentNode = root;
+		if (arena != null) {
+			arena.clear();
+		}
+		if (spillFile != null) {
+			deleteSpillFiles();
+		}
+		spilledInputSequences = null;
+		spilledInputSequencesReader = null;
+		inputSequencesBytes = 0;
+		projectedDatabasesBytes.set(0);
 	}
 
 	// -- processing input sequences ----------------------------------------------------------------------------------
@@ -169,21 +355,8 @@ public final class DesqDfs extends MemoryDesqMiner {
             // which a final FST state is reached
 			if (dfa.acceptsReverse(inputSequence, dfaStateSequence, dfaInitialPos)) {
 			    // we now know that the sequence is relevant; remember it
-				super.addInputSequence(inputSequence, inputSupport, allowBuffering);
-				while (itemStateIterators.size() < inputSequence.size())
-					itemStateIterators.add(new State.ItemStateIterator(ctx.dict.isForest()));
-				dfaStateSequences.add(dfaStateSequence.toArray(new DfaState[dfaStateSequence.size()]));
-
-				// run the first incStep; start at all positions from which a final FST state can be reached
-				assert currentNode == root;
-				currentInputId = inputSequences.size()-1;
-				currentInputSequence = inputSequences.get(currentInputId);
-				currentDfaStateSequence = dfaStateSequences.get(currentInputId);
-				currentSpReachedWithoutOutput.clear();
-				for (int i = 0; i< dfaInitialPos.size(); i++) {
-					// for those positions, start with the initial state
-					incStep(dfaInitialPos.getInt(i), fst.getInitialState(), 0, true);
-				}
+				addRelevantInputSequence(inputSequence, inputSupport, allowBuffering,
+						dfaStateSequence.toArray(new DfaState[dfaStateSequence.size()]), dfaInitialPos);
 
 				// clean up
 				dfaInitialPos.clear();
@@ -195,17 +368,69 @@ public final class DesqDfs extends MemoryDesqMiner {
 		// one-pass version of DesqDfs
 		if (!pruneIrrelevantInputs || dfa.accepts(inputSequence)) {
 			// if we reach this place, we either don't want to prune irrelevant inputs or the input is relevant
-            // -> remember it
-		    super.addInputSequence(inputSequence, inputSupport, allowBuffering);
-			while (itemStateIterators.size() < inputSequence.size())
-				itemStateIterators.add(new State.ItemStateIterator(ctx.dict.isForest()));
+		    addRelevantInputSequence(inputSequence, inputSupport, allowBuffering, null, null);
+		}
+	}
 
-		    // and run the first inc step
-			assert currentNode == root;
+	@Override
+	protected InputFilter createInputFilter() {
+		if (useTwoPass) {
+			return new DfaInputFilter(dfa, true);
+		} else if (pruneIrrelevantInputs) {
+			return new DfaInputFilter(dfa, false);
+		} else {
+			return null;
+		}
+	}
+
+	@Override
+	protected void addFilteredInputSequence(IntList inputSequence, long inputSupport, Object filterResult) {
+		if (useTwoPass) {
+			DfaInputFilter.ReverseRun run = (DfaInputFilter.ReverseRun) filterResult;
+			addRelevantInputSequence(inputSequence, inputSupport, true, run.dfaStateSequence, run.dfaInitialPos);
+		} else {
+			addRelevantInputSequence(inputSequence, inputSupport, true, null, null);
+		}
+	}
+
+	/** Remembers a relevant input sequence and runs the first incStep on it. In two-pass, <code>dfaStateSequence</code>
+	 * and <code>dfaInitialPos</code> hold the result of the reverse DFA run; otherwise, they are null. */
+	private void addRelevantInputSequence(IntList inputSequence, long inputSupport, boolean allowBuffering,
+										  DfaState[] dfaStateSequence, IntList dfaInitialPos) {
+		if (spilledInputSequences == null) {
+			super.addInputSequence(inputSequence, inputSupport, allowBuffering);
 			currentInputId = inputSequences.size()-1;
 			currentInputSequence = inputSequences.get(currentInputId);
-			currentSpReachedWithoutOutput.clear();
-			incStep(0, fst.getInitialState(), 0, true);
+			if (useTwoPass) {
+				dfaStateSequences.add(dfaStateSequence);
+			}
+			inputSequencesBytes += INPUT_SEQUENCE_OVERHEAD_BYTES + (useTwoPass ? 8L : 4L)*inputSequence.size();
+		} else {
+			// spill right away; we keep the input sequence only until the first incStep is done
+			sumInputSupports += inputSupport;
+			currentInputId = spilledInputSequences.size();
+			spilledInputSequences.add(inputSequence, inputSupport, dfaStateSequence);
+			currentInputSequence = new WeightedSequence(inputSequence, inputSupport);
+			inputSequencesBytes = spilledInputSequences.memoryBytes();
+		}
+
+		assert currentNode == root;
+		currentSpReachedWithoutOutput.clear();
+		if (useTwoPass) {
+			currentDfaStateSequence = dfaStateSequence;
+
+			// start at all positions from which a final FST state can be reached
+			for (int i = 0; i< dfaInitialPos.size(); i++) {
+				// for those positions, start with the initial state
+				incStep(dfaInitialPos.getInt(i), fst.getInitialState(), true);
+			}
+		} else {
+			incStep(0, fst.getInitialState(), true);
+		}
+
+		// check the memory budget from time to time
+		if (spillFile != null && (currentInputId+1) % SPILL_CHECK_INTERVAL == 0) {
+			enforceMemoryBudgetForInputSequences();
 		}
 	}
 
@@ -217,7 +442,34 @@ public final class DesqDfs extends MemoryDesqMiner {
 		if (sumInputSupports >= sigma) {
 			// the root has already been processed; now recursively grow the patterns
 			root.pruneInfrequentChildren(sigma);
-			expand(new IntArrayList(), root);
+			if (spillFile != null) {
+				prepareSpilledMining();
+			}
+			try {
+				if (numThreads > 1) {
+					mineInParallel();
+				} else {
+					expand(new IntArrayList(), root);
+				}
+			} finally {
+				if (spillFile != null) {
+					deleteSpillFiles();
+				}
+			}
+		}
+	}
+
+	/** Expands the search tree on a fork-join pool with {@link #numThreads} threads. Each thread uses its own
+	 * worker; idle workers steal subtrees from busy ones. */
+	private void mineInParallel() {
+		ctx.dict.isForest(); // make sure that this is computed before the workers are created
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		workers = ThreadLocal.withInitial(() -> new DesqDfs(this));
+		try {
+			pool.invoke(ForkJoinTask.adapt(() -> workers.get().expand(new IntArrayList(), root)));
+		} finally {
+			pool.shutdown();
+			workers = null;
 		}
 	}
 
@@ -226,12 +478,11 @@ public final class DesqDfs extends MemoryDesqMiner {
      *
      * @param pos next item to read
      * @param state current FST state
-     * @param level recursion level (used for reusing iterators without conflict)
 	 * @param expand if an item is produced, whether to add it to the corresponding child node
      *
      * @return true if the FST can accept without further output
      */
-	private boolean incStep(int pos, State state, final int level, final boolean expand) {
+	private boolean incStep(int pos, State state, final boolean expand) {
 		boolean reachedFinalStateWithoutOutput = false;
 
 pos: 	do { // loop over positions; used for tail recursion optimization
@@ -239,20 +490,22 @@ pos: 	do { // loop over positions; used for tail recursion optimization
 			if (state.isFinalComplete() | pos == currentInputSequence.size())
 				return state.isFinal() || reachedFinalStateWithoutOutput;
 
-			// get iterator over next output item/state pairs; reuse existing ones if possible
+			// compute the next output item/state pairs; they are appended to the step buffer
 			// in two-pass, only iterates over states that we saw in the first pass (the other ones can safely be skipped)
 			final int itemFid = currentInputSequence.getInt(pos);
 			final BitSet validToStates = useTwoPass
 					? currentDfaStateSequence[currentInputSequence.size() - (pos + 1)].getFstStates() // only states from first pass
 					: null; // all states
-			final State.ItemStateIterator itemStateIt = state.consume(itemFid, itemStateIterators.get(level), validToStates);
+			final IntArrayList pairs = stepBuffer.pairs;
+			final int begin = pairs.size();
+			compiledFst.step(state.getId(), itemFid, validToStates, stepBuffer);
+			final int end = pairs.size();
 
 			// iterate over output item/state pairs and remember whether we hit the final or finalComplete state without producing output
 			// (i.e., no transitions or only transitions with epsilon output)
-itemState:	while (itemStateIt.hasNext()) { // loop over elements of itemStateIt; invariant that itemStateIt.hasNext()
-				final ItemState itemState = itemStateIt.next();
-				final int outputItemFid = itemState.itemFid;
-				final State toState = itemState.state;
+itemState:	for (int i = begin; i < end; i += 2) { // loop over the pairs appended above
+				final int outputItemFid = pairs.getInt(i);
+				final State toState = compiledFst.getState(pairs.getInt(i + 1));
 
 				if (outputItemFid == 0) { // EPS output
 					// we did not get an output
@@ -270,12 +523,13 @@ itemState:	while (itemStateIt.hasNext()) { // loop over elements of itemStateIt;
 					if (!currentSpReachedWithoutOutput.get(spIndex)) {
 						// haven't seen it, so process
 						currentSpReachedWithoutOutput.set(spIndex);
-						if (itemStateIt.hasNext()) {
+						if (i + 2 < end) {
 							// recurse
-							reachedFinalStateWithoutOutput |= incStep(pos + 1, toState, level + 1, expand);
+							reachedFinalStateWithoutOutput |= incStep(pos + 1, toState, expand);
 							continue itemState;
 						} else {
 							// tail recurse
+							pairs.size(begin);
 							state = toState;
 							pos++;
 							continue pos;
@@ -283,12 +537,14 @@ itemState:	while (itemStateIt.hasNext()) { // loop over elements of itemStateIt;
 					}
 				} else if (expand & largestFrequentFid >= outputItemFid) {
 					// we have an output and its frequent, so update the corresponding projected database
+					// the children of the root are created while adding input sequences and live until mining is done
 					currentNode.expandWithItem(outputItemFid, currentInputId, currentInputSequence.weight,
-							pos + 1, toState);
+							pos + 1, toState, currentNode == root ? null : arena);
 				}
 				continue itemState;
 			}
 
+			pairs.size(begin);
 			break; // skipped only by call to "continue pos" above (tail recursion optimization)
 		} while (true);
 		return reachedFinalStateWithoutOutput;
@@ -302,80 +558,325 @@ itemState:	while (itemStateIt.hasNext()) { // loop over elements of itemStateIt;
      */
 
 	private void expand(IntList prefix, DesqDfsTreeNode node) {
+		if (workers != null && splitForParallelExpansion(node)) {
+			expandInParallel(prefix, node);
+			return;
+		}
+
+		// the projected databases of the children can be spilled until they are processed
+		if (spillFile != null) {
+			expandedNodes.add(node);
+			enforceMemoryBudget();
+		}
+
 		// add a placeholder to prefix for the output item of the child being expanded
 		final int lastPrefixIndex = prefix.size();
 		prefix.add(-1);
 
 		// iterate over all children
 		for (final DesqDfsTreeNode childNode : node.childrenByFid.values() )  {
-			assert childNode.partialSupport + childNode.prefixSupport >= sigma;
-
-			// while we expand the child node, we also compute its actual support to determine whether or not
-			// to output it (and then output it if the support is large enough)
-			// we start with the partial support; may be increased when processing the projected database
-			long support = childNode.partialSupport;
-
 			// set the current (parial) output sequence
 			prefix.set(lastPrefixIndex, childNode.itemFid);
+			expandChild(prefix, childNode);
+		}
 
-			// print debug information
-			if (DEBUG) {
-				logger.trace("Expanding " + prefix + ", partial support=" + support + ", prefix support="
-						+ childNode.prefixSupport + ", #bytes=" + childNode.projectedDatabase.noBytes()
-						+ ", possible states=" + childNode.possibleStates);
-			}
+		// we are done processing the node, so remove its item from the prefix
+		prefix.removeInt(lastPrefixIndex);
+		if (spillFile != null) {
+			expandedNodes.remove(expandedNodes.size()-1);
+		}
+	}
 
-			if (childNode.prefixSupport > 0) { // otherwise projected DB is empty and support = partial support
-				// set up the expansion
-				boolean expand = childNode.prefixSupport >= sigma; // otherwise expansions will be infrequent anyway
-				projectedDatabaseIt.reset(childNode.projectedDatabase);
-				currentInputId = -1;
-				currentNode = childNode;
-
-				do {
-					// process next input sequence
-					currentInputId += projectedDatabaseIt.nextNonNegativeInt();
-					currentInputSequence = inputSequences.get(currentInputId);
-					if (useTwoPass) {
-						currentDfaStateSequence = dfaStateSequences.get(currentInputId);
-					}
-					currentSpReachedWithoutOutput.clear();
-
-					// iterate over state@pos snapshots for this input sequence
-					boolean reachedFinalStateWithoutOutput = false;
-					do {
-						int stateId = childNode.possibleState;
-						if (stateId < 0) // if >= 0, then there is only one possible FST state and it's not recorded in the posting list
-							stateId = projectedDatabaseIt.nextNonNegativeInt();
-						final int pos = projectedDatabaseIt.nextNonNegativeInt(); // position of next input item
-						reachedFinalStateWithoutOutput |= incStep(pos, fst.getState(stateId), 0, expand);
-					} while (projectedDatabaseIt.hasNext());
-
-					// if we reached a final state without output, increment the support of this child node
-					if (reachedFinalStateWithoutOutput) {
-						support += currentInputSequence.weight;
-					}
+	/** Processes the projected database of the given child node, outputs the child node if it is frequent, and
+	 * expands it.
+	 *
+	 * @param prefix output sequence corresponding to the child node (must remain unmodified upon return)
+	 * @param childNode the child node to process
+	 */
+	private void expandChild(IntList prefix, DesqDfsTreeNode childNode) {
+		assert childNode.partialSupport + childNode.prefixSupport >= sigma;
+		if (arena != null) {
+			arena.openScope(); // for the projected databases of the children of the child node
+		}
+
+		// while we expand the child node, we also compute its actual support to determine whether or not
+		// to output it (and then output it if the support is large enough)
+		// we start with the partial support; may be increased when processing the projected database
+		long support = childNode.partialSupport;
+
+		// print debug information
+		if (DEBUG) {
+			logger.trace("Expanding " + prefix + ", partial support=" + support + ", prefix support="
+					+ childNode.prefixSupport + ", #bytes=" + childNode.projectedDatabase.noBytes()
+					+ ", possible states=" + childNode.possibleStates);
+		}
 
-					// now go to next posting (next input sequence)
-				} while (projectedDatabaseIt.nextPosting());
+		if (childNode.prefixSupport > 0) { // otherwise projected DB is empty and support = partial support
+			// set up the expansion
+			boolean expand = childNode.prefixSupport >= sigma; // otherwise expansions will be infrequent anyway
+			currentInputId = -1;
+			currentNode = childNode;
+			if (childNode.spilledProjectedDatabase == null) {
+				projectedDatabaseIt.reset(childNode.projectedDatabase);
+				support += processProjectedDatabase(childNode, expand);
+			} else {
+				// stream the spilled part followed by the part in memory
+				spilledProjectedDatabaseReader.reset(childNode.spilledProjectedDatabase, childNode.projectedDatabase);
+				while (spilledProjectedDatabaseReader.next(projectedDatabaseIt)) {
+					support += processProjectedDatabase(childNode, expand);
+				}
 			}
+		}
 
-			// output the pattern for the current child node if it turns out to be frequent
-			if (support >= sigma) {
-				if (ctx.patternWriter != null) {
+		// output the pattern for the current child node if it turns out to be frequent (and contains the pivot item)
+		if (support >= sigma && (pivotItem == 0 || prefix.contains(pivotItem))) {
+			if (ctx.patternWriter != null) {
+				if (patternBuffer != null) {
+					patternBuffer.write(prefix, support);
+				} else {
 					ctx.patternWriter.write(prefix, support);
 				}
 			}
+		}
 
-			// expand the child node
-			childNode.pruneInfrequentChildren(sigma);
-			childNode.projectedDatabase = null; // not needed anymore
-			expand(prefix, childNode);
-			childNode.invalidate(); // not needed anymore
+		// expand the child node
+		childNode.pruneInfrequentChildren(sigma);
+		if (spillFile != null) {
+			// the projected databases of the children are complete; the one of the child node is not needed anymore
+			long bytes = -childNode.projectedDatabase.noBytes();
+			for (final DesqDfsTreeNode grandChildNode : childNode.childrenByFid.values()) {
+				bytes += grandChildNode.projectedDatabase.noBytes();
+			}
+			projectedDatabasesBytes.addAndGet(bytes);
 		}
+		childNode.projectedDatabase = null; // not needed anymore
+		childNode.spilledProjectedDatabase = null;
+		expand(prefix, childNode);
+		childNode.invalidate(); // not needed anymore
+		if (arena != null) {
+			arena.closeScope();
+		}
+	}
 
-		// we are done processing the node, so remove its item from the prefix
-		prefix.removeInt(lastPrefixIndex);
+	/** Runs incStep for all snapshots in the projected database of the given child node, starting at the current
+	 * position of {@link #projectedDatabaseIt}, and returns the support of the input sequences for which the FST
+	 * reached a final state without further output. Updates {@link #currentInputId}.
+	 */
+	private long processProjectedDatabase(DesqDfsTreeNode childNode, boolean expand) {
+		long support = 0;
+		do {
+			// process next input sequence
+			currentInputId += projectedDatabaseIt.nextNonNegativeInt();
+			loadInputSequence(currentInputId);
+			currentSpReachedWithoutOutput.clear();
+
+			// iterate over state@pos snapshots for this input sequence
+			boolean reachedFinalStateWithoutOutput = false;
+			do {
+				int stateId = childNode.possibleState;
+				if (stateId < 0) // if >= 0, then there is only one possible FST state and it's not recorded in the posting list
+					stateId = projectedDatabaseIt.nextNonNegativeInt();
+				final int pos = projectedDatabaseIt.nextNonNegativeInt(); // position of next input item
+				reachedFinalStateWithoutOutput |= incStep(pos, fst.getState(stateId), expand);
+			} while (projectedDatabaseIt.hasNext());
+
+			// if we reached a final state without output, increment the support of this child node
+			if (reachedFinalStateWithoutOutput) {
+				support += currentInputSequence.weight;
+			}
+
+			// now go to next posting (next input sequence)
+		} while (projectedDatabaseIt.nextPosting());
+		return support;
+	}
+
+	/** Sets {@link #currentInputSequence} and {@link #currentDfaStateSequence} to the given input sequence. */
+	private void loadInputSequence(int inputId) {
+		if (spilledInputSequences == null) {
+			currentInputSequence = inputSequences.get(inputId);
+			if (useTwoPass) {
+				currentDfaStateSequence = dfaStateSequences.get(inputId);
+			}
+		} else {
+			spilledInputSequencesReader.read(inputId);
+			currentInputSequence = spilledInputSequencesReader.inputSequence;
+			currentDfaStateSequence = spilledInputSequencesReader.dfaStateSequence;
+		}
+	}
+
+	// -- spilling ----------------------------------------------------------------------------------------------------
+
+	/** Spills the input sequences once they use more than half of the memory budget. If the memory budget is still
+	 * exceeded, spills the largest projected databases of the children of the root (while adding input sequences). */
+	private void enforceMemoryBudgetForInputSequences() {
+		if (spilledInputSequences == null && inputSequencesBytes > memoryBudget/2) {
+			spillInputSequences();
+		}
+		long bytes = 0;
+		for (final DesqDfsTreeNode childNode : root.childrenByFid.values()) {
+			bytes += childNode.projectedDatabase.noBytes();
+		}
+		long excessBytes = inputSequencesBytes + bytes - memoryBudget;
+		if (excessBytes > 0) {
+			spillProjectedDatabases(new ArrayList<>(root.childrenByFid.values()), excessBytes);
+		}
+	}
+
+	/** Moves all input sequences to disk. Input sequences added afterwards are spilled right away. */
+	private void spillInputSequences() {
+		spilledInputSequences = new SpilledInputSequences(new SpillFile(spillDir), useTwoPass);
+		for (int inputId = 0; inputId < inputSequences.size(); inputId++) {
+			WeightedSequence inputSequence = inputSequences.get(inputId);
+			spilledInputSequences.add(inputSequence, inputSequence.weight,
+					useTwoPass ? dfaStateSequences.get(inputId) : null);
+		}
+		inputSequences.clear();
+		inputSequences.trimToSize();
+		if (useTwoPass) {
+			dfaStateSequences.clear();
+			dfaStateSequences.trimToSize();
+		}
+		spilledInputSequencesReader = spilledInputSequences.new Reader();
+		inputSequencesBytes = spilledInputSequences.memoryBytes();
+		logger.info("Memory budget of " + memoryBudget + " bytes exceeded; spilling input sequences");
+	}
+
+	/** Makes the spilled data available to all workers and accounts for the projected databases of the children
+	 * of the root. */
+	private void prepareSpilledMining() {
+		enforceMemoryBudgetForInputSequences();
+		if (spilledInputSequences != null) {
+			spilledInputSequences.flush();
+		}
+		long bytes = 0;
+		for (final DesqDfsTreeNode childNode : root.childrenByFid.values()) {
+			bytes += childNode.projectedDatabase.noBytes();
+		}
+		projectedDatabasesBytes.set(bytes);
+	}
+
+	/** Spills the largest unprocessed projected databases of the children of the nodes expanded by this worker if
+	 * the memory budget is exceeded. */
+	private void enforceMemoryBudget() {
+		long excessBytes = inputSequencesBytes + projectedDatabasesBytes.get() - memoryBudget;
+		if (excessBytes <= 0) {
+			return;
+		}
+		ArrayList<DesqDfsTreeNode> candidates = new ArrayList<>();
+		for (final DesqDfsTreeNode node : expandedNodes) {
+			for (final DesqDfsTreeNode childNode : node.childrenByFid.values()) {
+				if (childNode.projectedDatabase != null && childNode.projectedDatabase.noBytes() > 0) {
+					candidates.add(childNode);
+				}
+			}
+		}
+		projectedDatabasesBytes.addAndGet(-spillProjectedDatabases(candidates, excessBytes));
+	}
+
+	/** Spills the largest of the given projected databases until at least the given number of bytes has been freed
+	 * (or nothing is left to spill). Returns the number of bytes freed. */
+	private long spillProjectedDatabases(ArrayList<DesqDfsTreeNode> nodes, long bytesToFree) {
+		nodes.sort((n1, n2) -> Integer.compare(n2.projectedDatabase.noBytes(), n1.projectedDatabase.noBytes()));
+		long freedBytes = 0;
+		for (int i = 0; i < nodes.size() && freedBytes < bytesToFree; i++) {
+			freedBytes += nodes.get(i).spillProjectedDatabase(spillFile);
+		}
+		if (DEBUG) {
+			logger.trace("Spilled " + freedBytes + " bytes of projected databases");
+		}
+		return freedBytes;
+	}
+
+	/** Deletes all spilled data. */
+	private void deleteSpillFiles() {
+		spillFile.delete();
+		if (spilledInputSequences != null) {
+			spilledInputSequences.deleteSpillFile();
+		}
+	}
+
+	// -- parallel mining ---------------------------------------------------------------------------------------------
+
+	/** Whether to expand the children of the given node in separate tasks (parallel mining only). The children
+	 * of the root are always split; deeper nodes only if their subtree is sufficiently large and other workers
+	 * may run out of work. */
+	private boolean splitForParallelExpansion(DesqDfsTreeNode node) {
+		if (node.childrenByFid.size() < 2)
+			return false;
+		if (node == root)
+			return true;
+		if (ForkJoinTask.getSurplusQueuedTaskCount() > PARALLEL_MAX_SURPLUS_TASKS)
+			return false;
+		long noBytes = 0;
+		for (final DesqDfsTreeNode childNode : node.childrenByFid.values()) {
+			noBytes += childNode.projectedDatabaseBytes();
+		}
+		return noBytes >= PARALLEL_MIN_SPLIT_BYTES;
+	}
+
+	/** Expands each child of the given node in its own task. The patterns of each task are buffered and then
+	 * written in the same order as the sequential algorithm would write them.
+	 *
+	 * @param prefix (partial) output sequence corresponding to the given node (must remain unmodified upon return)
+	 * @param node the node whose children to expand
+	 */
+	private void expandInParallel(IntList prefix, DesqDfsTreeNode node) {
+		final ArrayList<ExpandTask> tasks = new ArrayList<>(node.childrenByFid.size());
+		for (final DesqDfsTreeNode childNode : node.childrenByFid.values()) {
+			IntList childPrefix = new IntArrayList(prefix.size() + 1);
+			childPrefix.addAll(prefix);
+			childPrefix.add(childNode.itemFid);
+			tasks.add(new ExpandTask(childPrefix, childNode));
+		}
+
+		// fork in reverse order so that this worker processes the tasks in order; other workers steal from the end
+		for (int i = tasks.size() - 1; i >= 0; i--) {
+			tasks.get(i).fork();
+		}
+
+		// collect the patterns in order
+		for (final ExpandTask task : tasks) {
+			task.join();
+			if (task.patternBuffer == null)
+				continue;
+			if (patternBuffer != null) {
+				patternBuffer.getPatterns().addAll(task.patternBuffer.getPatterns());
+			} else {
+				ctx.patternWriter.writeAll(task.patternBuffer.getPatterns());
+			}
+		}
+	}
+
+	/** Expands a child node using the worker of the thread that runs the task. */
+	private final class ExpandTask extends RecursiveAction {
+		/** The output sequence corresponding to the child node */
+		final IntList prefix;
+
+		/** The child node to expand */
+		final DesqDfsTreeNode childNode;
+
+		/** The patterns produced by this task (or null if there is no pattern writer) */
+		final MemoryPatternWriter patternBuffer;
+
+		ExpandTask(IntList prefix, DesqDfsTreeNode childNode) {
+			this.prefix = prefix;
+			this.childNode = childNode;
+			this.patternBuffer = ctx.patternWriter != null ? new MemoryPatternWriter() : null;
+		}
+
+		@Override
+		protected void compute() {
+			// the worker may be in the middle of another task that waits for this one, so restore its buffer after
+			// we are done
+			final DesqDfs worker = workers.get();
+			final MemoryPatternWriter previousPatternBuffer = worker.patternBuffer;
+			worker.patternBuffer = patternBuffer;
+			try {
+				worker.expandChild(prefix, childNode);
+			} finally {
+				worker.patternBuffer = previousPatternBuffer;
+			}
+		}
 	}
 
 	// -- accessors to internal data structures (use with care) -------------------------------------------------------
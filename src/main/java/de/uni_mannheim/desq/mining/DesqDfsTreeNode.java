@@ -43,6 +43,10 @@ final class DesqDfsTreeNode {
 	 * and cleared after this node has been expanded. */
 	PostingList projectedDatabase;
 
+	/** The part of the projected database that has been spilled to disk, or null if nothing has been spilled. The
+	 * projected database consists of the spilled part followed by {@link #projectedDatabase}. */
+	SpilledPostingList spilledProjectedDatabase;
+
 	/** The children of this node by item fid. Computed while expanding this node's parent. */
 	Int2ObjectOpenHashMap<DesqDfsTreeNode> childrenByFid = new Int2ObjectOpenHashMap<>();
 
@@ -69,11 +73,19 @@ final class DesqDfsTreeNode {
 	 * snapshots. Index of a snapshot is <code>position*fst.numStates() + stateId</code>. */
 	BitSet currentSnapshots;
 
+	/** The arena that allocates the projected database of this node (or null if not used) */
+	final PostingListArena arena;
+
 
 	// -- construction and clearing -----------------------------------------------------------------------------------
 
 	DesqDfsTreeNode(Fst fst, BitSet possibleStates) {
+		this(fst, possibleStates, null);
+	}
+
+	DesqDfsTreeNode(Fst fst, BitSet possibleStates, PostingListArena arena) {
 		this.fst = fst;
+		this.arena = arena;
 		this.possibleStates = possibleStates;
 		if (possibleStates.cardinality() == 1) {
 			possibleState = possibleStates.nextSetBit(0);
@@ -93,7 +105,8 @@ final class DesqDfsTreeNode {
 		currentInputId = -1;
 		reachedFinalCompleteState = false;
 		reachedNonFinalCompleteState = false;
-		projectedDatabase = new PostingList();
+		projectedDatabase = arena != null ? arena.newPostingList() : new PostingList();
+		spilledProjectedDatabase = null;
 		currentSnapshots.clear();
 
 		// clear the children
@@ -107,6 +120,7 @@ final class DesqDfsTreeNode {
 	/** Call this when node not needed anymore to free up memory. */
 	public void invalidate() {
 		projectedDatabase = null;
+		spilledProjectedDatabase = null;
 		childrenByFid = null;
 		currentSnapshots = null;
 	}
@@ -121,13 +135,14 @@ final class DesqDfsTreeNode {
 	 * @param inputSupport support of the input sequence
 	 * @param position position in the input sequence
 	 * @param state state of the FST
+	 * @param arena the arena that allocates the projected database if a new child is created (or null)
 	 */
 	void expandWithItem(final int outputFid, final int inputId, final long inputSupport,
-						final int position, final State state) {
+						final int position, final State state, final PostingListArena arena) {
 		DesqDfsTreeNode child = childrenByFid.get(outputFid);
 		if (child == null) {
 			BitSet childPossibleStates = fst.reachableStates(possibleStates, outputFid);
-			child = new DesqDfsTreeNode(fst, childPossibleStates);
+			child = new DesqDfsTreeNode(fst, childPossibleStates, arena);
 			child.itemFid = outputFid;
 			childrenByFid.put(outputFid, child);
 		}
@@ -208,6 +223,21 @@ final class DesqDfsTreeNode {
 		}
 	}
 
+	/** Returns the number of bytes of the projected database, including the spilled ones. */
+	long projectedDatabaseBytes() {
+		return projectedDatabase.noBytes()
+				+ (spilledProjectedDatabase != null ? spilledProjectedDatabase.noBytes() : 0);
+	}
+
+	/** Moves the bytes of the projected database that are held in memory to the given spill file and returns their
+	 * number. The projected database can still be extended afterwards. */
+	int spillProjectedDatabase(SpillFile spillFile) {
+		if (spilledProjectedDatabase == null) {
+			spilledProjectedDatabase = new SpilledPostingList(spillFile);
+		}
+		return spilledProjectedDatabase.spill(projectedDatabase);
+	}
+
 	/** Removes all children that have prefix support below the given value of minSupport */
 	void pruneInfrequentChildren(long minSupport) {
 		ObjectIterator<Int2ObjectMap.Entry<DesqDfsTreeNode>> childrenIt =
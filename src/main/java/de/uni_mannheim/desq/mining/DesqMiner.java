@@ -25,13 +25,44 @@ public abstract class DesqMiner {
 		addInputSequence(sequence, sequence.weight, allowBuffering);
 	}
 	
+	/** Adds all input sequences of the given reader. If property "desq.mining.input.num.threads" is larger than 1,
+	 * the input sequences are parsed and filtered in parallel using an {@link InputPipeline}. */
 	public void addInputSequences(SequenceReader in) throws IOException {
+		int numInputThreads = ctx.conf.getInt("desq.mining.input.num.threads", 1);
+		if (numInputThreads > 1) {
+			int maxBatchesInFlight = ctx.conf.getInt("desq.mining.input.queue.capacity", 4*numInputThreads);
+			new InputPipeline(this, numInputThreads, maxBatchesInFlight).run(in);
+			return;
+		}
+
 		Sequence inputSequence = new Sequence();
 		while (in.readAsFids(inputSequence)) {
 			addInputSequence(inputSequence, 1, false);
 		}
 	}
 
+	/** Creates a filter that checks whether an input sequence is relevant for this miner before it is added using
+	 * {@link #addFilteredInputSequence(IntList, long, Object)}. Used for adding input sequences in parallel; each
+	 * thread uses its own filter. Filters must not modify the state of the miner and may be used concurrently with
+	 * other filters.
+	 *
+	 * @return the filter or <code>null</code> if all input sequences are relevant (the default)
+	 */
+	protected InputFilter createInputFilter() {
+		return null;
+	}
+
+	/** Adds a new input sequence (composed of fids) that passed the filter obtained from
+	 * {@link #createInputFilter()}. The input sequence will not be modified afterwards, so the miner is allowed to
+	 * buffer it internally.
+	 *
+	 * @param filterResult the result of {@link InputFilter#filter(IntList)} or an arbitrary non-null object if
+	 *                     there is no filter
+	 */
+	protected void addFilteredInputSequence(IntList sequence, long support, Object filterResult) {
+		addInputSequence(sequence, support, true);
+	}
+
 	/** Mines all added input sequences */
 	public abstract void mine();
 
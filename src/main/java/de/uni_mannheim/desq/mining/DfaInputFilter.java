@@ -0,0 +1,58 @@
+package de.uni_mannheim.desq.mining;
+
+import de.uni_mannheim.desq.fst.Dfa;
+import de.uni_mannheim.desq.fst.DfaState;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+import java.util.ArrayList;
+
+/** Filters input sequences using a DFA (one-pass) or a reverse DFA (two-pass). Each filter uses its own buffers,
+ * but filters may share their DFA if it is thread-safe. */
+final class DfaInputFilter implements InputFilter {
+	/** The result of running the reverse DFA on a relevant input sequence (two-pass only) */
+	static final class ReverseRun {
+		/** Sequence of DFA states (see {@link Dfa#acceptsReverse(IntList, java.util.List, IntList)}) */
+		final DfaState[] dfaStateSequence;
+
+		/** Positions for which the DFA reached an initial FST state */
+		final IntList dfaInitialPos;
+
+		ReverseRun(DfaState[] dfaStateSequence, IntList dfaInitialPos) {
+			this.dfaStateSequence = dfaStateSequence;
+			this.dfaInitialPos = dfaInitialPos;
+		}
+	}
+
+	private final Dfa dfa;
+	private final boolean reverse;
+	private final ArrayList<DfaState> dfaStateSequence;
+	private final IntList dfaInitialPos;
+
+	/** If <code>reverse</code> is set, the DFA must have been created for the reverse FST and {@link #filter(IntList)}
+	 * returns a {@link ReverseRun} for relevant input sequences. */
+	DfaInputFilter(Dfa dfa, boolean reverse) {
+		this.dfa = dfa;
+		this.reverse = reverse;
+		dfaStateSequence = reverse ? new ArrayList<>() : null;
+		dfaInitialPos = reverse ? new IntArrayList() : null;
+	}
+
+	@Override
+	public Object filter(IntList inputSequence) {
+		if (!reverse) {
+			return dfa.accepts(inputSequence) ? Boolean.TRUE : null;
+		}
+
+		try {
+			if (dfa.acceptsReverse(inputSequence, dfaStateSequence, dfaInitialPos)) {
+				return new ReverseRun(dfaStateSequence.toArray(new DfaState[dfaStateSequence.size()]),
+						new IntArrayList(dfaInitialPos));
+			}
+			return null;
+		} finally {
+			dfaStateSequence.clear();
+			dfaInitialPos.clear();
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package de.uni_mannheim.desq.mining;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/** Determines whether an input sequence is relevant for a miner. Used to check input sequences in parallel before
+ * they are handed to the miner; see {@link DesqMiner#createInputFilter()}. */
+public interface InputFilter {
+	/** Checks the given input sequence (composed of fids).
+	 *
+	 * @return <code>null</code> if the input sequence is irrelevant; otherwise, an object that is passed to
+	 * {@link DesqMiner#addFilteredInputSequence(IntList, long, Object)} along with the input sequence
+	 */
+	Object filter(IntList inputSequence);
+}
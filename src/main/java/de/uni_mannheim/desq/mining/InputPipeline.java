@@ -0,0 +1,314 @@
+package de.uni_mannheim.desq.mining;
+
+import de.uni_mannheim.desq.io.SequenceReader;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Adds the input sequences of a {@link SequenceReader} to a {@link DesqMiner} using multiple threads. A reader
+ * thread reads unparsed input sequences in batches, a pool of worker threads parses the batches and filters them
+ * using one {@link InputFilter} per worker, and the calling thread adds the relevant input sequences to the miner
+ * in the order in which they have been read. Input ids are thus the same as when adding the input sequences
+ * sequentially.
+ *
+ * The number of batches in flight is bounded so that the reader blocks when the workers or the miner fall behind.
+ */
+public final class InputPipeline {
+	private static final Logger logger = Logger.getLogger(InputPipeline.class);
+
+	/** Number of input sequences per batch */
+	static final int BATCH_SIZE = 256;
+
+	/** A batch of input sequences */
+	private static final class Batch {
+		/** Position of this batch in the input. For {@link #END}, the total number of batches. */
+		final long id;
+
+		/** The unparsed input sequences; null for end markers */
+		final Object[] unparsedSequences;
+
+		/** Number of input sequences in this batch */
+		int size = 0;
+
+		/** The relevant input sequences (as fids) along with their filter results; set by the workers */
+		Sequence[] sequences;
+		Object[] filterResults;
+		int numRelevant = 0;
+
+		Batch(long id, Object[] unparsedSequences) {
+			this.id = id;
+			this.unparsedSequences = unparsedSequences;
+		}
+	}
+
+	/** Tells the workers to stop */
+	private static final Batch END = new Batch(-1, null);
+
+	/** Tells the calling thread that the reader or a worker failed */
+	private static final Batch FAILED = new Batch(-1, null);
+
+	private final DesqMiner miner;
+	private final int numWorkers;
+	private final int maxBatchesInFlight;
+
+	// -- statistics (per stage) --------------------------------------------------------------------------------------
+
+	private final AtomicLong numRead = new AtomicLong();
+	private final AtomicLong readNanos = new AtomicLong();
+	private final AtomicLong readerBlockedNanos = new AtomicLong();
+	private final AtomicLong numFiltered = new AtomicLong();
+	private final AtomicLong filterNanos = new AtomicLong();
+	private long numAdded = 0;
+	private long addNanos = 0;
+	private long totalNanos = 0;
+
+
+	// -- construction ------------------------------------------------------------------------------------------------
+
+	/** Creates a pipeline that uses <code>numWorkers</code> threads for parsing and filtering and allows at most
+	 * <code>maxBatchesInFlight</code> batches to be read but not yet added to the miner. */
+	public InputPipeline(DesqMiner miner, int numWorkers, int maxBatchesInFlight) {
+		if (numWorkers < 1 || maxBatchesInFlight < 1) {
+			throw new IllegalArgumentException("need at least one worker and at least one batch in flight");
+		}
+		this.miner = miner;
+		this.numWorkers = numWorkers;
+		this.maxBatchesInFlight = maxBatchesInFlight;
+	}
+
+
+	// -- processing --------------------------------------------------------------------------------------------------
+
+	/** Reads all input sequences from <code>in</code> and adds the relevant ones to the miner. Returns when all input
+	 * sequences have been added or when a stage failed; in the latter case, the error is rethrown. */
+	public void run(SequenceReader in) throws IOException {
+		final long start = System.nanoTime();
+		final Semaphore batchesInFlight = new Semaphore(maxBatchesInFlight);
+		final BlockingQueue<Batch> parseQueue = new ArrayBlockingQueue<>(maxBatchesInFlight + numWorkers);
+		final BlockingQueue<Batch> addQueue = new LinkedBlockingQueue<>(); // bounded by batchesInFlight
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		final ArrayList<Thread> threads = new ArrayList<>(numWorkers + 1);
+
+		// reader
+		threads.add(new Thread(() -> {
+			try {
+				long batchId = 0;
+				while (true) {
+					long t0 = System.nanoTime();
+					batchesInFlight.acquire();
+					long t1 = System.nanoTime();
+					Batch batch = readBatch(in, batchId);
+					readerBlockedNanos.addAndGet(t1 - t0);
+					readNanos.addAndGet(System.nanoTime() - t1);
+					if (batch == null) break;
+					parseQueue.put(batch);
+					batchId++;
+				}
+
+				// tell the workers and the calling thread where the input ends
+				for (int i=0; i<numWorkers; i++) {
+					parseQueue.put(END);
+				}
+				addQueue.put(new Batch(batchId, null));
+			} catch (Throwable t) {
+				fail(t, error, addQueue);
+			}
+		}, "desq-input-reader"));
+
+		// workers
+		for (int i=0; i<numWorkers; i++) {
+			threads.add(new Thread(() -> {
+				try {
+					InputFilter filter = miner.createInputFilter();
+					Sequence buffer = new Sequence();
+					while (true) {
+						Batch batch = parseQueue.take();
+						if (batch == END) break;
+						long t0 = System.nanoTime();
+						filterBatch(batch, in, filter, buffer);
+						filterNanos.addAndGet(System.nanoTime() - t0);
+						addQueue.put(batch);
+					}
+				} catch (Throwable t) {
+					fail(t, error, addQueue);
+				}
+			}, "desq-input-worker-" + i));
+		}
+
+		for (Thread thread : threads) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		// add the batches to the miner in input order
+		try {
+			Long2ObjectOpenHashMap<Batch> pendingBatches = new Long2ObjectOpenHashMap<>();
+			long nextBatchId = 0;
+			long numBatches = -1; // unknown
+			while (numBatches < 0 || nextBatchId < numBatches) {
+				Batch batch = addQueue.take();
+				if (batch == FAILED) {
+					throw error.get();
+				}
+				if (batch.unparsedSequences == null) { // end of input
+					numBatches = batch.id;
+					continue;
+				}
+				pendingBatches.put(batch.id, batch);
+				while ((batch = pendingBatches.remove(nextBatchId)) != null) {
+					long t0 = System.nanoTime();
+					addBatch(batch);
+					addNanos += System.nanoTime() - t0;
+					batchesInFlight.release();
+					nextBatchId++;
+				}
+			}
+		} catch (IOException | RuntimeException | Error e) {
+			throw e;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while adding input sequences");
+		} catch (Throwable t) {
+			throw new RuntimeException(t);
+		} finally {
+			stop(threads);
+		}
+
+		totalNanos = System.nanoTime() - start;
+		if (logger.isDebugEnabled()) {
+			logger.debug(toString());
+		}
+	}
+
+	/** Reads the next batch of unparsed input sequences or returns null if there are no more input sequences. */
+	private Batch readBatch(SequenceReader in, long batchId) throws IOException {
+		Batch batch = new Batch(batchId, new Object[BATCH_SIZE]);
+		Object unparsedSequence;
+		while (batch.size < BATCH_SIZE && (unparsedSequence = in.readUnparsed()) != null) {
+			batch.unparsedSequences[batch.size++] = unparsedSequence;
+		}
+		numRead.addAndGet(batch.size);
+		return batch.size > 0 ? batch : null;
+	}
+
+	/** Parses the input sequences of the given batch and determines the relevant ones. */
+	private void filterBatch(Batch batch, SequenceReader in, InputFilter filter, Sequence buffer) {
+		batch.sequences = new Sequence[batch.size];
+		batch.filterResults = new Object[batch.size];
+		for (int i=0; i<batch.size; i++) {
+			in.parseAsFids(batch.unparsedSequences[i], buffer);
+			batch.unparsedSequences[i] = null;
+			Object filterResult = filter == null ? Boolean.TRUE : filter.filter(buffer);
+			if (filterResult != null) {
+				batch.sequences[batch.numRelevant] = new Sequence(buffer); // copy with exact size
+				batch.filterResults[batch.numRelevant] = filterResult;
+				batch.numRelevant++;
+			}
+		}
+		numFiltered.addAndGet(batch.size);
+	}
+
+	/** Adds the relevant input sequences of the given batch to the miner */
+	private void addBatch(Batch batch) {
+		for (int i=0; i<batch.numRelevant; i++) {
+			miner.addFilteredInputSequence(batch.sequences[i], 1, batch.filterResults[i]);
+		}
+		numAdded += batch.numRelevant;
+	}
+
+	/** Records the first error and wakes up the calling thread */
+	private static void fail(Throwable t, AtomicReference<Throwable> error, BlockingQueue<Batch> addQueue) {
+		error.compareAndSet(null, t);
+		addQueue.offer(FAILED);
+	}
+
+	/** Stops all threads and waits until they have terminated. */
+	private static void stop(ArrayList<Thread> threads) {
+		boolean interrupted = false;
+		for (Thread thread : threads) {
+			thread.interrupt(); // no effect if already terminated
+		}
+		for (Thread thread : threads) {
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	// -- statistics --------------------------------------------------------------------------------------------------
+
+	/** Number of input sequences read */
+	public long getNumRead() {
+		return numRead.get();
+	}
+
+	/** Time spent reading input sequences (in nanoseconds) */
+	public long getReadNanos() {
+		return readNanos.get();
+	}
+
+	/** Time the reader was blocked because too many batches were in flight (in nanoseconds) */
+	public long getReaderBlockedNanos() {
+		return readerBlockedNanos.get();
+	}
+
+	/** Number of input sequences parsed and filtered */
+	public long getNumFiltered() {
+		return numFiltered.get();
+	}
+
+	/** Time spent parsing and filtering input sequences, summed over all workers (in nanoseconds) */
+	public long getFilterNanos() {
+		return filterNanos.get();
+	}
+
+	/** Number of relevant input sequences added to the miner */
+	public long getNumAdded() {
+		return numAdded;
+	}
+
+	/** Time spent adding input sequences to the miner (in nanoseconds) */
+	public long getAddNanos() {
+		return addNanos;
+	}
+
+	/** Total time of the last run (in nanoseconds) */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Input pipeline: %d sequences in %.3fs; read: %.3fs (%.0f/s, blocked %.3fs); "
+						+ "parse+filter: %.3fs on %d threads (%.0f/s per thread); add: %d relevant in %.3fs (%.0f/s)",
+				getNumRead(), seconds(totalNanos),
+				seconds(getReadNanos()), perSecond(getNumRead(), getReadNanos()), seconds(getReaderBlockedNanos()),
+				seconds(getFilterNanos()), numWorkers, perSecond(getNumFiltered(), getFilterNanos()),
+				numAdded, seconds(addNanos), perSecond(numAdded, addNanos));
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / 1e9;
+	}
+
+	private static double perSecond(long count, long nanos) {
+		return nanos == 0 ? 0 : count / seconds(nanos);
+	}
+}
@@ -5,13 +5,22 @@ import it.unimi.dsi.fastutil.ints.IntList;
 import java.util.ArrayList;
 
 public abstract class MemoryDesqMiner extends DesqMiner {
-	protected final ArrayList<WeightedSequence> inputSequences = new ArrayList<>();
+	protected final ArrayList<WeightedSequence> inputSequences;
 	long sumInputSupports = 0;
 
 	protected MemoryDesqMiner(DesqMinerContext ctx) {
 		super(ctx);
+		inputSequences = new ArrayList<>();
 	}
-	
+
+	/** Creates a miner that shares the input sequences of the given miner. Used to create additional workers
+	 * for parallel mining. */
+	protected MemoryDesqMiner(MemoryDesqMiner other) {
+		super(other.ctx);
+		inputSequences = other.inputSequences;
+		sumInputSupports = other.sumInputSupports;
+	}
+
 	@Override
 	public void addInputSequence(IntList sequence, long support, boolean allowBuffering) {
 		if (allowBuffering && sequence instanceof Sequence) {
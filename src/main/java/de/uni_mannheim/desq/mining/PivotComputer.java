@@ -0,0 +1,149 @@
+package de.uni_mannheim.desq.mining;
+
+import de.uni_mannheim.desq.fst.CompiledFst;
+import de.uni_mannheim.desq.fst.CompiledPattern;
+import de.uni_mannheim.desq.fst.Dfa;
+import de.uni_mannheim.desq.fst.DfaState;
+import de.uni_mannheim.desq.fst.Fst;
+import de.uni_mannheim.desq.fst.State;
+import de.uni_mannheim.desq.patex.PatExUtils;
+import it.unimi.dsi.fastutil.ints.IntAVLTreeSet;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntSortedSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Computes the pivot items of an input sequence. The pivot item of an output sequence is its largest fid. The
+ * pivot items of an input sequence are the pivot items of all its output sequences that consist of frequent items
+ * only.
+ *
+ * Used to partition input sequences for distributed mining: all output sequences with pivot item p can be mined
+ * from the input sequences with pivot item p (see property "desq.mining.pivot.item" of {@link DesqDfs}). The FST
+ * is simulated while tracking only the largest output item seen so far, so that the output sequences themselves
+ * are never materialized.
+ */
+public final class PivotComputer {
+	/** The final state transducer */
+	private final Fst fst;
+
+	/** Flattened form of {@link #fst} used to run the FST */
+	private final CompiledFst compiledFst;
+
+	/** Stores the largest fid of an item with frequency at least sigma */
+	private final int largestFrequentFid;
+
+	/** The DFA used to prune irrelevant input sequences (null if not pruned) */
+	private final Dfa dfa;
+
+	/** Whether {@link #dfa} is a reverse DFA (see property "desq.mining.use.two.pass" of {@link DesqDfs}). Then
+	 * {@link #fst} has been modified by the DFA and is started at the initial positions reported by the DFA. */
+	private final boolean reverseDfa;
+
+	/** The DFA states traversed by the reverse DFA on the current input sequence (unused otherwise) */
+	private final List<DfaState> dfaStateSequence = new ArrayList<>();
+
+	/** The positions at which to start the FST for the current input sequence (unused without reverse DFA) */
+	private final IntList dfaInitialPos = new IntArrayList();
+
+	/** Stores the output item/next state pairs of all active calls of {@link #step(int, State, int)} */
+	private final CompiledFst.Buffer stepBuffer;
+
+	/** The (position, state, largest output item) triples visited for the current input sequence */
+	private final LongOpenHashSet visited = new LongOpenHashSet();
+
+	/** The input sequence currently processed */
+	private IntList inputSequence;
+
+	/** The pivot items of the current input sequence */
+	private IntSortedSet pivotItems;
+
+	public PivotComputer(DesqMinerContext ctx) {
+		this(ctx, null);
+	}
+
+	/** Creates a pivot computer that uses the given FST and DFA instead of compiling the pattern expression. The
+	 * compiled pattern must have been obtained from {@link DesqDfs#getCompiledPattern()} of a miner with the same
+	 * configuration and dictionary but without pivot item. If null, the pattern expression is compiled.
+	 */
+	public PivotComputer(DesqMinerContext ctx, CompiledPattern compiledPattern) {
+		long sigma = ctx.conf.getLong("desq.mining.min.support");
+		this.largestFrequentFid = ctx.dict.lastFidAbove(sigma);
+		if (compiledPattern != null) {
+			this.fst = compiledPattern.getFst();
+			this.dfa = compiledPattern.getDfa();
+			this.reverseDfa = dfa != null && ctx.conf.getBoolean("desq.mining.use.two.pass");
+		} else {
+			this.fst = PatExUtils.toFst(ctx.dict, ctx.conf.getString("desq.mining.pattern.expression"));
+			if (ctx.conf.getBoolean("desq.mining.prune.irrelevant.inputs")) {
+				boolean useLazyDfa = ctx.conf.getBoolean("desq.mining.use.lazy.dfa");
+				this.dfa = Dfa.createDfa(fst, ctx.dict, largestFrequentFid, false, useLazyDfa);
+			} else {
+				this.dfa = null;
+			}
+			this.reverseDfa = false;
+		}
+		boolean useFstCodegen = ctx.conf.getBoolean("desq.mining.use.fst.codegen", false);
+		boolean useOutputTables = ctx.conf.getBoolean("desq.mining.use.output.tables", false);
+		this.compiledFst = new CompiledFst(fst, ctx.dict, useFstCodegen, useOutputTables ? largestFrequentFid : -1);
+		this.stepBuffer = new CompiledFst.Buffer(ctx.dict.isForest());
+	}
+
+	/** Returns the pivot items of the given input sequence in ascending order. */
+	public IntSortedSet computePivotItems(IntList inputSequence) {
+		pivotItems = new IntAVLTreeSet();
+		this.inputSequence = inputSequence;
+		if (reverseDfa) {
+			if (dfa.acceptsReverse(inputSequence, dfaStateSequence, dfaInitialPos)) {
+				for (int i = 0; i < dfaInitialPos.size(); i++) {
+					step(dfaInitialPos.getInt(i), fst.getInitialState(), 0);
+				}
+				visited.clear();
+			}
+			dfaStateSequence.clear();
+			dfaInitialPos.clear();
+		} else if (dfa == null || dfa.accepts(inputSequence)) {
+			step(0, fst.getInitialState(), 0);
+			visited.clear();
+		}
+		this.inputSequence = null;
+		return pivotItems;
+	}
+
+	/** Simulates the FST starting from the given position and state.
+	 *
+	 * @param pos position of next input item
+	 * @param state current state of FST
+	 * @param pivotItem largest output item produced so far (0 if none)
+	 */
+	private void step(int pos, State state, int pivotItem) {
+		if (state.isFinalComplete() || pos == inputSequence.size()) {
+			if (pivotItem > 0 && state.isFinal()) {
+				pivotItems.add(pivotItem);
+			}
+			return;
+		}
+
+		// each triple needs to be processed only once
+		if (!visited.add((((long) pos * fst.numStates() + state.getId()) << 32) | pivotItem)) {
+			return;
+		}
+
+		final IntArrayList pairs = stepBuffer.pairs;
+		final int begin = pairs.size();
+		compiledFst.step(state.getId(), inputSequence.getInt(pos), null, stepBuffer);
+		final int end = pairs.size();
+		for (int i = begin; i < end; i += 2) {
+			final int outputItemFid = pairs.getInt(i);
+			final State toState = compiledFst.getState(pairs.getInt(i + 1));
+			if (outputItemFid == 0) { // EPS output
+				step(pos + 1, toState, pivotItem);
+			} else if (outputItemFid <= largestFrequentFid) { // otherwise, the output sequence is infrequent
+				step(pos + 1, toState, Math.max(pivotItem, outputItemFid));
+			}
+		}
+		pairs.size(begin);
+	}
+}
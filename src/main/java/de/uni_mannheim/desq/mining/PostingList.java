@@ -2,25 +2,40 @@ package de.uni_mannheim.desq.mining;
 
 import it.unimi.dsi.fastutil.bytes.ByteArrayList;
 
+import java.io.Serializable;
+
 /** A posting list is a (possibly empty) sequence of postings, each containing a (possibly empty) sequence
  * of integer elements. Posting lists are stored in memory using variable-byte encoding.
  *
  * Created by rgemulla on 20.07.2016.
  */
-public final class PostingList {
-    private final ByteArrayList data;
+public final class PostingList implements Serializable {
+    private ByteArrayList data;
     private int noPostings;
 
+    /** The arena that allocates the backing array, or null if the array is managed by {@link #data} itself */
+    private final transient PostingListArena arena;
+
     /** Constructs a new empty posting list */
     public PostingList() {
         this.data = new ByteArrayList();
         this.noPostings = 0;
+        this.arena = null;
     }
 
     /** Creates a new posting list with the (copied) data from the given posting list. */
     public PostingList(PostingList postingList) {
         this.data = new ByteArrayList(postingList.data);
         this.noPostings = postingList.noPostings;
+        this.arena = null;
+    }
+
+    /** Constructs a new empty posting list whose backing array is allocated by the given arena. Use
+     * {@link PostingListArena#newPostingList()}. */
+    PostingList(PostingListArena arena) {
+        this.data = new ByteArrayList();
+        this.noPostings = 0;
+        this.arena = arena;
     }
 
     /** Clears this posting list. */
@@ -39,10 +54,51 @@ public final class PostingList {
     public final int noBytes() { return data.size(); }
 
     /** Trims this posting list (so that the capacity of the underlying byte array equals the number of bytes
-     * in this posting list.
+     * in this posting list. Does nothing if the array is allocated by an arena.
      */
     public void trim() {
-        data.trim();
+        if (arena == null) {
+            data.trim();
+        }
+    }
+
+    /** Returns the array backing this posting list. Only the first {@link #noBytes()} bytes are valid. */
+    final byte[] bytes() {
+        return data.elements();
+    }
+
+    /** Removes all bytes from this posting list and frees their memory, but retains the number of postings. Postings
+     * appended afterwards are encoded as if the removed bytes were still present, so that the removed and the
+     * subsequent bytes can be concatenated. Used for spilling; see {@link SpilledPostingList}. */
+    final void removeBytes() {
+        if (arena != null) {
+            arena.release(data.elements());
+            data = new ByteArrayList();
+        } else {
+            data.clear();
+            data.trim();
+        }
+    }
+
+    /** Returns the backing array to the arena. The posting list must not be used afterwards. Called by
+     * {@link PostingListArena#closeScope()}. */
+    final void release() {
+        arena.release(data.elements());
+        data = new ByteArrayList();
+        noPostings = 0;
+    }
+
+    /** Appends a byte. If the backing array is allocated by an arena and full, moves the data to a larger array
+     * from the arena. */
+    private void add(byte b) {
+        if (arena != null && data.size() == data.elements().length) {
+            final byte[] oldArray = data.elements();
+            final byte[] newArray = arena.allocate(oldArray.length + 1);
+            System.arraycopy(oldArray, 0, newArray, 0, data.size());
+            data = ByteArrayList.wrap(newArray, data.size());
+            arena.release(oldArray);
+        }
+        data.add(b);
     }
 
     /** Appends a non-negative integer value to the current posting. Encoded slightly more efficiently than
@@ -55,10 +111,10 @@ public final class PostingList {
         while (true) {
             final int b = value & 0x7F;
             if (value == b) {
-                data.add((byte)b);
+                add((byte)b);
                 return;
             } else {
-                data.add((byte)(b | 0x80));
+                add((byte)(b | 0x80));
                 value >>>= 7;
             }
         }
@@ -79,7 +135,20 @@ public final class PostingList {
     public final void newPosting() {
         noPostings++;
         if (noPostings>1) // first posting does not need separator
-            data.add((byte)0);
+            add((byte)0);
+    }
+
+    /** Appends all postings of the given posting list. */
+    public final void addAll(PostingList postingList) {
+        if (postingList.noPostings == 0)
+            return;
+        if (noPostings > 0) // separates the last posting of this list from the first one of the other list
+            add((byte)0);
+        noPostings += postingList.noPostings;
+        final byte[] bytes = postingList.data.elements();
+        for (int i = 0; i < postingList.data.size(); i++) {
+            add(bytes[i]);
+        }
     }
 
     /** Returns an iterator that can be used to read the postings in this posting list. */
@@ -125,6 +194,12 @@ public final class PostingList {
             this.offset = 0;
         }
 
+        /** Resets this iterator to the beginning of the given data. */
+        public final void reset(ByteArrayList data) {
+            this.data = data;
+            this.offset = 0;
+        }
+
         /** Is there another value in the current posting? */
         public final boolean hasNext() {
             return offset < data.size() && data.getByte(offset) != 0;
@@ -0,0 +1,84 @@
+package de.uni_mannheim.desq.mining;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.ArrayList;
+
+/** Allocates the byte arrays backing {@link PostingList}s. Arrays have power-of-two sizes and are kept in one free
+ * list per size, so that the memory of posting lists that are not needed anymore is reused instead of being
+ * garbage collected.
+ *
+ * Posting lists created with {@link #newPostingList()} belong to the innermost open scope (see
+ * {@link #openScope()}). When a scope is closed, the arrays of all its posting lists are returned to the free
+ * lists at once; these posting lists must not be used anymore afterwards. Pattern-growth miners open a scope for
+ * each node they expand, so that the projected databases of the node's children are released in bulk once the
+ * node's subtree has been processed, and their memory is reused for the node's siblings.
+ *
+ * Not thread-safe; each thread needs to use its own arena. Posting lists may be read by other threads, but only
+ * the thread that created them may append to them.
+ */
+final class PostingListArena {
+    /** Smallest array size is 2^MIN_SIZE_CLASS bytes */
+    private static final int MIN_SIZE_CLASS = 4;
+
+    /** Free arrays indexed by size class (array size = 2^size class) */
+    private final ArrayList<ArrayList<byte[]>> freeArrays = new ArrayList<>();
+
+    /** The posting lists of all open scopes (in order of creation) */
+    private final ArrayList<PostingList> postingLists = new ArrayList<>();
+
+    /** For each open scope, the index of its first posting list in {@link #postingLists} */
+    private final IntArrayList scopeBegins = new IntArrayList();
+
+    PostingListArena() {
+        for (int sizeClass = 0; sizeClass < 32; sizeClass++) {
+            freeArrays.add(new ArrayList<>());
+        }
+    }
+
+    /** Opens a new scope. Posting lists created afterwards belong to this scope until it is closed. */
+    void openScope() {
+        scopeBegins.add(postingLists.size());
+    }
+
+    /** Closes the innermost open scope and releases the arrays of all posting lists created in it. */
+    void closeScope() {
+        int begin = scopeBegins.popInt();
+        for (int i = postingLists.size() - 1; i >= begin; i--) {
+            postingLists.remove(i).release();
+        }
+    }
+
+    /** Creates an empty posting list that belongs to the innermost open scope. */
+    PostingList newPostingList() {
+        assert !scopeBegins.isEmpty();
+        PostingList postingList = new PostingList(this);
+        postingLists.add(postingList);
+        return postingList;
+    }
+
+    /** Returns an array with at least the given number of bytes. The array is not cleared. */
+    byte[] allocate(int minCapacity) {
+        int sizeClass = Math.max(MIN_SIZE_CLASS, 32 - Integer.numberOfLeadingZeros(minCapacity - 1));
+        ArrayList<byte[]> free = freeArrays.get(sizeClass);
+        return free.isEmpty() ? new byte[1 << sizeClass] : free.remove(free.size() - 1);
+    }
+
+    /** Returns the given array to the free lists. Arrays not obtained from {@link #allocate(int)} (i.e., empty
+     * arrays) are ignored. */
+    void release(byte[] array) {
+        int size = array.length;
+        if (size >= (1 << MIN_SIZE_CLASS) && Integer.bitCount(size) == 1) {
+            freeArrays.get(Integer.numberOfTrailingZeros(size)).add(array);
+        }
+    }
+
+    /** Drops all free arrays. Must only be called when there is no open scope. */
+    void clear() {
+        assert scopeBegins.isEmpty();
+        for (ArrayList<byte[]> free : freeArrays) {
+            free.clear();
+            free.trimToSize();
+        }
+    }
+}
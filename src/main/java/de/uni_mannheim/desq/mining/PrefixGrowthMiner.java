@@ -1,8 +1,13 @@
 package de.uni_mannheim.desq.mining;
 
+import de.uni_mannheim.desq.io.MemoryPatternWriter;
 import de.uni_mannheim.desq.util.DesqProperties;
 import it.unimi.dsi.fastutil.ints.*;
 
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * @author Kaustubh Beedkar (kbeedkar@uni-mannheim.de)
  * @author Rainer Gemulla (rgemulla@uni-mannheim.de)
@@ -13,6 +18,7 @@ public final class PrefixGrowthMiner extends MemoryDesqMiner {
     private int gamma;
     private int lambda;
     private boolean generalize = false;
+    private int numThreads = 1; // number of threads used to expand the prefix tree (1 = sequential)
 
 	// helper variables
 	private int beginItem = 0;
@@ -20,6 +26,11 @@ public final class PrefixGrowthMiner extends MemoryDesqMiner {
     private int largestFrequentFid; // used to quickly determine whether an item is frequent
     private IntCollection ascendants; // used as a prefix for ascendant items
     final PostingList.Iterator projectedDatabaseIt = new PostingList.Iterator(); // used to access posting lists
+    final PostingListArena arena = new PostingListArena(); // allocates the projected databases
+
+    // helper variables for parallel mining
+    private ThreadLocal<PrefixGrowthMiner> workers; // the worker of each thread (only set while mining in parallel)
+    private MemoryPatternWriter patternBuffer; // buffers the patterns of the current task (or null)
 
     // if set to true, won't expand an items which have a parent that did not lead to a frequent expansion
     // there shouldn't be any reason to set this to false
@@ -35,9 +46,27 @@ public final class PrefixGrowthMiner extends MemoryDesqMiner {
 		setParameters(ctx.conf);
 	}
 
+	/** Creates a worker for parallel mining. The worker shares the input sequences and parameters with the given
+	 * miner, but uses its own helper variables. <code>isForest</code> must be the result of
+	 * <code>ctx.dict.isForest()</code>, which is read by the given miner since workers are created concurrently. */
+	private PrefixGrowthMiner(PrefixGrowthMiner parent, boolean isForest) {
+		super(parent);
+		sigma = parent.sigma;
+		gamma = parent.gamma;
+		lambda = parent.lambda;
+		generalize = parent.generalize;
+		numThreads = parent.numThreads;
+		beginItem = parent.beginItem;
+		endItem = parent.endItem;
+		largestFrequentFid = parent.largestFrequentFid;
+		ascendants = isForest ? new IntArrayList() : new IntAVLTreeSet();
+		workers = parent.workers;
+	}
+
 	// TODO: move up to DesqMiner?
 	public void clear() {
 		inputSequences.clear();
+		arena.clear();
 	}
 
     public static DesqProperties createConf(long sigma, int gamma, int lambda, boolean generalize) {
@@ -47,6 +76,7 @@ public final class PrefixGrowthMiner extends MemoryDesqMiner {
         conf.setProperty("desq.mining.max.gap", gamma);
         conf.setProperty("desq.mining.max.length", lambda);
         conf.setProperty("desq.mining.generalize", generalize);
+        conf.setProperty("desq.mining.num.threads", 1);
 
         return conf;
     }
@@ -57,6 +87,7 @@ public final class PrefixGrowthMiner extends MemoryDesqMiner {
         int lambda = conf.getInt("desq.mining.max.length");
         boolean generalize = conf.getBoolean("desq.mining.generalize");
         setParameters(sigma, gamma, lambda, generalize);
+        this.numThreads = conf.getInt("desq.mining.num.threads", 1);
     }
 
 	public void setParameters(long sigma, int gamma, int lambda, boolean generalize) {
@@ -83,7 +114,8 @@ public final class PrefixGrowthMiner extends MemoryDesqMiner {
 
 	public void mine() {
         if (sumInputSupports >= sigma) {
-            final PrefixGrowthTreeNode root = new PrefixGrowthTreeNode();
+            arena.openScope(); // for the projected databases of the children of the root
+            final PrefixGrowthTreeNode root = new PrefixGrowthTreeNode(arena);
 
             // first runMiner through all data and create single-item posting lists
             for (int inputId=0; inputId<inputSequences.size(); inputId++) {
@@ -99,7 +131,7 @@ public final class PrefixGrowthMiner extends MemoryDesqMiner {
 
                     // process item
                     if (largestFrequentFid >= itemFid) {
-                        root.expandWithItem(itemFid, inputId, inputSequence.weight, pos);
+                        root.expandWithItem(itemFid, inputId, inputSequence.weight, pos, arena);
                     }
                     if (generalize) {
                         ascendants.clear();
@@ -108,7 +140,7 @@ public final class PrefixGrowthMiner extends MemoryDesqMiner {
                         while (itemFidIt.hasNext()) {
                             itemFid = itemFidIt.nextInt();
                             if (largestFrequentFid >= itemFid) {
-                                root.expandWithItem(itemFid, inputId, inputSequence.weight, pos);
+                                root.expandWithItem(itemFid, inputId, inputSequence.weight, pos, arena);
                             }
                         }
                     }
@@ -117,7 +149,12 @@ public final class PrefixGrowthMiner extends MemoryDesqMiner {
 
             // now the initial posting lists are constructed; traverse them
             root.expansionsToChildren(sigma);
-            expand(new IntArrayList(), root, false);
+            if (numThreads > 1) {
+                mineInParallel(root);
+            } else {
+                expand(new IntArrayList(), root, false);
+            }
+            arena.closeScope();
         }
 		clear();
 	}
@@ -132,89 +169,214 @@ public final class PrefixGrowthMiner extends MemoryDesqMiner {
 
         // iterate over children
         for (PrefixGrowthTreeNode childNode : node.children) {
-            // output patterns (we know it's frequent by construction)
-            assert childNode.support >= sigma;
-            if (ctx.patternWriter != null) {
-                prefix.set(lastPrefixIndex, childNode.itemFid);
-                ctx.patternWriter.write(prefix, childNode.support);
+            expandChild(prefix, childNode, hasPivot, leftSiblingItemsWithoutFrequentChildNodes);
+        }
+
+        // remove placeholder from prefix
+        prefix.removeInt(lastPrefixIndex);
+	}
+
+    /** Outputs the pattern of the given child node and expands the child node.
+     *
+     * @param prefix the output sequence of the child node's parent, followed by a placeholder for the child node's
+     *               item (must remain unmodified upon return except for the placeholder)
+     * @param childNode the child node
+     * @param hasPivot whether the prefix contains a pivot item
+     * @param leftSiblingItemsWithoutFrequentChildNodes items of left siblings of the child node whose expansion did
+     *                                                  not produce frequent children
+     */
+    private void expandChild(IntList prefix, PrefixGrowthTreeNode childNode, boolean hasPivot,
+                             IntSet leftSiblingItemsWithoutFrequentChildNodes) {
+        // output patterns (we know it's frequent by construction)
+        assert childNode.support >= sigma;
+        prefix.set(prefix.size() - 1, childNode.itemFid);
+        if (patternBuffer != null) {
+            patternBuffer.write(prefix, childNode.support);
+        } else if (ctx.patternWriter != null) {
+            ctx.patternWriter.write(prefix, childNode.support);
+        }
+
+        // check if we need to expand
+        boolean expand = prefix.size() < lambda;
+        if (USE_PRUNING && expand) {
+            ascendants.clear();
+            ctx.dict.addAscendantFids(childNode.itemFid, ascendants);
+            IntIterator itemFidIt = ascendants.iterator();
+            while (itemFidIt.hasNext()) {
+                if (leftSiblingItemsWithoutFrequentChildNodes.contains(itemFidIt.next())) {
+                    expand = false;
+                    break;
+                }
+            }
+        }
+        if (!expand) {
+            childNode.invalidate();
+            return;
+        }
+
+        // ok, do the expansion; the projected databases of its children are released once we are done with it
+        arena.openScope();
+        int inputId = -1;
+        projectedDatabaseIt.reset(childNode.projectedDatabase);
+        do {
+            inputId += projectedDatabaseIt.nextNonNegativeInt();
+            final WeightedSequence inputSequence = inputSequences.get(inputId);
+
+            // iterator over all positions
+            int position = 0;
+            while (projectedDatabaseIt.hasNext()) {
+                position += projectedDatabaseIt.nextNonNegativeInt();
+
+                // Add items in the right gamma+1 neighborhood
+                int gap = 0;
+                for (int newPosition = position+1; gap <= gamma && newPosition < inputSequence.size(); newPosition++) {
+                    // process gaps
+                    int itemFid = inputSequence.getInt(newPosition);
+                    if (itemFid < 0) {
+                        gap -= itemFid;
+                        continue;
+                    }
+                    gap++;
+
+                    // process item
+                    if (largestFrequentFid >= itemFid) {
+                        childNode.expandWithItem(itemFid, inputId, inputSequence.weight, newPosition, arena);
+                    }
+                    if (generalize) {
+                        ascendants.clear();
+                        ctx.dict.addAscendantFids(itemFid, ascendants);
+                        final IntIterator itemFidIt = ascendants.iterator();
+                        while (itemFidIt.hasNext()) {
+                            itemFid = itemFidIt.nextInt();
+                            if(largestFrequentFid >= itemFid) {
+                                childNode.expandWithItem(itemFid, inputId, inputSequence.weight, newPosition, arena);
+                            }
+                        }
+                    }
+
+                }
             }
+        } while (projectedDatabaseIt.nextPosting());
+
+        // if this expansion did not produce any frequent children, then all siblings with descendant items
+        // also can't produce frequent children; remember this item
+        childNode.expansionsToChildren(sigma);
+        if (USE_PRUNING && generalize && childNode.children.isEmpty()) {
+            leftSiblingItemsWithoutFrequentChildNodes.add(childNode.itemFid);
+        }
+
+        // process just created expansions
+        childNode.projectedDatabase = null; // not needed anymore
+        final boolean containsPivot = hasPivot || (childNode.itemFid >= beginItem);
+        expand(prefix, childNode, containsPivot);
+        childNode.invalidate(); // not needed anymore
+        arena.closeScope();
+    }
 
-            // check if we need to expand
-            boolean expand = prefix.size() < lambda;
-            if (USE_PRUNING && expand) {
+    // -- parallel mining ---------------------------------------------------------------------------------------------
+
+    /** Expands the children of the root on a fork-join pool with {@link #numThreads} threads. Each child is expanded
+     * in its own task, using the worker of the thread that runs the task.
+     *
+     * A child is not expanded if the expansion of a left sibling with an ascendant item did not produce frequent
+     * children. To prune as much as the sequential algorithm, the children are processed in waves: the tasks of a
+     * wave run in parallel and a child is put into the first wave after all waves that contain left siblings with
+     * ascendant items. The items without frequent children are collected in a synchronized set shared by all
+     * tasks. The patterns of each task are buffered and written as soon as the patterns of all preceding tasks have
+     * been written, so that they appear in the same order as with the sequential algorithm.
+     */
+    private void mineInParallel(PrefixGrowthTreeNode root) {
+        // assign children to waves
+        final IntSet pruningItems = IntSets.synchronize(new IntOpenHashSet());
+        final ArrayList<ExpandTask> tasks = new ArrayList<>(root.children.size());
+        final ArrayList<ArrayList<ExpandTask>> waves = new ArrayList<>();
+        final Int2IntOpenHashMap waveOfItem = new Int2IntOpenHashMap(); // for the children processed so far
+        for (PrefixGrowthTreeNode childNode : root.children) {
+            int wave = 0;
+            if (USE_PRUNING && generalize) {
                 ascendants.clear();
                 ctx.dict.addAscendantFids(childNode.itemFid, ascendants);
                 IntIterator itemFidIt = ascendants.iterator();
                 while (itemFidIt.hasNext()) {
-                    if (leftSiblingItemsWithoutFrequentChildNodes.contains(itemFidIt.next())) {
-                        expand = false;
-                        break;
+                    int itemFid = itemFidIt.nextInt();
+                    if (waveOfItem.containsKey(itemFid)) {
+                        wave = Math.max(wave, waveOfItem.get(itemFid) + 1);
                     }
                 }
+                waveOfItem.put(childNode.itemFid, wave);
             }
-            if (!expand) {
-                childNode.invalidate();
-                continue;
+            while (waves.size() <= wave) {
+                waves.add(new ArrayList<>());
             }
+            ExpandTask task = new ExpandTask(childNode, pruningItems);
+            waves.get(wave).add(task);
+            tasks.add(task);
+        }
 
-            // ok, do the expansion
-            int inputId = -1;
-            projectedDatabaseIt.reset(childNode.projectedDatabase);
-            do {
-                inputId += projectedDatabaseIt.nextNonNegativeInt();
-                final WeightedSequence inputSequence = inputSequences.get(inputId);
+        // run the waves and write the patterns of the completed tasks in order
+        final boolean isForest = ctx.dict.isForest();
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        workers = ThreadLocal.withInitial(() -> new PrefixGrowthMiner(this, isForest));
+        try {
+            int nextTask = 0; // the first task whose patterns have not been written yet
+            for (ArrayList<ExpandTask> wave : waves) {
+                for (ExpandTask task : wave) {
+                    pool.execute(task);
+                }
+                for (ExpandTask task : wave) {
+                    task.join();
+                    nextTask = writePatterns(tasks, nextTask);
+                }
+            }
+            assert nextTask == tasks.size();
+        } finally {
+            pool.shutdown();
+            workers = null;
+        }
+    }
 
-                // iterator over all positions
-                int position = 0;
-                while (projectedDatabaseIt.hasNext()) {
-                    position += projectedDatabaseIt.nextNonNegativeInt();
-
-                    // Add items in the right gamma+1 neighborhood
-                    int gap = 0;
-                    for (int newPosition = position+1; gap <= gamma && newPosition < inputSequence.size(); newPosition++) {
-                        // process gaps
-                        int itemFid = inputSequence.getInt(newPosition);
-                        if (itemFid < 0) {
-                            gap -= itemFid;
-                            continue;
-                        }
-                        gap++;
+    /** Writes the buffered patterns of the completed tasks starting at the given task, up to the first task that is
+     * not completed yet, and releases their buffers. Returns the index of that task. */
+    private int writePatterns(ArrayList<ExpandTask> tasks, int nextTask) {
+        while (nextTask < tasks.size() && tasks.get(nextTask).isDone()) {
+            ExpandTask task = tasks.get(nextTask);
+            if (ctx.patternWriter != null) {
+                ctx.patternWriter.writeAll(task.patternBuffer.getPatterns());
+                task.patternBuffer = null;
+            }
+            nextTask++;
+        }
+        return nextTask;
+    }
 
-                        // process item
-                        if (largestFrequentFid >= itemFid) {
-                            childNode.expandWithItem(itemFid, inputId, inputSequence.weight, newPosition);
-                        }
-                        if (generalize) {
-                            ascendants.clear();
-                            ctx.dict.addAscendantFids(itemFid, ascendants);
-                            final IntIterator itemFidIt = ascendants.iterator();
-                            while (itemFidIt.hasNext()) {
-                                itemFid = itemFidIt.nextInt();
-                                if(largestFrequentFid >= itemFid) {
-                                    childNode.expandWithItem(itemFid, inputId, inputSequence.weight, newPosition);
-                                }
-                            }
-                        }
+    /** Expands a child of the root using the worker of the thread that runs the task. */
+    private final class ExpandTask extends RecursiveAction {
+        /** The child node to expand */
+        final PrefixGrowthTreeNode childNode;
 
-                    }
-                }
-            } while (projectedDatabaseIt.nextPosting());
+        /** Items of children of the root whose expansion did not produce frequent children */
+        final IntSet leftSiblingItemsWithoutFrequentChildNodes;
 
-            // if this expansion did not produce any frequent children, then all siblings with descendant items
-            // also can't produce frequent children; remember this item
-            childNode.expansionsToChildren(sigma);
-            if (USE_PRUNING && generalize && childNode.children.isEmpty()) {
-                leftSiblingItemsWithoutFrequentChildNodes.add(childNode.itemFid);
-            }
+        /** The patterns produced by this task (or null if there is no pattern writer or they have been written) */
+        MemoryPatternWriter patternBuffer;
 
-            // process just created expansions
-            childNode.projectedDatabase = null; // not needed anymore
-            final boolean containsPivot = hasPivot || (childNode.itemFid >= beginItem);
-            expand(prefix, childNode, containsPivot);
-            childNode.invalidate(); // not needed anymore
+        ExpandTask(PrefixGrowthTreeNode childNode, IntSet leftSiblingItemsWithoutFrequentChildNodes) {
+            this.childNode = childNode;
+            this.leftSiblingItemsWithoutFrequentChildNodes = leftSiblingItemsWithoutFrequentChildNodes;
+            this.patternBuffer = ctx.patternWriter != null ? new MemoryPatternWriter() : null;
         }
 
-        // remove placeholder from prefix
-        prefix.removeInt(lastPrefixIndex);
-	}
+        @Override
+        protected void compute() {
+            final PrefixGrowthMiner worker = workers.get();
+            worker.patternBuffer = patternBuffer;
+            try {
+                IntList prefix = new IntArrayList();
+                prefix.add(-1);
+                worker.expandChild(prefix, childNode, false, leftSiblingItemsWithoutFrequentChildNodes);
+            } finally {
+                worker.patternBuffer = null;
+            }
+        }
+    }
 }
@@ -42,17 +42,18 @@ final class PrefixGrowthTreeNode {
 
     // -- construction and clearing -----------------------------------------------------------------------------------
 
-    PrefixGrowthTreeNode() {
-        clear();
+    /** Creates a node whose projected database is allocated from the given arena (or on the heap if null) */
+    PrefixGrowthTreeNode(PostingListArena arena) {
+        clear(arena);
     }
 
-    void clear() {
+    void clear(PostingListArena arena) {
         // clear the posting list
         itemFid = -1;
         support = 0;
         currentInputId = -1;
         currentInputPosition = -1;
-        projectedDatabase = new PostingList();
+        projectedDatabase = arena != null ? arena.newPostingList() : new PostingList();
 
         // clear the children
         if (childrenByFid == null) {
@@ -79,11 +80,12 @@ final class PrefixGrowthTreeNode {
      * @param inputId input sequence id
      * @param inputSupport support of the input sequence
      * @param position position in the input sequence
+     * @param arena the arena that allocates the projected database of a new child (or null if not used)
      */
-    void expandWithItem(int itemFid, int inputId, long inputSupport, int position) {
+    void expandWithItem(int itemFid, int inputId, long inputSupport, int position, PostingListArena arena) {
         PrefixGrowthTreeNode child = childrenByFid.get(itemFid);
         if (child == null) {
-            child = new PrefixGrowthTreeNode();
+            child = new PrefixGrowthTreeNode(arena);
             child.itemFid = itemFid;
             childrenByFid.put(itemFid, child);
         }
@@ -0,0 +1,366 @@
+package de.uni_mannheim.desq.mining;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** A hash table that maps sequences of integers to a 64-bit support and the id of the last input sequence that
+ * contributed to that support. Used to aggregate output sequences without creating an object per sequence.
+ *
+ * The sequences (keys) are stored back to back in large int arrays (the arena), each prefixed by its length.
+ * Entries are identified by an entry id, which indexes the columns holding the arena address, hash value, support,
+ * and last input id of each entry. The hash index uses open addressing with linear probing and stores entry ids.
+ *
+ * Hash values are computed by the caller, usually incrementally using {@link #extendHash(int, int)}. This way, the
+ * hash value of a sequence that grows and shrinks at its end (such as the output prefix in DesqCount) does not have
+ * to be recomputed from scratch.
+ */
+final class SequenceSupportTable {
+	/** Hash value of the empty sequence */
+	static final int EMPTY_HASH = 1;
+
+	/** Maximum size of an arena segment (in ints), unless a single sequence is longer */
+	private static final int MAX_SEGMENT_SIZE = 1 << 20;
+
+	/** Size of the first arena segment (in ints) */
+	private static final int MIN_SEGMENT_SIZE = 1 << 10;
+
+	private static final float LOAD_FACTOR = 0.75f;
+
+	// -- arena -------------------------------------------------------------------------------------------------------
+
+	/** The arena segments. A sequence never spans multiple segments. */
+	private final ArrayList<int[]> segments = new ArrayList<>();
+
+	/** The segment and position at which the next sequence is stored */
+	private int currentSegment = -1;
+	private int currentSegmentPos = 0;
+
+	/** Number of ints in the arena used by all stored sequences and by removed ones, respectively */
+	private long usedInts = 0;
+	private long garbageInts = 0;
+
+	// -- entries -----------------------------------------------------------------------------------------------------
+
+	/** For each entry, the address of its sequence in the arena (segment in the upper, position in the lower 32 bits),
+	 * or -1 if the entry is free */
+	private long[] addresses = new long[0];
+
+	/** For each entry, the hash value of its sequence */
+	private int[] hashes = new int[0];
+
+	/** For each entry, its support */
+	private long[] supports = new long[0];
+
+	/** For each entry, the id of the last input sequence that contributed to its support */
+	private int[] lastInputIds = new int[0];
+
+	/** Number of entry ids in use (live or free) */
+	private int numEntryIds = 0;
+
+	/** The entry ids of removed entries, for reuse */
+	private final IntArrayList freeEntryIds = new IntArrayList();
+
+	/** Number of live entries */
+	private int size = 0;
+
+	// -- hash index --------------------------------------------------------------------------------------------------
+
+	/** The hash index. Each slot holds an entry id plus 1, or 0 if empty. */
+	private int[] slots;
+	private int mask;
+
+	/** Number of entries at which the hash index is enlarged */
+	private int maxFill;
+
+
+	// -- construction and clearing -----------------------------------------------------------------------------------
+
+	SequenceSupportTable() {
+		int capacity = HashCommon.arraySize(16, LOAD_FACTOR);
+		slots = new int[capacity];
+		mask = capacity - 1;
+		maxFill = HashCommon.maxFill(capacity, LOAD_FACTOR);
+	}
+
+	/** Removes all entries. Retains the allocated memory. */
+	void clear() {
+		if (numEntryIds > 0) {
+			Arrays.fill(slots, 0);
+		}
+		numEntryIds = 0;
+		freeEntryIds.clear();
+		size = 0;
+		currentSegment = segments.isEmpty() ? -1 : 0;
+		currentSegmentPos = 0;
+		usedInts = 0;
+		garbageInts = 0;
+	}
+
+
+	// -- hashing -----------------------------------------------------------------------------------------------------
+
+	/** Returns the hash value of a sequence obtained by appending the given item to a sequence with the given
+	 * hash value. */
+	static int extendHash(int hash, int item) {
+		return 31*hash + item;
+	}
+
+	/** Returns the hash value of the given sequence. */
+	static int hash(IntList sequence) {
+		int hash = EMPTY_HASH;
+		for (int i=0; i<sequence.size(); i++) {
+			hash = extendHash(hash, sequence.getInt(i));
+		}
+		return hash;
+	}
+
+
+	// -- access ------------------------------------------------------------------------------------------------------
+
+	/** Returns the number of entries. */
+	int size() {
+		return size;
+	}
+
+	/** Returns the entry id of the given sequence or -1 if the sequence is not present.
+	 *
+	 * @param hash the hash value of the sequence (see {@link #hash(IntList)})
+	 */
+	int find(IntList sequence, int hash) {
+		int pos = HashCommon.mix(hash) & mask;
+		while (true) {
+			final int entryId = slots[pos] - 1;
+			if (entryId < 0) {
+				return -1;
+			}
+			if (hashes[entryId] == hash && sequenceEquals(entryId, sequence)) {
+				return entryId;
+			}
+			pos = (pos + 1) & mask;
+		}
+	}
+
+	/** Adds a copy of the given sequence, which must not be present, and returns its entry id.
+	 *
+	 * @param hash the hash value of the sequence (see {@link #hash(IntList)})
+	 */
+	int add(IntList sequence, int hash, long support, int lastInputId) {
+		final int entryId = newEntryId();
+		addresses[entryId] = store(sequence);
+		hashes[entryId] = hash;
+		supports[entryId] = support;
+		lastInputIds[entryId] = lastInputId;
+
+		int pos = HashCommon.mix(hash) & mask;
+		while (slots[pos] != 0) {
+			pos = (pos + 1) & mask;
+		}
+		slots[pos] = entryId + 1;
+		if (++size >= maxFill) {
+			rehash(slots.length * 2);
+		}
+		return entryId;
+	}
+
+	/** Removes the given entry. Its entry id may be reused by subsequently added entries. */
+	void remove(int entryId) {
+		assert addresses[entryId] >= 0;
+
+		// remove it from the hash index
+		int pos = HashCommon.mix(hashes[entryId]) & mask;
+		while (slots[pos] != entryId + 1) {
+			pos = (pos + 1) & mask;
+		}
+		shiftSlots(pos);
+
+		// and free the entry
+		garbageInts += length(entryId) + 1;
+		addresses[entryId] = -1;
+		freeEntryIds.add(entryId);
+		size--;
+		if (garbageInts > MAX_SEGMENT_SIZE && garbageInts > usedInts / 2) {
+			compact();
+		}
+	}
+
+	/** Returns the hash value of the sequence of the given entry. */
+	int getHash(int entryId) {
+		return hashes[entryId];
+	}
+
+	long getSupport(int entryId) {
+		return supports[entryId];
+	}
+
+	void setSupport(int entryId, long support) {
+		supports[entryId] = support;
+	}
+
+	int getLastInputId(int entryId) {
+		return lastInputIds[entryId];
+	}
+
+	void setLastInputId(int entryId, int lastInputId) {
+		lastInputIds[entryId] = lastInputId;
+	}
+
+	/** Returns the length of the sequence of the given entry. */
+	int length(int entryId) {
+		final long address = addresses[entryId];
+		return segments.get((int)(address >>> 32))[(int)address];
+	}
+
+	/** Stores the sequence of the given entry in <code>target</code> (replacing its contents). */
+	void getSequence(int entryId, IntList target) {
+		final long address = addresses[entryId];
+		final int[] segment = segments.get((int)(address >>> 32));
+		final int offset = (int)address;
+		target.clear();
+		target.addElements(0, segment, offset + 1, segment[offset]);
+	}
+
+	/** Returns a copy of the sequence of the given entry. */
+	Sequence getSequence(int entryId) {
+		Sequence sequence = new Sequence();
+		getSequence(entryId, sequence);
+		return sequence;
+	}
+
+	/** Returns the smallest id of a live entry that is at least <code>entryId</code>, or -1 if there is none. Use
+	 * <code>for (int e = nextEntryId(0); e >= 0; e = nextEntryId(e+1))</code> to iterate over all entries. */
+	int nextEntryId(int entryId) {
+		for (; entryId < numEntryIds; entryId++) {
+			if (addresses[entryId] >= 0) {
+				return entryId;
+			}
+		}
+		return -1;
+	}
+
+
+	// -- internals ---------------------------------------------------------------------------------------------------
+
+	private boolean sequenceEquals(int entryId, IntList sequence) {
+		final long address = addresses[entryId];
+		final int[] segment = segments.get((int)(address >>> 32));
+		int offset = (int)address;
+		final int length = segment[offset++];
+		if (length != sequence.size()) {
+			return false;
+		}
+		if (sequence instanceof IntArrayList) {
+			final int[] items = ((IntArrayList)sequence).elements();
+			for (int i=0; i<length; i++) {
+				if (segment[offset + i] != items[i]) return false;
+			}
+		} else {
+			for (int i=0; i<length; i++) {
+				if (segment[offset + i] != sequence.getInt(i)) return false;
+			}
+		}
+		return true;
+	}
+
+	private int newEntryId() {
+		if (!freeEntryIds.isEmpty()) {
+			return freeEntryIds.popInt();
+		}
+		if (numEntryIds == addresses.length) {
+			int capacity = Math.max(16, 2*addresses.length);
+			addresses = Arrays.copyOf(addresses, capacity);
+			hashes = Arrays.copyOf(hashes, capacity);
+			supports = Arrays.copyOf(supports, capacity);
+			lastInputIds = Arrays.copyOf(lastInputIds, capacity);
+		}
+		return numEntryIds++;
+	}
+
+	/** Stores the given sequence in the arena and returns its address. */
+	private long store(IntList sequence) {
+		final int length = sequence.size();
+		final int[] segment = allocate(length + 1);
+		final int offset = currentSegmentPos;
+		segment[offset] = length;
+		sequence.getElements(0, segment, offset + 1, length);
+		currentSegmentPos += length + 1;
+		usedInts += length + 1;
+		return ((long)currentSegment << 32) | offset;
+	}
+
+	/** Makes sure that the current segment has room for <code>n</code> more ints and returns it. */
+	private int[] allocate(int n) {
+		if (currentSegment >= 0 && currentSegmentPos + n <= segments.get(currentSegment).length) {
+			return segments.get(currentSegment);
+		}
+
+		// move on to the next segment; reuse it if present and large enough
+		currentSegment++;
+		currentSegmentPos = 0;
+		if (currentSegment < segments.size() && segments.get(currentSegment).length >= n) {
+			return segments.get(currentSegment);
+		}
+		int previousSize = currentSegment > 0 ? segments.get(currentSegment - 1).length : MIN_SEGMENT_SIZE / 2;
+		int[] segment = new int[Math.max(n, Math.min(MAX_SEGMENT_SIZE, 2*previousSize))];
+		if (currentSegment < segments.size()) {
+			segments.set(currentSegment, segment);
+		} else {
+			segments.add(segment);
+		}
+		return segment;
+	}
+
+	/** Copies all live sequences to a new arena to reclaim the space of removed ones. */
+	private void compact() {
+		final ArrayList<int[]> oldSegments = new ArrayList<>(segments);
+		segments.clear();
+		currentSegment = -1;
+		currentSegmentPos = 0;
+		usedInts = 0;
+		garbageInts = 0;
+		final IntArrayList sequence = new IntArrayList();
+		for (int entryId = nextEntryId(0); entryId >= 0; entryId = nextEntryId(entryId + 1)) {
+			final long address = addresses[entryId];
+			final int[] segment = oldSegments.get((int)(address >>> 32));
+			final int offset = (int)address;
+			sequence.clear();
+			sequence.addElements(0, segment, offset + 1, segment[offset]);
+			addresses[entryId] = store(sequence);
+		}
+	}
+
+	/** Rebuilds the hash index with the given capacity (a power of 2). */
+	private void rehash(int capacity) {
+		slots = new int[capacity];
+		mask = capacity - 1;
+		maxFill = HashCommon.maxFill(capacity, LOAD_FACTOR);
+		for (int entryId = nextEntryId(0); entryId >= 0; entryId = nextEntryId(entryId + 1)) {
+			int pos = HashCommon.mix(hashes[entryId]) & mask;
+			while (slots[pos] != 0) {
+				pos = (pos + 1) & mask;
+			}
+			slots[pos] = entryId + 1;
+		}
+	}
+
+	/** Removes the slot at the given position and shifts subsequent slots to keep probe sequences intact. */
+	private void shiftSlots(int pos) {
+		int last, slot, current;
+		while (true) {
+			pos = ((last = pos) + 1) & mask;
+			while (true) {
+				if ((current = slots[pos]) == 0) {
+					slots[last] = 0;
+					return;
+				}
+				slot = HashCommon.mix(hashes[current - 1]) & mask;
+				if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) break;
+				pos = (pos + 1) & mask;
+			}
+			slots[last] = current;
+		}
+	}
+}
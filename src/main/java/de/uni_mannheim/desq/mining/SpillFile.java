@@ -0,0 +1,90 @@
+package de.uni_mannheim.desq.mining;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** An append-only temporary file to which miners spill data that does not fit into their memory budget. The file
+ * is created when data is appended for the first time and deleted by {@link #delete()}. Appending is synchronized;
+ * reading is thread-safe.
+ */
+final class SpillFile {
+    /** The directory in which to create the file (null for the default temporary-file directory) */
+    private final File dir;
+
+    private File file = null;
+    private RandomAccessFile randomAccessFile = null;
+    private volatile FileChannel channel = null;
+
+    /** Number of bytes appended so far */
+    private long size = 0;
+
+    SpillFile(File dir) {
+        this.dir = dir;
+    }
+
+    /** Appends the given bytes to this file.
+     *
+     * @return the offset of the first appended byte
+     */
+    synchronized long append(byte[] bytes, int offset, int length) {
+        try {
+            if (channel == null) {
+                file = File.createTempFile("desq-spill-", ".bin", dir);
+                file.deleteOnExit();
+                randomAccessFile = new RandomAccessFile(file, "rw");
+                channel = randomAccessFile.getChannel();
+            }
+            long position = size;
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, size + buffer.position() - offset);
+            }
+            size += length;
+            return position;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Reads <code>length</code> bytes starting at the given position of this file. */
+    void read(long position, byte[] bytes, int offset, int length) {
+        assert position + length <= size();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position() - offset) < 0) {
+                    throw new IOException("Unexpected end of spill file " + file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Returns the number of bytes in this file. */
+    synchronized long size() {
+        return size;
+    }
+
+    /** Deletes this file. Data appended afterwards goes to a new file. */
+    synchronized void delete() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            randomAccessFile.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            file.delete();
+            file = null;
+            randomAccessFile = null;
+            channel = null;
+            size = 0;
+        }
+    }
+}
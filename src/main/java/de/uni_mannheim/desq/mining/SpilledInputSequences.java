@@ -0,0 +1,172 @@
+package de.uni_mannheim.desq.mining;
+
+import de.uni_mannheim.desq.fst.DfaState;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** Input sequences that have been spilled to a {@link SpillFile}. Each input sequence is stored as a posting in the
+ * format of {@link PostingList}: its weight (as two non-negative integers), its length, its items, and (optionally)
+ * the length of its DFA state sequence followed by the ids of the DFA states. Only the offset of each input
+ * sequence is kept in memory.
+ *
+ * Input sequences must be added by a single thread; afterwards, they can be read by multiple threads concurrently,
+ * each using its own {@link Reader}.
+ */
+final class SpilledInputSequences {
+    /** Input sequences are written to the spill file once this many bytes have been buffered */
+    private static final int WRITE_BUFFER_BYTES = 1 << 16;
+
+    /** Input sequences are read in blocks of (at least) this many bytes */
+    private static final int READ_BUFFER_BYTES = 1 << 16;
+
+    private final SpillFile spillFile;
+
+    /** Whether or not DFA state sequences are stored */
+    private final boolean withDfaStateSequences;
+
+    /** The offset of each input sequence in the spill file */
+    private final LongArrayList offsets = new LongArrayList();
+
+    /** Total number of bytes, including the ones not yet written to the spill file */
+    private long noBytes = 0;
+
+    /** The DFA states occurring in the spilled DFA state sequences, by id */
+    private final ArrayList<DfaState> dfaStateById;
+    private final Reference2IntOpenHashMap<DfaState> idByDfaState;
+
+    /** Used to encode an input sequence */
+    private final PostingList record = new PostingList();
+
+    /** Encoded input sequences not yet written to the spill file */
+    private final ByteArrayList writeBuffer = new ByteArrayList();
+
+    SpilledInputSequences(SpillFile spillFile, boolean withDfaStateSequences) {
+        this.spillFile = spillFile;
+        this.withDfaStateSequences = withDfaStateSequences;
+        if (withDfaStateSequences) {
+            dfaStateById = new ArrayList<>();
+            idByDfaState = new Reference2IntOpenHashMap<>();
+            idByDfaState.defaultReturnValue(-1);
+        } else {
+            dfaStateById = null;
+            idByDfaState = null;
+        }
+    }
+
+    /** Appends an input sequence. The DFA state sequence is ignored if DFA state sequences are not stored. */
+    void add(IntList inputSequence, long weight, DfaState[] dfaStateSequence) {
+        assert weight >= 0;
+        record.clear();
+        record.newPosting();
+        record.addNonNegativeInt((int)(weight >>> 31));
+        record.addNonNegativeInt((int)(weight & Integer.MAX_VALUE));
+        record.addNonNegativeInt(inputSequence.size());
+        for (int i=0; i<inputSequence.size(); i++) {
+            record.addNonNegativeInt(inputSequence.getInt(i));
+        }
+        if (withDfaStateSequences) {
+            record.addNonNegativeInt(dfaStateSequence.length);
+            for (int i=0; i<dfaStateSequence.length; i++) {
+                DfaState dfaState = dfaStateSequence[i];
+                int id = idByDfaState.getInt(dfaState);
+                if (id < 0) {
+                    id = dfaStateById.size();
+                    dfaStateById.add(dfaState);
+                    idByDfaState.put(dfaState, id);
+                }
+                record.addNonNegativeInt(id);
+            }
+        }
+
+        offsets.add(noBytes);
+        writeBuffer.addElements(writeBuffer.size(), record.bytes(), 0, record.noBytes());
+        noBytes += record.noBytes();
+        if (writeBuffer.size() >= WRITE_BUFFER_BYTES) {
+            flush();
+        }
+    }
+
+    /** Writes all buffered input sequences to the spill file. Must be called before input sequences are read. */
+    void flush() {
+        if (writeBuffer.isEmpty()) {
+            return;
+        }
+        long offset = spillFile.append(writeBuffer.elements(), 0, writeBuffer.size());
+        assert offset + writeBuffer.size() == noBytes; // the spill file is used for input sequences only
+        writeBuffer.clear();
+    }
+
+    /** Deletes the spill file. The input sequences cannot be read afterwards. */
+    void deleteSpillFile() {
+        spillFile.delete();
+    }
+
+    /** Returns the number of input sequences. */
+    int size() {
+        return offsets.size();
+    }
+
+    /** Returns the (estimated) number of bytes used in memory. */
+    long memoryBytes() {
+        return 8L * offsets.size() + writeBuffer.size();
+    }
+
+    /** Reads spilled input sequences. Reading is most efficient when input sequences are accessed in order of
+     * increasing id. */
+    final class Reader {
+        /** The input sequence read last */
+        final WeightedSequence inputSequence = new WeightedSequence();
+
+        /** The DFA state sequence of the input sequence read last (if stored). Entries beyond the length of that
+         * DFA state sequence are left over from earlier reads. */
+        DfaState[] dfaStateSequence = new DfaState[0];
+
+        /** A block of the spill file, starting at {@link #bufferOffset} */
+        private byte[] buffer = new byte[READ_BUFFER_BYTES];
+        private ByteArrayList bufferList = ByteArrayList.wrap(buffer, 0);
+        private long bufferOffset = 0;
+
+        private final PostingList.Iterator it = new PostingList.Iterator();
+
+        /** Reads the given input sequence into {@link #inputSequence} and {@link #dfaStateSequence}. */
+        void read(int inputId) {
+            // make sure that the input sequence is buffered
+            long start = offsets.getLong(inputId);
+            long end = inputId + 1 < offsets.size() ? offsets.getLong(inputId + 1) : noBytes;
+            if (start < bufferOffset || end > bufferOffset + bufferList.size()) {
+                if (end - start > buffer.length) {
+                    buffer = new byte[(int)(end - start)];
+                }
+                int length = (int)Math.min(buffer.length, noBytes - start);
+                spillFile.read(start, buffer, 0, length);
+                bufferList = ByteArrayList.wrap(buffer, length);
+                bufferOffset = start;
+            }
+
+            // decode it
+            it.reset(bufferList);
+            it.offset = (int)(start - bufferOffset);
+            inputSequence.weight = ((long)it.nextNonNegativeInt() << 31) | it.nextNonNegativeInt();
+            int size = it.nextNonNegativeInt();
+            inputSequence.size(size);
+            int[] items = inputSequence.elements();
+            for (int i=0; i<size; i++) {
+                items[i] = it.nextNonNegativeInt();
+            }
+            if (withDfaStateSequences) {
+                int length = it.nextNonNegativeInt();
+                if (dfaStateSequence.length < length) {
+                    dfaStateSequence = Arrays.copyOf(dfaStateSequence, Math.max(length, 2*dfaStateSequence.length));
+                }
+                for (int i=0; i<length; i++) {
+                    dfaStateSequence[i] = dfaStateById.get(it.nextNonNegativeInt());
+                }
+            }
+        }
+    }
+}
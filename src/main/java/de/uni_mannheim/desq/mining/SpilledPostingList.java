@@ -0,0 +1,140 @@
+package de.uni_mannheim.desq.mining;
+
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.util.Arrays;
+
+/** The spilled part of a {@link PostingList}. Each call to {@link #spill(PostingList)} moves the bytes of the
+ * posting list to a {@link SpillFile} as they are, i.e., without re-encoding. The posting list itself keeps the
+ * bytes appended afterwards, so that the spilled segments followed by the posting list form the entire
+ * posting list.
+ */
+final class SpilledPostingList {
+    private final SpillFile spillFile;
+
+    /** Offsets and lengths of the spilled segments in the spill file */
+    private final LongArrayList segmentOffsets = new LongArrayList();
+    private final IntArrayList segmentLengths = new IntArrayList();
+
+    /** Total number of spilled bytes */
+    private long noBytes = 0;
+
+    SpilledPostingList(SpillFile spillFile) {
+        this.spillFile = spillFile;
+    }
+
+    /** Moves the bytes of the given posting list to the spill file and returns the number of bytes moved. */
+    int spill(PostingList postingList) {
+        int length = postingList.noBytes();
+        if (length > 0) {
+            segmentOffsets.add(spillFile.append(postingList.bytes(), 0, length));
+            segmentLengths.add(length);
+            noBytes += length;
+            postingList.removeBytes();
+        }
+        return length;
+    }
+
+    /** Returns the number of spilled bytes. */
+    long noBytes() {
+        return noBytes;
+    }
+
+    /** Streams a spilled posting list followed by its unspilled remainder in chunks. Each chunk contains one or more
+     * entire postings and can be read with a {@link PostingList.Iterator}. Reuses its buffer across posting lists.
+     */
+    static final class Reader {
+        private byte[] buffer;
+
+        /** Number of valid bytes in {@link #buffer} */
+        private int bufferSize;
+
+        /** Start of the bytes in {@link #buffer} that have not been returned as part of a chunk yet */
+        private int carryOffset;
+
+        private SpilledPostingList spilledPostingList;
+        private PostingList remainder;
+        private int nextSegment;
+        private int nextSegmentOffset;
+        private int nextRemainderOffset;
+
+        /** Creates a reader that returns chunks of about the given size (or larger if a posting does not fit). */
+        Reader(int chunkBytes) {
+            buffer = new byte[chunkBytes];
+        }
+
+        /** Starts reading the given spilled posting list followed by the given remainder. */
+        void reset(SpilledPostingList spilledPostingList, PostingList remainder) {
+            this.spilledPostingList = spilledPostingList;
+            this.remainder = remainder;
+            nextSegment = 0;
+            nextSegmentOffset = 0;
+            nextRemainderOffset = 0;
+            bufferSize = 0;
+            carryOffset = 0;
+        }
+
+        /** Resets the given iterator to the next chunk. Returns false if there are no more chunks. */
+        boolean next(PostingList.Iterator it) {
+            // move the partial posting left from the previous chunk to the front
+            bufferSize -= carryOffset;
+            System.arraycopy(buffer, carryOffset, buffer, 0, bufferSize);
+            carryOffset = 0;
+
+            while (true) {
+                boolean exhausted = fill();
+                if (exhausted) {
+                    if (bufferSize == 0) {
+                        return false;
+                    }
+                    it.reset(ByteArrayList.wrap(buffer, bufferSize));
+                    carryOffset = bufferSize;
+                    return true;
+                }
+
+                // cut after the last complete posting; 0 bytes only occur as posting separators
+                int cut = bufferSize - 1;
+                while (cut >= 0 && buffer[cut] != 0) {
+                    cut--;
+                }
+                if (cut > 0) {
+                    it.reset(ByteArrayList.wrap(buffer, cut));
+                    carryOffset = cut + 1;
+                    return true;
+                }
+
+                // a single posting does not fit into the buffer
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+            }
+        }
+
+        /** Fills the buffer as far as possible. Returns true if all data has been read. */
+        private boolean fill() {
+            while (bufferSize < buffer.length) {
+                if (nextSegment < spilledPostingList.segmentOffsets.size()) {
+                    int segmentLength = spilledPostingList.segmentLengths.getInt(nextSegment);
+                    int length = Math.min(buffer.length - bufferSize, segmentLength - nextSegmentOffset);
+                    spilledPostingList.spillFile.read(
+                            spilledPostingList.segmentOffsets.getLong(nextSegment) + nextSegmentOffset,
+                            buffer, bufferSize, length);
+                    bufferSize += length;
+                    nextSegmentOffset += length;
+                    if (nextSegmentOffset == segmentLength) {
+                        nextSegment++;
+                        nextSegmentOffset = 0;
+                    }
+                } else {
+                    int length = Math.min(buffer.length - bufferSize, remainder.noBytes() - nextRemainderOffset);
+                    System.arraycopy(remainder.bytes(), nextRemainderOffset, buffer, bufferSize, length);
+                    bufferSize += length;
+                    nextRemainderOffset += length;
+                    return nextRemainderOffset == remainder.noBytes();
+                }
+            }
+            return nextSegment == spilledPostingList.segmentOffsets.size()
+                    && nextRemainderOffset == remainder.noBytes();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package de.uni_mannheim.desq.mining;
+
+import de.uni_mannheim.desq.io.PatternWriter;
+import de.uni_mannheim.desq.util.DesqProperties;
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+
+/** A variant of {@link DesqCount} for unbounded streams of input sequences. Maintains the supports of the output
+ * sequences of all input sequences in a sliding window, and retracts the outputs of input sequences once they
+ * leave the window.
+ *
+ * The window is bounded by property "desq.mining.window.size" (maximum number of input sequences) and/or by property
+ * "desq.mining.window.duration" (an input sequence expires once an input sequence with a timestamp at least that
+ * much larger is added). A value of 0 means no bound. For each input sequence in the window, the entries of the
+ * output sequences it produced are retained. When the input sequence expires, the supports of these entries are
+ * decremented again and entries with zero support are removed, so that memory consumption is bounded by the window.
+ *
+ * The frequent output sequences of the current window are written on demand by {@link #mine()} and
+ * {@link #writeFrequentPatterns(PatternWriter)}. Additionally, output sequences can be written as soon as their
+ * support reaches sigma (see {@link #setThresholdWriter(PatternWriter)}).
+ */
+public final class StreamingDesqCount extends DesqMiner {
+	// -- parameters for mining ---------------------------------------------------------------------------------------
+
+	/** Minimum support */
+	final long sigma;
+
+	/** Maximum number of input sequences in the window (0 = unbounded) */
+	final int windowSize;
+
+	/** Maximum difference of the timestamps of the latest input sequence and any input sequence in the window
+	 * (0 = unbounded) */
+	final long windowDuration;
+
+	// -- helper variables --------------------------------------------------------------------------------------------
+
+	/** Simulates the FST and holds the supports of all output sequences of the window */
+	private final DesqCount counter;
+
+	/** The timestamps of the input sequences in the window, oldest first */
+	private final LongArrayFIFOQueue windowTimestamps = new LongArrayFIFOQueue();
+
+	/** The supports of the input sequences in the window, oldest first */
+	private final LongArrayFIFOQueue windowSupports = new LongArrayFIFOQueue();
+
+	/** For each input sequence in the window (oldest first), the number of output sequences it produced followed by
+	 * the entry ids of these output sequences in {@link DesqCount#outputSequences} */
+	private final IntArrayFIFOQueue windowEntryIds = new IntArrayFIFOQueue();
+
+	/** The entry ids counted for the current input sequence */
+	private final IntArrayList countedEntryIds = new IntArrayList();
+
+	/** The timestamp of the latest input sequence */
+	private long currentTimestamp = 0;
+
+	/** If non-null, output sequences are written here as soon as their support reaches sigma */
+	private PatternWriter thresholdWriter = null;
+
+	/** Reused when writing output sequences */
+	private final Sequence outputSequence = new Sequence();
+
+	// -- statistics --------------------------------------------------------------------------------------------------
+
+	/** Number of input sequences added so far */
+	private long numInputs = 0;
+
+	/** Number of input sequences that left the window so far */
+	private long numExpiredInputs = 0;
+
+	/** Total time spent on adding and retracting input sequences (in nanoseconds) */
+	private long processingNanos = 0;
+
+
+	// -- construction ------------------------------------------------------------------------------------------------
+
+	public StreamingDesqCount(DesqMinerContext ctx) {
+		super(ctx);
+		this.sigma = ctx.conf.getLong("desq.mining.min.support");
+		this.windowSize = ctx.conf.getInt("desq.mining.window.size", 0);
+		this.windowDuration = ctx.conf.getLong("desq.mining.window.duration", 0);
+
+		// the counter always runs sequentially; input threads (if any) only filter
+		DesqProperties counterConf = new DesqProperties(ctx.conf);
+		counterConf.setProperty("desq.mining.num.threads", 1);
+		this.counter = new DesqCount(new DesqMinerContext(counterConf, ctx.dict), null, countedEntryIds);
+	}
+
+	public static DesqProperties createConf(String patternExpression, long sigma, int windowSize, long windowDuration) {
+		DesqProperties conf = DesqCount.createConf(patternExpression, sigma);
+		conf.setProperty("desq.mining.miner.class", StreamingDesqCount.class.getCanonicalName());
+		conf.setProperty("desq.mining.window.size", windowSize);
+		conf.setProperty("desq.mining.window.duration", windowDuration);
+		return conf;
+	}
+
+	/** Sets the writer to which output sequences are written (along with their support) whenever their support
+	 * reaches sigma due to a newly added input sequence. If null, no such output is produced. */
+	public void setThresholdWriter(PatternWriter thresholdWriter) {
+		this.thresholdWriter = thresholdWriter;
+	}
+
+
+	// -- processing input sequences ---------------------------------------------------------------------------------
+
+	/** Adds an input sequence with the timestamp of the latest input sequence. */
+	@Override
+	protected void addInputSequence(IntList sequence, long support, boolean allowBuffering) {
+		add(sequence, support, currentTimestamp);
+	}
+
+	/** Adds an input sequence with the timestamp of the latest input sequence. */
+	public void add(IntList sequence, long support) {
+		add(sequence, support, currentTimestamp);
+	}
+
+	/** Adds an input sequence. Input sequences that leave the window are retracted first.
+	 *
+	 * @param support the support of the input sequence; must be positive
+	 * @param timestamp the timestamp of the input sequence; must not be smaller than the one of the latest input
+	 */
+	public void add(IntList sequence, long support, long timestamp) {
+		final long startNanos = System.nanoTime();
+		prepareAdd(support, timestamp);
+		counter.countInputSequence(sequence, support);
+		finishAdd(support, timestamp);
+		processingNanos += System.nanoTime() - startNanos;
+	}
+
+	@Override
+	protected InputFilter createInputFilter() {
+		return counter.createInputFilter();
+	}
+
+	@Override
+	protected void addFilteredInputSequence(IntList sequence, long support, Object filterResult) {
+		final long startNanos = System.nanoTime();
+		prepareAdd(support, currentTimestamp);
+		counter.countFilteredInputSequence(sequence, support, filterResult);
+		finishAdd(support, currentTimestamp);
+		processingNanos += System.nanoTime() - startNanos;
+	}
+
+	/** Retracts all input sequences that are too old with respect to the given timestamp. Can be used to let the
+	 * window slide when no new input sequences arrive. */
+	public void advanceTime(long timestamp) {
+		if (timestamp < currentTimestamp) {
+			throw new IllegalArgumentException("timestamp " + timestamp + " is smaller than current timestamp "
+					+ currentTimestamp);
+		}
+		final long startNanos = System.nanoTime();
+		retractExpired(timestamp);
+		processingNanos += System.nanoTime() - startNanos;
+	}
+
+	/** Moves the window to the given timestamp and retracts all input sequences that are too old. */
+	private void retractExpired(long timestamp) {
+		currentTimestamp = timestamp;
+		if (windowDuration > 0) {
+			while (!windowTimestamps.isEmpty() && windowTimestamps.firstLong() <= timestamp - windowDuration) {
+				retractOldest();
+			}
+		}
+	}
+
+	/** Makes room in the window for an input sequence with the given support and timestamp. */
+	private void prepareAdd(long support, long timestamp) {
+		if (support <= 0) {
+			// an entry is removed once its support drops to 0, so all inputs need to contribute
+			throw new IllegalArgumentException("support has to be positive");
+		}
+		if (timestamp < currentTimestamp) {
+			throw new IllegalArgumentException("timestamp " + timestamp + " is smaller than current timestamp "
+					+ currentTimestamp);
+		}
+		retractExpired(timestamp);
+		if (windowSize > 0) {
+			while (windowTimestamps.size() >= windowSize) {
+				retractOldest();
+			}
+		}
+		countedEntryIds.clear();
+	}
+
+	/** Records the output sequences of the input sequence just counted in the window and writes the ones that
+	 * became frequent. */
+	private void finishAdd(long support, long timestamp) {
+		windowTimestamps.enqueue(timestamp);
+		windowSupports.enqueue(support);
+		windowEntryIds.enqueue(countedEntryIds.size());
+		final SequenceSupportTable outputSequences = counter.outputSequences;
+		for (int i = 0; i < countedEntryIds.size(); i++) {
+			final int entryId = countedEntryIds.getInt(i);
+			windowEntryIds.enqueue(entryId);
+			if (thresholdWriter != null) {
+				final long newSupport = outputSequences.getSupport(entryId);
+				if (newSupport >= sigma && newSupport - support < sigma) {
+					outputSequences.getSequence(entryId, outputSequence);
+					thresholdWriter.write(outputSequence, newSupport);
+				}
+			}
+		}
+		numInputs++;
+	}
+
+	/** Removes the oldest input sequence from the window and retracts its output sequences. */
+	private void retractOldest() {
+		windowTimestamps.dequeueLong();
+		final long support = windowSupports.dequeueLong();
+		final SequenceSupportTable outputSequences = counter.outputSequences;
+		for (int n = windowEntryIds.dequeueInt(); n > 0; n--) {
+			final int entryId = windowEntryIds.dequeueInt();
+			final long newSupport = outputSequences.getSupport(entryId) - support;
+			if (newSupport == 0) {
+				outputSequences.remove(entryId);
+			} else {
+				outputSequences.setSupport(entryId, newSupport);
+			}
+		}
+		numExpiredInputs++;
+	}
+
+
+	// -- mining ------------------------------------------------------------------------------------------------------
+
+	/** Writes the frequent output sequences of the current window to the pattern writer of the context (if any). */
+	@Override
+	public void mine() {
+		if (ctx.patternWriter != null) {
+			writeFrequentPatterns(ctx.patternWriter);
+		}
+	}
+
+	/** Writes the frequent output sequences of the current window along with their supports. */
+	public void writeFrequentPatterns(PatternWriter patternWriter) {
+		final SequenceSupportTable outputSequences = counter.outputSequences;
+		for (int entryId = outputSequences.nextEntryId(0); entryId >= 0;
+			 entryId = outputSequences.nextEntryId(entryId+1)) {
+			final long support = outputSequences.getSupport(entryId);
+			if (support >= sigma) {
+				outputSequences.getSequence(entryId, outputSequence);
+				patternWriter.write(outputSequence, support);
+			}
+		}
+	}
+
+
+	// -- statistics --------------------------------------------------------------------------------------------------
+
+	/** Returns the number of input sequences currently in the window. */
+	public int windowInputCount() {
+		return windowTimestamps.size();
+	}
+
+	/** Returns the number of distinct output sequences (frequent or not) of the input sequences in the window. */
+	public int windowOutputCount() {
+		return counter.outputSequences.size();
+	}
+
+	/** Returns the number of input sequences added so far. */
+	public long inputCount() {
+		return numInputs;
+	}
+
+	/** Returns the number of input sequences that left the window so far. */
+	public long expiredInputCount() {
+		return numExpiredInputs;
+	}
+
+	/** Returns the number of input sequences processed per second, measured over the time spent on adding and
+	 * retracting input sequences. */
+	public double inputsPerSecond() {
+		return processingNanos == 0 ? 0. : numInputs / (processingNanos / 1e9);
+	}
+}
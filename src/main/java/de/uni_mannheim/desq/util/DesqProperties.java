@@ -65,11 +65,27 @@ public class DesqProperties implements Externalizable, Writable {
         return Integer.parseInt(value);
     }
 
+    public int getInt(String key, int defaultValue) {
+        String value = properties.get(key);
+        if (value == null && !properties.containsKey(key)) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value);
+    }
+
     public long getLong(String key) {
         String value = getString(key);
         return Long.parseLong(value);
     }
 
+    public long getLong(String key, long defaultValue) {
+        String value = properties.get(key);
+        if (value == null && !properties.containsKey(key)) {
+            return defaultValue;
+        }
+        return Long.parseLong(value);
+    }
+
     public boolean getBoolean(String key) {
         String value = getString(key);
         return Boolean.parseBoolean(value);
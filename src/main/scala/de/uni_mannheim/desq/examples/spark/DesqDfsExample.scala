@@ -0,0 +1,31 @@
+package de.uni_mannheim.desq.examples.spark
+
+import de.uni_mannheim.desq.Desq._
+import de.uni_mannheim.desq.mining.spark._
+import org.apache.spark.{SparkConf, SparkContext}
+
+object DesqDfsExample {
+  def icdm16()(implicit sc: SparkContext) {
+    val patternExpression = "[c|d]([A^|B=^]+)e"
+    val sigma = 2
+    val conf = DesqDfs.createConf(patternExpression, sigma)
+    ExampleUtils.runIcdm16(conf)
+  }
+
+  def nyt()(implicit sc: SparkContext) {
+    val patternExpression = "(.^ JJ@ NN@)"
+    val sigma = 1000
+    val conf = DesqDfs.createConf(patternExpression, sigma)
+    conf.setProperty("desq.mining.prune.irrelevant.inputs", true)
+    conf.setProperty("desq.mining.use.two.pass", true)
+    ExampleUtils.runNyt(conf)
+  }
+
+  def main(args: Array[String]) {
+    val conf = new SparkConf().setAppName(getClass.getName).setMaster("local")
+    initDesq(conf)
+    implicit val sc = new SparkContext(conf)
+    icdm16
+    //nyt
+  }
+}
@@ -1,5 +1,6 @@
 package de.uni_mannheim.desq.mining.spark
 
+import de.uni_mannheim.desq.fst.CompiledPattern
 import de.uni_mannheim.desq.mining._
 import de.uni_mannheim.desq.util.DesqProperties
 import it.unimi.dsi.fastutil.ints.IntArrayList
@@ -17,6 +18,16 @@ class DesqCount(ctx: DesqMinerContext) extends DesqMiner(ctx) {
     val conf = ctx.conf
     val minSupport = conf.getLong("desq.mining.min.support")
 
+    // compile the pattern expression once and ship the FST and DFA to the executors in serialized form; lazy DFAs
+    // are constructed while mining and thus built by each task
+    val compiledPatternBroadcast = if (conf.getBoolean("desq.mining.use.lazy.dfa")) {
+      null
+    } else {
+      val driverContext = new de.uni_mannheim.desq.mining.DesqMinerContext(conf, data.descriptor.getDictionary)
+      val compiledPattern = new de.uni_mannheim.desq.mining.DesqCount(driverContext).getCompiledPattern
+      data.sequences.context.broadcast(compiledPattern.toBytes)
+    }
+
     // build RDD to perform the minig
     val patterns = data.sequences.mapPartitions(rows => {
       // for each row, get output of FST and produce (output sequence, 1) pair
@@ -24,7 +35,9 @@ class DesqCount(ctx: DesqMinerContext) extends DesqMiner(ctx) {
         // initialize the sequential desq miner
         val descriptor = descriptorBroadcast.value
         val baseContext = new de.uni_mannheim.desq.mining.DesqMinerContext(conf, descriptor.getDictionary)
-        val baseMiner = new de.uni_mannheim.desq.mining.DesqCount(baseContext)
+        val baseMiner = new de.uni_mannheim.desq.mining.DesqCount(baseContext,
+          if (compiledPatternBroadcast == null) null
+          else CompiledPattern.fromBytes(compiledPatternBroadcast.value, descriptor.getDictionary))
         var outputIterator: ObjectIterator[Sequence] = ObjectLists.emptyList[Sequence].iterator()
         var currentSupport = 0L
         val itemFids = new IntArrayList()
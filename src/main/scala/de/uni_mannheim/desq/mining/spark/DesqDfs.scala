@@ -0,0 +1,118 @@
+package de.uni_mannheim.desq.mining.spark
+
+import de.uni_mannheim.desq.fst.CompiledPattern
+import de.uni_mannheim.desq.io.MemoryPatternWriter
+import de.uni_mannheim.desq.mining.{PivotComputer, PostingList, WeightedSequence}
+import de.uni_mannheim.desq.util.DesqProperties
+
+import scala.collection.JavaConverters._
+import scala.reflect.ClassTag
+
+/**
+  * Distributed DesqDfs using item-based partitioning. Each input sequence is sent to one partition for each of its
+  * pivot items (see [[PivotComputer]]). Each partition then runs the sequential DesqDfs on its input sequences,
+  * restricted to the patterns whose largest item is the pivot item of that partition. Since every pattern has
+  * exactly one pivot item, each pattern is mined in exactly one partition and no further aggregation is needed.
+  */
+class DesqDfs(ctx: DesqMinerContext) extends DesqMiner(ctx) {
+  override def mine[T](data: GenericDesqDataset[T])(implicit m: ClassTag[T]): DesqDataset = {
+    // localize the variables we need in the RDD
+    val descriptorBroadcast = data.broadcastDescriptor()
+    val conf = ctx.conf
+
+    // compile the pattern expression once and ship the FST and DFA to the executors in serialized form; the DFA
+    // compiled without pivot item serves all pivot items. Lazy DFAs are constructed while mining and thus built
+    // once per partition.
+    val compiledPatternBroadcast = if (conf.getBoolean("desq.mining.use.lazy.dfa")) {
+      null
+    } else {
+      val driverContext = new de.uni_mannheim.desq.mining.DesqMinerContext(conf, data.descriptor.getDictionary)
+      val compiledPattern = new de.uni_mannheim.desq.mining.DesqDfs(driverContext, null, 0).getCompiledPattern
+      data.sequences.context.broadcast(compiledPattern.toBytes)
+    }
+
+    // send each input sequence to the partitions of its pivot items, where the input sequences of each pivot item
+    // are collected in a posting list (which is much more compact than the input sequences themselves)
+    val inputsByPivot = data.sequences.mapPartitions(rows => {
+      val descriptor = descriptorBroadcast.value
+      val dict = descriptor.getDictionary
+      val baseContext = new de.uni_mannheim.desq.mining.DesqMinerContext(conf, dict)
+      val compiledPattern = if (compiledPatternBroadcast == null) {
+        null // compiled by the pivot computer
+      } else {
+        CompiledPattern.fromBytes(compiledPatternBroadcast.value, dict)
+      }
+      val pivotComputer = new PivotComputer(baseContext, compiledPattern)
+      rows.flatMap(s => {
+        val fids = descriptor.getFids(s)
+        val pivotItems = pivotComputer.computePivotItems(fids)
+        if (pivotItems.isEmpty) {
+          Iterator.empty
+        } else {
+          val inputSequence = new WeightedSequence(fids, descriptor.getWeight(s))
+          pivotItems.iterator().asScala.map(pivotItem => (pivotItem.intValue(), inputSequence))
+        }
+      })
+    }).aggregateByKey(new PostingList())(
+      (postingList, inputSequence) => { DesqDfs.addInputSequence(postingList, inputSequence); postingList },
+      (postingList1, postingList2) => { postingList1.addAll(postingList2); postingList1 })
+
+    // mine each partition with the sequential DesqDfs, restricted to the patterns of its pivot item
+    val patterns = inputsByPivot.mapPartitions(partitions => {
+      val descriptor = descriptorBroadcast.value
+      val dict = descriptor.getDictionary
+      val compiledPattern = if (compiledPatternBroadcast == null) {
+        val partitionContext = new de.uni_mannheim.desq.mining.DesqMinerContext(conf, dict)
+        new de.uni_mannheim.desq.mining.DesqDfs(partitionContext, null, 0).getCompiledPattern
+      } else {
+        CompiledPattern.fromBytes(compiledPatternBroadcast.value, dict)
+      }
+      val inputSequence = new WeightedSequence()
+      partitions.flatMap { case (pivotItem, postingList) =>
+        val patternWriter = new MemoryPatternWriter()
+        val baseContext = new de.uni_mannheim.desq.mining.DesqMinerContext(conf, dict, patternWriter)
+        val baseMiner = new de.uni_mannheim.desq.mining.DesqDfs(baseContext, compiledPattern, pivotItem)
+        val postingIt = postingList.iterator()
+        do {
+          DesqDfs.nextInputSequence(postingIt, inputSequence)
+          baseMiner.addInputSequence(inputSequence, inputSequence.weight, false) // copies
+        } while (postingIt.nextPosting())
+        baseMiner.mine()
+        patternWriter.getPatterns.asScala.map(p => descriptor.pack(p, p.weight))
+      }
+    })
+
+    // all done, return result (we assume patterns are produced as fids)
+    DesqDataset.buildFromGenericDesqDataset(new GenericDesqDataset(patterns, data))
+  }
+}
+
+object DesqDfs {
+  def createConf(patternExpression: String, sigma: Long): DesqProperties = {
+    val conf = de.uni_mannheim.desq.mining.DesqDfs.createConf(patternExpression, sigma)
+    conf.setProperty("desq.mining.miner.class", classOf[DesqDfs].getCanonicalName)
+    conf
+  }
+
+  /** Appends the given input sequence as a new posting: the weight (split into two non-negative integers) followed
+    * by the fids. */
+  private def addInputSequence(postingList: PostingList, inputSequence: WeightedSequence): Unit = {
+    postingList.newPosting()
+    postingList.addNonNegativeInt((inputSequence.weight >>> 30).toInt)
+    postingList.addNonNegativeInt((inputSequence.weight & 0x3FFFFFFF).toInt)
+    var i = 0
+    while (i < inputSequence.size()) {
+      postingList.addNonNegativeInt(inputSequence.getInt(i))
+      i += 1
+    }
+  }
+
+  /** Reads the input sequence of the current posting written by [[addInputSequence]]. */
+  private def nextInputSequence(postingIt: PostingList.Iterator, inputSequence: WeightedSequence): Unit = {
+    inputSequence.clear()
+    inputSequence.weight = (postingIt.nextNonNegativeInt().toLong << 30) | postingIt.nextNonNegativeInt()
+    while (postingIt.hasNext) {
+      inputSequence.add(postingIt.nextNonNegativeInt())
+    }
+  }
+}
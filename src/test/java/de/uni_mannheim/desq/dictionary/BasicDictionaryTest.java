@@ -0,0 +1,87 @@
+package de.uni_mannheim.desq.dictionary;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests that the ascendant index built by {@link Dictionary#freeze()} gives the same results as traversing the
+ * hierarchy. */
+public class BasicDictionaryTest {
+    @Test
+    public void ascendantIndexIcdm16() throws IOException {
+        // not a forest
+        testAscendantIndex("/icdm16-example/dict.json");
+    }
+
+    @Test
+    public void ascendantIndexReadme() throws IOException {
+        testAscendantIndex("/readme/dictionary.json");
+    }
+
+    private static void testAscendantIndex(String resourceName) throws IOException {
+        URL dictFile = BasicDictionaryTest.class.getResource(resourceName);
+        Dictionary unindexed = Dictionary.loadFrom(dictFile);
+        Dictionary indexed = Dictionary.loadFrom(dictFile);
+        indexed.freeze();
+        assertThat(unindexed.ascendantOffsets).isNull();
+        assertThat(indexed.ascendantOffsets).isNotNull();
+        assertThat(indexed.isForest()).isEqualTo(unindexed.isForest());
+
+        IntIterator it = unindexed.fidIterator();
+        while (it.hasNext()) {
+            int fid = it.nextInt();
+            String sid = unindexed.sidOfFid(fid);
+
+            // empty set
+            IntSet expected = new IntOpenHashSet();
+            unindexed.addAscendantFids(fid, expected);
+            IntSet actual = new IntOpenHashSet();
+            indexed.addAscendantFids(fid, actual);
+            assertThat((Object) actual).as("ascendants of %s", sid).isEqualTo(expected);
+            assertThat(actual.contains(fid)).isFalse();
+
+            // empty list; the index must produce the same ascendants in the same order
+            if (unindexed.isForest()) {
+                IntArrayList expectedList = new IntArrayList();
+                unindexed.addAscendantFids(fid, expectedList);
+                IntArrayList actualList = new IntArrayList();
+                indexed.addAscendantFids(fid, actualList);
+                assertThat((Object) actualList).as("ascendants of %s", sid).isEqualTo(expectedList);
+            }
+
+            // set already containing the ascendants of other items
+            IntIterator otherIt = unindexed.fidIterator();
+            while (otherIt.hasNext()) {
+                int otherFid = otherIt.nextInt();
+                expected = unindexed.ascendantsFids(otherFid);
+                unindexed.addAscendantFids(fid, expected);
+                actual = unindexed.ascendantsFids(otherFid);
+                indexed.addAscendantFids(fid, actual);
+                assertThat((Object) actual).as("ascendants of %s and %s", sid, unindexed.sidOfFid(otherFid))
+                        .isEqualTo(expected);
+            }
+
+            // gids
+            int gid = unindexed.gidOf(fid);
+            IntSet expectedGids = new IntOpenHashSet();
+            unindexed.addAscendantGids(gid, expectedGids);
+            IntSet actualGids = new IntOpenHashSet();
+            indexed.addAscendantGids(gid, actualGids);
+            assertThat((Object) actualGids).as("ascendant gids of %s", sid).isEqualTo(expectedGids);
+
+            // fid bounds
+            for (int maxFid = 0; maxFid <= unindexed.lastFid() + 1; maxFid++) {
+                assertThat(indexed.hasAscendantWithFidBelow(fid, maxFid))
+                        .as("ascendant of %s with fid below %d", sid, maxFid)
+                        .isEqualTo(unindexed.hasAscendantWithFidBelow(fid, maxFid));
+            }
+        }
+    }
+}
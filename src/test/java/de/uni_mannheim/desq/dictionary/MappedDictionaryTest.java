@@ -0,0 +1,140 @@
+package de.uni_mannheim.desq.dictionary;
+
+import de.uni_mannheim.desq.io.DelSequenceReader;
+import de.uni_mannheim.desq.io.SequenceReader;
+import de.uni_mannheim.desq.util.TestUtils;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests that a {@link MappedDictionary} written with {@link MappedDictionary#write(Dictionary, File)} has the same
+ * contents as the dictionary it was written from. */
+public class MappedDictionaryTest {
+    @Test
+    public void icdm16() throws IOException {
+        testRoundTrip(Dictionary.loadFrom(getResource("/icdm16-example/dict.json")), "icdm16.dict");
+    }
+
+    /** With frequencies and fids computed from the data; the ascendant index is taken from the dictionary. */
+    @Test
+    public void icdm16Frozen() throws IOException {
+        Dictionary dict = Dictionary.loadFrom(getResource("/icdm16-example/dict.json"));
+        SequenceReader dataReader = new DelSequenceReader(getResource("/icdm16-example/data.del").openStream(),
+                false);
+        dataReader.setDictionary(dict);
+        dict.clearFreqs();
+        dict.incFreqs(dataReader);
+        dataReader.close();
+        dict.recomputeFids();
+        dict.freeze();
+        testRoundTrip(dict, "icdm16-frozen.dict");
+    }
+
+    @Test
+    public void readme() throws IOException {
+        testRoundTrip(Dictionary.loadFrom(getResource("/readme/dictionary.json")), "readme.dict");
+    }
+
+    private static void testRoundTrip(Dictionary dict, String fileName) throws IOException {
+        File file = TestUtils.newTemporaryFile(
+                TestUtils.getPackageResourcesPath(MappedDictionaryTest.class) + "/" + fileName);
+        MappedDictionary.write(dict, file);
+        MappedDictionary mappedDict = MappedDictionary.open(file);
+
+        assertThat(mappedDict.size()).isEqualTo(dict.size());
+        assertThat(mappedDict.firstFid()).isEqualTo(dict.firstFid());
+        assertThat(mappedDict.lastFid()).isEqualTo(dict.lastFid());
+        assertThat(mappedDict.isForest()).isEqualTo(dict.isForest());
+        assertThat(mappedDict.hasConsistentFids()).isEqualTo(dict.hasConsistentFids());
+        assertThat(mappedDict.largestRootFid()).isEqualTo(dict.largestRootFid());
+        assertThat((Object) new IntOpenHashSet(mappedDict.fids())).isEqualTo(new IntOpenHashSet(dict.fids()));
+        assertThat((Object) new IntOpenHashSet(mappedDict.gids())).isEqualTo(new IntOpenHashSet(dict.gids()));
+        for (long dfreq = 0; dfreq <= dict.dfreqOf(dict.firstFid()) + 1; dfreq++) {
+            assertThat(mappedDict.lastFidAbove(dfreq)).isEqualTo(dict.lastFidAbove(dfreq));
+        }
+
+        // items
+        IntArrayList fids = new IntArrayList();
+        for (int fid = dict.firstFid(); fid >= 0; fid = dict.nextFid(fid)) {
+            fids.add(fid);
+        }
+        IntArrayList mappedFids = new IntArrayList();
+        IntIterator it = mappedDict.fidIterator();
+        while (it.hasNext()) {
+            mappedFids.add(it.nextInt());
+        }
+        assertThat((Object) mappedFids).isEqualTo(fids);
+        for (int fid = 0; fid <= dict.lastFid() + 1; fid++) {
+            assertThat(mappedDict.containsFid(fid)).as("fid %d", fid).isEqualTo(dict.containsFid(fid));
+            if (!dict.containsFid(fid)) {
+                assertThat(mappedDict.isLeaf(fid)).isFalse();
+                assertThat(mappedDict.sidOfFid(fid)).isNull();
+                assertThat((Object) mappedDict.parentsOf(fid)).isNull();
+                assertThat((Object) mappedDict.childrenOf(fid)).isNull();
+                continue;
+            }
+
+            String sid = dict.sidOfFid(fid);
+            int gid = dict.gidOf(fid);
+            assertThat(mappedDict.sidOfFid(fid)).isEqualTo(sid);
+            assertThat(mappedDict.gidOf(fid)).as("gid of %s", sid).isEqualTo(gid);
+            assertThat(mappedDict.fidOf(gid)).as("fid of gid %d", gid).isEqualTo(fid);
+            assertThat(mappedDict.fidOf(sid)).as("fid of %s", sid).isEqualTo(fid);
+            assertThat(mappedDict.containsGid(gid)).isTrue();
+            assertThat(mappedDict.dfreqOf(fid)).as("dfreq of %s", sid).isEqualTo(dict.dfreqOf(fid));
+            assertThat(mappedDict.cfreqOf(fid)).as("cfreq of %s", sid).isEqualTo(dict.cfreqOf(fid));
+            assertThat((Object) new IntArrayList(mappedDict.parentsOf(fid))).as("parents of %s", sid)
+                    .isEqualTo(new IntArrayList(dict.parentsOf(fid)));
+            assertThat((Object) new IntArrayList(mappedDict.childrenOf(fid))).as("children of %s", sid)
+                    .isEqualTo(new IntArrayList(dict.childrenOf(fid)));
+            assertThat(mappedDict.isLeaf(fid)).as("%s is leaf", sid).isEqualTo(dict.isLeaf(fid));
+
+            // ascendants
+            IntSet ascendants = new IntOpenHashSet();
+            dict.addAscendantFids(fid, ascendants);
+            IntSet mappedAscendants = new IntOpenHashSet();
+            mappedDict.addAscendantFids(fid, mappedAscendants);
+            assertThat((Object) mappedAscendants).as("ascendants of %s", sid).isEqualTo(ascendants);
+            IntSet ascendantGids = new IntOpenHashSet();
+            dict.addAscendantGids(gid, ascendantGids);
+            IntSet mappedAscendantGids = new IntOpenHashSet();
+            mappedDict.addAscendantGids(gid, mappedAscendantGids);
+            assertThat((Object) mappedAscendantGids).as("ascendant gids of %s", sid).isEqualTo(ascendantGids);
+        }
+        assertThat(mappedDict.containsFid(-1)).isFalse();
+        assertThat(mappedDict.isLeaf(-1)).isFalse();
+        assertThat(mappedDict.fidOf("no such item")).isEqualTo(-1);
+        assertThat(mappedDict.fidOf(Integer.MAX_VALUE)).isEqualTo(-1);
+        assertThat(mappedDict.containsGid(Integer.MAX_VALUE)).isFalse();
+
+        // the ascendant index is read from the file, so that the ascendants are in the same order
+        if (dict.isForest()) {
+            for (int fid = dict.firstFid(); fid >= 0; fid = dict.nextFid(fid)) {
+                IntArrayList ascendants = new IntArrayList();
+                dict.addAscendantFids(fid, ascendants);
+                IntArrayList mappedAscendants = new IntArrayList();
+                mappedDict.addAscendantFids(fid, mappedAscendants);
+                assertThat((Object) mappedAscendants).isEqualTo(ascendants);
+            }
+        }
+
+        // loading
+        Dictionary loadedDict = Dictionary.loadFrom(file);
+        assertThat(loadedDict).isInstanceOf(MappedDictionary.class);
+        assertThat(loadedDict.isReadOnly()).isTrue();
+        assertThat(loadedDict.fingerprint()).isEqualTo(dict.fingerprint());
+        assertThat(loadedDict.deepCopy().fingerprint()).isEqualTo(dict.fingerprint());
+    }
+
+    private static URL getResource(String name) {
+        return MappedDictionaryTest.class.getResource(name);
+    }
+}
@@ -0,0 +1,103 @@
+package de.uni_mannheim.desq.fst;
+
+import de.uni_mannheim.desq.dictionary.Dictionary;
+import de.uni_mannheim.desq.patex.PatExToFst;
+import de.uni_mannheim.desq.patex.PatExUtils;
+import de.uni_mannheim.desq.util.TestUtils;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests that the code generated by {@link FstCodeGenerator} produces the same pairs as interpreting the FST. */
+public class CompiledFstTest {
+    private static final String[] PATTERN_EXPRESSIONS = TestUtils.getIcdm16PatternExpressions(
+            "(A)", "(A=)", "(A^)", "(.^)", "(a1=^)", "[(a1)|(b1)|(c)|(d)|(e)|(b2)|(b11)]", "[a1|b1|c|d|e|b12|a2] (.)",
+            "[(c)|(b11)|(a1)|(e)] [(B^)|(d)]");
+
+    @Test
+    public void generatedEqualsInterpreted() throws IOException {
+        Dictionary dict = TestUtils.getIcdm16Dictionary();
+        for (String patternExpression : PATTERN_EXPRESSIONS) {
+            Fst fst = PatExUtils.toFst(dict, patternExpression);
+            CompiledFst generated = new CompiledFst(fst, dict, true);
+            assertThat(generated.usesGeneratedCode()).as("pattern=%s", patternExpression).isTrue();
+            assertSameSteps(generated, new CompiledFst(fst, dict, false), dict, patternExpression);
+
+            // with output tables
+            for (long sigma = 1; sigma <= 3; sigma++) {
+                int largestFrequentFid = dict.lastFidAbove(sigma);
+                generated = new CompiledFst(fst, dict, true, largestFrequentFid);
+                assertThat(generated.usesGeneratedCode()).as("pattern=%s", patternExpression).isTrue();
+                assertSameSteps(generated, new CompiledFst(fst, dict, false, largestFrequentFid), dict,
+                        patternExpression);
+            }
+        }
+    }
+
+    /** A state whose generated method would be too large for the JIT compiler is interpreted. */
+    @Test
+    public void largeState() throws IOException {
+        Dictionary dict = TestUtils.getIcdm16Dictionary();
+        // one transition per alternative out of the initial state, each testing multiple ranges (not minimized, so
+        // that the alternatives are not merged)
+        String[] items = new String[] { "A", "a1", "a2", "B", "b1", "b11", "b12", "b2", "c", "d", "e" };
+        StringBuilder patternExpression = new StringBuilder("[");
+        int n = items.length;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 2; j < n; j++) {
+                for (int k = j + 2; k < n; k++) {
+                    if (patternExpression.length() > 1) patternExpression.append("|");
+                    patternExpression.append("([").append(items[i]).append("|").append(items[j]).append("|")
+                            .append(items[k]).append("]) ").append(items[(i + j + k) % n]);
+                }
+            }
+        }
+        patternExpression.append("]");
+        Fst fst = new PatExToFst(patternExpression.toString(), dict).translate();
+        fst.annotate();
+        CompiledFst compiledFst = new CompiledFst(fst, dict, true);
+        assertThat((long) FstCodeGenerator.STATE_CASE_SIZE * compiledFst.numStates())
+                .isLessThanOrEqualTo(FstCodeGenerator.MAX_METHOD_SIZE);
+        long maxSize = 0;
+        for (int stateId = 0; stateId < compiledFst.numStates(); stateId++) {
+            maxSize = Math.max(maxSize, FstCodeGenerator.estimatedSizeOf(compiledFst, stateId));
+        }
+        assertThat(maxSize).isGreaterThan(FstCodeGenerator.MAX_METHOD_SIZE);
+        assertThat(compiledFst.usesGeneratedCode()).isFalse();
+    }
+
+    /** Compares the pairs produced by both FSTs for each state, each item, and different sets of valid states. */
+    private static void assertSameSteps(CompiledFst actual, CompiledFst expected, Dictionary dict,
+                                        String patternExpression) {
+        int numStates = expected.numStates();
+        BitSet[] validToStatesList = new BitSet[] { null, new BitSet(), new BitSet(), new BitSet() };
+        for (int stateId = 0; stateId < numStates; stateId++) {
+            validToStatesList[1].set(stateId);
+            if (stateId % 2 == 0) validToStatesList[2].set(stateId);
+            else validToStatesList[3].set(stateId);
+        }
+
+        CompiledFst.Buffer actualBuffer = new CompiledFst.Buffer(dict.isForest());
+        CompiledFst.Buffer expectedBuffer = new CompiledFst.Buffer(dict.isForest());
+        for (int stateId = 0; stateId < numStates; stateId++) {
+            IntIterator it = dict.fidIterator();
+            while (it.hasNext()) {
+                int fid = it.nextInt();
+                for (BitSet validToStates : validToStatesList) {
+                    actualBuffer.pairs.clear();
+                    actual.step(stateId, fid, validToStates, actualBuffer);
+                    expectedBuffer.pairs.clear();
+                    expected.step(stateId, fid, validToStates, expectedBuffer);
+                    assertThat((Object) actualBuffer.pairs)
+                            .as("pattern=%s state=%d item=%s valid states=%s", patternExpression, stateId,
+                                    dict.sidOfFid(fid), validToStates)
+                            .isEqualTo(expectedBuffer.pairs);
+                }
+            }
+        }
+    }
+}
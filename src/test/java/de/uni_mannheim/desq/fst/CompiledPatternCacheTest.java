@@ -0,0 +1,61 @@
+package de.uni_mannheim.desq.fst;
+
+import de.uni_mannheim.desq.dictionary.Dictionary;
+import de.uni_mannheim.desq.patex.PatExUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompiledPatternCacheTest {
+    /** Pattern expressions whose fid form does not fit into {@link java.io.DataOutput#writeUTF(String)} */
+    @Test
+    public void keyOfLongPatternExpression() throws IOException {
+        Dictionary dict = getDictionary();
+        StringBuilder fidPatternExpression = new StringBuilder("(1)");
+        while (fidPatternExpression.length() <= 65535) {
+            fidPatternExpression.append(" [1|2]");
+        }
+        String key = CompiledPatternCache.keyOfFidPatEx(dict, fidPatternExpression.toString(), dict.lastFid(),
+                "none");
+        assertThat(key).isEqualTo(CompiledPatternCache.keyOfFidPatEx(dict, fidPatternExpression.toString(),
+                dict.lastFid(), "none"));
+        assertThat(key).isNotEqualTo(CompiledPatternCache.keyOfFidPatEx(dict, fidPatternExpression + " 1",
+                dict.lastFid(), "none"));
+
+        // the fid form of a pattern expression with a few hundred items
+        StringBuilder patternExpression = new StringBuilder("(a1)");
+        for (int i = 0; i < 300; i++) {
+            patternExpression.append(" [a1|b1]");
+        }
+        key = CompiledPatternCache.keyOf(dict, patternExpression.toString(), dict.lastFid(), "none");
+        assertThat(key).isEqualTo(CompiledPatternCache.keyOfFidPatEx(dict,
+                PatExUtils.toFidPatEx(dict, patternExpression.toString()), dict.lastFid(), "none"));
+        assertThat(key).isNotEqualTo(CompiledPatternCache.keyOf(dict, patternExpression + " a1", dict.lastFid(),
+                "none"));
+    }
+
+    @Test
+    public void fingerprint() throws IOException {
+        Dictionary dict = getDictionary();
+        byte[] fingerprint = dict.fingerprint();
+        assertThat(dict.fingerprint()).isEqualTo(fingerprint);
+
+        // computed only once for frozen dictionaries
+        Dictionary frozenDict = getDictionary();
+        frozenDict.freeze();
+        assertThat(frozenDict.fingerprint()).isEqualTo(fingerprint);
+        assertThat(frozenDict.fingerprint()).isSameAs(frozenDict.fingerprint());
+
+        // changes when the dictionary changes
+        dict.incFreqs(dict.fidOf("a1"), 1, 1);
+        assertThat(dict.fingerprint()).isNotEqualTo(fingerprint);
+    }
+
+    private static Dictionary getDictionary() throws IOException {
+        URL dictFile = CompiledPatternCacheTest.class.getResource("/icdm16-example/dict.json");
+        return Dictionary.loadFrom(dictFile);
+    }
+}
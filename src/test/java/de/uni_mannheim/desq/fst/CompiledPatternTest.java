@@ -0,0 +1,109 @@
+package de.uni_mannheim.desq.fst;
+
+import de.uni_mannheim.desq.dictionary.Dictionary;
+import de.uni_mannheim.desq.patex.PatExUtils;
+import de.uni_mannheim.desq.util.TestUtils;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests that a {@link CompiledPattern} read back with {@link CompiledPattern#fromBytes(byte[], Dictionary)} has the
+ * same FST and DFA as the one written with {@link CompiledPattern#toBytes()}. */
+public class CompiledPatternTest {
+    private static final String[] PATTERN_EXPRESSIONS = TestUtils.getIcdm16PatternExpressions();
+
+    @Test
+    public void withoutDfa() throws IOException {
+        Dictionary dict = TestUtils.getIcdm16Dictionary();
+        for (String patternExpression : PATTERN_EXPRESSIONS) {
+            Fst fst = PatExUtils.toFst(dict, patternExpression);
+            CompiledPattern read = roundTrip(new CompiledPattern(fst, null), dict);
+            assertSameFst(read.getFst(), fst);
+            assertThat(read.getDfa()).isNull();
+        }
+    }
+
+    @Test
+    public void withDfa() throws IOException {
+        Dictionary dict = TestUtils.getIcdm16Dictionary();
+        List<IntArrayList> inputSequences = TestUtils.getIcdm16InputSequences(dict);
+        for (String patternExpression : PATTERN_EXPRESSIONS) {
+            for (long sigma = 1; sigma <= 3; sigma++) {
+                int largestFrequentFid = dict.lastFidAbove(sigma);
+
+                Fst fst = PatExUtils.toFst(dict, patternExpression);
+                Dfa dfa = Dfa.createDfa(fst, dict, largestFrequentFid, false, false);
+                CompiledPattern read = roundTrip(new CompiledPattern(fst, dfa), dict);
+                assertSameFst(read.getFst(), fst);
+                assertThat(read.getDfa().numStates()).isEqualTo(dfa.numStates());
+                for (IntArrayList inputSequence : inputSequences) {
+                    assertThat(read.getDfa().accepts(inputSequence))
+                            .as("pattern=%s sigma=%d input=%s", patternExpression, sigma, inputSequence)
+                            .isEqualTo(dfa.accepts(inputSequence));
+                }
+
+                Fst reverseFst = PatExUtils.toFst(dict, patternExpression);
+                Dfa reverseDfa = Dfa.createReverseDfa(reverseFst, dict, largestFrequentFid, true, false);
+                read = roundTrip(new CompiledPattern(reverseFst, reverseDfa), dict);
+                assertSameFst(read.getFst(), reverseFst);
+                assertThat(read.getDfa().numStates()).isEqualTo(reverseDfa.numStates());
+                for (IntArrayList inputSequence : inputSequences) {
+                    assertSameReverseRun(read.getDfa(), reverseDfa, inputSequence);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void lazyDfa() throws IOException {
+        Dictionary dict = TestUtils.getIcdm16Dictionary();
+        Fst fst = PatExUtils.toFst(dict, PATTERN_EXPRESSIONS[0]);
+        Dfa dfa = Dfa.createDfa(fst, dict, dict.lastFidAbove(1), false, true);
+        new CompiledPattern(fst, dfa).toBytes();
+    }
+
+    /** Writes and reads back the given compiled pattern. Also checks that writing the pattern read back produces
+     * the same bytes. */
+    private static CompiledPattern roundTrip(CompiledPattern compiledPattern, Dictionary dict) {
+        byte[] bytes = compiledPattern.toBytes();
+        CompiledPattern read = CompiledPattern.fromBytes(bytes, dict);
+        assertThat(read.toBytes()).isEqualTo(bytes);
+        return read;
+    }
+
+    private static void assertSameFst(Fst actual, Fst expected) {
+        assertThat(actual.numStates()).isEqualTo(expected.numStates());
+        assertThat(actual.getInitialState().getId()).isEqualTo(expected.getInitialState().getId());
+        for (int stateId = 0; stateId < expected.numStates(); stateId++) {
+            State actualState = actual.getState(stateId);
+            State expectedState = expected.getState(stateId);
+            assertThat(actualState.isFinal()).isEqualTo(expectedState.isFinal());
+            assertThat(actualState.isFinalComplete()).isEqualTo(expectedState.isFinalComplete());
+            assertThat(actualState.transitionList.size()).isEqualTo(expectedState.transitionList.size());
+            for (int i = 0; i < expectedState.transitionList.size(); i++) {
+                // includes the item expression and the target state
+                assertThat(actualState.transitionList.get(i).toString())
+                        .isEqualTo(expectedState.transitionList.get(i).toString());
+            }
+        }
+    }
+
+    private static void assertSameReverseRun(Dfa actual, Dfa expected, IntArrayList inputSequence) {
+        List<DfaState> actualStateSeq = new ArrayList<>();
+        IntArrayList actualInitialPos = new IntArrayList();
+        List<DfaState> expectedStateSeq = new ArrayList<>();
+        IntArrayList expectedInitialPos = new IntArrayList();
+        assertThat(actual.acceptsReverse(inputSequence, actualStateSeq, actualInitialPos))
+                .isEqualTo(expected.acceptsReverse(inputSequence, expectedStateSeq, expectedInitialPos));
+        assertThat((Object) actualInitialPos).isEqualTo(expectedInitialPos);
+        assertThat(actualStateSeq.size()).isEqualTo(expectedStateSeq.size());
+        for (int i = 0; i < expectedStateSeq.size(); i++) {
+            assertThat(actualStateSeq.get(i).fstStates).isEqualTo(expectedStateSeq.get(i).fstStates);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package de.uni_mannheim.desq.fst;
+
+import de.uni_mannheim.desq.dictionary.Dictionary;
+import de.uni_mannheim.desq.patex.PatExUtils;
+import de.uni_mannheim.desq.util.TestUtils;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests that {@link DfaMinimizer} produces a DFA with at most as many states that gives the same results. */
+public class DfaMinimizerTest {
+    private static final String[] PATTERN_EXPRESSIONS = TestUtils.getIcdm16PatternExpressions(
+            "[c|d] (B) e", "a1 (b1)$", "^(e)", "(a1)");
+
+    @Test
+    public void sameResults() throws IOException {
+        Dictionary dict = TestUtils.getIcdm16Dictionary();
+        List<IntArrayList> inputSequences = getInputSequences(dict);
+        for (String patternExpression : PATTERN_EXPRESSIONS) {
+            for (long sigma = 1; sigma <= 4; sigma++) {
+                for (boolean processFinalCompleteStates : new boolean[] { false, true }) {
+                    assertSameResults(dict, patternExpression, sigma, processFinalCompleteStates, inputSequences);
+                }
+            }
+        }
+    }
+
+    /** The DFA is minimal already, so that minimization does not change it. */
+    @Test
+    public void minimalDfa() throws IOException {
+        Dictionary dict = TestUtils.getIcdm16Dictionary();
+        List<IntArrayList> inputSequences = getInputSequences(dict);
+        int[] numStates = assertSameResults(dict, ".(a1)", 1, false, inputSequences);
+        assertThat(numStates[0]).isEqualTo(numStates[1]);
+
+        // minimizing a minimized DFA does not change it either
+        for (String patternExpression : PATTERN_EXPRESSIONS) {
+            Dfa dfa = createDfa(dict, patternExpression, dict.lastFidAbove(1), false, false, true);
+            Map<BitSet, DfaState> states = new HashMap<>(dfa.states);
+            assertThat(DfaMinimizer.minimize(dfa, null)).isTrue();
+            assertThat(dfa.states).as("pattern=%s", patternExpression).isEqualTo(states);
+        }
+    }
+
+    /** States from which no final state can be reached (because the outputs are infrequent) are dropped. */
+    @Test
+    public void deadStates() throws IOException {
+        Dictionary dict = TestUtils.getIcdm16Dictionary();
+        List<IntArrayList> inputSequences = getInputSequences(dict);
+        String patternExpression = "^[(a1) .* (c)|(e)]"; // c is infrequent for sigma=3
+        Dfa unminimizedDfa = createDfa(dict, patternExpression, dict.lastFidAbove(3), false, false, false);
+        assertThat(numDeadStates(unminimizedDfa)).isGreaterThan(0);
+        Dfa dfa = createDfa(dict, patternExpression, dict.lastFidAbove(3), false, false, true);
+        assertThat(numDeadStates(dfa)).isEqualTo(0);
+        int[] numStates = assertSameResults(dict, patternExpression, 3, false, inputSequences);
+        assertThat(numStates[0]).isLessThan(numStates[1]);
+    }
+
+    /** If no input is accepted, only the initial state remains (without transitions). */
+    @Test
+    public void onlyDeadStates() throws IOException {
+        Dictionary dict = TestUtils.getIcdm16Dictionary();
+        List<IntArrayList> inputSequences = getInputSequences(dict);
+        String patternExpression = "(a1) .* [(b1)|.{2}(c)]"; // b1 and c are infrequent for sigma=3
+        Dfa unminimizedDfa = createDfa(dict, patternExpression, dict.lastFidAbove(3), false, false, false);
+        assertThat(numDeadStates(unminimizedDfa)).isEqualTo(unminimizedDfa.numStates()).isGreaterThan(1);
+        Dfa dfa = createDfa(dict, patternExpression, dict.lastFidAbove(3), false, false, true);
+        assertThat(dfa.numStates()).isEqualTo(1);
+        assertThat(dfa.states.values()).containsExactly(dfa.initial);
+        assertThat(dfa.initial.reachableDfaStates).containsOnly((DfaState) null);
+        assertSameResults(dict, patternExpression, 3, false, inputSequences);
+    }
+
+    /** Checks that the minimized and the unminimized (forward and reverse) DFAs accept the same inputs and, in
+     * reverse, traverse states with the same observed FST states. Returns the number of states of the minimized and
+     * the unminimized forward DFA. */
+    private static int[] assertSameResults(Dictionary dict, String patternExpression, long sigma,
+                                           boolean processFinalCompleteStates, List<IntArrayList> inputSequences) {
+        int largestFrequentFid = dict.lastFidAbove(sigma);
+        String description = "pattern=" + patternExpression + " sigma=" + sigma + " processFinalCompleteStates="
+                + processFinalCompleteStates;
+
+        Dfa dfa = createDfa(dict, patternExpression, largestFrequentFid, processFinalCompleteStates, false, true);
+        Dfa unminimizedDfa = createDfa(dict, patternExpression, largestFrequentFid, processFinalCompleteStates, false,
+                false);
+        assertThat(dfa.numStates()).as(description).isLessThanOrEqualTo(unminimizedDfa.numStates());
+        for (IntArrayList inputSequence : inputSequences) {
+            assertThat(dfa.accepts(inputSequence)).as("%s input=%s", description, inputSequence)
+                    .isEqualTo(unminimizedDfa.accepts(inputSequence));
+        }
+
+        Fst fst = PatExUtils.toFst(dict, patternExpression);
+        Dfa reverseDfa = createDfa(dict, fst, largestFrequentFid, processFinalCompleteStates, true, true);
+        Dfa unminimizedReverseDfa = createDfa(dict, patternExpression, largestFrequentFid,
+                processFinalCompleteStates, true, false);
+        assertThat(reverseDfa.numStates()).as(description).isLessThanOrEqualTo(unminimizedReverseDfa.numStates());
+        BitSet observedFstStates = Dfa.toStatesOf(fst);
+        for (IntArrayList inputSequence : inputSequences) {
+            List<DfaState> stateSeq = new ArrayList<>();
+            IntArrayList initialPos = new IntArrayList();
+            List<DfaState> unminimizedStateSeq = new ArrayList<>();
+            IntArrayList unminimizedInitialPos = new IntArrayList();
+            assertThat(reverseDfa.acceptsReverse(inputSequence, stateSeq, initialPos))
+                    .as("%s input=%s", description, inputSequence)
+                    .isEqualTo(unminimizedReverseDfa.acceptsReverse(inputSequence, unminimizedStateSeq,
+                            unminimizedInitialPos));
+            assertThat((Object) initialPos).as("%s input=%s", description, inputSequence)
+                    .isEqualTo(unminimizedInitialPos);
+
+            // the unminimized DFA may continue with dead states
+            assertThat(stateSeq.size()).isLessThanOrEqualTo(unminimizedStateSeq.size());
+            for (int i = 0; i < stateSeq.size(); i++) {
+                assertThat(observed(stateSeq.get(i), observedFstStates))
+                        .as("%s input=%s position=%d", description, inputSequence, i)
+                        .isEqualTo(observed(unminimizedStateSeq.get(i), observedFstStates));
+            }
+        }
+        return new int[] { dfa.numStates(), unminimizedDfa.numStates() };
+    }
+
+    private static BitSet observed(DfaState state, BitSet observedFstStates) {
+        BitSet fstStates = (BitSet) state.getFstStates().clone();
+        fstStates.and(observedFstStates);
+        return fstStates;
+    }
+
+    /** Returns the number of states of the given DFA from which no final state can be reached. */
+    private static int numDeadStates(Dfa dfa) {
+        Set<DfaState> alive = Collections.newSetFromMap(new IdentityHashMap<>());
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (DfaState state : dfa.states.values()) {
+                if (alive.contains(state)) continue;
+                boolean isAlive = state.isFinal;
+                for (DfaState toState : state.reachableDfaStates) {
+                    isAlive |= toState != null && alive.contains(toState);
+                }
+                if (isAlive) {
+                    alive.add(state);
+                    changed = true;
+                }
+            }
+        }
+        return dfa.states.size() - alive.size();
+    }
+
+    private static Dfa createDfa(Dictionary dict, String patternExpression, int largestFrequentFid,
+                                 boolean processFinalCompleteStates, boolean reverse, boolean minimize) {
+        return createDfa(dict, PatExUtils.toFst(dict, patternExpression), largestFrequentFid,
+                processFinalCompleteStates, reverse, minimize);
+    }
+
+    /** Creates an eager DFA; reverse DFAs modify the given FST. */
+    private static Dfa createDfa(Dictionary dict, Fst fst, int largestFrequentFid, boolean processFinalCompleteStates,
+                                 boolean reverse, boolean minimize) {
+        Dfa dfa = new Dfa(dict, largestFrequentFid, processFinalCompleteStates, false);
+        dfa.minimize = minimize;
+        dfa.create(fst, reverse, false, false);
+        return dfa;
+    }
+
+    /** Returns the ICDM16 input sequences (as fids) followed by random sequences of its items. */
+    private static List<IntArrayList> getInputSequences(Dictionary dict) throws IOException {
+        List<IntArrayList> inputSequences = TestUtils.getIcdm16InputSequences(dict);
+        IntArrayList fids = new IntArrayList(dict.fids());
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            IntArrayList inputSequence = new IntArrayList();
+            int length = random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                inputSequence.add(fids.getInt(random.nextInt(fids.size())));
+            }
+            inputSequences.add(inputSequence);
+        }
+        return inputSequences;
+    }
+}
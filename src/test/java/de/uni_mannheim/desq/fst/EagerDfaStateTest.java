@@ -0,0 +1,59 @@
+package de.uni_mannheim.desq.fst;
+
+import de.uni_mannheim.desq.dictionary.Dictionary;
+import de.uni_mannheim.desq.patex.PatExUtils;
+import de.uni_mannheim.desq.util.TestUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests that the construction of eager DFAs does not depend on the order in which states are processed. */
+public class EagerDfaStateTest {
+    /** The sequential construction processes the states one after the other, the parallel construction level by
+     * level; both must produce the same states and transitions. In particular, the default transition of a state
+     * must only depend on the transitions of that state. */
+    @Test
+    public void sequentialEqualsParallel() throws IOException {
+        Dictionary dict = TestUtils.getIcdm16Dictionary();
+        for (String patternExpression : TestUtils.getIcdm16PatternExpressions()) {
+            for (long sigma = 1; sigma <= 3; sigma++) {
+                int largestFrequentFid = dict.lastFidAbove(sigma);
+                Dfa sequentialDfa = Dfa.createDfa(PatExUtils.toFst(dict, patternExpression), dict,
+                        largestFrequentFid, false, false, false, 1);
+                Dfa parallelDfa = Dfa.createDfa(PatExUtils.toFst(dict, patternExpression), dict,
+                        largestFrequentFid, false, false, false, 4);
+                assertSameDfa(sequentialDfa, parallelDfa, patternExpression, sigma);
+
+                sequentialDfa = Dfa.createReverseDfa(PatExUtils.toFst(dict, patternExpression), dict,
+                        largestFrequentFid, true, false, false, 1);
+                parallelDfa = Dfa.createReverseDfa(PatExUtils.toFst(dict, patternExpression), dict,
+                        largestFrequentFid, true, false, false, 4);
+                assertSameDfa(sequentialDfa, parallelDfa, patternExpression, sigma);
+            }
+        }
+    }
+
+    private static void assertSameDfa(Dfa actual, Dfa expected, String patternExpression, long sigma) {
+        assertThat(actual.states.keySet())
+                .as("pattern=%s sigma=%d", patternExpression, sigma)
+                .isEqualTo(expected.states.keySet());
+        for (Map.Entry<BitSet, DfaState> entry : expected.states.entrySet()) {
+            DfaState actualState = actual.states.get(entry.getKey());
+            DfaState expectedState = entry.getValue();
+            assertThat(actualState.fstStates).isEqualTo(expectedState.fstStates);
+            assertThat(actualState.reachableDfaStates.size()).isEqualTo(expectedState.reachableDfaStates.size());
+            for (int i = 0; i < expectedState.reachableDfaStates.size(); i++) {
+                DfaState actualToState = actualState.reachableDfaStates.get(i);
+                DfaState expectedToState = expectedState.reachableDfaStates.get(i);
+                assertThat(actualToState == null ? null : actualToState.fstStates)
+                        .as("pattern=%s sigma=%d state=%s transition %d", patternExpression, sigma,
+                                expectedState.fstStates, i)
+                        .isEqualTo(expectedToState == null ? null : expectedToState.fstStates);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package de.uni_mannheim.desq.mining;
+
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests that a {@link BlockPostingList} returns the same postings as the {@link PostingList} it was created from,
+ * both when iterating and when skipping. */
+public class BlockPostingListTest {
+    /** Integers of 1, 2, 3, and 4 bytes (the largest one that can be stored in a {@link PostingList}) */
+    private static final int[] VALUES = { 0, 1, 255, 256, 65535, 65536, 0xFFFFFF, 0x1000000, Integer.MAX_VALUE - 1 };
+
+    @Test
+    public void groupVarint() {
+        Random random = new Random(0);
+        for (int length = 0; length <= 9; length++) {
+            int[] values = new int[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = VALUES[random.nextInt(VALUES.length)];
+            }
+            ByteArrayList out = new ByteArrayList();
+            out.add((byte) 42); // not at the start of the array
+            BlockPostingList.writeGroupVarint(out, values, 0, length);
+            int noBytes = out.size();
+            out.size(noBytes + 3); // padding
+
+            int[] decoded = new int[length];
+            int offset = BlockPostingList.readGroupVarint(out.elements(), 1, decoded, 0, length);
+            assertThat(offset).isEqualTo(noBytes);
+            assertThat(decoded).as("length %d", length).isEqualTo(values);
+        }
+    }
+
+    @Test
+    public void empty() {
+        BlockPostingList postingList = BlockPostingList.of(new PostingList());
+        assertThat(postingList.size()).isEqualTo(0);
+        assertThat(postingList.noBlocks()).isEqualTo(0);
+        BlockPostingList.Iterator it = postingList.iterator();
+        assertThat(it.nextPosting()).isFalse();
+        it.reset();
+        assertThat(it.skipTo(0)).isFalse();
+    }
+
+    @Test
+    public void singleBlock() {
+        testPostings(randomPostings(new Random(1), 10, false));
+    }
+
+    /** Exactly one full block; the next block would start right after it. */
+    @Test
+    public void fullBlock() {
+        testPostings(randomPostings(new Random(2), BlockPostingList.BLOCK_SIZE, false));
+    }
+
+    @Test
+    public void multipleBlocks() {
+        testPostings(randomPostings(new Random(3), 10 * BlockPostingList.BLOCK_SIZE + 17, false));
+    }
+
+    /** Input ids and elements that need 4 bytes, including long postings and many empty ones. */
+    @Test
+    public void largeValues() {
+        testPostings(randomPostings(new Random(4), 5 * BlockPostingList.BLOCK_SIZE + 1, true));
+    }
+
+    /** Returns the given number of postings, each consisting of its input id followed by its elements. */
+    private static List<int[]> randomPostings(Random random, int noPostings, boolean large) {
+        List<int[]> postings = new ArrayList<>();
+        int inputId = random.nextInt(3);
+        for (int i = 0; i < noPostings; i++) {
+            int noElements = random.nextInt(4) == 0 ? 0 : random.nextInt(large ? 40 : 8);
+            int[] posting = new int[noElements + 1];
+            posting[0] = inputId;
+            for (int j = 1; j <= noElements; j++) {
+                posting[j] = large ? VALUES[random.nextInt(VALUES.length)] : random.nextInt(300);
+            }
+            postings.add(posting);
+            inputId += 1 + (large && random.nextInt(8) == 0 ? random.nextInt(1 << 22) : random.nextInt(4));
+        }
+        return postings;
+    }
+
+    private static void testPostings(List<int[]> postings) {
+        PostingList postingList = new PostingList();
+        for (int[] posting : postings) {
+            postingList.newPosting();
+            for (int value : posting) {
+                postingList.addNonNegativeInt(value);
+            }
+        }
+        BlockPostingList blockPostingList = BlockPostingList.of(postingList);
+        int noBlocks = (postings.size() + BlockPostingList.BLOCK_SIZE - 1) / BlockPostingList.BLOCK_SIZE;
+        assertThat(blockPostingList.size()).isEqualTo(postings.size());
+        assertThat(blockPostingList.noBlocks()).isEqualTo(noBlocks);
+
+        // iterating gives the postings of the posting list
+        BlockPostingList.Iterator it = blockPostingList.iterator();
+        PostingList.Iterator expectedIt = postingList.iterator();
+        int i = 0;
+        do {
+            assertThat(it.nextPosting()).as("posting %d", i).isTrue();
+            IntArrayList expected = new IntArrayList();
+            while (expectedIt.hasNext()) {
+                expected.add(expectedIt.nextNonNegativeInt());
+            }
+            assertCurrentPosting(it, expected.toIntArray(), i);
+            i++;
+        } while (expectedIt.nextPosting());
+        assertThat(i).isEqualTo(postings.size());
+        assertThat(it.nextPosting()).isFalse();
+
+        // same for a copy
+        it = new BlockPostingList(blockPostingList).iterator();
+        for (i = 0; i < postings.size(); i++) {
+            assertThat(it.nextPosting()).isTrue();
+            assertCurrentPosting(it, postings.get(i), i);
+        }
+        assertThat(it.nextPosting()).isFalse();
+
+        // skipping to each input id and to the gaps in between, from the start
+        int[] inputIds = postings.stream().mapToInt(posting -> posting[0]).toArray();
+        int lastInputId = inputIds[inputIds.length - 1];
+        for (int target = 0; target <= lastInputId + 1; target = nextTarget(target, inputIds)) {
+            it.reset();
+            assertSkipTo(it, target, postings, inputIds);
+        }
+
+        // skipping forward with steps of different sizes (within a block, to the next block, over many blocks) on
+        // the same iterator, interleaved with nextPosting
+        for (int step : new int[] { 1, 2, BlockPostingList.BLOCK_SIZE - 1, BlockPostingList.BLOCK_SIZE,
+                BlockPostingList.BLOCK_SIZE + 1, 3 * BlockPostingList.BLOCK_SIZE + 5 }) {
+            for (int delta = -1; delta <= 1; delta++) {
+                it.reset();
+                int index = 0;
+                while (true) {
+                    int target = inputIds[Math.min(index, inputIds.length - 1)] + delta;
+                    if (index >= inputIds.length) target = lastInputId + 1;
+                    if (!assertSkipTo(it, Math.max(target, 0), postings, inputIds)) break;
+
+                    // skipping to the current posting does not move
+                    int current = Arrays.binarySearch(inputIds, it.inputId());
+                    assertThat(it.skipTo(it.inputId())).isTrue();
+                    assertCurrentPosting(it, postings.get(current), current);
+                    assertThat(it.skipTo(0)).isTrue();
+                    assertCurrentPosting(it, postings.get(current), current);
+
+                    if (current + 1 < postings.size()) {
+                        assertThat(it.nextPosting()).isTrue();
+                        assertCurrentPosting(it, postings.get(current + 1), current + 1);
+                        current++;
+                    }
+                    index = current + step;
+                }
+            }
+        }
+
+        // skipping to the last input id of each block and just after it, where the posting is in the next block
+        for (int block = 0; block < noBlocks; block++) {
+            int last = Math.min((block + 1) * BlockPostingList.BLOCK_SIZE, postings.size()) - 1;
+            it.reset();
+            assertSkipTo(it, inputIds[last], postings, inputIds);
+            assertSkipTo(it, inputIds[last] + 1, postings, inputIds);
+            it.reset();
+            assertSkipTo(it, inputIds[last] + 1, postings, inputIds);
+        }
+    }
+
+    /** Returns the next target for skipping: each input id, the value after it, and the value before the next. */
+    private static int nextTarget(int target, int[] inputIds) {
+        int index = Arrays.binarySearch(inputIds, target);
+        if (index >= 0) {
+            return target + 1;
+        }
+        int next = -index - 1;
+        if (next == inputIds.length) {
+            return Integer.MAX_VALUE;
+        }
+        return target + 1 < inputIds[next] - 1 ? inputIds[next] - 1 : inputIds[next];
+    }
+
+    /** Skips to the given target and checks that the iterator is at the first posting with at least that input id.
+     * Returns whether there is such a posting. */
+    private static boolean assertSkipTo(BlockPostingList.Iterator it, int target, List<int[]> postings,
+                                        int[] inputIds) {
+        int index = Arrays.binarySearch(inputIds, target);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        boolean found = it.skipTo(target);
+        assertThat(found).as("skip to %d", target).isEqualTo(index < inputIds.length);
+        if (found) {
+            assertCurrentPosting(it, postings.get(index), index);
+        } else {
+            assertThat(it.nextPosting()).isFalse();
+        }
+        return found;
+    }
+
+    private static void assertCurrentPosting(BlockPostingList.Iterator it, int[] posting, int index) {
+        assertThat(it.inputId()).as("input id of posting %d", index).isEqualTo(posting[0]);
+        assertThat(it.noElements()).as("size of posting %d", index).isEqualTo(posting.length - 1);
+        assertThat(Arrays.copyOf(it.elements(), it.noElements())).as("elements of posting %d", index)
+                .isEqualTo(Arrays.copyOfRange(posting, 1, posting.length));
+    }
+}
@@ -1,8 +1,12 @@
 package de.uni_mannheim.desq.mining;
 
 import de.uni_mannheim.desq.util.DesqProperties;
+import de.uni_mannheim.desq.util.TestUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -20,6 +24,20 @@ public class MinerConfigurations {
         return Pair.of(minerName, conf);
     }
 
+    public static Pair<String, DesqProperties> cSpade(long sigma, int gamma, int lambda, boolean generalize,
+                                                     boolean useBlockPostings) {
+        Pair<String, DesqProperties> miner = cSpade(sigma, gamma, lambda, generalize);
+        miner.getRight().setProperty("desq.mining.use.block.postings", useBlockPostings);
+        return Pair.of(miner.getLeft() + "-" + toLetter(useBlockPostings), miner.getRight());
+    }
+
+    public static Pair<String, DesqProperties> cSpade(long sigma, int gamma, int lambda, boolean generalize,
+                                                     boolean useBlockPostings, boolean useBitmaps) {
+        Pair<String, DesqProperties> miner = cSpade(sigma, gamma, lambda, generalize, useBlockPostings);
+        miner.getRight().setProperty("desq.mining.use.bitmaps", useBitmaps);
+        return Pair.of(miner.getLeft() + toLetter(useBitmaps), miner.getRight());
+    }
+
     public static Pair<String, DesqProperties> desqCount(long sigma, String patternExpression, boolean useFlist,
                                                         boolean pruneIrrelevantInputs, boolean useLazyDfa, boolean useTwoPass) {
         DesqProperties conf = DesqCount.createConf(patternExpression, sigma);
@@ -32,6 +50,27 @@ public class MinerConfigurations {
         return Pair.of(minerName, conf);
     }
 
+    public static Pair<String, DesqProperties> desqCount(long sigma, String patternExpression, boolean useFlist,
+                                                        boolean pruneIrrelevantInputs, boolean useLazyDfa, boolean useTwoPass,
+                                                        int numThreads) {
+        Pair<String, DesqProperties> miner = desqCount(sigma, patternExpression, useFlist, pruneIrrelevantInputs,
+                useLazyDfa, useTwoPass);
+        miner.getRight().setProperty("desq.mining.num.threads", numThreads);
+        return Pair.of(miner.getLeft() + "-" + numThreads, miner.getRight());
+    }
+
+    public static Pair<String, DesqProperties> streamingDesqCount(long sigma, String patternExpression, boolean useFlist,
+                                                                 boolean pruneIrrelevantInputs, boolean useLazyDfa,
+                                                                 boolean useTwoPass) {
+        // the window is unbounded so that the result matches the one of DesqCount
+        Pair<String, DesqProperties> miner = desqCount(sigma, patternExpression, useFlist, pruneIrrelevantInputs,
+                useLazyDfa, useTwoPass);
+        miner.getRight().setProperty("desq.mining.miner.class", StreamingDesqCount.class.getCanonicalName());
+        miner.getRight().setProperty("desq.mining.window.size", 0);
+        miner.getRight().setProperty("desq.mining.window.duration", 0);
+        return Pair.of("Streaming" + miner.getLeft(), miner.getRight());
+    }
+
     public static Pair<String, DesqProperties> desqCount(long sigma, int gamma, int lambda, boolean generalize, boolean useFlist,
                                           boolean pruneIrrelevantInputs, boolean useLazyDfa, boolean useTwoPass) {
         String patternExpression = DesqMiner.patternExpressionFor(gamma, lambda, generalize);
@@ -48,16 +87,90 @@ public class MinerConfigurations {
         return Pair.of(minerName, conf);
     }
 
+    public static Pair<String, DesqProperties> desqDfs(long sigma, String patternExpression,
+                                                      boolean pruneIrrelevantInputs, boolean useLazyDfa, boolean useTwoPass,
+                                                      int numThreads) {
+        Pair<String, DesqProperties> miner = desqDfs(sigma, patternExpression, pruneIrrelevantInputs, useLazyDfa, useTwoPass);
+        miner.getRight().setProperty("desq.mining.num.threads", numThreads);
+        return Pair.of(miner.getLeft() + "-" + numThreads, miner.getRight());
+    }
+
     public static Pair<String, DesqProperties> desqDfs(long sigma, int gamma, int lambda, boolean generalize,
                                           boolean pruneIrrelevantInputs, boolean useLazyDfa, boolean useTwoPass) {
         String patternExpression = DesqMiner.patternExpressionFor(gamma, lambda, generalize);
         return desqDfs(sigma, patternExpression, pruneIrrelevantInputs, useLazyDfa, useTwoPass);
     }
 
+    /** Modifies the given configuration to parse and filter input sequences with multiple threads. */
+    public static Pair<String, DesqProperties> withInputThreads(Pair<String, DesqProperties> miner, int numInputThreads) {
+        miner.getRight().setProperty("desq.mining.input.num.threads", numInputThreads);
+        return Pair.of(miner.getLeft() + "-in" + numInputThreads, miner.getRight());
+    }
+
+    public static Pair<String, DesqProperties> withThreads(Pair<String, DesqProperties> miner, int numThreads) {
+        miner.getRight().setProperty("desq.mining.num.threads", numThreads);
+        return Pair.of(miner.getLeft() + "-" + numThreads, miner.getRight());
+    }
+
+    /** Modifies the given configuration to use the given memory budget (in bytes). */
+    public static Pair<String, DesqProperties> withMemoryBudget(Pair<String, DesqProperties> miner, long memoryBudget) {
+        miner.getRight().setProperty("desq.mining.memory.budget", memoryBudget);
+        return Pair.of(miner.getLeft() + "-mem" + memoryBudget, miner.getRight());
+    }
+
+    /** Modifies the given configuration to read/store the compiled pattern expression from/in a temporary cache
+     * directory (shared by all configurations). */
+    public static Pair<String, DesqProperties> withPatternCache(Pair<String, DesqProperties> miner) {
+        try {
+            File cacheDir = new File(TestUtils.getTemporaryFolder().getRoot(), "pattern-cache");
+            miner.getRight().setProperty("desq.mining.pattern.cache.dir", cacheDir.getPath());
+            return Pair.of(miner.getLeft() + "-cache", miner.getRight());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Modifies the given configuration to run the FST by generated code. */
+    public static Pair<String, DesqProperties> withFstCodegen(Pair<String, DesqProperties> miner) {
+        miner.getRight().setProperty("desq.mining.use.fst.codegen", true);
+        return Pair.of(miner.getLeft() + "-codegen", miner.getRight());
+    }
+
+    /** Modifies the given configuration to precompute the outputs of generalized FST transitions. */
+    public static Pair<String, DesqProperties> withOutputTables(Pair<String, DesqProperties> miner) {
+        miner.getRight().setProperty("desq.mining.use.output.tables", true);
+        return Pair.of(miner.getLeft() + "-tables", miner.getRight());
+    }
+
+    /** Modifies the given configuration to freeze the dictionary before mining (so that the miner uses the
+     * ascendant index). Read by the tests only. */
+    public static Pair<String, DesqProperties> withFrozenDictionary(Pair<String, DesqProperties> miner) {
+        miner.getRight().setProperty("desq.test.dictionary.freeze", true);
+        return Pair.of(miner.getLeft() + "-frozen", miner.getRight());
+    }
+
+    /** Modifies the given configuration to write the dictionary to a file and to mine with the
+     * {@link de.uni_mannheim.desq.dictionary.MappedDictionary} loaded from it. Read by the tests only. */
+    public static Pair<String, DesqProperties> withMappedDictionary(Pair<String, DesqProperties> miner) {
+        miner.getRight().setProperty("desq.test.dictionary.mapped", true);
+        return Pair.of(miner.getLeft() + "-mapped", miner.getRight());
+    }
+
     public static List<Pair<String, DesqProperties>> all(long sigma, int gamma, int lambda, boolean generalize) {
         List<Pair<String, DesqProperties>> allMiners = new ArrayList<>();
         allMiners.add(prefixGrowth(sigma, gamma, lambda, generalize));
         allMiners.add(cSpade(sigma, gamma, lambda, generalize));
+        allMiners.add(cSpade(sigma, gamma, lambda, generalize, true));
+        allMiners.add(cSpade(sigma, gamma, lambda, generalize, false, true));
+        allMiners.add(cSpade(sigma, gamma, lambda, generalize, true, true));
+        allMiners.add(withThreads(cSpade(sigma, gamma, lambda, generalize), 4));
+        allMiners.add(withThreads(cSpade(sigma, gamma, lambda, generalize, false, true), 4));
+        allMiners.add(withInputThreads(prefixGrowth(sigma, gamma, lambda, generalize), 4));
+        allMiners.add(withThreads(prefixGrowth(sigma, gamma, lambda, generalize), 4));
+        allMiners.add(withFrozenDictionary(prefixGrowth(sigma, gamma, lambda, generalize)));
+        allMiners.add(withFrozenDictionary(cSpade(sigma, gamma, lambda, generalize)));
+        allMiners.add(withMappedDictionary(prefixGrowth(sigma, gamma, lambda, generalize)));
+        allMiners.add(withMappedDictionary(cSpade(sigma, gamma, lambda, generalize)));
         String patternExpression = DesqMiner.patternExpressionFor(gamma, lambda, generalize);
         allMiners.addAll(all(sigma, patternExpression));
         return allMiners;
@@ -75,6 +188,23 @@ public class MinerConfigurations {
         allMiners.add(desqCount(sigma, patternExpression, true, true, true, false));
         allMiners.add(desqCount(sigma, patternExpression, true, true, false, true));
         allMiners.add(desqCount(sigma, patternExpression, true, true, true, true));
+        allMiners.add(withInputThreads(desqCount(sigma, patternExpression, false, true, false, false), 4));
+        allMiners.add(withInputThreads(desqCount(sigma, patternExpression, true, true, true, true), 4));
+        allMiners.add(desqCount(sigma, patternExpression, false, true, false, false, 4));
+        allMiners.add(desqCount(sigma, patternExpression, true, true, true, true, 4));
+        allMiners.add(withInputThreads(desqCount(sigma, patternExpression, false, true, true, true, 4), 4));
+        allMiners.add(streamingDesqCount(sigma, patternExpression, false, true, false, false));
+        allMiners.add(streamingDesqCount(sigma, patternExpression, true, true, true, true));
+        allMiners.add(withInputThreads(streamingDesqCount(sigma, patternExpression, false, true, true, true), 4));
+        allMiners.add(withPatternCache(desqCount(sigma, patternExpression, true, true, false, true)));
+        allMiners.add(withFstCodegen(desqCount(sigma, patternExpression, true, true, false, true)));
+        allMiners.add(withOutputTables(desqCount(sigma, patternExpression, false, true, false, false)));
+        allMiners.add(withOutputTables(desqCount(sigma, patternExpression, true, true, false, true)));
+        allMiners.add(withOutputTables(withFstCodegen(desqCount(sigma, patternExpression, true, false, false, false))));
+        allMiners.add(withFrozenDictionary(desqCount(sigma, patternExpression, false, true, false, false)));
+        allMiners.add(withFrozenDictionary(desqCount(sigma, patternExpression, true, true, true, true)));
+        allMiners.add(withMappedDictionary(desqCount(sigma, patternExpression, false, true, false, false)));
+        allMiners.add(withMappedDictionary(desqCount(sigma, patternExpression, true, true, true, true)));
 
 
         allMiners.add(desqDfs(sigma, patternExpression, false, false, false));
@@ -82,6 +212,23 @@ public class MinerConfigurations {
         allMiners.add(desqDfs(sigma, patternExpression, true, true, false));
         allMiners.add(desqDfs(sigma, patternExpression, true, false, true));
         allMiners.add(desqDfs(sigma, patternExpression, true, true, true));
+        allMiners.add(desqDfs(sigma, patternExpression, false, false, false, 4));
+        allMiners.add(desqDfs(sigma, patternExpression, true, false, true, 4));
+        allMiners.add(withInputThreads(desqDfs(sigma, patternExpression, true, true, true), 4));
+        allMiners.add(withMemoryBudget(desqDfs(sigma, patternExpression, false, false, false), 1));
+        allMiners.add(withMemoryBudget(desqDfs(sigma, patternExpression, true, true, true), 1));
+        allMiners.add(withMemoryBudget(desqDfs(sigma, patternExpression, true, false, true, 4), 1));
+        allMiners.add(withPatternCache(desqDfs(sigma, patternExpression, true, false, true))); // reads DesqCount's
+        allMiners.add(withPatternCache(desqDfs(sigma, patternExpression, true, false, false)));
+        allMiners.add(withFstCodegen(desqDfs(sigma, patternExpression, false, false, false)));
+        allMiners.add(withFstCodegen(desqDfs(sigma, patternExpression, true, false, true, 4)));
+        allMiners.add(withOutputTables(desqDfs(sigma, patternExpression, false, false, false)));
+        allMiners.add(withOutputTables(desqDfs(sigma, patternExpression, true, false, true, 4)));
+        allMiners.add(withFrozenDictionary(desqDfs(sigma, patternExpression, false, false, false)));
+        allMiners.add(withFrozenDictionary(desqDfs(sigma, patternExpression, true, true, true)));
+        allMiners.add(withFrozenDictionary(desqDfs(sigma, patternExpression, true, false, true, 4)));
+        allMiners.add(withMappedDictionary(desqDfs(sigma, patternExpression, false, false, false)));
+        allMiners.add(withMappedDictionary(desqDfs(sigma, patternExpression, true, false, true, 4)));
         return allMiners;
     }
 
@@ -0,0 +1,125 @@
+package de.uni_mannheim.desq.mining;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests {@link SequenceSupportTable} against a {@link HashMap}. */
+public class SequenceSupportTableTest {
+    /** Adds, updates, and removes random short sequences. */
+    @Test
+    public void randomOperations() {
+        testRandomOperations(new Random(0), 20000, 4, 5, true);
+    }
+
+    /** As {@link #randomOperations()}, but all sequences have one of four hash values, so that most of them collide
+     * and removal has to shift long probe sequences. */
+    @Test
+    public void collisions() {
+        testRandomOperations(new Random(1), 5000, 4, 5, false);
+    }
+
+    /** Adds and removes long sequences so that the arena is compacted repeatedly. */
+    @Test
+    public void compaction() {
+        testRandomOperations(new Random(2), 30000, 400, 1000, true);
+    }
+
+    @Test
+    public void clear() {
+        SequenceSupportTable table = new SequenceSupportTable();
+        Map<IntArrayList, Long> reference = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; i++) {
+            apply(table, reference, randomSequence(random, 4, 5), true, random.nextInt(3));
+        }
+        table.clear();
+        reference.clear();
+        check(table, reference, true);
+        for (int i = 0; i < 1000; i++) {
+            apply(table, reference, randomSequence(random, 4, 5), true, random.nextInt(3));
+        }
+        check(table, reference, true);
+    }
+
+    private static void testRandomOperations(Random random, int numOperations, int maxLength, int numItems,
+                                             boolean fullHash) {
+        SequenceSupportTable table = new SequenceSupportTable();
+        Map<IntArrayList, Long> reference = new HashMap<>();
+        for (int i = 0; i < numOperations; i++) {
+            // remove more often than add once the table is large, so that it shrinks and grows repeatedly; removed
+            // sequences are usually present
+            int operation = random.nextInt(reference.size() > 1000 ? 4 : 3);
+            IntArrayList sequence = randomSequence(random, maxLength, numItems);
+            if (operation >= 2 && !reference.isEmpty() && random.nextInt(4) > 0) {
+                sequence = reference.keySet().iterator().next();
+            }
+            apply(table, reference, sequence, fullHash, operation);
+            if (i % 1000 == 0) {
+                check(table, reference, fullHash);
+            }
+        }
+        check(table, reference, fullHash);
+    }
+
+    /** Increments the support of the given sequence (operation 0 or 1) or removes it (otherwise). */
+    private static void apply(SequenceSupportTable table, Map<IntArrayList, Long> reference, IntArrayList sequence,
+                              boolean fullHash, int operation) {
+        int hash = hash(sequence, fullHash);
+        int entryId = table.find(sequence, hash);
+        assertThat(entryId >= 0).isEqualTo(reference.containsKey(sequence));
+        if (operation <= 1) {
+            long support = reference.getOrDefault(sequence, 0L) + 1;
+            reference.put(sequence, support);
+            if (entryId < 0) {
+                entryId = table.add(sequence, hash, support, operation);
+            } else {
+                table.setSupport(entryId, support);
+                table.setLastInputId(entryId, operation);
+            }
+            assertThat(table.find(sequence, hash)).isEqualTo(entryId);
+            assertThat(table.getSupport(entryId)).isEqualTo(support);
+            assertThat(table.getLastInputId(entryId)).isEqualTo(operation);
+        } else if (entryId >= 0) {
+            reference.remove(sequence);
+            table.remove(entryId);
+            assertThat(table.find(sequence, hash)).isEqualTo(-1);
+        }
+    }
+
+    /** Checks that the table holds exactly the sequences and supports of the reference. */
+    private static void check(SequenceSupportTable table, Map<IntArrayList, Long> reference, boolean fullHash) {
+        assertThat(table.size()).isEqualTo(reference.size());
+        for (Map.Entry<IntArrayList, Long> entry : reference.entrySet()) {
+            int entryId = table.find(entry.getKey(), hash(entry.getKey(), fullHash));
+            assertThat(entryId).isGreaterThanOrEqualTo(0);
+            assertThat(table.getSupport(entryId)).isEqualTo(entry.getValue());
+        }
+        Map<IntArrayList, Long> actual = new HashMap<>();
+        IntArrayList sequence = new IntArrayList();
+        for (int entryId = table.nextEntryId(0); entryId >= 0; entryId = table.nextEntryId(entryId + 1)) {
+            table.getSequence(entryId, sequence);
+            assertThat(table.length(entryId)).isEqualTo(sequence.size());
+            assertThat(table.getHash(entryId)).isEqualTo(hash(sequence, fullHash));
+            actual.put(new IntArrayList(sequence), table.getSupport(entryId));
+        }
+        assertThat(actual).isEqualTo(reference);
+    }
+
+    private static int hash(IntArrayList sequence, boolean fullHash) {
+        int hash = SequenceSupportTable.hash(sequence);
+        return fullHash ? hash : hash & 3;
+    }
+
+    private static IntArrayList randomSequence(Random random, int maxLength, int numItems) {
+        int length = random.nextInt(maxLength + 1);
+        IntArrayList sequence = new IntArrayList(length);
+        for (int i = 0; i < length; i++) {
+            sequence.add(1 + random.nextInt(numItems));
+        }
+        return sequence;
+    }
+}
@@ -0,0 +1,128 @@
+package de.uni_mannheim.desq.mining;
+
+import de.uni_mannheim.desq.dictionary.Dictionary;
+import de.uni_mannheim.desq.io.MemoryPatternWriter;
+import de.uni_mannheim.desq.util.DesqProperties;
+import de.uni_mannheim.desq.util.TestUtils;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests that the supports maintained by {@link StreamingDesqCount} for bounded windows match the ones of
+ * {@link DesqCount} run on the input sequences in the window, including after input sequences left the window. */
+public class StreamingDesqCountTest {
+    private static final String[] PATTERN_EXPRESSIONS = TestUtils.getIcdm16PatternExpressions();
+
+    /** How often the ICDM16 input sequences are streamed */
+    private static final int NUM_REPETITIONS = 3;
+
+    @Test
+    public void windowSize() throws IOException {
+        Dictionary dict = getDictionary();
+        List<IntArrayList> inputSequences = getInputSequences(dict);
+        for (String patternExpression : PATTERN_EXPRESSIONS) {
+            for (long sigma = 1; sigma <= 2; sigma++) {
+                for (int windowSize = 1; windowSize <= 4; windowSize++) {
+                    DesqProperties conf = StreamingDesqCount.createConf(patternExpression, sigma, windowSize, 0);
+                    StreamingDesqCount miner = new StreamingDesqCount(new DesqMinerContext(conf, dict));
+                    for (int i = 0; i < inputSequences.size(); i++) {
+                        miner.add(inputSequences.get(i), 1);
+                        int first = Math.max(0, i + 1 - windowSize);
+                        assertThat(miner.windowInputCount()).isEqualTo(i + 1 - first);
+                        assertThat(miner.expiredInputCount()).isEqualTo((long) first);
+                        assertThat(patternsOf(miner))
+                                .as("pattern=%s sigma=%d window size=%d after input %d", patternExpression, sigma,
+                                        windowSize, i)
+                                .isEqualTo(batchPatterns(dict, patternExpression, sigma,
+                                        inputSequences.subList(first, i + 1)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void windowDuration() throws IOException {
+        Dictionary dict = getDictionary();
+        List<IntArrayList> inputSequences = getInputSequences(dict);
+        for (String patternExpression : PATTERN_EXPRESSIONS) {
+            for (long sigma = 1; sigma <= 2; sigma++) {
+                for (long windowDuration = 1; windowDuration <= 3; windowDuration++) {
+                    DesqProperties conf = StreamingDesqCount.createConf(patternExpression, sigma, 0, windowDuration);
+                    StreamingDesqCount miner = new StreamingDesqCount(new DesqMinerContext(conf, dict));
+
+                    // two input sequences per timestamp; input i has timestamp i/2
+                    for (int i = 0; i < inputSequences.size(); i++) {
+                        long timestamp = i / 2;
+                        miner.add(inputSequences.get(i), 1, timestamp);
+                        int first = (int) Math.max(0, 2 * (timestamp - windowDuration + 1));
+                        assertThat(miner.windowInputCount()).isEqualTo(i + 1 - first);
+                        assertThat(patternsOf(miner))
+                                .as("pattern=%s sigma=%d window duration=%d after input %d", patternExpression,
+                                        sigma, windowDuration, i)
+                                .isEqualTo(batchPatterns(dict, patternExpression, sigma,
+                                        inputSequences.subList(first, i + 1)));
+                    }
+
+                    // once time has advanced far enough, all input sequences have left the window
+                    miner.advanceTime((inputSequences.size() - 1) / 2 + windowDuration);
+                    assertThat(miner.windowInputCount()).isEqualTo(0);
+                    assertThat(miner.windowOutputCount()).isEqualTo(0);
+                    assertThat(patternsOf(miner)).isEmpty();
+                }
+            }
+        }
+    }
+
+    private static Dictionary getDictionary() throws IOException {
+        Dictionary dict = TestUtils.getIcdm16Dictionary();
+        dict.freeze();
+        return dict;
+    }
+
+    /** Returns the ICDM16 input sequences (as fids), repeated {@link #NUM_REPETITIONS} times. */
+    private static List<IntArrayList> getInputSequences(Dictionary dict) throws IOException {
+        List<IntArrayList> inputSequences = TestUtils.getIcdm16InputSequences(dict);
+        List<IntArrayList> result = new ArrayList<>();
+        for (int i = 0; i < NUM_REPETITIONS; i++) {
+            result.addAll(inputSequences);
+        }
+        return result;
+    }
+
+    /** Returns the frequent output sequences of the current window of the given miner along with their supports. */
+    private static Map<IntArrayList, Long> patternsOf(StreamingDesqCount miner) {
+        MemoryPatternWriter patternWriter = new MemoryPatternWriter();
+        miner.writeFrequentPatterns(patternWriter);
+        return toMap(patternWriter);
+    }
+
+    /** Returns the frequent output sequences of the given input sequences as computed by {@link DesqCount}. */
+    private static Map<IntArrayList, Long> batchPatterns(Dictionary dict, String patternExpression, long sigma,
+                                                         List<IntArrayList> inputSequences) {
+        DesqMinerContext ctx = new DesqMinerContext(DesqCount.createConf(patternExpression, sigma), dict);
+        MemoryPatternWriter patternWriter = new MemoryPatternWriter();
+        ctx.patternWriter = patternWriter;
+        DesqCount miner = new DesqCount(ctx);
+        for (IntArrayList inputSequence : inputSequences) {
+            miner.addInputSequence(inputSequence, 1, true);
+        }
+        miner.mine();
+        return toMap(patternWriter);
+    }
+
+    private static Map<IntArrayList, Long> toMap(MemoryPatternWriter patternWriter) {
+        Map<IntArrayList, Long> patterns = new HashMap<>();
+        for (WeightedSequence pattern : patternWriter.getPatterns()) {
+            patterns.put(new IntArrayList(pattern), pattern.weight);
+        }
+        return patterns;
+    }
+}
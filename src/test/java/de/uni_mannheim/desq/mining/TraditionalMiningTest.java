@@ -85,6 +85,14 @@ public abstract class TraditionalMiningTest {
             dataReader.close();
             dict.recomputeFids();
         }
+        if (conf.getBoolean("desq.test.dictionary.freeze", false)) {
+            dict.freeze(); // as done by the drivers; also indexes the ascendants
+        }
+        if (conf.getBoolean("desq.test.dictionary.mapped", false)) {
+            File dictFile = new File(outputDelFile.getParentFile(), outputDelFile.getName().replace(".del", ".dict"));
+            dict.write(dictFile);
+            dict = Dictionary.loadFrom(dictFile);
+        }
 
         // Perform pattern mining into del file
         SequenceReader dataReader = getSequenceReader();
@@ -1,8 +1,12 @@
 package de.uni_mannheim.desq.util;
 
+import de.uni_mannheim.desq.dictionary.Dictionary;
 import de.uni_mannheim.desq.io.DelPatternReader;
 import de.uni_mannheim.desq.io.DelPatternWriter;
+import de.uni_mannheim.desq.io.DelSequenceReader;
+import de.uni_mannheim.desq.io.SequenceReader;
 import de.uni_mannheim.desq.mining.WeightedSequence;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.apache.log4j.Logger;
 import org.junit.rules.TemporaryFolder;
 
@@ -12,6 +16,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -23,6 +28,11 @@ public class TestUtils {
 
     private static org.junit.rules.TemporaryFolder temporaryFolder;
 
+    /** Pattern expressions over the items of the ICDM16 example (see {@link #getIcdm16Dictionary()}) */
+    private static final String[] ICDM16_PATTERN_EXPRESSIONS = new String[] {
+            "[c|d] ([A^|B=^]+) e", "(a1)..", "(a1)..$", ".(a1)", "^.(a1)", "(.^) .* (c)", "([A=|d]) (.)",
+            "(a1) .* [(b1)|.{2}(c)]" };
+
     public static TemporaryFolder getTemporaryFolder() throws IOException {
         if (temporaryFolder == null) {
             temporaryFolder = new TemporaryFolder();
@@ -69,4 +79,44 @@ public class TestUtils {
         writer.writeAll(patterns);
         writer.close();
     }
+
+    /** Returns pattern expressions over the items of the ICDM16 example, followed by the given ones. */
+    public static String[] getIcdm16PatternExpressions(String... morePatternExpressions) {
+        String[] result = Arrays.copyOf(ICDM16_PATTERN_EXPRESSIONS,
+                ICDM16_PATTERN_EXPRESSIONS.length + morePatternExpressions.length);
+        System.arraycopy(morePatternExpressions, 0, result, ICDM16_PATTERN_EXPRESSIONS.length,
+                morePatternExpressions.length);
+        return result;
+    }
+
+    /** Returns the dictionary of the ICDM16 example with frequencies and fids computed from its input sequences. */
+    public static Dictionary getIcdm16Dictionary() throws IOException {
+        Dictionary dict = Dictionary.loadFrom(TestUtils.class.getResource("/icdm16-example/dict.json"));
+        SequenceReader dataReader = getIcdm16SequenceReader();
+        dataReader.setDictionary(dict);
+        dict.clearFreqs();
+        dict.incFreqs(dataReader);
+        dataReader.close();
+        dict.recomputeFids();
+        return dict;
+    }
+
+    /** Returns a reader for the input sequences of the ICDM16 example. */
+    public static SequenceReader getIcdm16SequenceReader() throws IOException {
+        URL dataFile = TestUtils.class.getResource("/icdm16-example/data.del");
+        return new DelSequenceReader(dataFile.openStream(), false);
+    }
+
+    /** Returns the input sequences of the ICDM16 example as fids of the given dictionary. */
+    public static List<IntArrayList> getIcdm16InputSequences(Dictionary dict) throws IOException {
+        List<IntArrayList> inputSequences = new ArrayList<>();
+        SequenceReader dataReader = getIcdm16SequenceReader();
+        dataReader.setDictionary(dict);
+        IntArrayList inputSequence = new IntArrayList();
+        while (dataReader.readAsFids(inputSequence)) {
+            inputSequences.add(new IntArrayList(inputSequence));
+        }
+        dataReader.close();
+        return inputSequences;
+    }
 }
@@ -24,6 +24,16 @@ object MinerConfigurations {
         desqCount(sigma, patternExpression, useFlist, pruneIrrelevantInputs, useLazyDfa, useTwoPass)
     }
 
+    def desqDfs(sigma: Long, patternExpression: String, pruneIrrelevantInputs: Boolean, useLazyDfa: Boolean,
+                useTwoPass: Boolean): (String, DesqProperties) = {
+        val conf = DesqDfs.createConf(patternExpression, sigma)
+        conf.setProperty("desq.mining.prune.irrelevant.inputs", pruneIrrelevantInputs)
+        conf.setProperty("desq.mining.use.lazy.dfa", useLazyDfa)
+        conf.setProperty("desq.mining.use.two.pass", useTwoPass)
+        val minerName = "DesqDfs-" + toLetter(pruneIrrelevantInputs) + toLetter(useLazyDfa) + toLetter(useTwoPass)
+        (minerName, conf)
+    }
+
     def all(sigma: Long, gamma: Int, lambda: Int, generalize: Boolean): util.List[(String, DesqProperties)] = {
         val allMiners = new util.ArrayList[(String, DesqProperties)]()
         val patternExpression = DesqMiner.patternExpressionFor(gamma, lambda, generalize)
@@ -44,6 +54,11 @@ object MinerConfigurations {
         allMiners.add(desqCount(sigma, patternExpression, useFlist = true, pruneIrrelevantInputs = true, useLazyDfa = true, useTwoPass = false))
         allMiners.add(desqCount(sigma, patternExpression, useFlist = true, pruneIrrelevantInputs = true, useLazyDfa = false, useTwoPass = true))
         allMiners.add(desqCount(sigma, patternExpression, useFlist = true, pruneIrrelevantInputs = true, useLazyDfa = true, useTwoPass = true))
+
+        allMiners.add(desqDfs(sigma, patternExpression, pruneIrrelevantInputs = false, useLazyDfa = false, useTwoPass = false))
+        allMiners.add(desqDfs(sigma, patternExpression, pruneIrrelevantInputs = true, useLazyDfa = false, useTwoPass = false))
+        allMiners.add(desqDfs(sigma, patternExpression, pruneIrrelevantInputs = true, useLazyDfa = false, useTwoPass = true))
+        allMiners.add(desqDfs(sigma, patternExpression, pruneIrrelevantInputs = true, useLazyDfa = true, useTwoPass = true))
         allMiners
     }
 